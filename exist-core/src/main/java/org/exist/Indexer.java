@@ -82,10 +82,14 @@ public class Indexer implements ContentHandler, LexicalHandler, ErrorHandler {
     public static final String CONFIGURATION_INDEX_ELEMENT_NAME = "index";
     public static final String SUPPRESS_WHITESPACE_ATTRIBUTE = "suppress-whitespace";
     public static final String PRESERVE_WS_MIXED_CONTENT_ATTRIBUTE = "preserve-whitespace-mixed-content";
+    public static final String SINGLE_PASS_MAX_SIZE_ATTRIBUTE = "single-pass-max-size";
 
     public static final String PROPERTY_INDEXER_CONFIG = "indexer.config";
     public final static String PROPERTY_SUPPRESS_WHITESPACE = "indexer.suppress-whitespace";
     public static final String PROPERTY_PRESERVE_WS_MIXED_CONTENT = "indexer.preserve-whitespace-mixed-content";
+    public static final String PROPERTY_SINGLE_PASS_MAX_SIZE = "indexer.single-pass-max-size";
+
+    public static final int DEFAULT_SINGLE_PASS_MAX_SIZE = 1024 * 1024;  // 1 MB
 
     private final DBBroker broker;
     private final Txn transaction;
@@ -184,6 +188,21 @@ public class Indexer implements ContentHandler, LexicalHandler, ErrorHandler {
 	}
     }
 
+    /**
+     * Get the maximum size of a document in bytes which is parsed into memory
+     * and stored in a single pass, see {@link org.exist.collections.Collection#storeDocument}.
+     * This is only used for sources which cannot be read twice, such as a request body.
+     * Larger documents are parsed twice, to validate and to store them.
+     *
+     * @param config the database configuration
+     *
+     * @return the maximum size, 0 if documents are always parsed twice
+     */
+    public static int getSinglePassMaxSize(final Configuration config) {
+        final Integer maxSize = (Integer) config.getProperty(PROPERTY_SINGLE_PASS_MAX_SIZE);
+        return maxSize != null ? maxSize : DEFAULT_SINGLE_PASS_MAX_SIZE;
+    }
+
     public void setValidating(final boolean validate) {
         this.validate = validate;
         if (!validate) {
@@ -43,6 +43,7 @@ public interface BackupDescriptor {
     String NUMBER_IN_SEQUENCE_PROP_NAME = "nr-in-sequence";
     String INCREMENTAL_PROP_NAME = "incremental";
     String DATE_PROP_NAME = "date";
+    String BASE_PROP_NAME = "base";
 
     EXistInputSource getInputSource();
 
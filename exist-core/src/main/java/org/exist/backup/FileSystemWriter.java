@@ -46,6 +46,7 @@ public class FileSystemWriter implements BackupWriter {
     private Path currentContents;
     private Writer currentContentsOut;
     private OutputStream currentOut;
+    private final boolean clean;
     private boolean dataWritten = false;
 
     public FileSystemWriter(final String path) throws IOException {
@@ -53,7 +54,19 @@ public class FileSystemWriter implements BackupWriter {
     }
 
     public FileSystemWriter(final Path file) throws IOException {
-        if (Files.exists(file)) {
+        this(file, true);
+    }
+
+    /**
+     * @param file the backup directory
+     * @param clean true to delete an existing backup directory and existing collection directories,
+     *              false to write into them, e.g. when several writers share the same backup directory.
+     *
+     * @throws IOException if the backup directory cannot be created
+     */
+    public FileSystemWriter(final Path file, final boolean clean) throws IOException {
+        this.clean = clean;
+        if (clean && Files.exists(file)) {
 
             //removing "path"
             FileUtils.deleteQuietly(file);
@@ -75,7 +88,7 @@ public class FileSystemWriter implements BackupWriter {
             file = currentDir.resolve(name.replaceAll("^/?(.*)", "$1"));
         }
 
-        if (Files.exists(file)) {
+        if (clean && Files.exists(file)) {
             FileUtils.deleteQuietly(file);
         }
         Files.createDirectories(file);
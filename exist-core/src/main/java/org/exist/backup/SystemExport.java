@@ -50,6 +50,7 @@ import org.exist.storage.serializers.EXistOutputKeys;
 import org.exist.storage.txn.Txn;
 import org.exist.util.FileUtils;
 import org.exist.util.LockException;
+import org.exist.util.NamedThreadFactory;
 import org.exist.util.UTF8;
 import org.exist.util.serializer.AttrList;
 import org.exist.util.serializer.Receiver;
@@ -78,6 +79,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -95,6 +100,9 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  *
  * The class should be used in combination with {@link ConsistencyCheck}. The error lists returned by ConsistencyCheck can be passed to {@link
  * #export(BackupHandler, org.exist.collections.Collection, BackupWriter, java.util.Date, BackupDescriptor, java.util.List, org.exist.dom.persistent.MutableDocumentSet)}.
+ *
+ * When exporting to a directory, collections may be exported by several worker threads in parallel, see {@link #export(String, boolean, int,
+ * boolean, int, List)}.
  */
 public class SystemExport {
     public final static Logger LOG = LogManager.getLogger(SystemExport.class);
@@ -122,6 +130,7 @@ public class SystemExport {
     private ProcessMonitor.Monitor monitor = null;
     private BackupHandler bh = null;
     private ChainOfReceiversFactory chainFactory;
+    private List<String> filters = null;
 
     public SystemExport(final DBBroker broker, final Txn transaction, final StatusCallback callback, final ProcessMonitor.Monitor monitor,
             final boolean direct, final ChainOfReceiversFactory chainFactory) {
@@ -150,6 +159,7 @@ public class SystemExport {
 
         final List<String> list = (List<String>) broker.getConfiguration().getProperty(CONFIG_FILTERS);
         if (list != null) {
+            filters = list;
             chainFactory = new ChainOfReceiversFactory(list);
         }
     }
@@ -171,7 +181,28 @@ public class SystemExport {
      * @param errorList   a list of {@link ErrorReport} objects as returned by methods in {@link ConsistencyCheck}.
      * @return DOCUMENT ME!
      */
-    public Path export(final String targetDir, boolean incremental, final int maxInc, final boolean zip, final List<ErrorReport> errorList) {
+    public Path export(final String targetDir, final boolean incremental, final int maxInc, final boolean zip, final List<ErrorReport> errorList) {
+        return export(targetDir, incremental, maxInc, zip, 1, errorList);
+    }
+
+    /**
+     * Export the contents of the database, trying to preserve as much data as possible. To be effective, this method should be used in combination
+     * with class {@link ConsistencyCheck}.
+     *
+     * Collections are exported by up to <code>threads</code> workers, each with a broker of its own. A zip file is a single stream, so a zip
+     * export is always written by the calling thread alone.
+     *
+     * @param targetDir   the output directory or file to which data will be written. Output will be written to a zip file if target ends with
+     *                    .zip.
+     * @param incremental true to only export the documents modified since the last backup found in the target directory.
+     * @param maxInc      the maximum number of incremental backups in a sequence before a full backup is made again, or -1 for no limit.
+     * @param zip         true to write the backup to a zip file, false to write it to a directory.
+     * @param threads     the number of threads which export collections in parallel.
+     * @param errorList   a list of {@link ErrorReport} objects as returned by methods in {@link ConsistencyCheck}.
+     * @return the backup file or directory, or null if the export failed or was terminated.
+     */
+    public Path export(final String targetDir, boolean incremental, final int maxInc, final boolean zip, final int threads,
+            final List<ErrorReport> errorList) {
         Path backupFile = null;
 
         try {
@@ -212,6 +243,13 @@ public class SystemExport {
                 }
             }
             properties.setProperty(BackupDescriptor.NUMBER_IN_SEQUENCE_PROP_NAME, Integer.toString(seqNr));
+
+            if (incremental && prevBackup != null) {
+                final String base = getBase(prevBackup);
+                if (base != null) {
+                    properties.setProperty(BackupDescriptor.BASE_PROP_NAME, base);
+                }
+            }
             properties.setProperty(BackupDescriptor.INCREMENTAL_PROP_NAME, incremental ? "yes" : "no");
 
             try {
@@ -236,10 +274,19 @@ public class SystemExport {
 //            FileUtils.forceDelete(repoBackup);
 
                 final Date date = (prevBackup == null) ? null : prevBackup.getDate();
-                final CollectionCallback cb = new CollectionCallback(output, date, prevBackup, errorList, true);
-                broker.getCollectionsFailsafe(transaction, cb);
 
-                exportOrphans(output, cb.getDocs(), errorList);
+                // worker threads need a filter chain of their own, which can only be created from the configured filters
+                final boolean parallel = !zip && threads > 1 && (chainFactory == null || filters != null);
+                try (final ParallelExport parallelExport = parallel ? new ParallelExport(backupFile, threads) : null) {
+                    final CollectionCallback cb = new CollectionCallback(output, date, prevBackup, errorList, true, parallelExport);
+                    broker.getCollectionsFailsafe(transaction, cb);
+
+                    if (parallelExport != null) {
+                        cb.docs.addAll(parallelExport.await());
+                    }
+
+                    exportOrphans(output, cb.getDocs(), errorList);
+                }
             }
 
             return backupFile;
@@ -256,9 +303,34 @@ public class SystemExport {
     }
 
 
+    /**
+     * Get the name of the full backup which the incremental backup sequence continued by
+     * a new backup starts from.
+     *
+     * @param prevBackup the backup the new backup follows
+     * @return the name of the full backup, or null if it is unknown
+     */
+    private static String getBase(final BackupDescriptor prevBackup) {
+        try {
+            final Properties prevProp = prevBackup.getProperties();
+            if (prevProp == null || !"yes".equals(prevProp.getProperty(BackupDescriptor.INCREMENTAL_PROP_NAME))) {
+                return prevBackup.getName();
+            }
+
+            final String base = prevProp.getProperty(BackupDescriptor.BASE_PROP_NAME);
+            return base == null || base.isEmpty() ? null : base;
+        } catch (final IOException e) {
+            LOG.warn("Unable to read properties of previous backup: {}", prevBackup.getName(), e);
+            return null;
+        }
+    }
+
+
     private void reportError(final String message, final Throwable e) {
         if (callback != null) {
-            callback.error("EXPORT: " + message, e);
+            synchronized (callback) {
+                callback.error("EXPORT: " + message, e);
+            }
         }
 
         LOG.error("EXPORT: {}", message, e);
@@ -347,7 +419,9 @@ public class SystemExport {
             e.printStackTrace();
 
             if (callback != null) {
-                callback.error(e.getMessage(), e);
+                synchronized (callback) {
+                    callback.error(e.getMessage(), e);
+                }
             }
         } finally {
             SerializerPool.getInstance().returnObject(serializer);
@@ -480,7 +554,9 @@ public class SystemExport {
 
     private void exportDocument(final BackupHandler bh, final BackupWriter output, final Date date, final BackupDescriptor prevBackup, final SAXSerializer serializer, final int docsCount, final int count, final DocumentImpl doc) throws IOException, SAXException, TerminatedException {
         if (callback != null) {
-            callback.startDocument(doc.getFileURI().toString(), count, docsCount);
+            synchronized (callback) {
+                callback.startDocument(doc.getFileURI().toString(), count, docsCount);
+            }
         }
 
         if ((monitor != null) && !monitor.proceed()) {
@@ -696,7 +772,7 @@ public class SystemExport {
             AccountImpl.getSecurityProperties().enableCheckPasswords(false);
 
             try {
-                final CollectionCallback cb = new CollectionCallback(null, null, null, null, false);
+                final CollectionCallback cb = new CollectionCallback(null, null, null, null, false, null);
                 broker.getCollectionsFailsafe(transaction, cb);
                 collectionCount = cb.collectionCount;
             } finally {
@@ -726,13 +802,15 @@ public class SystemExport {
         private final boolean exportCollection;
         private int lastPercentage = -1;
         private final Agent jmxAgent = AgentFactory.getInstance();
+        private final ParallelExport parallelExport;
 
-        private CollectionCallback(final BackupWriter writer, final Date date, final BackupDescriptor prevBackup, final List<ErrorReport> errorList, final boolean exportCollection) {
+        private CollectionCallback(final BackupWriter writer, final Date date, final BackupDescriptor prevBackup, final List<ErrorReport> errorList, final boolean exportCollection, final ParallelExport parallelExport) {
             this.writer = writer;
             this.errors = errorList;
             this.date = date;
             this.prevBackup = prevBackup;
             this.exportCollection = exportCollection;
+            this.parallelExport = parallelExport;
         }
 
         public boolean indexInfo(final Value value, final long pointer) throws TerminatedException {
@@ -750,7 +828,9 @@ public class SystemExport {
                     }
 
                     if (callback != null) {
-                        callback.startCollection(uri);
+                        synchronized (callback) {
+                            callback.startCollection(uri);
+                        }
                     }
 
                     final VariableByteInput istream = store.getAsStream(pointer);
@@ -767,7 +847,12 @@ public class SystemExport {
                         lastPercentage = percentage;
                         jmxAgent.updateStatus(broker.getBrokerPool(), percentage);
                     }
-                    export(bh, collection, writer, date, bd, errors, docs);
+
+                    if (parallelExport != null) {
+                        parallelExport.submit(collection, date, bd, errors);
+                    } else {
+                        export(bh, collection, writer, date, bd, errors, docs);
+                    }
                 }
             } catch (final TerminatedException e) {
                 reportError("Terminating system export upon request", e);
@@ -787,6 +872,88 @@ public class SystemExport {
     }
 
 
+    /**
+     * Exports collections on a pool of worker threads. Each worker borrows a broker of its own and writes
+     * its collection through a {@link FileSystemWriter} of its own into the collection's directory of the backup.
+     */
+    private class ParallelExport implements AutoCloseable {
+        private final Path backupDir;
+        private final ExecutorService executor;
+        private final Semaphore pending;
+        private final MutableDocumentSet docs = new DefaultDocumentSet();
+        private volatile TerminatedException terminated = null;
+
+        private ParallelExport(final Path backupDir, final int threads) {
+            this.backupDir = backupDir;
+            this.executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory(broker.getBrokerPool(), "system-export"));
+
+            // bounds the number of loaded collections waiting for a worker
+            this.pending = new Semaphore(threads * 2);
+        }
+
+        private void submit(final Collection collection, final Date date, final BackupDescriptor prevBackup, final List<ErrorReport> errorList) throws TerminatedException {
+            checkTerminated();
+            try {
+                pending.acquire();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TerminatedException("system export interrupted");
+            }
+
+            executor.execute(() -> {
+                final MutableDocumentSet exported = new DefaultDocumentSet();
+                try (final DBBroker workerBroker = broker.getBrokerPool().get(Optional.of(broker.getCurrentSubject()));
+                        final BackupWriter output = new FileSystemWriter(backupDir, false)) {
+                    final SystemExport worker = new SystemExport(workerBroker, transaction, callback, monitor, directAccess,
+                            filters == null ? null : new ChainOfReceiversFactory(filters));
+                    worker.export(worker.bh, collection, output, date, prevBackup, errorList, exported);
+                } catch (final TerminatedException e) {
+                    terminated = e;
+                } catch (final Exception e) {
+                    reportError("Caught exception while exporting collection: " + collection.getURI(), e);
+                } finally {
+                    synchronized (docs) {
+                        docs.addAll(exported);
+                    }
+                    pending.release();
+                }
+            });
+        }
+
+        /**
+         * Wait for all submitted collections to be exported.
+         *
+         * @return the documents exported by the workers
+         * @throws TerminatedException if a worker was terminated
+         */
+        private DocumentSet await() throws TerminatedException {
+            close();
+            checkTerminated();
+            return docs;
+        }
+
+        private void checkTerminated() throws TerminatedException {
+            final TerminatedException e = terminated;
+            if (e != null) {
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() {
+            executor.shutdown();
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    LOG.debug("Waiting for system export workers to finish...");
+                }
+            } catch (final InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
     private class DocumentCallback implements BTreeCallback {
         private final DocumentSet exportedDocs;
         private Set<String> writtenDocs = null;
@@ -0,0 +1,359 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.collections;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.lock.ManagedCollectionLock;
+import org.exist.storage.txn.TransactionException;
+import org.exist.storage.txn.Txn;
+import org.exist.util.LockException;
+import org.exist.util.MimeTable;
+import org.exist.util.MimeType;
+import org.exist.util.NamedThreadFactory;
+import org.exist.util.XMLReaderObjectFactory;
+import org.exist.util.XMLReaderObjectFactory.VALIDATION_SETTING;
+import org.exist.util.XMLReaderPool;
+import org.exist.xmldb.XmldbURI;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Stores a large number of documents into a collection.
+ *
+ * XML documents are parsed into in-memory documents by a pool of worker threads
+ * while the calling thread validates and stores the documents which have already
+ * been parsed, in the order they are given. The source of a document is
+ * therefore read and parsed only once, and parsing scales with the number of
+ * threads. At most twice as many documents as there are threads are held in
+ * memory at any time.
+ *
+ * The documents are stored in batches, each batch is committed in a transaction
+ * of its own, so the journal is flushed once per batch instead of once per document.
+ *
+ * A document which cannot be parsed or which is rejected while it is validated,
+ * e.g. by a trigger, is skipped and reported in the {@link Result}. When a document
+ * is rejected, the documents already stored in its batch are committed, and the
+ * following documents are stored in a new transaction. Any other error aborts the
+ * current batch and the store.
+ */
+@NotThreadSafe
+public class BulkStore {
+
+    private static final Logger LOG = LogManager.getLogger(BulkStore.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final BrokerPool pool;
+    private final int threads;
+    private final int batchSize;
+
+    public BulkStore(final BrokerPool pool) {
+        this(pool, Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param pool the database
+     * @param threads the number of threads which parse documents
+     * @param batchSize the number of documents stored per transaction
+     */
+    public BulkStore(final BrokerPool pool, final int threads, final int batchSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        this.pool = pool;
+        this.threads = threads;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Store documents into a collection. Missing collections are created,
+     * existing documents are replaced.
+     *
+     * @param broker the broker of the calling thread
+     * @param collectionUri the collection the paths of the entries are resolved against
+     * @param entries the documents to store
+     *
+     * @return the number of documents stored and the documents which were skipped
+     *
+     * @throws EXistException if a document cannot be stored
+     * @throws PermissionDeniedException if the user may not write to a collection
+     * @throws LockException if a collection cannot be locked
+     * @throws IOException if a binary document cannot be read
+     */
+    public Result store(final DBBroker broker, final XmldbURI collectionUri, final Iterator<Entry> entries)
+            throws EXistException, PermissionDeniedException, LockException, IOException {
+        final VALIDATION_SETTING validationMode = getValidationMode(broker, collectionUri);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory(pool, "bulk-store"));
+        final Deque<Pending> pending = new ArrayDeque<>();
+        final Result result = new Result();
+
+        Txn transaction = null;
+        int batch = 0;
+        try {
+            while (entries.hasNext() || !pending.isEmpty()) {
+                // keep the workers busy while the previous documents are stored
+                while (pending.size() < threads * 2 && entries.hasNext()) {
+                    final Entry entry = entries.next();
+                    final Future<ParsedDocument> parsed = entry.getMimeType().isXMLType()
+                            ? executor.submit(() -> parse(entry, validationMode)) : null;
+                    pending.add(new Pending(entry, parsed));
+                }
+
+                if (transaction == null) {
+                    transaction = pool.getTransactionManager().beginTransaction();
+                }
+                final Pending next = pending.poll();
+                final Outcome outcome = store(broker, transaction, collectionUri.append(next.entry.getPath()), next, result);
+                // writes cannot be undone at runtime, so the documents stored before a rejected one are committed
+                if (outcome == Outcome.REJECTED || (outcome == Outcome.STORED && ++batch == batchSize)) {
+                    transaction.commit();
+                    transaction.close();
+                    transaction = null;
+                    batch = 0;
+                }
+            }
+
+            if (transaction != null) {
+                transaction.commit();
+            }
+            return result;
+
+        } catch (final TransactionException e) {
+            throw new EXistException(e.getMessage(), e);
+        } finally {
+            // an uncommitted transaction is aborted
+            if (transaction != null) {
+                transaction.close();
+            }
+            for (final Pending remaining : pending) {
+                if (remaining.parsed != null) {
+                    remaining.parsed.cancel(true);
+                }
+                close(remaining.entry.getSource());
+            }
+            executor.shutdownNow();
+        }
+    }
+
+    private enum Outcome {
+        STORED,
+        /** the document could not be parsed, the transaction is unaffected */
+        SKIPPED,
+        /** the document was rejected during validation, the transaction is ended */
+        REJECTED
+    }
+
+    private Outcome store(final DBBroker broker, final Txn transaction, final XmldbURI path,
+            final Pending pending, final Result result)
+            throws EXistException, PermissionDeniedException, LockException, IOException {
+        final Entry entry = pending.entry;
+        final XmldbURI name = path.lastSegment();
+
+        try {
+            if (pending.parsed == null) {
+                try (final ManagedCollectionLock collectionLock = pool.getLockManager().acquireCollectionWriteLock(path.removeLastSegment())) {
+                    final Collection collection = broker.getOrCreateCollection(transaction, path.removeLastSegment());
+                    final InputStream is = entry.getSource().getByteStream();
+                    collection.addBinaryResource(transaction, broker, name, is, entry.getMimeType().getName(), -1);
+                }
+                result.stored++;
+                return Outcome.STORED;
+            }
+
+            final ParsedDocument document;
+            try {
+                document = pending.parsed.get();
+            } catch (final ExecutionException e) {
+                result.skip(path, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                return Outcome.SKIPPED;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EXistException("Interrupted while parsing " + path, e);
+            }
+
+            try (final ManagedCollectionLock collectionLock = pool.getLockManager().acquireCollectionWriteLock(path.removeLastSegment())) {
+                final Collection collection = broker.getOrCreateCollection(transaction, path.removeLastSegment());
+                final IndexInfo info;
+                try {
+                    info = document.validate(transaction, broker, collection, name);
+                } catch (final SAXException | EXistException e) {
+                    result.skip(path, e);
+                    return Outcome.REJECTED;
+                }
+                try {
+                    info.getDocument().setMimeType(entry.getMimeType().getName());
+                    document.store(transaction, broker, collection, info);
+                } finally {
+                    // the lock is normally released by the store, this covers any failure before it
+                    info.getDocumentLock().close();
+                }
+            }
+            result.stored++;
+            return Outcome.STORED;
+        } catch (final SAXException e) {
+            throw new EXistException("Error while storing " + path + ": " + e.getMessage(), e);
+        } finally {
+            close(entry.getSource());
+        }
+    }
+
+    private ParsedDocument parse(final Entry entry, @Nullable final VALIDATION_SETTING validationMode)
+            throws SAXException, IOException {
+        final XMLReaderPool parserPool = pool.getParserPool();
+        final XMLReader reader = parserPool.borrowXMLReader();
+        try {
+            if (validationMode != null) {
+                XMLReaderObjectFactory.setReaderValidationMode(validationMode, reader);
+            }
+            return ParsedDocument.parse(reader, entry.getSource());
+        } finally {
+            if (validationMode != null) {
+                // restore the default validation mode
+                final String option = (String) pool.getConfiguration().getProperty(XMLReaderObjectFactory.PROPERTY_VALIDATION_MODE);
+                XMLReaderObjectFactory.setReaderValidationMode(VALIDATION_SETTING.fromOption(option), reader);
+            }
+            parserPool.returnXMLReader(reader);
+        }
+    }
+
+    /**
+     * The validation mode configured for the target collection,
+     * it applies to all documents parsed.
+     */
+    private static @Nullable VALIDATION_SETTING getValidationMode(final DBBroker broker, final XmldbURI collectionUri)
+            throws PermissionDeniedException {
+        try (final Collection collection = broker.openCollection(collectionUri, LockMode.READ_LOCK)) {
+            if (collection == null) {
+                return null;
+            }
+            final CollectionConfiguration config = collection.getConfiguration(broker);
+            return config == null ? null : config.getValidationMode();
+        }
+    }
+
+    private static void close(final InputSource source) {
+        if (source instanceof Closeable) {
+            try {
+                ((Closeable) source).close();
+            } catch (final IOException e) {
+                LOG.warn("Unable to close source {}: {}", source.getSystemId(), e.getMessage());
+            }
+        }
+    }
+
+    private static class Pending {
+        final Entry entry;
+        @Nullable final Future<ParsedDocument> parsed;
+
+        Pending(final Entry entry, @Nullable final Future<ParsedDocument> parsed) {
+            this.entry = entry;
+            this.parsed = parsed;
+        }
+    }
+
+    /**
+     * A document to be stored.
+     */
+    public static class Entry {
+        private final XmldbURI path;
+        private final MimeType mimeType;
+        private final InputSource source;
+
+        /**
+         * @param path the path of the document, relative to the target collection
+         * @param mimeType the mime type of the document, or null to derive it from the name
+         * @param source the content of the document, it is closed once the document is stored
+         */
+        public Entry(final XmldbURI path, @Nullable final MimeType mimeType, final InputSource source) {
+            this.path = path;
+            this.mimeType = mimeType != null ? mimeType : getMimeType(path);
+            this.source = source;
+        }
+
+        private static MimeType getMimeType(final XmldbURI path) {
+            final MimeType mimeType = MimeTable.getInstance().getContentTypeFor(path.lastSegment());
+            return mimeType != null ? mimeType : MimeType.BINARY_TYPE;
+        }
+
+        public XmldbURI getPath() {
+            return path;
+        }
+
+        public MimeType getMimeType() {
+            return mimeType;
+        }
+
+        public InputSource getSource() {
+            return source;
+        }
+    }
+
+    public static class Result {
+        private int stored = 0;
+        private final Map<XmldbURI, Exception> skipped = new LinkedHashMap<>();
+
+        private void skip(final XmldbURI path, final Exception e) {
+            LOG.warn("Skipped document {}: {}", path, e.getMessage());
+            skipped.put(path, e);
+        }
+
+        /**
+         * @return the number of documents stored
+         */
+        public int getStored() {
+            return stored;
+        }
+
+        /**
+         * @return the documents which could not be parsed or were rejected, with the reason
+         */
+        public Map<XmldbURI, Exception> getSkipped() {
+            return Collections.unmodifiableMap(skipped);
+        }
+    }
+}
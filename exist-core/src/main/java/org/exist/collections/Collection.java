@@ -35,6 +35,7 @@ import org.exist.storage.lock.*;
 import org.exist.storage.lock.Lock.LockMode;
 import org.exist.storage.txn.Txn;
 import org.exist.util.LockException;
+import org.exist.util.MimeType;
 import org.exist.xmldb.XmldbURI;
 import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
@@ -419,6 +420,20 @@ public interface Collection extends Resource, Comparable<Collection>, AutoClosea
     @Deprecated
     Iterator<DocumentImpl> iteratorNoLock(DBBroker broker) throws PermissionDeniedException;
 
+    /**
+     * Returns an iterator on a snapshot of the documents in this Collection.
+     *
+     * Contrary to {@link #iterator(DBBroker)} no {@link DocumentSet} is built, and the
+     * documents are neither locked nor checked for permissions. The caller has to lock
+     * each document and check its permissions before accessing it.
+     *
+     * @param broker The database broker
+     * @return A iterator of all the documents in the Collection.
+     * @throws PermissionDeniedException if user has not sufficient rights
+     * @throws LockException if broker is locked
+     */
+    Iterator<DocumentImpl> documentIterator(DBBroker broker) throws PermissionDeniedException, LockException;
+
 
     //TODO(AR) it is unlikely we need to pass the user as a parameter, fix this...
 
@@ -797,6 +812,34 @@ public interface Collection extends Resource, Comparable<Collection>, AutoClosea
     void store(Txn transaction, DBBroker broker, IndexInfo info, Node node)
             throws EXistException, PermissionDeniedException, TriggerException, SAXException, LockException;
 
+    /**
+     * Validates and stores an XML document into the Collection in a single pass.
+     *
+     * Unlike {@link #validateXMLResource(Txn, DBBroker, XmldbURI, InputSource)} followed by
+     * {@link #store(Txn, DBBroker, IndexInfo, InputSource)}, the source is parsed only once, into
+     * an in-memory document, and does not have to be re-readable. Nothing is written to the
+     * database if the document is not well-formed. As the whole document is held in memory,
+     * this should only be used for documents of a moderate size, see
+     * {@link org.exist.Indexer#getSinglePassMaxSize(org.exist.util.Configuration)}.
+     *
+     * @param transaction The database transaction
+     * @param broker      The database broker
+     * @param name        the name (without path) of the document
+     * @param source      The source of the document to store
+     * @param mimeType    The mime type of the document, or null for the default XML mime type
+     * @param created     The creation date of the document, or null for now
+     * @param modified    The last modification date of the document, or null for now
+     * @throws PermissionDeniedException if user has not sufficient rights
+     * @throws LockException if broker is locked
+     * @throws IOException in case of I/O errors
+     * @throws TriggerException in case of eXist-db trigger error
+     * @throws EXistException general eXist-db exception
+     * @throws SAXException if the document cannot be parsed
+     */
+    void storeDocument(Txn transaction, DBBroker broker, XmldbURI name, InputSource source,
+            @Nullable MimeType mimeType, @Nullable Date created, @Nullable Date modified)
+            throws EXistException, PermissionDeniedException, TriggerException, SAXException, LockException, IOException;
+
     /**
      * Creates a Binary Document object
      *
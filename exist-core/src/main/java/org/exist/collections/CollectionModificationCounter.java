@@ -0,0 +1,79 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.collections;
+
+import net.jcip.annotations.ThreadSafe;
+import org.exist.storage.BrokerPoolService;
+import org.exist.xmldb.XmldbURI;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of modifications to the contents of Collections.
+ *
+ * Every modification of a Collection, or of a document in it, is assigned a new value of a
+ * global, monotonically increasing counter. The version of a Collection is the value
+ * assigned to the most recent modification of the Collection or of any of its descendants.
+ * A cached result which was computed from the contents of a Collection is therefore
+ * still valid as long as the version of the Collection did not change.
+ *
+ * The versions are only kept in memory. After a restart, all Collections start
+ * again at version 0.
+ */
+@ThreadSafe
+public class CollectionModificationCounter implements BrokerPoolService {
+
+    private final AtomicLong counter = new AtomicLong();
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+
+    /**
+     * Record a modification of the Collection, which also
+     * modifies all of its ancestors.
+     *
+     * @param collectionUri the URI of the modified Collection
+     */
+    public void modified(final XmldbURI collectionUri) {
+        final Long version = counter.incrementAndGet();
+        for (XmldbURI uri = collectionUri.toCollectionPathURI(); uri != null && uri.numSegments() > 0; uri = uri.removeLastSegment()) {
+            versions.merge(key(uri), version, Math::max);
+        }
+    }
+
+    /**
+     * Get the current version of a Collection.
+     *
+     * @param collectionUri the URI of the Collection
+     * @return the version of the most recent modification of the Collection
+     *     or its descendants, or 0 if it was not modified yet
+     */
+    public long getVersion(final XmldbURI collectionUri) {
+        final Long version = versions.get(key(collectionUri.toCollectionPathURI()));
+        return version == null ? 0 : version;
+    }
+
+    private static String key(final XmldbURI collectionUri) {
+        final String path = collectionUri.getRawCollectionPath();
+        return path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+}
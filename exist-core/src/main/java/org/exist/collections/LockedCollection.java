@@ -35,12 +35,14 @@ import org.exist.storage.lock.LockedDocumentMap;
 import org.exist.storage.lock.ManagedCollectionLock;
 import org.exist.storage.txn.Txn;
 import org.exist.util.LockException;
+import org.exist.util.MimeType;
 import org.exist.xmldb.XmldbURI;
 import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Date;
@@ -271,6 +273,11 @@ public class LockedCollection implements Collection {
         return collection.iteratorNoLock(broker);
     }
 
+    @Override
+    public Iterator<DocumentImpl> documentIterator(final DBBroker broker) throws PermissionDeniedException, LockException {
+        return collection.documentIterator(broker);
+    }
+
     @Override
     public List<Collection> getDescendants(final DBBroker broker, final Subject user) throws PermissionDeniedException {
         return collection.getDescendants(broker, user);
@@ -394,6 +401,11 @@ public class LockedCollection implements Collection {
         collection.store(transaction, broker, info, node);
     }
 
+    @Override
+    public void storeDocument(final Txn transaction, final DBBroker broker, final XmldbURI name, final InputSource source, @Nullable final MimeType mimeType, @Nullable final Date created, @Nullable final Date modified) throws EXistException, PermissionDeniedException, TriggerException, SAXException, LockException, IOException {
+        collection.storeDocument(transaction, broker, name, source, mimeType, created, modified);
+    }
+
     @Override
     public BinaryDocument validateBinaryResource(final Txn transaction, final DBBroker broker, final XmldbURI name) throws PermissionDeniedException, LockException, TriggerException, IOException {
         return collection.validateBinaryResource(transaction, broker, name);
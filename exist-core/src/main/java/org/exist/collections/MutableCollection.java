@@ -861,6 +861,16 @@ public class MutableCollection implements Collection {
         return getDocumentsNoLock(broker, new DefaultDocumentSet()).getDocumentIterator();
     }
 
+    @Override
+    public Iterator<DocumentImpl> documentIterator(final DBBroker broker) throws PermissionDeniedException, LockException {
+        try(final ManagedCollectionLock collectionLock = lockManager.acquireCollectionReadLock(path)) {
+            if(!getPermissionsNoLock().validate(broker.getCurrentSubject(), Permission.READ)) {
+                throw new PermissionDeniedException("Permission denied to read collection: " + path);
+            }
+            return stableDocumentIterator(documents);
+        }
+    }
+
     /**
      * Serializes the Collection to a byte representation
      *
@@ -1173,6 +1183,34 @@ public class MutableCollection implements Collection {
         storeXMLInternal(transaction, broker, info, storeInfo -> storeInfo.getDOMStreamer().serialize(node, true));
     }
 
+    @Override
+    public void storeDocument(final Txn transaction, final DBBroker broker, final XmldbURI name, final InputSource source,
+            @Nullable final MimeType mimeType, @Nullable final Date created, @Nullable final Date modified)
+            throws EXistException, PermissionDeniedException, TriggerException, SAXException, LockException, IOException {
+        final XMLReader reader = getReader(broker, true, getConfiguration(broker));
+        final ParsedDocument document;
+        try {
+            document = ParsedDocument.parse(reader, source);
+        } catch(final SAXException e) {
+            throw new SAXException("The XML parser reported a problem: " + e.getMessage(), e);
+        } finally {
+            releaseReader(broker, reader);
+        }
+
+        // the document is well-formed, nothing has been written so far
+        final IndexInfo info = document.validate(transaction, broker, this, name);
+        if (mimeType != null) {
+            info.getDocument().setMimeType(mimeType.getName());
+        }
+        if (created != null) {
+            info.getDocument().setCreated(created.getTime());
+        }
+        if (modified != null) {
+            info.getDocument().setLastModified(modified.getTime());
+        }
+        document.store(transaction, broker, this, info);
+    }
+
     /** 
      * Stores an XML document in the database. {@link #validateXMLResourceInternal(Txn, DBBroker, XmldbURI,
      * CollectionConfiguration, Consumer2E)}should have been called previously in order to acquire a write lock
@@ -0,0 +1,112 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.collections;
+
+import org.exist.EXistException;
+import org.exist.Namespaces;
+import org.exist.dom.memtree.DocumentImpl;
+import org.exist.dom.memtree.SAXAdapter;
+import org.exist.dom.persistent.DocumentTypeImpl;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.Txn;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+
+/**
+ * An XML document parsed into an in-memory document, which is validated
+ * and stored without parsing its source a second time.
+ */
+final class ParsedDocument {
+
+    private final DocumentImpl document;
+    @Nullable private final DocumentTypeImpl docType;
+
+    private ParsedDocument(final DocumentImpl document, @Nullable final DocumentTypeImpl docType) {
+        this.document = document;
+        this.docType = docType;
+    }
+
+    /**
+     * Parse a document into memory.
+     *
+     * @param reader the XML reader
+     * @param source the source of the document, it is read once
+     *
+     * @return the parsed document
+     *
+     * @throws SAXException if the document is not well-formed or not valid
+     * @throws IOException if the source cannot be read
+     */
+    static ParsedDocument parse(final XMLReader reader, final InputSource source) throws SAXException, IOException {
+        final DocTypeAdapter adapter = new DocTypeAdapter();
+        reader.setContentHandler(adapter);
+        reader.setProperty(Namespaces.SAX_LEXICAL_HANDLER, adapter);
+        reader.parse(source);
+        return new ParsedDocument(adapter.getDocument(), adapter.docType);
+    }
+
+    /**
+     * See {@link Collection#validateXMLResource(Txn, DBBroker, XmldbURI, org.w3c.dom.Node)}.
+     */
+    IndexInfo validate(final Txn transaction, final DBBroker broker, final Collection collection, final XmldbURI name)
+            throws EXistException, PermissionDeniedException, SAXException, LockException, IOException {
+        final IndexInfo info = collection.validateXMLResource(transaction, broker, name, document);
+        if (docType != null) {
+            info.getDocument().setDocumentType(docType);
+        }
+        return info;
+    }
+
+    /**
+     * See {@link Collection#store(Txn, DBBroker, IndexInfo, org.w3c.dom.Node)}.
+     */
+    void store(final Txn transaction, final DBBroker broker, final Collection collection, final IndexInfo info)
+            throws EXistException, PermissionDeniedException, SAXException, LockException {
+        collection.store(transaction, broker, info, document);
+    }
+
+    /**
+     * The in-memory document does not keep the document type declaration,
+     * which is recorded here.
+     */
+    private static class DocTypeAdapter extends SAXAdapter {
+        @Nullable DocumentTypeImpl docType = null;
+
+        @Override
+        public void startDTD(final String name, final String publicId, final String systemId) throws SAXException {
+            docType = new DocumentTypeImpl(name, publicId, systemId);
+            super.startDTD(name, publicId, systemId);
+        }
+
+        @Override
+        public void ignorableWhitespace(final char[] ch, final int start, final int length) {
+            // dropped, as it is by the Indexer when a document is parsed twice
+        }
+    }
+}
@@ -210,6 +210,38 @@ public class DocumentImpl extends NodeImpl<DocumentImpl> implements Document {
         return size;
     }
 
+    /**
+     * Estimates the memory held by the arrays of this document.
+     *
+     * @return the approximate size in bytes
+     */
+    public long getMemorySize() {
+        long memorySize = 64;
+        if (nodeKind == null) {
+            return memorySize;
+        }
+        // nodeKind, treeLevel, next, nodeName, nodeId, alpha and alphaLen, plus the node ids
+        memorySize += nodeKind.length * 32L + size * 32L;
+        if (characters != null) {
+            memorySize += characters.length * 2L;
+        }
+        if (attrName != null) {
+            memorySize += attrName.length * 32L + nextAttr * 32L;
+            for (int i = 0; i < nextAttr; i++) {
+                if (attrValue[i] != null) {
+                    memorySize += attrValue[i].length() * 2L;
+                }
+            }
+        }
+        if (namespaceParent != null) {
+            memorySize += namespaceParent.length * 12L;
+        }
+        if (references != null) {
+            memorySize += references.length * 8L + nextReferenceIdx * 64L;
+        }
+        return memorySize;
+    }
+
     public int addNode(final short kind, final short level, final QName qname) {
         if(nodeKind == null) {
             init();
@@ -43,6 +43,7 @@ public class SAXAdapter implements ContentHandler, LexicalHandler {
     private Map<String, String> namespaces = null;
     private boolean replaceAttributeFlag = false;
     private boolean cdataFlag = false;
+    private boolean insideDTD = false;
     private final StringBuilder cdataBuf = new StringBuilder();
 
     public SAXAdapter() {
@@ -144,6 +145,7 @@ public class SAXAdapter implements ContentHandler, LexicalHandler {
 
     @Override
     public void endDTD() throws SAXException {
+        insideDTD = false;
     }
 
     @Override
@@ -161,6 +163,10 @@ public class SAXAdapter implements ContentHandler, LexicalHandler {
 
     @Override
     public void comment(final char[] ch, final int start, final int length) throws SAXException {
+        // comments of the internal DTD subset are not part of the document
+        if (insideDTD) {
+            return;
+        }
         builder.comment(ch, start, length);
     }
 
@@ -174,6 +180,7 @@ public class SAXAdapter implements ContentHandler, LexicalHandler {
 
     @Override
     public void startDTD(final String name, final String publicId, final String systemId) throws SAXException {
+        insideDTD = true;
     }
 
     public void setReplaceAttributeFlag(final boolean replaceAttributeFlag) {
@@ -192,9 +192,29 @@ public abstract class AbstractArrayNodeSet extends AbstractNodeSet implements Do
             return super.selectAncestorDescendant(al, mode, includeSelf,
                 contextId, copyMatches);
         }
+        if(ColumnarNodeSet.isApplicable(this, al)) {
+            return ColumnarNodeSet.of(this).selectAncestorDescendant(ColumnarNodeSet.of(al), mode, includeSelf,
+                contextId, copyMatches);
+        }
         return getDescendantsInSet(al, false, includeSelf, mode, contextId, copyMatches);
     }
 
+    @Override
+    public NodeSet intersection(final NodeSet other) {
+        if(ColumnarNodeSet.isApplicable(this, other)) {
+            return ColumnarNodeSet.of(this).intersection(ColumnarNodeSet.of(other));
+        }
+        return super.intersection(other);
+    }
+
+    @Override
+    public NodeSet union(final NodeSet other) {
+        if(ColumnarNodeSet.isApplicable(this, other)) {
+            return ColumnarNodeSet.of(this).union(ColumnarNodeSet.of(other));
+        }
+        return super.union(other);
+    }
+
     @Override
     public NodeSet selectAncestors(final NodeSet al, final boolean includeSelf, final int contextId) {
         sort();
@@ -0,0 +1,358 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.dom.persistent;
+
+import org.exist.numbering.DLNBase;
+import org.exist.numbering.NodeId;
+import org.exist.xquery.Expression;
+
+import java.util.Arrays;
+
+/**
+ * A read-only, columnar snapshot of a node set, used to implement set operations
+ * and structural joins on large node sets.
+ *
+ * The nodes are stored in document order in primitive columns: an int[] of
+ * document ids and a byte arena containing the serialized node ids, addressed by
+ * an offset and a bit count per node. Comparisons and ancestor/descendant tests
+ * work directly on the columns, so the merge-based operations below do not create
+ * any {@link NodeId} or {@link NodeProxy} objects and do not need binary searches
+ * per node.
+ *
+ * The {@link NodeProxy} objects of the source set are only touched at the boundary,
+ * when a match is added to the result set. This keeps match and context information
+ * of the source nodes intact.
+ *
+ * The bit level tests depend on the encoding of {@link org.exist.numbering.DLN}.
+ */
+public final class ColumnarNodeSet {
+
+    /**
+     * Minimum number of nodes both operands must have before the array based
+     * node sets switch to the columnar implementation.
+     */
+    public static final int THRESHOLD = 1024;
+
+    /**
+     * Bit count used for document nodes. Document nodes are ancestors of all
+     * nodes in the same document.
+     */
+    private static final int DOCUMENT_NODE_BITS = 0;
+
+    private final int size;
+    private final int[] docIds;
+    private final int[] nodeIdBits;
+    private final int[] nodeIdOffsets;
+    private final byte[] nodeIds;
+    private final NodeProxy[] proxies;
+
+    private ColumnarNodeSet(final int size, final int[] docIds, final int[] nodeIdBits, final int[] nodeIdOffsets,
+            final byte[] nodeIds, final NodeProxy[] proxies) {
+        this.size = size;
+        this.docIds = docIds;
+        this.nodeIdBits = nodeIdBits;
+        this.nodeIdOffsets = nodeIdOffsets;
+        this.nodeIds = nodeIds;
+        this.proxies = proxies;
+    }
+
+    /**
+     * Check if the operands are large enough for the columnar
+     * operations to pay off.
+     *
+     * @param first the first operand
+     * @param second the second operand
+     * @return true if both operands are array based and large
+     */
+    public static boolean isApplicable(final NodeSet first, final NodeSet second) {
+        return first instanceof AbstractArrayNodeSet && second instanceof AbstractArrayNodeSet
+                && first.getLength() >= THRESHOLD && second.getLength() >= THRESHOLD;
+    }
+
+    /**
+     * Create the columns for the given node set. The set is iterated in document order.
+     *
+     * @param nodes the node set
+     * @return the columnar representation of nodes
+     */
+    public static ColumnarNodeSet of(final NodeSet nodes) {
+        final int length = nodes.getLength();
+        final int[] docIds = new int[length];
+        final int[] nodeIdBits = new int[length];
+        final int[] nodeIdOffsets = new int[length + 1];
+        final NodeProxy[] proxies = new NodeProxy[length];
+        byte[] nodeIds = new byte[length * 4];
+
+        int i = 0;
+        int offset = 0;
+        for (final NodeProxy proxy : nodes) {
+            final NodeId nodeId = proxy.getNodeId();
+            final int bytes = nodeId.size();
+            if (offset + bytes > nodeIds.length) {
+                nodeIds = Arrays.copyOf(nodeIds, Math.max(nodeIds.length * 2, offset + bytes));
+            }
+            nodeId.serialize(nodeIds, offset);
+
+            docIds[i] = proxy.getOwnerDocument().getDocId();
+            nodeIdBits[i] = NodeId.DOCUMENT_NODE.equals(nodeId) ? DOCUMENT_NODE_BITS : nodeId.units();
+            nodeIdOffsets[i] = offset;
+            proxies[i] = proxy;
+            offset += bytes;
+            i++;
+        }
+        nodeIdOffsets[i] = offset;
+        return new ColumnarNodeSet(i, docIds, nodeIdBits, nodeIdOffsets, nodeIds, proxies);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the node at the given position.
+     *
+     * @param pos the position
+     * @return the node proxy from the source set
+     */
+    public NodeProxy get(final int pos) {
+        return proxies[pos];
+    }
+
+    /**
+     * Compare the node at position pos with the node at position otherPos
+     * in other. Same order as {@link NodeProxy#compareTo(NodeProxy)}.
+     */
+    private int compare(final int pos, final ColumnarNodeSet other, final int otherPos) {
+        final int docCmp = Integer.compare(docIds[pos], other.docIds[otherPos]);
+        if (docCmp != 0) {
+            return docCmp;
+        }
+        final int start = nodeIdOffsets[pos];
+        final int len = nodeIdOffsets[pos + 1] - start;
+        final int otherStart = other.nodeIdOffsets[otherPos];
+        final int otherLen = other.nodeIdOffsets[otherPos + 1] - otherStart;
+        final int limit = Math.min(len, otherLen);
+        for (int i = 0; i < limit; i++) {
+            final int b1 = nodeIds[start + i] & 0xFF;
+            final int b2 = other.nodeIds[otherStart + i] & 0xFF;
+            if (b1 != b2) {
+                return b1 - b2;
+            }
+        }
+        return len - otherLen;
+    }
+
+    /**
+     * Check if the node at position pos is an ancestor of, or the same node as,
+     * the node at position otherPos in other.
+     */
+    private boolean isAncestorOrSelf(final int pos, final ColumnarNodeSet other, final int otherPos) {
+        if (docIds[pos] != other.docIds[otherPos]) {
+            return false;
+        }
+        final int bits = nodeIdBits[pos];
+        if (bits == DOCUMENT_NODE_BITS) {
+            return true;
+        }
+        final int otherBits = other.nodeIdBits[otherPos];
+        if (otherBits == DOCUMENT_NODE_BITS || otherBits < bits) {
+            return false;
+        }
+
+        // other has to start with the bits of this node id
+        final int start = nodeIdOffsets[pos];
+        final int otherStart = other.nodeIdOffsets[otherPos];
+        final int lastBit = bits - 1;
+        final int bytes = lastBit >> 3;
+        for (int i = 0; i < bytes; i++) {
+            if (nodeIds[start + i] != other.nodeIds[otherStart + i]) {
+                return false;
+            }
+        }
+        final int mask = DLNBase.BIT_MASK[lastBit & 7];
+        if ((nodeIds[start + bytes] & mask) != (other.nodeIds[otherStart + bytes] & mask)) {
+            return false;
+        }
+
+        // either the same node or a new level starts right after the prefix
+        return bits == otherBits
+                || (other.nodeIds[otherStart + (bits >> 3)] & (1 << (7 - (bits & 7)))) == 0;
+    }
+
+    /**
+     * Merge based implementation of {@link NodeSet#intersection(NodeSet)}.
+     *
+     * @param other the node set to intersect with
+     * @return the nodes of this set which are also contained in other
+     */
+    public NodeSet intersection(final ColumnarNodeSet other) {
+        final NewArrayNodeSet result = new NewArrayNodeSet();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            final int cmp = compare(i, other, j);
+            if (cmp < 0) {
+                i++;
+            } else if (cmp > 0) {
+                j++;
+            } else {
+                final NodeProxy p = proxies[i];
+                p.addMatches(other.proxies[j]);
+                result.add(p);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merge based implementation of {@link NodeSet#union(NodeSet)}. If a node is
+     * contained in both sets, the node of other is kept and receives the matches of
+     * this set's node.
+     *
+     * @param other the node set to merge with
+     * @return the union of both sets
+     */
+    public NodeSet union(final ColumnarNodeSet other) {
+        final NewArrayNodeSet result = new NewArrayNodeSet();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            final int cmp;
+            if (i == size) {
+                cmp = 1;
+            } else if (j == other.size) {
+                cmp = -1;
+            } else {
+                cmp = compare(i, other, j);
+            }
+            if (cmp < 0) {
+                result.add(proxies[i++]);
+            } else if (cmp > 0) {
+                result.add(other.proxies[j++]);
+            } else {
+                final NodeProxy c = other.proxies[j++];
+                c.addMatches(proxies[i++]);
+                result.add(c);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merge based implementation of {@link NodeSet#except(NodeSet)}.
+     *
+     * @param other the nodes to remove
+     * @return the nodes of this set which are not contained in other
+     */
+    public NodeSet except(final ColumnarNodeSet other) {
+        final NewArrayNodeSet result = new NewArrayNodeSet();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && compare(i, other, j) > 0) {
+                j++;
+            }
+            if (j == other.size || compare(i, other, j) != 0) {
+                result.add(proxies[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Structural join implementing {@link NodeSet#selectAncestorDescendant(NodeSet, int, boolean, int, boolean)}
+     * for this set of potential descendants and the given set of potential ancestors.
+     *
+     * Both sets are traversed once in document order. A stack holds the chain of
+     * ancestors enclosing the current descendant, so every (ancestor, descendant) pair
+     * is found without looking up parent ids.
+     *
+     * @param ancestors the potential ancestors
+     * @param mode either {@link NodeSet#DESCENDANT} or {@link NodeSet#ANCESTOR}
+     * @param includeSelf true if a node should be treated as its own ancestor
+     * @param contextId the context id
+     * @param copyMatches true if matches should be copied
+     * @return the selected descendants or ancestors
+     */
+    public NodeSet selectAncestorDescendant(final ColumnarNodeSet ancestors, final int mode,
+            final boolean includeSelf, final int contextId, final boolean copyMatches) {
+        if (mode != NodeSet.DESCENDANT && mode != NodeSet.ANCESTOR) {
+            throw new IllegalArgumentException("Bad 'mode' argument");
+        }
+        final NewArrayNodeSet result = new NewArrayNodeSet();
+        int[] stack = new int[16];
+        int top = -1;
+        int a = 0;
+        for (int d = 0; d < size; d++) {
+            // push all potential ancestors starting before or at the descendant
+            while (a < ancestors.size && ancestors.compare(a, this, d) <= 0) {
+                while (top > -1 && !ancestors.isAncestorOrSelf(stack[top], ancestors, a)) {
+                    top--;
+                }
+                if (++top == stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top] = a++;
+            }
+            // drop ancestors whose subtree ended before the descendant
+            while (top > -1 && !ancestors.isAncestorOrSelf(stack[top], this, d)) {
+                top--;
+            }
+
+            // the stack now contains all ancestors of the descendant in document order
+            boolean found = false;
+            final NodeProxy descendant = proxies[d];
+            for (int s = 0; s <= top; s++) {
+                if (!includeSelf && ancestors.compare(stack[s], this, d) == 0) {
+                    continue;
+                }
+                final NodeProxy ancestor = ancestors.proxies[stack[s]];
+                if (mode == NodeSet.DESCENDANT) {
+                    if (Expression.NO_CONTEXT_ID != contextId) {
+                        descendant.deepCopyContext(ancestor, contextId);
+                    } else {
+                        descendant.copyContext(ancestor);
+                    }
+                    if (copyMatches) {
+                        descendant.addMatches(ancestor);
+                    }
+                    found = true;
+                } else {
+                    if (Expression.NO_CONTEXT_ID != contextId) {
+                        ancestor.deepCopyContext(descendant, contextId);
+                    } else {
+                        ancestor.copyContext(descendant);
+                    }
+                    if (copyMatches) {
+                        ancestor.addMatches(descendant);
+                    }
+                    result.add(ancestor, 1);
+                }
+            }
+            if (found) {
+                result.add(descendant);
+            }
+        }
+        return result;
+    }
+}
@@ -908,6 +908,9 @@ public class NewArrayNodeSet extends AbstractArrayNodeSet implements ExtNodeSet,
 
     @Override
     public NodeSet except(final NodeSet other) {
+        if(ColumnarNodeSet.isApplicable(this, other)) {
+            return ColumnarNodeSet.of(this).except(ColumnarNodeSet.of(other));
+        }
         final NewArrayNodeSet result = new NewArrayNodeSet();
         for(int i = 0; i < size; i++) {
             if(!other.contains(nodes[i])) {
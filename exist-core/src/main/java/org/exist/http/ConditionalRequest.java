@@ -0,0 +1,126 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.http;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.dom.persistent.DocumentImpl;
+
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Evaluation of the conditional request headers If-None-Match and
+ * If-Modified-Since of a GET or HEAD request, see RFC 7232.
+ */
+public class ConditionalRequest {
+
+    private static final Logger LOG = LogManager.getLogger(ConditionalRequest.class);
+
+    private ConditionalRequest() {
+    }
+
+    /**
+     * Compute a strong entity tag for the representation of a stored document.
+     * The tag changes whenever the document is modified.
+     *
+     * @param document the document
+     * @param variant a hash of the parameters which determine the representation,
+     *                e.g. the serialization parameters
+     * @return the quoted entity tag
+     */
+    public static String getETag(final DocumentImpl document, final int variant) {
+        return "\"" + Integer.toHexString(document.getDocId()) + '-' + Long.toHexString(document.getLastModified())
+                + '-' + Integer.toHexString(variant) + "\"";
+    }
+
+    /**
+     * Returns true if the request carries any conditional header
+     * evaluated by {@link #isNotModified(HttpServletRequest, String, long)}.
+     *
+     * @param request the HTTP request
+     * @return true if the request is a conditional GET or HEAD
+     */
+    public static boolean isConditional(final HttpServletRequest request) {
+        return isSafeMethod(request)
+                && (request.getHeader("If-None-Match") != null || request.getHeader("If-Modified-Since") != null);
+    }
+
+    /**
+     * Check if the client already holds the current representation, so a
+     * 304 (Not Modified) response can be sent instead of the content.
+     *
+     * If-None-Match takes precedence over If-Modified-Since.
+     *
+     * @param request the HTTP request
+     * @param etag the entity tag of the current representation, or null if there is none
+     * @param lastModified the time of the last modification, or -1 if unknown
+     * @return true if the representation was not modified
+     */
+    public static boolean isNotModified(final HttpServletRequest request, @Nullable final String etag,
+            final long lastModified) {
+        if (!isSafeMethod(request)) {
+            return false;
+        }
+
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return etag != null && matches(ifNoneMatch, etag);
+        }
+
+        if (lastModified < 0) {
+            return false;
+        }
+        try {
+            final long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            // a date which is later than the server's current time is invalid
+            return ifModifiedSince > -1 && ifModifiedSince <= System.currentTimeMillis()
+                    && lastModified <= ifModifiedSince;
+        } catch (final IllegalArgumentException iae) {
+            LOG.warn("Illegal If-Modified-Since HTTP Header sent on request, ignoring. {}", iae.getMessage(), iae);
+            return false;
+        }
+    }
+
+    /**
+     * Weak comparison of the entity tags in an If-None-Match header against the current tag.
+     */
+    private static boolean matches(final String ifNoneMatch, final String etag) {
+        final String opaqueTag = stripWeak(etag);
+        for (final String tag : ifNoneMatch.split(",")) {
+            final String trimmed = tag.trim();
+            if ("*".equals(trimmed) || stripWeak(trimmed).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(final String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private static boolean isSafeMethod(final HttpServletRequest request) {
+        final String method = request.getMethod();
+        return "GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method);
+    }
+}
@@ -21,10 +21,14 @@
  */
 package org.exist.http;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.EXistException;
+import org.exist.Indexer;
 import org.exist.Namespaces;
+import org.exist.collections.BulkStore;
 import org.exist.collections.Collection;
 import org.exist.collections.IndexInfo;
 import org.exist.collections.triggers.TriggerException;
@@ -49,6 +53,7 @@ import org.exist.source.StringSource;
 import org.exist.source.URLSource;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
+import org.exist.storage.SerializedDocumentCache;
 import org.exist.storage.XQueryPool;
 import org.exist.storage.lock.Lock.LockMode;
 import org.exist.storage.lock.ManagedCollectionLock;
@@ -70,6 +75,7 @@ import org.exist.util.serializer.json.JSONValue;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xqj.Marshaller;
 import org.exist.xquery.*;
+import org.exist.xquery.util.URIUtils;
 import org.exist.xquery.value.*;
 import org.exist.xupdate.Modification;
 import org.exist.xupdate.XUpdateProcessor;
@@ -78,6 +84,7 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
@@ -85,6 +92,7 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.AttributesImpl;
 import org.xml.sax.helpers.XMLFilterImpl;
 
+import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.XMLConstants;
@@ -100,6 +108,8 @@ import java.lang.reflect.Field;
 import java.util.Properties;
 import java.util.*;
 import java.util.function.BiFunction;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static java.lang.invoke.MethodType.methodType;
 import static org.exist.http.RESTServerParameter.*;
@@ -134,6 +144,12 @@ public class RESTServer {
         defaultOutputKeysProperties.setProperty(OutputKeys.MEDIA_TYPE,
                 MimeType.XML_TYPE.getName());
     }
+    /**
+     * The maximum uncompressed size of an entry of a posted ZIP archive,
+     * if no maximum request size is configured.
+     */
+    private final static long MAX_ARCHIVE_ENTRY_SIZE = 64 * 1024 * 1024;  // 64 MB
+
     private final static String QUERY_ERROR_HEAD = "<html>" + "<head>"
             + "<title>Query Error</title>" + "<style type=\"text/css\">"
             + ".errmsg {" + "  border: 1px solid black;" + "  padding: 15px;"
@@ -153,6 +169,7 @@ public class RESTServer {
     private final SessionManager sessionManager;
     private final EXistServlet.FeatureEnabled xquerySubmission;
     private final EXistServlet.FeatureEnabled xupdateSubmission;
+    private final long maxRequestSize;
 
     //EXQuery Request Module details
     private String xqueryContextExqueryRequestAttribute = null;
@@ -160,7 +177,8 @@ public class RESTServer {
 
     // Constructor
     public RESTServer(final BrokerPool pool, final String formEncoding,
-                      final String containerEncoding, final boolean useDynamicContentType, final boolean safeMode, final EXistServlet.FeatureEnabled xquerySubmission, final EXistServlet.FeatureEnabled xupdateSubmission) {
+                      final String containerEncoding, final boolean useDynamicContentType, final boolean safeMode, final EXistServlet.FeatureEnabled xquerySubmission, final EXistServlet.FeatureEnabled xupdateSubmission,
+                      final long maxRequestSize) {
         this.formEncoding = formEncoding;
         this.containerEncoding = containerEncoding;
         this.useDynamicContentType = useDynamicContentType;
@@ -168,6 +186,7 @@ public class RESTServer {
         this.sessionManager = new SessionManager();
         this.xquerySubmission = xquerySubmission;
         this.xupdateSubmission = xupdateSubmission;
+        this.maxRequestSize = maxRequestSize;
 
         //get (optiona) EXQuery Request Module details
         try {
@@ -352,15 +371,12 @@ public class RESTServer {
         if ((option = getParameter(request, Session)) != null) {
             outputProperties.setProperty(Serializer.PROPERTY_SESSION_ID, option);
         }
-        String stylesheet;
-        if ((stylesheet = getParameter(request, XSL)) != null) {
-            if ("no".equals(stylesheet)) {
-                outputProperties.setProperty(EXistOutputKeys.PROCESS_XSL_PI, "no");
-                outputProperties.remove(EXistOutputKeys.STYLESHEET);
-                stylesheet = null;
-            } else {
-                outputProperties.setProperty(EXistOutputKeys.STYLESHEET, stylesheet);
-            }
+        final String stylesheet = getStylesheet(request);
+        if (stylesheet != null) {
+            outputProperties.setProperty(EXistOutputKeys.STYLESHEET, stylesheet);
+        } else if (getParameter(request, XSL) != null) {
+            outputProperties.setProperty(EXistOutputKeys.PROCESS_XSL_PI, "no");
+            outputProperties.remove(EXistOutputKeys.STYLESHEET);
         } else {
             outputProperties.setProperty(EXistOutputKeys.PROCESS_XSL_PI, "yes");
         }
@@ -398,6 +414,10 @@ public class RESTServer {
             // check if path leads to an XQuery resource
             final String xquery_mime_type = MimeType.XQUERY_TYPE.getName();
             final String xproc_mime_type = MimeType.XPROC_TYPE.getName();
+            if (ConditionalRequest.isConditional(request)
+                    && sendNotModified(broker, pathUri, stylesheet, request, response)) {
+                return;
+            }
             lockedDocument = broker.getXMLResource(pathUri, LockMode.READ_LOCK);
             resource = lockedDocument == null ? null : lockedDocument.getDocument();
 
@@ -575,6 +595,10 @@ public class RESTServer {
                 // must be set so
                 response.addHeader("Content-Length", Long.toString(resource.getContentLength()));
                 setCreatedAndLastModifiedHeaders(response, resource.getCreated(), resource.getLastModified());
+                final String etag = getETag(resource, getStylesheet(request), request);
+                if (etag != null) {
+                    response.setHeader("ETag", etag);
+                }
             } else {
                 try(final Collection col = broker.openCollection(pathUri, LockMode.READ_LOCK)) {
                     //no resource or collection
@@ -716,6 +740,12 @@ public class RESTServer {
             }
         }
 
+        // a ZIP archive posted to a collection: store its entries
+        if (MimeType.ZIP_TYPE.getName().equals(requestType)) {
+            doStoreArchive(broker, pathUri, request, response, encoding);
+            return;
+        }
+
         // content type != application/x-www-form-urlencoded
         if (requestType == null || !requestType.equals(MimeType.URL_ENCODED_TYPE.getName())) {
             // third, normal POST: read the request content and check if
@@ -728,11 +758,18 @@ public class RESTServer {
             boolean cache = false;
             String query = null;
 
-            try {
-                final String content = getRequestContent(request);
-                final NamespaceExtractor nsExtractor = new NamespaceExtractor();
-                final ElementImpl root = parseXML(broker.getBrokerPool(), content, nsExtractor);
-                final String rootNS = root.getNamespaceURI();
+            // the request content is parsed while it is read. An XUpdate request is handed
+            // to the XUpdate processor at its root element: only the bytes read up to
+            // there are kept, to parse them again
+            try (final ReplayableInputStream content = new ReplayableInputStream(getRequestStream(request))) {
+                final NamespaceExtractor nsExtractor = new RequestRootFilter(content);
+                ElementImpl root = null;
+                try {
+                    root = parseXML(broker.getBrokerPool(), getRequestSource(request, content), nsExtractor);
+                } catch (final XUpdateRootException e) {
+                    // root stays null: processed as XUpdate below
+                }
+                final String rootNS = root == null ? XUpdateProcessor.XUPDATE_NS : root.getNamespaceURI();
 
                 if (rootNS != null && rootNS.equals(Namespaces.EXIST_NS)) {
 
@@ -865,7 +902,7 @@ public class RESTServer {
 
                 } else if (rootNS != null && rootNS.equals(XUpdateProcessor.XUPDATE_NS)) {
                     if(LOG.isDebugEnabled()) {
-                        LOG.debug("Got xupdate request: {}", content);
+                        LOG.debug("Got xupdate request for: {}", path);
                     }
 
                     if(xupdateSubmission == EXistServlet.FeatureEnabled.FALSE) {
@@ -902,12 +939,10 @@ public class RESTServer {
 
                     final XUpdateProcessor processor = new XUpdateProcessor(broker, docs);
                     long mods = 0;
-                    try(final Reader reader = new StringReader(content)) {
-                        final Modification modifications[] = processor.parse(new InputSource(reader));
-                        for (Modification modification : modifications) {
-                            mods += modification.process(transaction);
-                            broker.flush();
-                        }
+                    final Modification modifications[] = processor.parse(getRequestSource(request, content.replay()));
+                    for (Modification modification : modifications) {
+                        mods += modification.process(transaction);
+                        broker.flush();
                     }
 
                     // FD : Returns an XML doc
@@ -923,6 +958,9 @@ public class RESTServer {
                 if (e.getException() != null) {
                     cause = e.getException();
                 }
+                if (cause instanceof RequestTooLargeException) {
+                    throw (RequestTooLargeException) cause;
+                }
                 LOG.debug("SAX exception while parsing request: {}", cause.getMessage(), cause);
                 throw new BadRequestException("SAX exception while parsing request: " + cause.getMessage());
 
@@ -930,6 +968,8 @@ public class RESTServer {
                 throw new BadRequestException("Parser exception while parsing request: " + e.getMessage());
             } catch (final XPathException e) {
                 throw new BadRequestException("Query exception while parsing request: " + e.getMessage());
+            } catch (final RequestTooLargeException e) {
+                throw e;
             } catch (final IOException e) {
                 throw new BadRequestException("IO exception while parsing request: " + e.getMessage());
             } catch (final EXistException e) {
@@ -944,10 +984,9 @@ public class RESTServer {
         }
     }
 
-    private ElementImpl parseXML(final BrokerPool pool, final String content,
+    private ElementImpl parseXML(final BrokerPool pool, final InputSource src,
             final NamespaceExtractor nsExtractor)
             throws SAXException, IOException {
-        final InputSource src = new InputSource(new StringReader(content));
         final XMLReaderPool parserPool = pool.getParserPool();
         XMLReader reader = null;
         try {
@@ -987,6 +1026,91 @@ public class RESTServer {
         }
     }
 
+    /**
+     * Stops parsing the request at the root element if it is an XUpdate
+     * request, otherwise stops recording the request content.
+     */
+    private class RequestRootFilter extends NamespaceExtractor {
+
+        private final ReplayableInputStream content;
+        private boolean root = true;
+
+        RequestRootFilter(final ReplayableInputStream content) {
+            this.content = content;
+        }
+
+        @Override
+        public void startElement(final String uri, final String localName, final String qName,
+                final Attributes atts) throws SAXException {
+            if (root) {
+                root = false;
+                if (XUpdateProcessor.XUPDATE_NS.equals(uri)) {
+                    throw new XUpdateRootException();
+                }
+                content.discard();
+            }
+            super.startElement(uri, localName, qName, atts);
+        }
+    }
+
+    private static class XUpdateRootException extends SAXException {
+
+        private static final long serialVersionUID = 4785614425382185513L;
+
+        XUpdateRootException() {
+            super("XUpdate request");
+        }
+    }
+
+    /**
+     * Records the bytes read until {@link #discard()} or {@link #replay()}
+     * is called.
+     */
+    private static class ReplayableInputStream extends FilterInputStream {
+
+        @Nullable private ByteArrayOutputStream recorded = new ByteArrayOutputStream();
+
+        ReplayableInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1 && recorded != null) {
+                recorded.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int read = super.read(b, off, len);
+            if (read > 0 && recorded != null) {
+                recorded.write(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        void discard() {
+            recorded = null;
+        }
+
+        /**
+         * @return a stream with the recorded bytes followed by the unread rest
+         */
+        InputStream replay() {
+            final byte[] prefix = recorded == null ? new byte[0] : recorded.toByteArray();
+            recorded = null;
+            return new SequenceInputStream(new ByteArrayInputStream(prefix), in);
+        }
+    }
+
     public static class Namespace {
 
         private final String prefix;
@@ -1076,7 +1200,18 @@ public class RESTServer {
                 contentType = mime.getName();
             }
 
-            try(final FilterInputStreamCache cache = FilterInputStreamCacheFactory.getCacheInstance(() -> (String) broker.getConfiguration().getProperty(Configuration.BINARY_CACHE_CLASS_PROPERTY), request.getInputStream());
+            final long contentLength = request.getContentLengthLong();
+            if (mime.isXMLType() && contentLength >= 0
+                    && contentLength <= Indexer.getSinglePassMaxSize(broker.getConfiguration())) {
+                // parsed only once: the request does not need to be cached to be read again
+                try (final InputStream is = getRequestStream(request)) {
+                    collection.storeDocument(transaction, broker, docUri, new InputSource(is), mime, null, null);
+                }
+                response.setStatus(HttpServletResponse.SC_CREATED);
+                return;
+            }
+
+            try(final FilterInputStreamCache cache = FilterInputStreamCacheFactory.getCacheInstance(() -> (String) broker.getConfiguration().getProperty(Configuration.BINARY_CACHE_CLASS_PROPERTY), getRequestStream(request));
                 final InputStream cfis = new CachingFilterInputStream(cache)) {
 
                 if (mime.isXMLType()) {
@@ -1093,6 +1228,9 @@ public class RESTServer {
             }
 
         } catch (final SAXParseException e) {
+            if (e.getException() instanceof RequestTooLargeException) {
+                throw (RequestTooLargeException) e.getException();
+            }
             throw new BadRequestException("Parsing exception at "
                     + e.getLineNumber() + "/" + e.getColumnNumber() + ": "
                     + e.toString());
@@ -1102,6 +1240,8 @@ public class RESTServer {
             Exception o = e.getException();
             if (o == null) {
                 o = e;
+            } else if (o instanceof RequestTooLargeException) {
+                throw (RequestTooLargeException) o;
             }
             throw new BadRequestException("Parsing exception: " + o.getMessage());
         } catch (final EXistException e) {
@@ -1247,24 +1387,55 @@ public class RESTServer {
         return true;
     }
 
-    private String getRequestContent(final HttpServletRequest request) throws IOException {
+    /**
+     * Get the body of the request as a stream, which fails with a
+     * {@link RequestTooLargeException} once more than the maximum
+     * request size has been read.
+     */
+    private InputStream getRequestStream(final HttpServletRequest request) throws IOException {
+        if (maxRequestSize < 0) {
+            return request.getInputStream();
+        }
+        if (request.getContentLengthLong() > maxRequestSize) {
+            throw new RequestTooLargeException(maxRequestSize);
+        }
+        return new FilterInputStream(request.getInputStream()) {
+            private long count = 0;
+
+            @Override
+            public int read() throws IOException {
+                final int b = super.read();
+                if (b != -1) {
+                    count(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                final int read = super.read(b, off, len);
+                if (read > 0) {
+                    count(read);
+                }
+                return read;
+            }
 
+            private void count(final int read) throws RequestTooLargeException {
+                count += read;
+                if (count > maxRequestSize) {
+                    throw new RequestTooLargeException(maxRequestSize);
+                }
+            }
+        };
+    }
+
+    private InputSource getRequestSource(final HttpServletRequest request, final InputStream content)
+            throws UnsupportedEncodingException {
         String encoding = request.getCharacterEncoding();
         if (encoding == null) {
             encoding = "UTF-8";
         }
-
-        final InputStream is = request.getInputStream();
-        final Reader reader = new InputStreamReader(is, encoding);
-        final StringWriter content = new StringWriter();
-        final char ch[] = new char[4096];
-        int len = 0;
-        while ((len = reader.read(ch)) > -1) {
-            content.write(ch, 0, len);
-        }
-
-        final String xml = content.toString();
-        return xml;
+        return new InputSource(new InputStreamReader(content, encoding));
     }
 
     /**
@@ -1681,6 +1852,69 @@ public class RESTServer {
         response.addDateHeader("Created", created);
     }
 
+    /**
+     * Get the stylesheet requested by the _xsl parameter.
+     *
+     * @return the stylesheet, or null if none is given or _xsl=no disables it
+     */
+    private @Nullable String getStylesheet(final HttpServletRequest request) {
+        final String stylesheet = getParameter(request, XSL);
+        return "no".equals(stylesheet) ? null : stylesheet;
+    }
+
+    /**
+     * Compute the entity tag of the representation of a stored document. The tag
+     * depends on the document's modification state and on the request parameters,
+     * which control the serialization.
+     *
+     * @return the entity tag, or null if the representation depends on a stylesheet
+     */
+    private @Nullable String getETag(final DocumentImpl resource, @Nullable final String stylesheet,
+            final HttpServletRequest request) {
+        if (stylesheet != null) {
+            // the stylesheet may be modified independently of the document
+            return null;
+        }
+        return ConditionalRequest.getETag(resource, Objects.hash(request.getQueryString(), defaultOutputKeysProperties));
+    }
+
+    /**
+     * Answer a conditional GET of a stored document with 304 (Not Modified) if the
+     * client already holds the current representation. The document is looked up
+     * without acquiring a document lock, and it is not serialized.
+     *
+     * @return true if a 304 response has been sent
+     */
+    private boolean sendNotModified(final DBBroker broker, final XmldbURI pathUri, @Nullable final String stylesheet,
+            final HttpServletRequest request, final HttpServletResponse response) throws PermissionDeniedException {
+        if (pathUri.numSegments() < 2) {
+            return false;
+        }
+
+        final DocumentImpl resource;
+        try (final Collection collection = broker.openCollection(pathUri.removeLastSegment(), LockMode.READ_LOCK)) {
+            if (collection == null) {
+                return false;
+            }
+            resource = collection.getDocumentNoLock(broker, pathUri.lastSegmentString());
+        }
+        if (resource == null || isExecutableType(resource)) {
+            return false;
+        }
+
+        final String etag = getETag(resource, stylesheet, request);
+        if (!ConditionalRequest.isNotModified(request, etag, resource.getLastModified())) {
+            return false;
+        }
+
+        setCreatedAndLastModifiedHeaders(response, resource.getCreated(), resource.getLastModified());
+        if (etag != null) {
+            response.setHeader("ETag", etag);
+        }
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return true;
+    }
+
     // writes out a resource, uses asMimeType as the specified mime-type or if
     // null uses the type of the resource
     private void writeResourceAs(final DocumentImpl resource, final DBBroker broker, final Txn transaction,
@@ -1697,40 +1931,15 @@ public class RESTServer {
         //get the document metadata
         final long lastModified = resource.getLastModified();
         setCreatedAndLastModifiedHeaders(response, resource.getCreated(), lastModified);
+        final String etag = getETag(resource, stylesheet, request);
+        if (etag != null) {
+            response.setHeader("ETag", etag);
+        }
 
-
-        /**
-         * HTTP 1.1 RFC 2616 Section 14.25 *
-         */
-        //handle If-Modified-Since request header
-        try {
-            final long ifModifiedSince = request.getDateHeader("If-Modified-Since");
-            if (ifModifiedSince > -1) {
-
-                /*
-                 a) A date which is later than the server's
-                 current time is invalid.
-                 */
-                if (ifModifiedSince <= System.currentTimeMillis()) {
-
-                    /*
-                     b) If the variant has been modified since the If-Modified-Since
-                     date, the response is exactly the same as for a normal GET.
-                     */
-                    if (lastModified <= ifModifiedSince) {
-
-                        /*
-                         c) If the variant has not been modified since a valid If-
-                         Modified-Since date, the server SHOULD return a 304 (Not
-                         Modified) response.
-                         */
-                        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-                        return;
-                    }
-                }
-            }
-        } catch (final IllegalArgumentException iae) {
-            LOG.warn("Illegal If-Modified-Since HTTP Header sent on request, ignoring. {}", iae.getMessage(), iae);
+        //handle If-None-Match and If-Modified-Since request headers
+        if (ConditionalRequest.isNotModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
         }
 
         if (resource.getResourceType() == DocumentImpl.BINARY_FILE) {
@@ -1759,6 +1968,7 @@ public class RESTServer {
             // xml resource
 
             SAXSerializer sax = null;
+            Writer writer = null;
             final Serializer serializer = broker.borrowSerializer();
 
             //setup the http context
@@ -1805,13 +2015,37 @@ public class RESTServer {
                     outputProperties.setProperty("omit-xml-declaration", "no");
                 }
 
-                final OutputStreamWriter writer = new OutputStreamWriter(response.getOutputStream(), encoding);
+                // the output of a document which is not transformed may be served from the cache
+                final SerializedDocumentCache outputCache = broker.getBrokerPool().getSerializedDocumentCache();
+                final String variant = outputCache.isEnabled() && !serializer.isStylesheetApplied()
+                        ? SerializedDocumentCache.getVariant("rest:" + encoding + ':' + asMimeType, outputProperties)
+                        : null;
+                final byte[] cachedOutput = variant != null ? outputCache.get(resource, variant) : null;
+                if (cachedOutput != null) {
+                    final OutputStream os = response.getOutputStream();
+                    os.write(cachedOutput);
+                    os.flush();
+                    os.close();
+                    return;
+                }
+
+                final SerializedDocumentCache.CapturingOutputStream capture = variant != null
+                        ? new SerializedDocumentCache.CapturingOutputStream(response.getOutputStream(), outputCache.getMaxOutputSize())
+                        : null;
+                writer = SerializerPool.getInstance().borrowWriter(capture != null ? capture : response.getOutputStream(), encoding);
                 sax.setOutput(writer, outputProperties);
                 serializer.setSAXHandlers(sax, sax);
 
                 serializer.toSAX(resource);
 
                 writer.flush();
+                if (capture != null && !serializer.isStylesheetApplied()
+                        && !serializer.getXIncludeFilter().hasProcessedIncludes()) {
+                    final byte[] output = capture.toByteArray();
+                    if (output != null) {
+                        outputCache.put(resource, variant, output);
+                    }
+                }
                 writer.close(); // DO NOT use in try-write-resources, otherwise ther response stream is always closed, and we can't report the errors
             } catch (final SAXException saxe) {
                 LOG.warn(saxe);
@@ -1823,6 +2057,7 @@ public class RESTServer {
                 if (sax != null) {
                     SerializerPool.getInstance().returnObject(sax);
                 }
+                SerializerPool.getInstance().returnWriter(writer);
                 broker.returnSerializer(serializer);
             }
         }
@@ -1911,6 +2146,167 @@ public class RESTServer {
         }
     }
 
+    /**
+     * Stores the entries of a ZIP archive into the collection the archive was
+     * posted to, see {@link BulkStore}. The paths of the entries are resolved
+     * against the collection, missing collections are created and existing
+     * documents are replaced.
+     *
+     * @param broker the database broker
+     * @param collectionUri the collection to store the entries into
+     * @param request the request
+     * @param response the response
+     * @param encoding the character encoding of the response
+     *
+     * @throws BadRequestException if the archive cannot be read
+     * @throws PermissionDeniedException if the request has insufficient permissions
+     * @throws RequestTooLargeException if the archive or one of its uncompressed entries is too large
+     * @throws IOException if an I/O error occurs
+     */
+    private void doStoreArchive(final DBBroker broker, final XmldbURI collectionUri,
+            final HttpServletRequest request, final HttpServletResponse response, final String encoding)
+            throws BadRequestException, PermissionDeniedException, IOException {
+        int batchSize = BulkStore.DEFAULT_BATCH_SIZE;
+        final String option = getParameter(request, Batch);
+        if (option != null) {
+            try {
+                batchSize = Integer.parseInt(option);
+            } catch (final NumberFormatException e) {
+                batchSize = -1;
+            }
+            if (batchSize < 1) {
+                throw new BadRequestException("Parameter " + Batch.queryStringKey() + " must be a positive integer: " + option);
+            }
+        }
+
+        final BulkStore.Result result;
+        try (final ZipInputStream zis = new ZipInputStream(getRequestStream(request))) {
+            final BulkStore bulkStore = new BulkStore(broker.getBrokerPool(), Runtime.getRuntime().availableProcessors(), batchSize);
+            result = bulkStore.store(broker, collectionUri, new ZipEntryIterator(zis,
+                    maxRequestSize >= 0 ? maxRequestSize : MAX_ARCHIVE_ENTRY_SIZE));
+        } catch (final UncheckedIOException e) {
+            if (e.getCause() instanceof RequestTooLargeException) {
+                throw e.getCause();
+            }
+            throw new BadRequestException("Error while reading the archive: " + e.getCause().getMessage(), e.getCause());
+        } catch (final EXistException e) {
+            throw new BadRequestException("Internal error: " + e.getMessage());
+        } catch (final LockException e) {
+            throw new PermissionDeniedException(e.getMessage());
+        }
+
+        response.setStatus(HttpServletResponse.SC_CREATED);
+        writeBulkStoreResult(response, encoding, result);
+    }
+
+    /**
+     * Reads the entries of a ZIP archive one by one,
+     * while the archive is received.
+     */
+    private static class ZipEntryIterator implements Iterator<BulkStore.Entry> {
+        private final ZipInputStream zis;
+        private final long maxEntrySize;
+        private ZipEntry next = null;
+
+        /**
+         * @param zis the archive
+         * @param maxEntrySize the maximum uncompressed size of an entry in bytes
+         */
+        ZipEntryIterator(final ZipInputStream zis, final long maxEntrySize) {
+            this.zis = zis;
+            this.maxEntrySize = maxEntrySize;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (next == null) {
+                    next = zis.getNextEntry();
+                    if (next == null) {
+                        return false;
+                    }
+                    if (next.isDirectory()) {
+                        next = null;
+                    }
+                }
+                return true;
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public BulkStore.Entry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final ZipEntry entry = next;
+            next = null;
+            final String name = entry.getName();
+            if (name.startsWith("/") || Arrays.asList(name.split("/")).contains("..")) {
+                throw new UncheckedIOException(new IOException("Entry path must be relative to the collection: " + name));
+            }
+            try {
+                // the entry is parsed by another thread, while the archive is read further
+                final UnsynchronizedByteArrayOutputStream data = new UnsynchronizedByteArrayOutputStream();
+                // the declared size of an entry cannot be trusted, a highly compressed entry is stopped while it is read
+                if (IOUtils.copyLarge(zis, data, 0, maxEntrySize + 1) > maxEntrySize) {
+                    throw new RequestTooLargeException(maxEntrySize);
+                }
+                final InputSource source = new InputSource(data.toInputStream());
+                source.setSystemId(name);
+                return new BulkStore.Entry(XmldbURI.create(URIUtils.urlEncodePartsUtf8(name)), null, source);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void writeBulkStoreResult(final HttpServletResponse response,
+        final String encoding, final BulkStore.Result result) throws IOException {
+
+        response.setContentType(MimeType.XML_TYPE.getName() + "; charset=" + encoding);
+
+        final OutputStreamWriter writer =
+                new OutputStreamWriter(response.getOutputStream(), encoding);
+
+        SAXSerializer serializer = null;
+        try {
+            serializer = (SAXSerializer) SerializerPool.getInstance().borrowObject(SAXSerializer.class);
+            serializer.setOutput(writer, defaultProperties);
+            final AttributesImpl attrs = new AttributesImpl();
+
+            serializer.startDocument();
+            serializer.startPrefixMapping("exist", Namespaces.EXIST_NS);
+            attrs.addAttribute("", "stored", "stored", "CDATA", String.valueOf(result.getStored()));
+            attrs.addAttribute("", "skipped", "skipped", "CDATA", String.valueOf(result.getSkipped().size()));
+            serializer.startElement(Namespaces.EXIST_NS, "result", "exist:result", attrs);
+
+            for (final Map.Entry<XmldbURI, Exception> skipped : result.getSkipped().entrySet()) {
+                attrs.clear();
+                attrs.addAttribute("", "path", "path", "CDATA", skipped.getKey().toString());
+                serializer.startElement(Namespaces.EXIST_NS, "skipped", "exist:skipped", attrs);
+                final String message = String.valueOf(skipped.getValue().getMessage());
+                serializer.characters(message.toCharArray(), 0, message.length());
+                serializer.endElement(Namespaces.EXIST_NS, "skipped", "exist:skipped");
+            }
+
+            serializer.endElement(Namespaces.EXIST_NS, "result", "exist:result");
+            serializer.endDocument();
+
+            writer.flush();
+            writer.close();
+
+        } catch (final SAXException e) {
+            // should never happen
+            LOG.warn("Error while serializing bulk store result: {}", e.getMessage(), e);
+        } finally {
+            if (serializer != null) {
+                SerializerPool.getInstance().returnObject(serializer);
+            }
+        }
+    }
+
     /**
      * Writes the XUpdate results to the http response.
      *
@@ -2123,6 +2519,7 @@ public class RESTServer {
 
         // serialize the results to the response output stream
         outputProperties.setProperty(Serializer.GENERATE_DOC_EVENTS, "false");
+        Writer writer = null;
         try {
 
             // set output headers
@@ -2143,7 +2540,7 @@ public class RESTServer {
             if (wrap) {
                 outputProperties.setProperty("method", "xml");
             }
-            final Writer writer = new OutputStreamWriter(response.getOutputStream(), encoding);
+            writer = SerializerPool.getInstance().borrowWriter(response.getOutputStream(), encoding);
             final XQuerySerializer serializer = new XQuerySerializer(broker, outputProperties, writer);
 
             //Marshaller.marshall(broker, results, start, howmany, serializer.getContentHandler());
@@ -2160,6 +2557,8 @@ public class RESTServer {
             LOG.warn(e.getMessage(), e);
             throw new BadRequestException("Error while serializing xml: "
                     + e.toString(), e);
+        } finally {
+            SerializerPool.getInstance().returnWriter(writer);
         }
     }
 
@@ -2198,41 +2597,81 @@ public class RESTServer {
                 root.addObject(new JSONSimpleProperty("compilationTime", Long.toString(compilationTime), true));
                 root.addObject(new JSONSimpleProperty("executionTime", Long.toString(executionTime), true));
 
-                final JSONObject data = new JSONObject("data");
-                root.addObject(data);
-
-                Item item;
-                for (int i = --start; i < start + howmany; i++) {
-                    item = results.itemAt(i);
-                    if (Type.subTypeOf(item.getType(), Type.NODE)) {
-                        final NodeValue value = (NodeValue) item;
-                        JSONValue json;
-                        if ("json".equals(outputProperties.getProperty("method", "xml"))) {
-                            json = new JSONValue(serializer.serialize(value), false);
-                            json.setSerializationDataType(JSONNode.SerializationDataType.AS_LITERAL);
-                        } else {
-                            json = new JSONValue(serializer.serialize(value));
-                            json.setSerializationType(JSONNode.SerializationType.AS_ARRAY);
-                        }
-                        data.addObject(json);
-                    } else {
-                        final JSONValue json = new JSONValue(item.getStringValue());
-                        json.setSerializationType(JSONNode.SerializationType.AS_ARRAY);
-                        data.addObject(json);
-                    }
-                }
+                // the items are serialized one by one while the data property is written
+                root.addObject(new ResultData(serializer, results, start - 1, howmany,
+                        "json".equals(outputProperties.getProperty("method", "xml"))));
 
                 root.serialize(writer, true);
 
                 writer.flush();
             }
-        } catch (final IOException | XPathException | SAXException e) {
+        } catch (final IOException | SAXException e) {
             throw new BadRequestException("Error while serializing xml: " + e.toString(), e);
         } finally {
             broker.returnSerializer(serializer);
         }
     }
 
+    /**
+     * The data property of a JSON result. Instead of adding a child node for
+     * every item, the items are serialized and written one after the other,
+     * so only a single serialized item is held in memory.
+     */
+    private static class ResultData extends JSONObject {
+        private final Serializer serializer;
+        private final Sequence results;
+        private final int start;
+        private final int count;
+        private final boolean jsonMethod;
+
+        ResultData(final Serializer serializer, final Sequence results, final int start, final int count,
+                final boolean jsonMethod) {
+            super("data");
+            this.serializer = serializer;
+            this.results = results;
+            this.start = start;
+            this.count = count;
+            this.jsonMethod = jsonMethod;
+        }
+
+        @Override
+        public void serializeContent(final Writer writer) throws IOException {
+            // same output as a JSONObject with a value child per item
+            if (count == 0) {
+                writer.write("null");
+                return;
+            }
+            if (count > 1) {
+                writer.write('[');
+            }
+            for (int i = start; i < start + count; i++) {
+                if (i > start) {
+                    writer.write(',');
+                }
+                toJSON(results.itemAt(i)).serializeContent(writer);
+            }
+            if (count > 1) {
+                writer.write(']');
+            }
+        }
+
+        private JSONValue toJSON(final Item item) throws IOException {
+            try {
+                if (!Type.subTypeOf(item.getType(), Type.NODE)) {
+                    return new JSONValue(item.getStringValue());
+                }
+                if (jsonMethod) {
+                    final JSONValue json = new JSONValue(serializer.serialize((NodeValue) item), false);
+                    json.setSerializationDataType(JSONNode.SerializationDataType.AS_LITERAL);
+                    return json;
+                }
+                return new JSONValue(serializer.serialize((NodeValue) item));
+            } catch (final XPathException | SAXException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+    }
+
     private boolean isExecutableType(final DocumentImpl resource) {
         return (
             resource != null
@@ -346,7 +346,18 @@ enum RESTServerParameter {
      * <exist:property name = string
      *  value = string/>
      */
-    Property;
+    Property,
+
+    /**
+     * Can be used in the Query String of a POST request
+     * which stores the entries of a ZIP archive, to set the
+     * number of documents stored per transaction.
+     *
+     * The value of the parameter should be a positive integer.
+     *
+     * Contexts: POST
+     */
+    Batch;
 
     /**
      * Get the parameter key that is
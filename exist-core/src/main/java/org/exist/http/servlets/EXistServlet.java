@@ -29,6 +29,7 @@ import org.exist.http.Descriptor;
 import org.exist.http.RESTServer;
 import org.exist.http.NotFoundException;
 import org.exist.http.BadRequestException;
+import org.exist.http.RequestTooLargeException;
 import org.exist.http.MethodNotAllowedException;
 import org.exist.security.PermissionDeniedException;
 import org.exist.security.Subject;
@@ -83,9 +84,20 @@ public class EXistServlet extends AbstractExistHttpServlet {
         final FeatureEnabled xquerySubmission = parseFeatureEnabled(config, "xquery-submission", FeatureEnabled.TRUE);
         final FeatureEnabled xupdateSubmission = parseFeatureEnabled(config, "xupdate-submission", FeatureEnabled.TRUE);
 
+        long maxRequestSize = -1;
+        final String maxRequestSizeParam = config.getInitParameter("max-request-size");
+        if (maxRequestSizeParam != null) {
+            try {
+                maxRequestSize = Long.parseLong(maxRequestSizeParam.trim());
+            } catch (final NumberFormatException e) {
+                throw new ServletException("Invalid value for init-param max-request-size: " + maxRequestSizeParam);
+            }
+        }
+
         // Instantiate REST Server
         srvREST = new RESTServer(getPool(), getFormEncoding(), getContainerEncoding(), useDynamicContentType.equalsIgnoreCase("yes")
-                || useDynamicContentType.equalsIgnoreCase("true"), isInternalOnly(), xquerySubmission, xupdateSubmission);
+                || useDynamicContentType.equalsIgnoreCase("true"), isInternalOnly(), xquerySubmission, xupdateSubmission,
+                maxRequestSize);
 
         // XML lib checks....
         XmlLibraryChecker.check();
@@ -153,6 +165,11 @@ public class EXistServlet extends AbstractExistHttpServlet {
                 throw t;
             }
 
+        } catch (final RequestTooLargeException e) {
+            if (response.isCommitted()) {
+                throw new ServletException(e.getMessage(), e);
+            }
+            response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, e.getMessage());
         } catch (final BadRequestException e) {
             if (response.isCommitted()) {
                 throw new ServletException(e.getMessage(), e);
@@ -543,6 +560,11 @@ public class EXistServlet extends AbstractExistHttpServlet {
                     throw t;
                 }
 
+            } catch (final RequestTooLargeException e) {
+                if (response.isCommitted()) {
+                    throw new ServletException(e.getMessage(), e);
+                }
+                response.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, e.getMessage());
             } catch (final PermissionDeniedException e) {
                 // If the current user is the Default User and they do not have permission
                 // then send a challenge request to prompt the client for a username/password.
@@ -26,6 +26,7 @@ import org.apache.logging.log4j.Logger;
 import org.exist.EXistException;
 import org.exist.debuggee.DebuggeeFactory;
 import org.exist.dom.persistent.XMLUtil;
+import org.exist.http.ConditionalRequest;
 import org.exist.http.Descriptor;
 import org.exist.security.AuthenticationException;
 import org.exist.security.Permission;
@@ -515,9 +516,17 @@ public class XQueryServlet extends AbstractExistHttpServlet {
 	            }
             }
             
+            // the wrapper returns 0 if the query did not set a Last-Modified header
+            final long lastModified = respw.getDateHeader("Last-Modified");
+
             if (requestAttr != null && (XmldbURI.API_LOCAL.equals(collectionURI.getApiName())) ) {
                 request.setAttribute(requestAttr, resultSequence);
-                
+
+            } else if (!response.isCommitted() && ConditionalRequest.isNotModified(request,
+                    response.getHeader("ETag"), lastModified > 0 ? lastModified : -1)) {
+                // the query opted in by setting an ETag or Last-Modified header, which the client already holds
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+
             } else {
                 XQuerySerializer serializer = new XQuerySerializer(broker, outputProperties, output);
                 serializer.serialize(resultSequence);
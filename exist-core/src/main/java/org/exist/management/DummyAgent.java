@@ -46,6 +46,11 @@ public class DummyAgent implements Agent {
         // just do nothing
     }
 
+    @Override
+    public void removeMBean(final PerInstanceMBean mbean) throws DatabaseConfigurationException {
+        // just do nothing
+    }
+
     @Override
     public void changeStatus(final BrokerPool instance, final TaskStatus actualStatus) {
         // nothing to do
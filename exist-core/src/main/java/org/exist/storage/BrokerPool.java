@@ -34,6 +34,7 @@ import org.exist.collections.Collection;
 import org.exist.collections.CollectionCache;
 import org.exist.collections.CollectionConfiguration;
 import org.exist.collections.CollectionConfigurationManager;
+import org.exist.collections.CollectionModificationCounter;
 import org.exist.collections.triggers.*;
 import org.exist.config.ConfigurationDocumentTrigger;
 import org.exist.config.Configurator;
@@ -337,6 +338,12 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
      */
     private XQueryPool xQueryPool;
 
+    /**
+     * The cache in which the results of XQuery expressions are stored.
+     */
+    private XQueryResultCache xQueryResultCache;
+    private SerializedDocumentCache serializedDocumentCache;
+
     /**
      * The monitor in which the database instance's strong>running</strong> XQueries are managed.
      */
@@ -359,6 +366,11 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
     //TODO : rename as collectionsCache ?
     private CollectionCache collectionCache;
 
+    /**
+     * Tracks modifications of the database instance's collections.
+     */
+    private CollectionModificationCounter collectionModificationCounter;
+
     /**
      * The pool in which the database instance's readers are stored.
      */
@@ -487,6 +499,8 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
 
         this.cacheManager = servicesManager.register(new DefaultCacheManager(this));
         this.xQueryPool = servicesManager.register(new XQueryPool());
+        this.xQueryResultCache = servicesManager.register(new XQueryResultCache());
+        this.serializedDocumentCache = servicesManager.register(new SerializedDocumentCache());
         this.processMonitor = servicesManager.register(new ProcessMonitor());
         this.xqueryStats = servicesManager.register(new PerformanceStats(this));
         final XMLReaderObjectFactory xmlReaderObjectFactory = servicesManager.register(new XMLReaderObjectFactory());
@@ -495,6 +509,7 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                 .filter(size -> size != -1)
                 .orElse(DEFAULT_COLLECTION_BUFFER_SIZE);
         this.collectionCache = servicesManager.register(new CollectionCache());
+        this.collectionModificationCounter = servicesManager.register(new CollectionModificationCounter());
         this.notificationService = servicesManager.register(new NotificationService());
 
         this.journalManager = recoveryEnabled ? Optional.of(new JournalManager()) : Optional.empty();
@@ -1033,6 +1048,15 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         return collectionCache;
     }
 
+    /**
+     * Returns the counter which tracks modifications of the database instance's collections.
+     *
+     * @return The counter
+     */
+    public CollectionModificationCounter getCollectionModificationCounter() {
+        return collectionModificationCounter;
+    }
+
     /**
      * Returns a cache in which the database instance's may store items.
      *
@@ -1063,6 +1087,24 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
         return xQueryPool;
     }
 
+    /**
+     * Returns the cache in which the results of XQuery expressions are stored.
+     *
+     * @return The cache
+     */
+    public XQueryResultCache getXQueryResultCache() {
+        return xQueryResultCache;
+    }
+
+    /**
+     * Returns the cache in which the serialized output of documents is stored.
+     *
+     * @return The cache
+     */
+    public SerializedDocumentCache getSerializedDocumentCache() {
+        return serializedDocumentCache;
+    }
+
     /**
      * Retuns the XQuery Service
      *
@@ -1753,7 +1795,10 @@ public class BrokerPool extends BrokerPools implements BrokerPoolConstants, Data
                 Configurator.clear(this);
                 transactionManager = null;
                 collectionCache = null;
+                collectionModificationCounter = null;
                 xQueryPool = null;
+                xQueryResultCache = null;
+                serializedDocumentCache = null;
                 processMonitor = null;
                 collectionConfigurationManager = null;
                 notificationService = null;
@@ -57,6 +57,7 @@ public class ConsistencyCheckTask implements SystemTask {
     private boolean incrementalCheck = false;
     private boolean checkDocs = false;
     private int maxInc = -1;
+    private int threads = 1;
 
     private Path lastExportedBackup = null;
 
@@ -69,6 +70,7 @@ public class ConsistencyCheckTask implements SystemTask {
     public final static String INCREMENTAL_CHECK_PROP_NAME = "incremental-check";
     public final static String MAX_PROP_NAME = "max";
     public final static String CHECK_DOCS_PROP_NAME = "check-documents";
+    public final static String THREADS_PROP_NAME = "threads";
 
     private final static LoggingCallback logCallback = new LoggingCallback();
     
@@ -121,6 +123,13 @@ public class ConsistencyCheckTask implements SystemTask {
             throw new EXistException("Parameter 'max' has to be an integer");
         }
 
+        final String threadsStr = properties.getProperty(THREADS_PROP_NAME, "1");
+        try {
+            threads = Integer.parseInt(threadsStr);
+        } catch (final NumberFormatException e) {
+            throw new EXistException("Parameter 'threads' has to be an integer");
+        }
+
         final String check = properties.getProperty(CHECK_DOCS_PROP_NAME, "no");
         checkDocs = check.equalsIgnoreCase("YES");
     }
@@ -178,7 +187,7 @@ public class ConsistencyCheckTask implements SystemTask {
                 LOG.info("Starting backup...");
 
                 final SystemExport sysexport = new SystemExport(broker, transaction, logCallback, monitor, false);
-                lastExportedBackup = sysexport.export(exportDir, incremental, maxInc, createZip, errors);
+                lastExportedBackup = sysexport.export(exportDir, incremental, maxInc, createZip, threads, errors);
                 agentInstance.changeStatus(brokerPool, new TaskStatus(TaskStatus.Status.RUNNING_BACKUP));
 
                 if (lastExportedBackup != null) {
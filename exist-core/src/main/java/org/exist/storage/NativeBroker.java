@@ -1602,7 +1602,11 @@ public class NativeBroker extends DBBroker {
         // WRITE LOCK the collection's parent (as we will remove this collection from it)
         final XmldbURI parentCollectionUri = collection.getParentURI() == null ? XmldbURI.ROOT_COLLECTION_URI : collection.getParentURI();
         try(final ManagedCollectionLock parentCollectionLock = writeLockCollection(parentCollectionUri)) {
-            return _removeCollection(transaction, collection);
+            final boolean removed = _removeCollection(transaction, collection);
+            if (removed) {
+                pool.getCollectionModificationCounter().modified(collection.getURI());
+            }
+            return removed;
         } catch(final LockException e) {
             LOG.error("Unable to lock Collection: {}", collection.getURI(), e);
             return false;
@@ -1844,6 +1848,7 @@ public class NativeBroker extends DBBroker {
                 if (address == BFile.UNKNOWN_ADDRESS) {
                     throw new IOException("Could not store collection data for '" + collection.getURI() + "', address=BFile.UNKNOWN_ADDRESS");
                 }
+                pool.getCollectionModificationCounter().modified(collection.getURI());
             }
         } catch(final LockException e) {
             throw new IOException(e);
@@ -2139,6 +2144,8 @@ public class NativeBroker extends DBBroker {
             doc.write(os);
             final Value key = new CollectionStore.DocumentKey(doc.getCollection().getId(), doc.getResourceType(), doc.getDocId());
             collectionsDb.put(transaction, key, os.data(), true);
+            pool.getCollectionModificationCounter().modified(doc.getCollection().getURI());
+            pool.getSerializedDocumentCache().invalidate(doc.getDocId());
             //} catch (ReadOnlyException e) {
             //LOG.warn(DATABASE_IS_READ_ONLY);
         } catch(final LockException e) {
@@ -2889,6 +2896,8 @@ public class NativeBroker extends DBBroker {
             }
             final Value key = new CollectionStore.DocumentKey(document.getCollection().getId(), document.getResourceType(), document.getDocId());
             collectionsDb.remove(transaction, key);
+            pool.getCollectionModificationCounter().modified(document.getCollection().getURI());
+            pool.getSerializedDocumentCache().invalidate(document.getDocId());
         } catch(final LockException e) {
             LOG.error("Failed to acquire lock on {}", FileUtils.fileName(collectionsDb.getFile()));
         }
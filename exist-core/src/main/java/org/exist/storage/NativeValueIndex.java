@@ -36,6 +36,7 @@ import org.exist.indexing.IndexUtils;
 import org.exist.indexing.IndexWorker;
 import org.exist.indexing.StreamListener;
 import org.exist.numbering.NodeId;
+import org.exist.numbering.NodeIdFactory;
 import org.exist.storage.btree.BTreeCallback;
 import org.exist.storage.btree.BTreeException;
 import org.exist.storage.btree.DBException;
@@ -121,7 +122,7 @@ public class NativeValueIndex implements ContentLoadingObserver {
     private final static Logger LOG = LogManager.getLogger(NativeValueIndex.class);
 
     public static final String FILE_NAME = "values.dbx";
-    public static final short FILE_FORMAT_VERSION_ID = 14;
+    public static final short FILE_FORMAT_VERSION_ID = 15;
     public static final String FILE_KEY_IN_CONFIG = "db-connection.values";
 
     private static final double DEFAULT_VALUE_CACHE_GROWTH = 1.25;
@@ -1197,14 +1198,18 @@ public class NativeValueIndex implements ContentLoadingObserver {
     private class SearchCallback implements BTreeCallback {
         private final DocumentSet docs;
         private final NodeSet contextSet;
+        private final DocumentSet contextDocs;
         private final NodeSet result;
         private final boolean returnAncestor;
+        private final NodeIdFactory nodeFactory;
 
         public SearchCallback(final DocumentSet docs, final NodeSet contextSet, final NodeSet result, boolean returnAncestor) {
             this.docs = docs;
             this.contextSet = contextSet;
+            this.contextDocs = contextSet != null && returnAncestor ? contextSet.getDocumentSet() : null;
             this.result = result;
             this.returnAncestor = returnAncestor;
+            this.nodeFactory = broker.getBrokerPool().getNodeFactory();
         }
 
         @Override
@@ -1222,6 +1227,14 @@ public class NativeValueIndex implements ContentLoadingObserver {
                     final int storedDocId = is.readInt();
                     final int gidsCount = is.readInt();
                     final int size = is.readFixedInt();
+
+                    // a node can only be returned if its document contains a context node:
+                    // skip the postings of the other documents without decoding them
+                    if (contextDocs != null && !contextDocs.contains(storedDocId)) {
+                        is.skipBytes(size);
+                        continue;
+                    }
+
                     final DocumentImpl storedDocument = docs.getDoc(storedDocId);
 
                     //Exit if the document is not concerned
@@ -1230,32 +1243,27 @@ public class NativeValueIndex implements ContentLoadingObserver {
                         continue;
                     }
 
+                    final int sizeHint = contextSet != null ? contextSet.getSizeHint(storedDocument) : Constants.NO_SIZE_HINT;
+
                     //Process the nodes
                     NodeId previous = null;
 
                     for (int j = 0; j < gidsCount; j++) {
-                        final NodeId nodeId = broker.getBrokerPool().getNodeFactory().createFromStream(previous, is);
+                        final NodeId nodeId = nodeFactory.createFromStream(previous, is);
                         previous = nodeId;
-                        final NodeProxy storedNode = new NodeProxy(storedDocument, nodeId);
 
                         // if a context set is specified, we can directly check if the
-                        // matching node is a descendant of one of the nodes
-                        // in the context set.
-                        if (contextSet != null) {
-                            final int sizeHint = contextSet.getSizeHint(storedDocument);
-
-                            if (returnAncestor) {
-                                final NodeProxy parentNode = contextSet.get(storedNode);
-                                if (parentNode != null) {
-                                    result.add(parentNode, sizeHint);
-                                }
-                            } else {
-                                result.add(storedNode, sizeHint);
+                        // matching node is one of the nodes in the context set, without
+                        // creating a proxy for it first
+                        if (contextSet != null && returnAncestor) {
+                            final NodeProxy parentNode = contextSet.get(storedDocument, nodeId);
+                            if (parentNode != null) {
+                                result.add(parentNode, sizeHint);
                             }
 
                             // otherwise, we add all nodes without check
                         } else {
-                            result.add(storedNode, Constants.NO_SIZE_HINT);
+                            result.add(new NodeProxy(storedDocument, nodeId), sizeHint);
                         }
                     }
                 }
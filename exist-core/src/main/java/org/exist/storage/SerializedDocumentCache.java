@@ -0,0 +1,254 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.commons.io.output.UnsynchronizedByteArrayOutputStream;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.util.Configuration;
+
+import javax.annotation.Nullable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * Global cache for the serialized output of stored XML documents, used to answer
+ * requests for popular documents without serializing them again from the DOM store.
+ *
+ * An output is identified by the document id and a variant key, which describes the
+ * serialization options, see {@link #getVariant(String, Properties)}. It is only valid
+ * for the version of the document it was created from, identified by the document's
+ * last-modified time. {@link NativeBroker} drops all outputs of a document when the
+ * document is stored or removed.
+ *
+ * Outputs which depend on other resources, i.e. which were transformed by a stylesheet
+ * or which expanded XIncludes, must not be cached. The cache is bounded by the size of the
+ * cached outputs in bytes.
+ */
+@ThreadSafe
+public class SerializedDocumentCache implements BrokerPoolService {
+
+    private static final Logger LOG = LogManager.getLogger(SerializedDocumentCache.class);
+
+    public static final String OUTPUT_CACHE_SIZE_ATTRIBUTE = "output-cache-size";
+    public static final String PROPERTY_OUTPUT_CACHE_SIZE = "serialization.output-cache-size";
+
+    public static final int DEFAULT_OUTPUT_CACHE_SIZE_BYTES = 16 * 1024 * 1024;   // 16 MB
+
+    /**
+     * The maximum number of different outputs kept per document.
+     */
+    private static final int MAX_VARIANTS = 8;
+
+    private int maxCacheSize = DEFAULT_OUTPUT_CACHE_SIZE_BYTES;
+    private Cache<Integer, DocumentOutputs> cache;
+
+    @Override
+    public void configure(final Configuration configuration) {
+        this.maxCacheSize = Optional.of(configuration.getInteger(PROPERTY_OUTPUT_CACHE_SIZE))
+                .filter(size -> size >= 0)
+                .orElse(DEFAULT_OUTPUT_CACHE_SIZE_BYTES);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("SerializedDocumentCache will use {} bytes max.", this.maxCacheSize);
+        }
+    }
+
+    @Override
+    public void prepare(final BrokerPool brokerPool) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxCacheSize)
+                .<Integer, DocumentOutputs>weigher((docId, outputs) -> outputs.getMemorySize())
+                .build();
+    }
+
+    /**
+     * Returns true if outputs may be cached at all.
+     *
+     * @return false if the size of the cache is configured as 0
+     */
+    public boolean isEnabled() {
+        return maxCacheSize > 0;
+    }
+
+    /**
+     * The largest output which is cached. Larger outputs would
+     * evict too many other documents.
+     *
+     * @return the maximum size of a single output in bytes
+     */
+    public int getMaxOutputSize() {
+        return maxCacheSize / 8;
+    }
+
+    /**
+     * Look up the output of the current version of a document.
+     *
+     * @param document the document
+     * @param variant the key describing the serialization options
+     * @return the serialized document, or null if there is no valid output
+     */
+    @Nullable public byte[] get(final DocumentImpl document, final String variant) {
+        final DocumentOutputs outputs = cache.getIfPresent(document.getDocId());
+        if (outputs == null || outputs.lastModified != document.getLastModified()) {
+            return null;
+        }
+        return outputs.outputs.get(variant);
+    }
+
+    /**
+     * Put the output of a document into the cache.
+     *
+     * @param document the document, which must not have been modified since it was serialized
+     * @param variant the key describing the serialization options
+     * @param output the serialized document
+     */
+    public void put(final DocumentImpl document, final String variant, final byte[] output) {
+        if (output.length > getMaxOutputSize()) {
+            return;
+        }
+        final long lastModified = document.getLastModified();
+        cache.asMap().compute(document.getDocId(), (docId, current) -> {
+            final Map<String, byte[]> outputs = new HashMap<>();
+            if (current != null && current.lastModified == lastModified) {
+                if (current.outputs.size() >= MAX_VARIANTS) {
+                    return current;
+                }
+                outputs.putAll(current.outputs);
+            }
+            outputs.put(variant, output);
+            return new DocumentOutputs(lastModified, outputs);
+        });
+    }
+
+    /**
+     * Drop all outputs of a document.
+     *
+     * @param docId the id of the modified or removed document
+     */
+    public void invalidate(final int docId) {
+        if (cache != null) {
+            cache.invalidate(docId);
+        }
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Compute the key of an output from the serialization options.
+     *
+     * @param api the interface which produces the output, e.g. "rest"
+     * @param outputProperties the serialization options, including defaults
+     * @return the variant key
+     */
+    public static String getVariant(final String api, final Properties outputProperties) {
+        final StringBuilder variant = new StringBuilder(api);
+        for (final String name : new TreeSet<>(outputProperties.stringPropertyNames())) {
+            variant.append('\u0000').append(name).append('=').append(outputProperties.getProperty(name));
+        }
+        return variant.toString();
+    }
+
+    /**
+     * The outputs of one version of a document.
+     */
+    private static class DocumentOutputs {
+        private final long lastModified;
+        private final Map<String, byte[]> outputs;
+
+        DocumentOutputs(final long lastModified, final Map<String, byte[]> outputs) {
+            this.lastModified = lastModified;
+            this.outputs = Collections.unmodifiableMap(outputs);
+        }
+
+        int getMemorySize() {
+            long memorySize = 64;
+            for (final Map.Entry<String, byte[]> output : outputs.entrySet()) {
+                memorySize += 32 + output.getKey().length() * 2L + output.getValue().length;
+            }
+            return (int) Math.min(memorySize, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Passes the output of a serialization through and keeps a copy of it,
+     * as long as it does not exceed the maximum size of a cached output.
+     */
+    public static class CapturingOutputStream extends FilterOutputStream {
+        private final int maxSize;
+        private UnsynchronizedByteArrayOutputStream copy = new UnsynchronizedByteArrayOutputStream();
+
+        public CapturingOutputStream(final OutputStream out, final int maxSize) {
+            super(out);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            if (copy != null) {
+                copy.write(b);
+                checkSize();
+            }
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            if (copy != null) {
+                copy.write(b, off, len);
+                checkSize();
+            }
+        }
+
+        private void checkSize() {
+            if (copy.size() > maxSize) {
+                copy = null;
+            }
+        }
+
+        /**
+         * Get the copy of the output.
+         *
+         * @return the output written so far, or null if it was too large
+         */
+        @Nullable public byte[] toByteArray() {
+            return copy == null ? null : copy.toByteArray();
+        }
+    }
+}
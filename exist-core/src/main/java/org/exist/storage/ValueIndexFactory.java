@@ -58,7 +58,7 @@ public class ValueIndexFactory {
             try {
                 final XMLGregorianCalendar xmlutccal =
                         DatatypeFactory.newInstance().newXMLGregorianCalendar(
-                                ByteConversion.byteToIntH(data, start + 1),
+                                ByteConversion.byteToIntH(data, start + 1) ^ 0x80000000,
                                 data[start + 5],
                                 data[start + 6],
                                 data[start + 7],
@@ -77,7 +77,7 @@ public class ValueIndexFactory {
             try {
                 final XMLGregorianCalendar xmlutccal =
                         DatatypeFactory.newInstance().newXMLGregorianCalendarDate(
-                                ByteConversion.byteToIntH(data, start + 1),
+                                ByteConversion.byteToIntH(data, start + 1) ^ 0x80000000,
                                 data[start + 5],
                                 data[start + 6],
                                 0);
@@ -95,15 +95,15 @@ public class ValueIndexFactory {
         /* xs:double */
         else if (type == Type.DOUBLE) {
             final long bits = ByteConversion.byteToLong(data, start +
-                    (ValueIndexFactory.LENGTH_VALUE_TYPE)) ^ 0x8000000000000000L;
-            final double d = Double.longBitsToDouble(bits);
+                    (ValueIndexFactory.LENGTH_VALUE_TYPE));
+            final double d = Double.longBitsToDouble(bits < 0 ? bits ^ 0x8000000000000000L : ~bits);
             return new DoubleValue(d);
         }
         /* xs:float */
         else if (type == Type.FLOAT) {
-            final int bits = ByteConversion.byteToInt(data, start +
-                    (ValueIndexFactory.LENGTH_VALUE_TYPE)) ^ 0x80000000;
-            final float f = Float.intBitsToFloat(bits);
+            final int bits = ByteConversion.byteToIntH(data, start +
+                    (ValueIndexFactory.LENGTH_VALUE_TYPE));
+            final float f = Float.intBitsToFloat(bits < 0 ? bits ^ 0x80000000 : ~bits);
             return new FloatValue(f);
         }
         /* xs:decimal */
@@ -143,7 +143,7 @@ public class ValueIndexFactory {
             final XMLGregorianCalendar utccal = ((AbstractDateTimeValue) value).calendar.normalize();
             final byte[] data = new byte[offset + 12]; // allocate an appropriately sized
             data[offset] = (byte) Type.DATE_TIME; // put the type in the byte array
-            ByteConversion.intToByteH(utccal.getYear(), data, offset + 1);
+            ByteConversion.intToByteH(utccal.getYear() ^ 0x80000000, data, offset + 1);
             data[offset + 5] = (byte) utccal.getMonth();
             data[offset + 6] = (byte) utccal.getDay();
             data[offset + 7] = (byte) utccal.getHour();
@@ -159,7 +159,7 @@ public class ValueIndexFactory {
             final XMLGregorianCalendar utccal = ((AbstractDateTimeValue) value).calendar.normalize();
             final byte[] data = new byte[offset + 7]; // allocate an appropriately sized
             data[offset] = (byte) Type.DATE;
-            ByteConversion.intToByteH(utccal.getYear(), data, offset + 1);
+            ByteConversion.intToByteH(utccal.getYear() ^ 0x80000000, data, offset + 1);
             data[offset + 5] = (byte) utccal.getMonth();
             data[offset + 6] = (byte) utccal.getDay();
             return data;
@@ -176,7 +176,7 @@ public class ValueIndexFactory {
         else if (value.getType() == Type.DOUBLE) {
             final byte[] data = new byte[offset + ValueIndexFactory.LENGTH_VALUE_TYPE + 8];
             data[offset] = (byte) Type.DOUBLE;
-            final long bits = Double.doubleToLongBits(((DoubleValue) value).getValue()) ^ 0x8000000000000000L;
+            final long bits = orderedBits(Double.doubleToLongBits(((DoubleValue) value).getValue()));
             ByteConversion.longToByte(bits, data, offset + ValueIndexFactory.LENGTH_VALUE_TYPE);
             return data;
         }
@@ -184,7 +184,7 @@ public class ValueIndexFactory {
         else if (value.getType() == Type.FLOAT) {
             final byte[] data = new byte[offset + ValueIndexFactory.LENGTH_VALUE_TYPE + 4];
             data[offset] = (byte) Type.FLOAT;
-            final int bits = Float.floatToIntBits(((FloatValue) value).getValue()) ^ 0x80000000;
+            final int bits = orderedBits(Float.floatToIntBits(((FloatValue) value).getValue()));
             ByteConversion.intToByteH(bits, data, offset + ValueIndexFactory.LENGTH_VALUE_TYPE);
             return data;
         }
@@ -208,4 +208,26 @@ public class ValueIndexFactory {
             throw new EXistException("Unknown data type for serialization: " + Type.getTypeName(value.getType()));
         }
     }
+
+    /**
+     * Transform the bits of a double, so the unsigned byte order of the key
+     * equals the numeric order of the values: the sign bit of positive values
+     * is set, all bits of negative values are flipped.
+     *
+     * @param bits the result of {@link Double#doubleToLongBits(double)}
+     * @return the bits to store in the key
+     */
+    static long orderedBits(final long bits) {
+        return bits < 0 ? ~bits : bits ^ 0x8000000000000000L;
+    }
+
+    /**
+     * Transform the bits of a float, see {@link #orderedBits(long)}.
+     *
+     * @param bits the result of {@link Float#floatToIntBits(float)}
+     * @return the bits to store in the key
+     */
+    static int orderedBits(final int bits) {
+        return bits < 0 ? ~bits : bits ^ 0x80000000;
+    }
 }
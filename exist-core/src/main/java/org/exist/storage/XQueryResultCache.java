@@ -0,0 +1,318 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import net.jcip.annotations.ThreadSafe;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.collections.CollectionModificationCounter;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.numbering.NodeId;
+import org.exist.util.Configuration;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.value.ValueSequence;
+
+import javax.annotation.Nullable;
+import java.beans.ConstructorProperties;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Global cache for the results of XQuery expressions, see
+ * {@link org.exist.xquery.pragmas.CachePragma}.
+ *
+ * Each result depends on a set of Collections. A result is valid as long as the versions
+ * of these Collections, as maintained by the {@link CollectionModificationCounter}, did not
+ * change since the result was computed. Invalid results are dropped when they are looked up.
+ *
+ * Only results which consist of atomic values and persistent nodes are cached. The cache is
+ * bounded by the estimated memory size of the cached results.
+ */
+@ThreadSafe
+public class XQueryResultCache implements BrokerPoolService {
+
+    private static final Logger LOG = LogManager.getLogger(XQueryResultCache.class);
+
+    public static final String RESULT_CACHE_SIZE_ATTRIBUTE = "result-cache-size";
+    public static final String PROPERTY_RESULT_CACHE_SIZE = "db-connection.query-pool.result-cache-size";
+
+    public static final int DEFAULT_RESULT_CACHE_SIZE_BYTES = 16 * 1024 * 1024;   // 16 MB
+
+    /**
+     * Results with more items are not cached.
+     */
+    public static final int MAX_CACHED_ITEMS = 100_000;
+
+    private int maxCacheSize = DEFAULT_RESULT_CACHE_SIZE_BYTES;
+    private Cache<String, CachedResult> cache;
+    private StatsCounter statsCounter = new ConcurrentStatsCounter();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    @Override
+    public void configure(final Configuration configuration) {
+        this.maxCacheSize = Optional.of(configuration.getInteger(PROPERTY_RESULT_CACHE_SIZE))
+                .filter(size -> size >= 0)
+                .orElse(DEFAULT_RESULT_CACHE_SIZE_BYTES);
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("XQueryResultCache will use {} bytes max.", this.maxCacheSize);
+        }
+    }
+
+    @Override
+    public void prepare(final BrokerPool brokerPool) {
+        this.statsCounter = new ConcurrentStatsCounter();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxCacheSize)
+                .<String, CachedResult>weigher((key, result) -> key.length() * 2 + result.getMemorySize())
+                .recordStats(() -> statsCounter)
+                .build();
+    }
+
+    /**
+     * Returns true if results may be cached at all.
+     *
+     * @return false if the size of the cache is configured as 0
+     */
+    public boolean isEnabled() {
+        return maxCacheSize > 0;
+    }
+
+    /**
+     * Look up a cached result. The result is only returned if the Collections
+     * it depends on were not modified since it was computed.
+     *
+     * @param key the key of the result
+     * @param counter the counter for Collection modifications
+     * @return a copy of the cached result, or null if there is no valid result for the key
+     */
+    @Nullable public Sequence get(final String key, final CollectionModificationCounter counter) {
+        final CachedResult result = cache.getIfPresent(key);
+        if (result == null) {
+            missCount.increment();
+            return null;
+        }
+        if (!result.isValid(counter)) {
+            cache.invalidate(key);
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return result.toSequence();
+    }
+
+    /**
+     * Put a result into the cache, if it can be cached.
+     *
+     * @param key the key of the result
+     * @param result the result
+     * @param dependencies the Collections the result depends on
+     * @param versions the versions of the Collections before the result was computed
+     * @return true if the result was cached
+     * @throws XPathException if the result cannot be read
+     */
+    public boolean put(final String key, final Sequence result, final XmldbURI[] dependencies, final long[] versions)
+            throws XPathException {
+        final CachedResult cachedResult = CachedResult.of(result, dependencies, versions);
+        if (cachedResult == null) {
+            return false;
+        }
+        cache.put(key, cachedResult);
+        return true;
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Get a Snapshot of the Cache Statistics
+     *
+     * @return The cache statistics
+     */
+    public Statistics getStatistics() {
+        final CacheStats cacheStats = statsCounter.snapshot();
+        return new Statistics(
+                hitCount.sum(),
+                missCount.sum(),
+                cacheStats.evictionCount(),
+                cache.estimatedSize(),
+                maxCacheSize
+        );
+    }
+
+    /**
+     * A cached result. Persistent nodes are kept as document, node id and
+     * address, so a fresh {@link NodeProxy} without match or context information
+     * is returned for every hit.
+     */
+    private static class CachedResult {
+        private static final int NODE_SIZE = 48;
+        private static final int ATOMIC_SIZE = 32;
+
+        private final Object[] items;
+        private final XmldbURI[] dependencies;
+        private final long[] versions;
+        private final int memorySize;
+
+        private CachedResult(final Object[] items, final XmldbURI[] dependencies, final long[] versions,
+                final int memorySize) {
+            this.items = items;
+            this.dependencies = dependencies;
+            this.versions = versions;
+            this.memorySize = memorySize;
+        }
+
+        @Nullable static CachedResult of(final Sequence result, final XmldbURI[] dependencies, final long[] versions)
+                throws XPathException {
+            final long count = result.getItemCountLong();
+            if (count > MAX_CACHED_ITEMS) {
+                return null;
+            }
+            final Object[] items = new Object[(int) count];
+            long memorySize = 64 + dependencies.length * 64;
+            int i = 0;
+            for (final SequenceIterator it = result.iterate(); it.hasNext(); i++) {
+                final Item item = it.nextItem();
+                if (item instanceof NodeProxy) {
+                    items[i] = new StoredNodeRef((NodeProxy) item);
+                    memorySize += NODE_SIZE;
+                } else if (item instanceof AtomicValue) {
+                    items[i] = item;
+                    memorySize += ATOMIC_SIZE + item.getStringValue().length() * 2;
+                } else {
+                    // in-memory nodes, functions, maps and arrays are bound to the query
+                    return null;
+                }
+            }
+            return new CachedResult(items, dependencies, versions, (int) Math.min(memorySize, Integer.MAX_VALUE / 2));
+        }
+
+        boolean isValid(final CollectionModificationCounter counter) {
+            for (int i = 0; i < dependencies.length; i++) {
+                if (counter.getVersion(dependencies[i]) != versions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Sequence toSequence() {
+            final ValueSequence result = new ValueSequence(items.length);
+            for (final Object item : items) {
+                if (item instanceof StoredNodeRef) {
+                    result.add(((StoredNodeRef) item).toNodeProxy());
+                } else {
+                    result.add((Item) item);
+                }
+            }
+            return result;
+        }
+
+        int getMemorySize() {
+            return memorySize;
+        }
+    }
+
+    private static class StoredNodeRef {
+        private final DocumentImpl doc;
+        private final NodeId nodeId;
+        private final short nodeType;
+        private final long address;
+
+        StoredNodeRef(final NodeProxy node) {
+            this.doc = node.getOwnerDocument();
+            this.nodeId = node.getNodeId();
+            this.nodeType = node.getNodeType();
+            this.address = node.getInternalAddress();
+        }
+
+        NodeProxy toNodeProxy() {
+            return new NodeProxy(doc, nodeId, nodeType, address);
+        }
+    }
+
+    public static class Statistics {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long size;
+        private final long maxWeight;
+
+        /**
+         * @param hitCount the number of valid results returned from the cache
+         * @param missCount the number of lookups which did not find a valid result
+         * @param evictionCount the number of results evicted from the cache
+         * @param size the approximate number of results in the cache
+         * @param maxWeight the maximum memory size of the cache in bytes
+         */
+        @ConstructorProperties({"hitCount", "missCount", "evictionCount", "size", "maxWeight"})
+        public Statistics(final long hitCount, final long missCount, final long evictionCount, final long size,
+                final long maxWeight) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.size = size;
+            this.maxWeight = maxWeight;
+        }
+
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        public long getMissCount() {
+            return missCount;
+        }
+
+        public double getHitRate() {
+            final long requestCount = hitCount + missCount;
+            return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+        }
+
+        public long getEvictionCount() {
+            return evictionCount;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getMaxWeight() {
+            return maxWeight;
+        }
+    }
+}
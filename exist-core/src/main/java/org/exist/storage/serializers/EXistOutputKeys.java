@@ -44,6 +44,12 @@ public class EXistOutputKeys {
 	
 	public final static String COMPRESS_OUTPUT = "compress-output";
 
+    /**
+     * The size in bytes of the chunks in which XML-RPC sends large documents
+     * and results, as requested by the client.
+     */
+    public final static String CHUNK_SIZE = "chunk-size";
+
     public final static String ADD_EXIST_ID = "add-exist-id";
 
     public final static String XINCLUDE_PATH = "xinclude-path";
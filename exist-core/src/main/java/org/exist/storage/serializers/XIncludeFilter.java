@@ -110,6 +110,7 @@ public class XIncludeFilter implements Receiver {
     private Map<String, String> namespaces = new HashMap<>(10);
     private boolean inFallback = false;
     private ResourceError error = null;
+    private boolean includesProcessed = false;
 
     public XIncludeFilter(final Serializer serializer, final Receiver receiver) {
         this.receiver = receiver;
@@ -132,6 +133,17 @@ public class XIncludeFilter implements Receiver {
         this.document = doc;
         this.inFallback = false;
         this.error = null;
+        this.includesProcessed = false;
+    }
+
+    /**
+     * Returns true if an XInclude was processed since the current
+     * document was set, i.e. if the output depends on other resources.
+     *
+     * @return true if an XInclude was processed
+     */
+    public boolean hasProcessedIncludes() {
+        return includesProcessed;
     }
 
     public void setModuleLoadPath(final String path) {
@@ -217,6 +229,8 @@ public class XIncludeFilter implements Receiver {
                 }
 
                 final Optional<ResourceError> maybeResourceError = processXInclude(attribs.getValue(HREF_ATTRIB), attribs.getValue(XPOINTER_ATTRIB));
+                // set after processing, as the included document resets the filter
+                includesProcessed = true;
 
                 if (maybeResourceError.isPresent()) {
                     final ResourceError resourceError = maybeResourceError.get();
@@ -26,6 +26,7 @@ import org.exist.dom.QName;
 import org.exist.dom.persistent.SymbolTable;
 import org.exist.storage.ElementValue;
 import org.exist.storage.NodePath;
+import org.exist.xquery.Constants.Comparison;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
@@ -51,7 +52,13 @@ import java.util.List;
  */
 public class DataGuide {
 
-    private final static int BYTES_PER_NODE = 16;
+    private final static int BYTES_PER_NODE = 18;
+
+    /**
+     * Version of the file format. Version 1 did not start with the version and
+     * did not contain attributes or value statistics.
+     */
+    private final static int FORMAT_VERSION = 2;
 
     // the (virtual) root of the tree whose name will always be null.
     private NodeStats root = new NodeStatsRoot();
@@ -86,7 +93,7 @@ public class DataGuide {
         NodeStats current = root;
         for (int i = 0; i < path.length(); i++) {
             final QName qn = path.getComponent(i);
-            if (qn.getNameType() != ElementValue.ELEMENT) {
+            if (!isValidComponent(path, i)) {
                 return null;
             }
             current = current.addChild(qn);
@@ -98,6 +105,61 @@ public class DataGuide {
         return current;
     }
 
+    /**
+     * Add the statistics of an attribute of an element to the data guide.
+     * The frequency of the attribute is incremented by one.
+     *
+     * @param element the statistics of the element
+     * @param attribute the name of the attribute
+     *
+     * @return the statistics of the attribute
+     */
+    public NodeStats addAttribute(NodeStats element, QName attribute) {
+        final NodeStats stats = element.addChild(attribute);
+        stats.addOccurrence();
+        return stats;
+    }
+
+    /**
+     * Get the statistics of the given node path, creating it if
+     * necessary, but without incrementing its frequency.
+     *
+     * @param path the node path
+     *
+     * @return the node statistics or null if the path is not
+     *  a path of elements
+     */
+    public NodeStats get(NodePath path) {
+        NodeStats current = root;
+        for (int i = 0; i < path.length(); i++) {
+            if (!isValidComponent(path, i)) {
+                return null;
+            }
+            current = current.addChild(path.getComponent(i));
+        }
+        return current;
+    }
+
+    /**
+     * Find the statistics of the given node path.
+     *
+     * @param path the node path
+     *
+     * @return the node statistics or null if the path is unknown
+     */
+    protected NodeStats find(NodePath path) {
+        NodeStats current = root;
+        for (int i = 0; i < path.length() && current != null; i++) {
+            current = current.getChild(path.getComponent(i));
+        }
+        return current;
+    }
+
+    private static boolean isValidComponent(NodePath path, int i) {
+        final byte nameType = path.getComponent(i).getNameType();
+        return nameType == ElementValue.ELEMENT || (nameType == ElementValue.ATTRIBUTE && i == path.length() - 1);
+    }
+
     /**
      * Merge paths and statistics from this instance into the
      * other instance.
@@ -110,12 +172,80 @@ public class DataGuide {
         return other;
     }
 
+    /**
+     * Remove the nodes counted by this instance from the
+     * other instance, see {@link NodeStats#subtractStats(NodeStats)}.
+     *
+     * @param other the other data guide
+     * @return the other instance
+     */
+    public DataGuide subtractFrom(DataGuide other) {
+        root.subtractFrom(other, new NodePath());
+        return other;
+    }
+
     public int getMaxParentDepth(QName qname) {
         final NodeStats temp = new NodeStats(qname);
         root.getMaxParentDepth(qname, temp);
         return temp.getMaxDepth();
     }
 
+    /**
+     * @param qname the name of an element or attribute
+     * @return the number of nodes with the given name, on any path
+     */
+    public long getNodeCount(QName qname) {
+        long count = 0;
+        for (final NodeStats stats : find(qname)) {
+            count += stats.getNodeCount();
+        }
+        return count;
+    }
+
+    /**
+     * @param qname the name of an element or attribute
+     * @return the estimated number of distinct values of nodes with the given name,
+     *  or -1 if no values were recorded
+     */
+    public long getDistinctValueCount(QName qname) {
+        HyperLogLog merged = null;
+        for (final NodeStats stats : find(qname)) {
+            if (stats.getDistinctValues() != null) {
+                if (merged == null) {
+                    merged = new HyperLogLog();
+                }
+                merged.merge(stats.getDistinctValues());
+            }
+        }
+        return merged == null ? -1 : merged.estimate();
+    }
+
+    /**
+     * @param qname the name of an element or attribute
+     * @param relation the comparison operator
+     * @param value the number to compare the values of the nodes with
+     * @return the estimated fraction of numeric values satisfying the comparison,
+     *  or -1 if no numeric values were recorded
+     */
+    public double getSelectivity(QName qname, Comparison relation, double value) {
+        ValueHistogram merged = null;
+        for (final NodeStats stats : find(qname)) {
+            if (stats.getHistogram() != null) {
+                if (merged == null) {
+                    merged = new ValueHistogram();
+                }
+                merged.merge(stats.getHistogram());
+            }
+        }
+        return merged == null ? -1 : merged.getSelectivity(relation, value);
+    }
+
+    private List<NodeStats> find(QName qname) {
+        final List<NodeStats> matches = new ArrayList<>();
+        root.find(qname, matches);
+        return matches;
+    }
+
     public String toString() {
         final List<StringBuilder> paths = new ArrayList<>();
         root.dump(new StringBuilder(), paths);
@@ -134,7 +264,8 @@ public class DataGuide {
 
     public void write(SeekableByteChannel chan, SymbolTable symbols) throws IOException {
         final int nodeCount = root.getSize();
-        final ByteBuffer buffer = ByteBuffer.allocate(nodeCount * BYTES_PER_NODE + 4);
+        final ByteBuffer buffer = ByteBuffer.allocate(nodeCount * BYTES_PER_NODE + root.getValueStatsSize() + 8);
+        buffer.putInt(-FORMAT_VERSION);
         root.write(buffer, symbols);
         buffer.flip();
         chan.write(buffer);
@@ -144,7 +275,7 @@ public class DataGuide {
         final ByteBuffer buffer = ByteBuffer.allocate((int) chan.size());
         chan.read(buffer);
         buffer.flip();
-        root.read(buffer, symbols);
+        root.read(buffer, symbols, 1);
     }
 
     private static class NodeStatsRoot extends NodeStats {
@@ -164,13 +295,18 @@ public class DataGuide {
             }
         }
 
-        protected void read(ByteBuffer buffer, SymbolTable symbols) {
-            final int childCount = buffer.getInt();
+        protected void read(ByteBuffer buffer, SymbolTable symbols, int version) {
+            int childCount = buffer.getInt();
+            if (childCount < 0) {
+                // files written before version 2 start with the child count
+                version = -childCount;
+                childCount = buffer.getInt();
+            }
             if (childCount > 0) {
                 children = new NodeStats[childCount];
                 for (int i = 0; i < childCount; i++) {
                     children[i] = new NodeStats(null);
-                    children[i].read(buffer, symbols);
+                    children[i].read(buffer, symbols, version);
                 }
             }
         }
@@ -33,6 +33,10 @@ import org.exist.storage.DBBroker;
 import org.exist.storage.btree.DBException;
 import org.exist.util.DatabaseConfigurationException;
 import org.exist.util.FileUtils;
+import org.exist.xquery.Constants.Comparison;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.NumericValue;
 import org.w3c.dom.Element;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
@@ -66,15 +70,90 @@ public class IndexStatistics extends AbstractIndex implements RawBackupSupport {
         return ID;
     }
 
-    public int getMaxParentDepth(QName qname) {
+    public synchronized int getMaxParentDepth(QName qname) {
         return dataGuide.getMaxParentDepth(qname);
     }
 
-    protected void mergeStats(DataGuide other) {
+    /**
+     * Get the number of elements or attributes with the given name in the database.
+     *
+     * @param qname the name of the nodes, with the name type of an element or attribute
+     * @return the number of nodes
+     */
+    public synchronized long getNodeCount(QName qname) {
+        return dataGuide.getNodeCount(qname);
+    }
+
+    /**
+     * Estimate the number of distinct values of the elements or attributes with the
+     * given name. Only elements with simple content have a value.
+     *
+     * @param qname the name of the nodes, with the name type of an element or attribute
+     * @return the estimated number of distinct values, or -1 if unknown
+     */
+    public synchronized long getDistinctValueCount(QName qname) {
+        return dataGuide.getDistinctValueCount(qname);
+    }
+
+    /**
+     * Estimate the fraction of the numeric values of the elements or attributes with
+     * the given name which satisfy a comparison.
+     *
+     * @param qname the name of the nodes, with the name type of an element or attribute
+     * @param relation the comparison operator
+     * @param value the number to compare with
+     * @return the fraction between 0 and 1, or -1 if unknown
+     */
+    public synchronized double getSelectivity(QName qname, Comparison relation, double value) {
+        return dataGuide.getSelectivity(qname, relation, value);
+    }
+
+    /**
+     * Estimate the number of elements or attributes with the given name, whose value
+     * satisfies the comparison with the given value. Used by the query optimizer to
+     * order index lookups.
+     *
+     * @param qname the name of the nodes, with the name type of an element or attribute
+     * @param relation the comparison operator
+     * @param value the value to compare with
+     * @return the estimated number of nodes, or -1 if unknown
+     */
+    public synchronized long estimateCount(QName qname, Comparison relation, AtomicValue value) {
+        final long count = dataGuide.getNodeCount(qname);
+        if (count == 0) {
+            return 0;
+        }
+        if (relation == Comparison.EQ || relation == Comparison.NEQ) {
+            final long distinct = dataGuide.getDistinctValueCount(qname);
+            if (distinct <= 0) {
+                return -1;
+            }
+            final long equal = Math.max(1, count / distinct);
+            return relation == Comparison.EQ ? equal : count - equal;
+        }
+        if (value instanceof NumericValue) {
+            try {
+                final double selectivity = dataGuide.getSelectivity(qname, relation,
+                        ((NumericValue) value).getDouble());
+                if (selectivity >= 0) {
+                    return Math.round(count * selectivity);
+                }
+            } catch (final XPathException e) {
+                LOG.debug("Cannot estimate the selectivity of {}: {}", value, e.getMessage());
+            }
+        }
+        return -1;
+    }
+
+    protected synchronized void mergeStats(DataGuide other) {
         dataGuide = other.mergeInto(dataGuide);
     }
 
-    protected void updateStats(DataGuide newGuide) {
+    protected synchronized void subtractStats(DataGuide other) {
+        dataGuide = other.subtractFrom(dataGuide);
+    }
+
+    protected synchronized void updateStats(DataGuide newGuide) {
         dataGuide = newGuide;
     }
 
@@ -107,7 +186,7 @@ public class IndexStatistics extends AbstractIndex implements RawBackupSupport {
     public void close() throws DBException {
     }
 
-    public void sync() throws DBException {
+    public synchronized void sync() throws DBException {
         try(final SeekableByteChannel chan = Files.newByteChannel(dataFile,
                 StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
             dataGuide.write(chan, getBrokerPool().getSymbols());
@@ -130,11 +209,11 @@ public class IndexStatistics extends AbstractIndex implements RawBackupSupport {
         return true;
     }
 
-    public void toSAX(ContentHandler handler) throws SAXException {
+    public synchronized void toSAX(ContentHandler handler) throws SAXException {
         dataGuide.toSAX(handler);
     }
 
-    public String toString() {
+    public synchronized String toString() {
         return dataGuide.toString();
     }
 
@@ -22,6 +22,8 @@
 package org.exist.storage.statistics;
 
 import org.exist.collections.Collection;
+import org.exist.dom.persistent.AbstractCharacterData;
+import org.exist.dom.persistent.AttrImpl;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.DocumentSet;
 import org.exist.dom.persistent.ElementImpl;
@@ -38,6 +40,7 @@ import org.exist.indexing.StreamListener.ReindexMode;
 import org.exist.numbering.NodeId;
 import org.exist.stax.ExtendedXMLStreamReader;
 import org.exist.storage.DBBroker;
+import org.exist.storage.ElementValue;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.NodePath;
 import org.exist.storage.btree.BTreeCallback;
@@ -55,7 +58,9 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -129,10 +134,14 @@ public class IndexStatisticsWorker implements IndexWorker {
 
     @Override
     public StreamListener getListener() {
-        if (mode == ReindexMode.STORE) {
-            return listener;
+        switch (mode) {
+            case STORE:
+            case REMOVE_ALL_NODES:
+            case REMOVE_SOME_NODES:
+                return listener;
+            default:
+                return null;
         }
-        return null;
     }
 
     @Override
@@ -143,8 +152,11 @@ public class IndexStatisticsWorker implements IndexWorker {
     @Override
     public void flush() {
         if (perDocGuide != null) {
-            index.mergeStats(perDocGuide);
-//            System.out.println(index.toString());
+            if (mode == ReindexMode.REMOVE_ALL_NODES || mode == ReindexMode.REMOVE_SOME_NODES) {
+                index.subtractStats(perDocGuide);
+            } else {
+                index.mergeStats(perDocGuide);
+            }
         }
         perDocGuide = new DataGuide();
     }
@@ -166,6 +178,7 @@ public class IndexStatisticsWorker implements IndexWorker {
         try {
             final NodePath path = new NodePath();
             final Deque<NodeStats> stack = new ArrayDeque<>();
+            final ValueCollector values = new ValueCollector();
             final ExtendedXMLStreamReader reader = broker.getXMLStreamReader(root, false);
             while (reader.hasNext()) {
                 final int status = reader.next();
@@ -180,12 +193,23 @@ public class IndexStatisticsWorker implements IndexWorker {
                         path.addComponent(qname);
                         final NodeStats nodeStats = perDocGuide.add(path);
                         stack.push(nodeStats);
+                        values.startElement();
+                        for (int i = 0; i < reader.getAttributeCount(); i++) {
+                            perDocGuide.addAttribute(nodeStats, new QName(reader.getAttributeQName(i), ElementValue.ATTRIBUTE))
+                                    .addValue(reader.getAttributeValue(i));
+                        }
+                        break;
+
+                    case XMLStreamReader.CHARACTERS:
+                    case XMLStreamReader.CDATA:
+                        values.characters(reader.getText());
                         break;
 
                     case XMLStreamReader.END_ELEMENT:
                         path.removeLastComponent();
                         final NodeStats stats = stack.pop();
                         stats.updateMaxDepth();
+                        values.endElement(stats);
 
                         final NodeId otherId = (NodeId) reader.getProperty(ExtendedXMLStreamReader.PROPERTY_NODE_ID);
                         final int otherLevel = otherId.getTreeLevel();
@@ -219,6 +243,7 @@ public class IndexStatisticsWorker implements IndexWorker {
 
     private class StatisticsListener extends AbstractStreamListener {
         private final Deque<NodeStats> stack = new ArrayDeque<>();
+        private final ValueCollector values = new ValueCollector();
 
         @Override
         public void startElement(final Txn transaction, final ElementImpl element, final NodePath path) {
@@ -229,15 +254,37 @@ public class IndexStatisticsWorker implements IndexWorker {
                 }
                 final NodeStats nodeStats = perDocGuide.add(path);
                 stack.push(nodeStats);
+                values.startElement();
+            }
+        }
+
+        @Override
+        public void attribute(final Txn transaction, final AttrImpl attrib, final NodePath path) {
+            super.attribute(transaction, attrib, path);
+            if (perDocGuide != null) {
+                // attributes may be removed without their element
+                final NodeStats element = stack.isEmpty() ? perDocGuide.get(path) : stack.peek();
+                if (element != null) {
+                    perDocGuide.addAttribute(element, attrib.getQName()).addValue(attrib.getValue());
+                }
+            }
+        }
+
+        @Override
+        public void characters(final Txn transaction, final AbstractCharacterData text, final NodePath path) {
+            super.characters(transaction, text, path);
+            if (perDocGuide != null && !stack.isEmpty()) {
+                values.characters(text.getXMLString());
             }
         }
 
         @Override
         public void endElement(final Txn transaction, final ElementImpl element, final NodePath path) {
             super.endElement(transaction, element, path);
-            if (perDocGuide != null) {
+            if (perDocGuide != null && !stack.isEmpty()) {
                 final NodeStats stats = stack.pop();
                 stats.updateMaxDepth();
+                values.endElement(stats);
             }
         }
 
@@ -247,6 +294,56 @@ public class IndexStatisticsWorker implements IndexWorker {
         }
     }
 
+    /**
+     * Collects the string values of elements with simple content. Values of
+     * mixed content or longer than {@link #MAX_VALUE_LENGTH} characters are
+     * not recorded.
+     */
+    private static class ValueCollector {
+        private static final int MAX_VALUE_LENGTH = 256;
+
+        private final List<StringBuilder> texts = new ArrayList<>();
+        private final List<Boolean> simple = new ArrayList<>();
+        private int depth = 0;
+
+        void startElement() {
+            if (depth > 0) {
+                simple.set(depth - 1, Boolean.FALSE);
+            }
+            if (texts.size() == depth) {
+                texts.add(new StringBuilder());
+                simple.add(Boolean.TRUE);
+            } else {
+                texts.get(depth).setLength(0);
+                simple.set(depth, Boolean.TRUE);
+            }
+            depth++;
+        }
+
+        void characters(final CharSequence chars) {
+            if (depth == 0 || !simple.get(depth - 1)) {
+                return;
+            }
+            final StringBuilder text = texts.get(depth - 1);
+            if (text.length() + chars.length() > MAX_VALUE_LENGTH) {
+                simple.set(depth - 1, Boolean.FALSE);
+            } else {
+                text.append(chars);
+            }
+        }
+
+        void endElement(final NodeStats stats) {
+            if (depth == 0) {
+                return;
+            }
+            depth--;
+            final StringBuilder text = texts.get(depth);
+            if (simple.get(depth) && text.length() > 0) {
+                stats.addValue(text);
+            }
+        }
+    }
+
     private class DocumentCallback implements BTreeCallback {
         private final DBBroker broker;
 
@@ -24,6 +24,7 @@ package org.exist.storage.statistics;
 import org.exist.Namespaces;
 import org.exist.dom.QName;
 import org.exist.dom.persistent.SymbolTable;
+import org.exist.storage.ElementValue;
 import org.exist.storage.NodePath;
 import org.w3c.dom.Node;
 import org.xml.sax.ContentHandler;
@@ -38,10 +39,17 @@ import java.util.List;
  */
 class NodeStats {
 
+    private static final byte HAS_DISTINCT_VALUES = 1;
+    private static final byte HAS_HISTOGRAM = 2;
+
     private QName qname;
     private int nodeCount = 0;
     private int maxDepth = 0;
 
+    // statistics on the values of nodes with simple content, created with the first value
+    private HyperLogLog distinctValues = null;
+    private ValueHistogram histogram = null;
+
     transient private int depth = 0;
 
     protected NodeStats parent = null;
@@ -74,13 +82,38 @@ class NodeStats {
         nodeCount++;
     }
 
-    protected NodeStats addChild(QName qn) {
-        if (children != null) {
-            for (final NodeStats child : children) {
-                if (child.qname.equals(qn)) {
-                    return child;
-                }
+    public QName getQName() {
+        return qname;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Add the value of a node with simple content.
+     *
+     * @param value the string value of the node
+     */
+    protected void addValue(final CharSequence value) {
+        if (distinctValues == null) {
+            distinctValues = new HyperLogLog();
+        }
+        distinctValues.add(value);
+
+        final double number = ValueHistogram.parse(value);
+        if (!Double.isNaN(number)) {
+            if (histogram == null) {
+                histogram = new ValueHistogram();
             }
+            histogram.add(number);
+        }
+    }
+
+    protected NodeStats addChild(QName qn) {
+        final NodeStats existing = getChild(qn);
+        if (existing != null) {
+            return existing;
         }
         if (children == null) {
             children = new NodeStats[1];
@@ -114,6 +147,87 @@ class NodeStats {
         nodeCount += other.nodeCount;
         if (other.maxDepth > maxDepth)
             {maxDepth = other.maxDepth;}
+        if (other.distinctValues != null) {
+            if (distinctValues == null) {
+                distinctValues = new HyperLogLog();
+            }
+            distinctValues.merge(other.distinctValues);
+        }
+        if (other.histogram != null) {
+            if (histogram == null) {
+                histogram = new ValueHistogram();
+            }
+            histogram.merge(other.histogram);
+        }
+    }
+
+    /**
+     * Remove the nodes counted by the other statistics. The maximum depth and the
+     * distinct values cannot be reduced, they remain upper bounds.
+     *
+     * @param other the statistics of the removed nodes
+     */
+    protected void subtractStats(NodeStats other) {
+        nodeCount = Math.max(0, nodeCount - other.nodeCount);
+        if (histogram != null && other.histogram != null) {
+            histogram.subtract(other.histogram);
+        }
+    }
+
+    protected void subtractFrom(DataGuide other, NodePath currentPath) {
+        NodePath newPath;
+        if (qname == null)
+            {newPath = currentPath;}
+        else {
+            newPath = new NodePath(currentPath);
+            newPath.addComponent(qname);
+            final NodeStats stats = other.find(newPath);
+            if (stats != null) {
+                stats.subtractStats(this);
+            }
+        }
+
+        if (children != null) {
+            for (final NodeStats child : children) {
+                child.subtractFrom(other, newPath);
+            }
+        }
+    }
+
+    /**
+     * Collect the statistics of all nodes with the given name.
+     *
+     * @param name the name of the nodes
+     * @param matches the list to add the statistics to
+     */
+    protected void find(QName name, List<NodeStats> matches) {
+        if (qname != null && qname.equals(name) && qname.getNameType() == name.getNameType()) {
+            matches.add(this);
+        }
+        if (children != null) {
+            for (NodeStats child : children) {
+                child.find(name, matches);
+            }
+        }
+    }
+
+    protected NodeStats getChild(QName qn) {
+        if (children != null) {
+            for (final NodeStats child : children) {
+                if (child.qname.equals(qn) && child.qname.getNameType() == qn.getNameType()) {
+                    return child;
+                }
+            }
+        }
+        return null;
+    }
+
+    protected HyperLogLog getDistinctValues() {
+        return distinctValues;
+    }
+
+    protected ValueHistogram getHistogram() {
+        return histogram;
     }
 
     protected int getSize() {
@@ -126,8 +240,27 @@ class NodeStats {
         return s;
     }
 
+    /**
+     * @return the number of bytes needed to write the value statistics of this node and its descendants
+     */
+    protected int getValueStatsSize() {
+        int s = 0;
+        if (distinctValues != null) {
+            s += HyperLogLog.REGISTERS;
+        }
+        if (histogram != null) {
+            s += histogram.getSize();
+        }
+        if (children != null) {
+            for (NodeStats child : children) {
+                s += child.getValueStatsSize();
+            }
+        }
+        return s;
+    }
+
     protected void getMaxParentDepth(QName name, NodeStats max) {
-        if (parent != null && qname != null && qname.equals(name)) {
+        if (parent != null && qname != null && qname.equals(name) && qname.getNameType() == name.getNameType()) {
             max.maxDepth = Math.max(parent.maxDepth, max.maxDepth);
         }
         if (children != null) {
@@ -143,6 +276,15 @@ class NodeStats {
         buffer.putInt(nodeCount);
         buffer.putInt(maxDepth);
 
+        buffer.put(qname.getNameType());
+        buffer.put((byte) ((distinctValues == null ? 0 : HAS_DISTINCT_VALUES) | (histogram == null ? 0 : HAS_HISTOGRAM)));
+        if (distinctValues != null) {
+            distinctValues.write(buffer);
+        }
+        if (histogram != null) {
+            histogram.write(buffer);
+        }
+
         buffer.putInt(children == null ? 0: children.length);
         if (children != null) {
             for (NodeStats child : children) {
@@ -151,22 +293,36 @@ class NodeStats {
         }
     }
 
-    protected void read(ByteBuffer buffer, SymbolTable symbols) {
+    protected void read(ByteBuffer buffer, SymbolTable symbols, int version) {
         final short nsid = buffer.getShort();
         final short localid = buffer.getShort();
         final String namespaceURI = symbols.getNamespace(nsid);
         final String localName = symbols.getName(localid);
-        qname = symbols.getQName(Node.ELEMENT_NODE, namespaceURI,
-            localName, "");
         nodeCount = buffer.getInt();
         maxDepth = buffer.getInt();
 
+        byte nameType = ElementValue.ELEMENT;
+        if (version > 1) {
+            nameType = buffer.get();
+            final byte flags = buffer.get();
+            if ((flags & HAS_DISTINCT_VALUES) != 0) {
+                distinctValues = new HyperLogLog();
+                distinctValues.read(buffer);
+            }
+            if ((flags & HAS_HISTOGRAM) != 0) {
+                histogram = new ValueHistogram();
+                histogram.read(buffer);
+            }
+        }
+        qname = symbols.getQName(nameType == ElementValue.ATTRIBUTE ? Node.ATTRIBUTE_NODE : Node.ELEMENT_NODE,
+            namespaceURI, localName, "");
+
         final int childCount = buffer.getInt();
         if (childCount > 0) {
             children = new NodeStats[childCount];
             for (int i = 0; i < childCount; i++) {
                 children[i] = new NodeStats(this, null);
-                children[i].read(buffer, symbols);
+                children[i].read(buffer, symbols, version);
             }
         }
     }
@@ -179,9 +335,16 @@ class NodeStats {
             newPath = new StringBuilder(currentPath);
             if (newPath.length() > 0)
                 {newPath.append(" -> ");}
+            if (qname.getNameType() == ElementValue.ATTRIBUTE) {
+                newPath.append('@');
+            }
             newPath.append(qname);
             newPath.append('[').append(nodeCount).append(',');
-            newPath.append(maxDepth).append(']');
+            newPath.append(maxDepth);
+            if (distinctValues != null) {
+                newPath.append(',').append(distinctValues.estimate());
+            }
+            newPath.append(']');
         }
         paths.add(newPath);
         if (children != null) {
@@ -197,6 +360,15 @@ class NodeStats {
         attribs.addAttribute("", "namespace", "namespace", "CDATA", qname.getNamespaceURI());
         attribs.addAttribute("", "node-count", "node-count", "CDATA", Integer.toString(nodeCount));
         attribs.addAttribute("", "max-depth", "max-depth", "CDATA", Integer.toString(maxDepth));
+        if (qname.getNameType() == ElementValue.ATTRIBUTE) {
+            attribs.addAttribute("", "type", "type", "CDATA", "attribute");
+        }
+        if (distinctValues != null) {
+            attribs.addAttribute("", "distinct-values", "distinct-values", "CDATA", Long.toString(distinctValues.estimate()));
+        }
+        if (histogram != null) {
+            attribs.addAttribute("", "numeric-values", "numeric-values", "CDATA", Integer.toString(histogram.getTotal()));
+        }
         handler.startElement(Namespaces.EXIST_NS, "node", "node", attribs);
         if (children != null) {
             for (NodeStats child : children) {
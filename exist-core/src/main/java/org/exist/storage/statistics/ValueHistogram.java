@@ -0,0 +1,226 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage.statistics;
+
+import org.exist.xquery.Constants.Comparison;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Histogram of the numeric values of a node. The buckets have a logarithmic
+ * width: there is one bucket per sign and binary exponent, covering the values
+ * from 2<sup>e</sup> to 2<sup>e+1</sup>, and one bucket for zero. Within a bucket,
+ * values are assumed to be distributed uniformly.
+ *
+ * As the bucket of a value does not depend on other values, histograms can be
+ * merged, and values can be removed again.
+ */
+final class ValueHistogram {
+
+    private static final int MIN_EXPONENT = -16;
+    private static final int MAX_EXPONENT = 47;
+    private static final int EXPONENTS = MAX_EXPONENT - MIN_EXPONENT + 1;
+
+    /** buckets for negative values, ordered by value */
+    private static final int NEGATIVE = 0;
+    private static final int ZERO = EXPONENTS;
+    private static final int POSITIVE = ZERO + 1;
+    static final int BUCKETS = POSITIVE + EXPONENTS;
+
+    private final int[] counts = new int[BUCKETS];
+    private int total = 0;
+
+    void add(final double value) {
+        counts[bucket(value)]++;
+        total++;
+    }
+
+    void remove(final double value) {
+        final int bucket = bucket(value);
+        if (counts[bucket] > 0) {
+            counts[bucket]--;
+            total--;
+        }
+    }
+
+    void merge(final ValueHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+    }
+
+    void subtract(final ValueHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            final int count = Math.min(counts[i], other.counts[i]);
+            counts[i] -= count;
+            total -= count;
+        }
+    }
+
+    int getTotal() {
+        return total;
+    }
+
+    /**
+     * Estimate the fraction of values which satisfy the comparison with the given value.
+     *
+     * @param relation the comparison operator
+     * @param value the value to compare with
+     *
+     * @return the estimated fraction of values between 0 and 1, or -1 if the histogram is empty
+     *  or the operator is not supported
+     */
+    double getSelectivity(final Comparison relation, final double value) {
+        if (total == 0 || Double.isNaN(value)) {
+            return -1;
+        }
+        final int bucket = bucket(value);
+        double below = 0;
+        for (int i = 0; i < bucket; i++) {
+            below += counts[i];
+        }
+        final double inBucket = counts[bucket];
+        final double equal = Math.min(inBucket, Math.max(1.0, inBucket / 16));
+        final double fraction = fractionBelow(bucket, value);
+        final double less = below + (inBucket - equal) * fraction;
+        switch (relation) {
+            case LT:
+                return less / total;
+            case LTEQ:
+                return (less + equal) / total;
+            case GT:
+                return (total - less - equal) / total;
+            case GTEQ:
+                return (total - less) / total;
+            case EQ:
+                return equal / total;
+            case NEQ:
+                return (total - equal) / total;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * The fraction of the range of the bucket below the given value.
+     */
+    private static double fractionBelow(final int bucket, final double value) {
+        if (bucket == ZERO) {
+            return 0.5;
+        }
+        final double abs = Math.abs(value);
+        final int exponent = Math.getExponent(abs);
+        if (exponent < MIN_EXPONENT || exponent > MAX_EXPONENT) {
+            return 0.5;
+        }
+        final double lower = Math.scalb(1.0, exponent);
+        final double position = (abs - lower) / lower;
+        // the buckets of negative values are ordered by descending absolute value
+        return value < 0 ? 1.0 - position : position;
+    }
+
+    private static int bucket(final double value) {
+        if (value == 0.0) {
+            return ZERO;
+        }
+        final int exponent = Math.max(MIN_EXPONENT, Math.min(MAX_EXPONENT, Math.getExponent(value)));
+        if (value < 0) {
+            return NEGATIVE + MAX_EXPONENT - exponent;
+        }
+        return POSITIVE + exponent - MIN_EXPONENT;
+    }
+
+    /**
+     * Parse the value of a node as a number. Only values which look like a
+     * decimal or double literal are parsed, to avoid the cost of exceptions for
+     * the majority of non-numeric values.
+     *
+     * @param value the value of the node
+     * @return the number, or NaN if the value is not numeric
+     */
+    static double parse(final CharSequence value) {
+        int start = 0;
+        int end = value.length();
+        while (start < end && Character.isWhitespace(value.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(value.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end || end - start > 32) {
+            return Double.NaN;
+        }
+        boolean digit = false;
+        for (int i = start; i < end; i++) {
+            final char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digit = true;
+            } else if (c != '.' && c != '-' && c != '+' && c != 'e' && c != 'E') {
+                return Double.NaN;
+            }
+        }
+        if (!digit) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value.subSequence(start, end).toString());
+        } catch (final NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    void write(final ByteBuffer buffer) {
+        int used = 0;
+        for (final int count : counts) {
+            if (count > 0) {
+                used++;
+            }
+        }
+        buffer.put((byte) used);
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] > 0) {
+                buffer.put((byte) i);
+                buffer.putInt(counts[i]);
+            }
+        }
+    }
+
+    void read(final ByteBuffer buffer) {
+        final int used = buffer.get() & 0xFF;
+        for (int i = 0; i < used; i++) {
+            final int bucket = buffer.get() & 0xFF;
+            counts[bucket] = buffer.getInt();
+            total += counts[bucket];
+        }
+    }
+
+    int getSize() {
+        int size = 1;
+        for (final int count : counts) {
+            if (count > 0) {
+                size += 5;
+            }
+        }
+        return size;
+    }
+}
@@ -55,6 +55,8 @@ import org.exist.storage.IndexSpec;
 import org.exist.storage.NativeBroker;
 import org.exist.storage.NativeValueIndex;
 import org.exist.storage.XQueryPool;
+import org.exist.storage.SerializedDocumentCache;
+import org.exist.storage.XQueryResultCache;
 import org.exist.storage.journal.Journal;
 import org.exist.storage.serializers.CustomMatchListenerFactory;
 import org.exist.storage.serializers.Serializer;
@@ -679,6 +681,19 @@ public class Configuration implements ErrorHandler
             LOG.debug(Serializer.PROPERTY_ADD_EXIST_ID + ": {}", config.get(Serializer.PROPERTY_ADD_EXIST_ID));
         }
 
+        final String outputCacheSize = getConfigAttributeValue( serializer, SerializedDocumentCache.OUTPUT_CACHE_SIZE_ATTRIBUTE );
+
+        if( outputCacheSize != null ) {
+
+            try {
+                config.put( SerializedDocumentCache.PROPERTY_OUTPUT_CACHE_SIZE, Integer.valueOf(outputCacheSize) );
+                LOG.debug(SerializedDocumentCache.PROPERTY_OUTPUT_CACHE_SIZE + ": {}", config.get(SerializedDocumentCache.PROPERTY_OUTPUT_CACHE_SIZE));
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+
         final String tagElementMatches = getConfigAttributeValue( serializer, Serializer.TAG_MATCHING_ELEMENTS_ATTRIBUTE );
 
         if( tagElementMatches != null ) {
@@ -1186,6 +1201,19 @@ public class Configuration implements ErrorHandler
                 LOG.warn( e );
             }
         }
+
+        final String resultCacheSize = getConfigAttributeValue( queryPool, XQueryResultCache.RESULT_CACHE_SIZE_ATTRIBUTE );
+
+        if( resultCacheSize != null ) {
+
+            try {
+                config.put( XQueryResultCache.PROPERTY_RESULT_CACHE_SIZE, Integer.valueOf(resultCacheSize) );
+                LOG.debug(XQueryResultCache.PROPERTY_RESULT_CACHE_SIZE + ": {}", config.get(XQueryResultCache.PROPERTY_RESULT_CACHE_SIZE));
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
     }
     
     public static class StartupTriggerConfig {
@@ -1376,6 +1404,19 @@ public class Configuration implements ErrorHandler
             LOG.debug(Indexer.PROPERTY_PRESERVE_WS_MIXED_CONTENT + ": {}", config.get(Indexer.PROPERTY_PRESERVE_WS_MIXED_CONTENT));
         }
 
+        final String singlePassMaxSize = getConfigAttributeValue( indexer, Indexer.SINGLE_PASS_MAX_SIZE_ATTRIBUTE );
+
+        if( singlePassMaxSize != null ) {
+
+            try {
+                config.put( Indexer.PROPERTY_SINGLE_PASS_MAX_SIZE, Integer.valueOf(singlePassMaxSize) );
+                LOG.debug(Indexer.PROPERTY_SINGLE_PASS_MAX_SIZE + ": {}", config.get(Indexer.PROPERTY_SINGLE_PASS_MAX_SIZE));
+            }
+            catch( final NumberFormatException e ) {
+                LOG.warn( e );
+            }
+        }
+
         // index settings
         final NodeList cl = doc.getElementsByTagName( Indexer.CONFIGURATION_INDEX_ELEMENT_NAME );
 
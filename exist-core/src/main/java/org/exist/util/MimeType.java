@@ -54,6 +54,8 @@ public class MimeType {
         new MimeType("text/plain", BINARY);
     public final static MimeType URL_ENCODED_TYPE =
     	new MimeType("application/x-www-form-urlencoded", BINARY);
+    public final static MimeType ZIP_TYPE =
+        new MimeType("application/zip", BINARY);
 
 
     private String name;
@@ -35,6 +35,8 @@ public class SerializerObjectFactory extends BaseKeyedPooledObjectFactory<Class<
             return new DOMStreamer();
         } else if (key == ExtendedDOMStreamer.class) {
             return new ExtendedDOMStreamer();
+        } else if (key == UTF8Writer.class) {
+            return new UTF8Writer();
         }
         return null;
     }
@@ -53,6 +55,8 @@ public class SerializerObjectFactory extends BaseKeyedPooledObjectFactory<Class<
             ((DOMStreamer) p.getObject()).reset();
         } else if (key == ExtendedDOMStreamer.class) {
             ((ExtendedDOMStreamer) p.getObject()).reset();
+        } else if (key == UTF8Writer.class) {
+            ((UTF8Writer) p.getObject()).reset();
         }
     }
 
@@ -64,6 +68,8 @@ public class SerializerObjectFactory extends BaseKeyedPooledObjectFactory<Class<
             ((DOMStreamer) p.getObject()).reset();
         } else if (key == ExtendedDOMStreamer.class) {
             ((ExtendedDOMStreamer) p.getObject()).reset();
+        } else if (key == UTF8Writer.class) {
+            ((UTF8Writer) p.getObject()).reset();
         }
     }
 }
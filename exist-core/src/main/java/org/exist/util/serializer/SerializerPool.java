@@ -26,6 +26,12 @@ import org.apache.commons.pool2.KeyedPooledObjectFactory;
 import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
 import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
 
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
 @ThreadSafe
 public class SerializerPool extends GenericKeyedObjectPool<Class<?>, Object> {
 
@@ -76,4 +82,34 @@ public class SerializerPool extends GenericKeyedObjectPool<Class<?>, Object> {
             throw new IllegalStateException("Error while returning "+ obj.getClass().getSimpleName() + ": " + e.getMessage());
         }
     }
+
+    /**
+     * Get a writer for serializing to a stream. For UTF-8, a pooled {@link UTF8Writer}
+     * is returned, which has to be given back with {@link #returnWriter(Writer)}.
+     *
+     * @param os the stream to write to
+     * @param encoding the name of the character encoding
+     * @return the writer
+     * @throws UnsupportedEncodingException if the encoding is not supported
+     */
+    public Writer borrowWriter(final OutputStream os, final String encoding) throws UnsupportedEncodingException {
+        if (encoding == null || StandardCharsets.UTF_8.name().equalsIgnoreCase(encoding) || "UTF8".equalsIgnoreCase(encoding)) {
+            final UTF8Writer writer = (UTF8Writer) borrowObject(UTF8Writer.class);
+            writer.setOutputStream(os);
+            return writer;
+        }
+        return new OutputStreamWriter(os, encoding);
+    }
+
+    /**
+     * Give back a writer obtained from {@link #borrowWriter(OutputStream, String)}.
+     * Output which has not been flushed is discarded.
+     *
+     * @param writer the writer, may be null
+     */
+    public void returnWriter(final Writer writer) {
+        if (writer instanceof UTF8Writer) {
+            returnObject(writer);
+        }
+    }
 }
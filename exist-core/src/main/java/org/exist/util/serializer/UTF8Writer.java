@@ -0,0 +1,207 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.util.serializer;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * A writer which encodes characters as UTF-8 directly into a byte buffer
+ * and passes the buffer to an output stream when it is full.
+ *
+ * In contrast to {@link java.io.OutputStreamWriter}, it does not synchronize,
+ * does not need a {@link java.nio.charset.CharsetEncoder}, and encodes
+ * {@link CharSequence}s without copying them into a String first. The buffer
+ * is kept when the writer is reset, so instances are pooled by the
+ * {@link SerializerPool}, see {@link SerializerPool#borrowWriter(OutputStream, String)}.
+ *
+ * Like {@link java.io.OutputStreamWriter}, unpaired surrogates are replaced by '?'.
+ */
+@NotThreadSafe
+public class UTF8Writer extends Writer {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count = 0;
+    private OutputStream out = null;
+    private char highSurrogate = 0;
+
+    public UTF8Writer() {
+    }
+
+    public UTF8Writer(final OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Set the stream the encoded output is written to.
+     *
+     * @param out the output stream
+     */
+    public void setOutputStream(final OutputStream out) {
+        this.out = out;
+        this.count = 0;
+        this.highSurrogate = 0;
+    }
+
+    /**
+     * Release the output stream. Output which has not been
+     * flushed is discarded.
+     */
+    public void reset() {
+        setOutputStream(null);
+    }
+
+    @Override
+    public void write(final int c) throws IOException {
+        if (count + 4 > BUFFER_SIZE) {
+            flushBuffer();
+        }
+        encode((char) c);
+    }
+
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) throws IOException {
+        final int end = off + len;
+        for (int i = off; i < end; i++) {
+            if (count + 4 > BUFFER_SIZE) {
+                flushBuffer();
+            }
+            final char c = cbuf[i];
+            if (c < 0x80 && highSurrogate == 0) {
+                buffer[count++] = (byte) c;
+            } else {
+                encode(c);
+            }
+        }
+    }
+
+    @Override
+    public void write(final String str, final int off, final int len) throws IOException {
+        append(str, off, off + len);
+    }
+
+    @Override
+    public Writer append(final CharSequence csq) throws IOException {
+        final CharSequence seq = csq == null ? "null" : csq;
+        return append(seq, 0, seq.length());
+    }
+
+    @Override
+    public Writer append(final CharSequence csq, final int start, final int end) throws IOException {
+        final CharSequence seq = csq == null ? "null" : csq;
+        for (int i = start; i < end; i++) {
+            if (count + 4 > BUFFER_SIZE) {
+                flushBuffer();
+            }
+            final char c = seq.charAt(i);
+            if (c < 0x80 && highSurrogate == 0) {
+                buffer[count++] = (byte) c;
+            } else {
+                encode(c);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Writer append(final char c) throws IOException {
+        write(c);
+        return this;
+    }
+
+    /**
+     * Encode a single char. The buffer must have room for 4 bytes,
+     * which is the maximum written for one char.
+     */
+    private void encode(final char c) {
+        if (highSurrogate != 0) {
+            final char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                final int codePoint = Character.toCodePoint(high, c);
+                buffer[count++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[count++] = (byte) (0x80 | (codePoint & 0x3f));
+                return;
+            }
+            // unpaired high surrogate, at most 3 more bytes follow
+            buffer[count++] = '?';
+        }
+
+        if (c < 0x80) {
+            buffer[count++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[count++] = (byte) (0xc0 | (c >> 6));
+            buffer[count++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buffer[count++] = '?';
+        } else {
+            buffer[count++] = (byte) (0xe0 | (c >> 12));
+            buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buffer[count++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    /**
+     * Pass the encoded output to the output stream, without flushing the stream.
+     *
+     * @throws IOException if the output cannot be written
+     */
+    public void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out == null) {
+            return;
+        }
+        try {
+            if (highSurrogate != 0) {
+                // unpaired high surrogate at the end of the output
+                highSurrogate = 0;
+                write('?');
+            }
+            flushBuffer();
+        } finally {
+            out.close();
+            out = null;
+        }
+    }
+}
@@ -623,8 +623,18 @@ public class XMLWriter {
     }
 
     private void writeCharSeq(final CharSequence ch, final int start, final int end) throws IOException {
-        for(int i = start; i < end; i++) {
-            writer.write(ch.charAt(i));
+        if(start == end) {
+            return;
+        }
+        if(ch instanceof String) {
+            writer.write((String) ch, start, end - start);
+        } else if(writer instanceof UTF8Writer) {
+            // encodes the chars without copying them into a string
+            writer.append(ch, start, end);
+        } else {
+            for(int i = start; i < end; i++) {
+                writer.write(ch.charAt(i));
+            }
         }
     }
 
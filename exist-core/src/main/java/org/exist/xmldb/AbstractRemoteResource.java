@@ -270,7 +270,7 @@ public abstract class AbstractRemoteResource extends AbstractRemote
             command = "getDocumentData";
             params.add(path.toString());
         }
-        Properties properties = getProperties();
+        final Properties properties = getDownloadProperties();
         params.add(properties);
 
         try {
@@ -359,6 +359,25 @@ public abstract class AbstractRemoteResource extends AbstractRemote
         }
     }
 
+    /**
+     * Get the properties to download the content with. If the length of the
+     * content is known, chunks of that size are requested with
+     * {@link EXistOutputKeys#CHUNK_SIZE}, so the content is retrieved in as few
+     * calls as the server allows. A chunk size set by the user is kept.
+     *
+     * @return the properties to send with the download request
+     */
+    private Properties getDownloadProperties() {
+        final Properties properties = getProperties();
+        if (contentLen <= 0 || properties.getProperty(EXistOutputKeys.CHUNK_SIZE) != null) {
+            return properties;
+        }
+        final Properties downloadProperties = new Properties();
+        downloadProperties.putAll(properties);
+        downloadProperties.setProperty(EXistOutputKeys.CHUNK_SIZE, Long.toString(contentLen));
+        return downloadProperties;
+    }
+
     protected final int getInMemorySize(Properties properties) {
         if (inMemoryBufferSize == null) {
             inMemoryBufferSize = new LazyVal<>(() -> Integer.parseInt(properties.getProperty("in-memory-buffer-size", Integer.toString(VirtualTempPath.DEFAULT_IN_MEMORY_SIZE))));
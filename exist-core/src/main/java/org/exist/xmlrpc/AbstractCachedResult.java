@@ -86,6 +86,16 @@ public abstract class AbstractCachedResult implements Closeable {
      */
     public abstract Object getResult();
 
+    /**
+     * Estimates the memory held by the cached result. It is used
+     * to bound the size of the {@link QueryResultCache}.
+     *
+     * @return the approximate size in bytes
+     */
+    public long getMemorySize() {
+        return 64;
+    }
+
     /**
      * Returns true if the Cached Result
      * has been closed.
@@ -30,7 +30,17 @@ import java.util.Properties;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.exist.dom.memtree.DocumentImpl;
+import org.exist.dom.memtree.NodeImpl;
+import org.exist.dom.persistent.NodeSet;
 import org.exist.xquery.value.BinaryValue;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.value.StringValue;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 /**
  * Simple container for the results of a query. Used to cache
@@ -42,10 +52,17 @@ import org.exist.xquery.value.BinaryValue;
 public class QueryResult extends AbstractCachedResult {
 
     private final static Logger LOG = LogManager.getLogger(QueryResult.class);
+
+    private static final int BASE_SIZE = 128;
+    private static final int ITEM_SIZE = 64;
+    /** number of items inspected to estimate the memory size of a result */
+    private static final int SAMPLE_SIZE = 1000;
+
     protected Sequence result;
     protected Properties serialization = null;
     // set upon failure
     protected XPathException exception = null;
+    private long memorySize = -1;
 
     public QueryResult(final Sequence result, final Properties outputProperties) {
         this(result, outputProperties, 0);
@@ -77,6 +94,62 @@ public class QueryResult extends AbstractCachedResult {
         return result;
     }
 
+    /**
+     * Estimates the memory held by the result from its first items. Stored nodes
+     * and atomic values other than strings are counted with a fixed size, in-memory
+     * documents are counted once for all of their nodes. Binary values are streamed
+     * and not counted.
+     *
+     * @return the approximate size in bytes
+     */
+    @Override
+    public long getMemorySize() {
+        if (memorySize < 0) {
+            memorySize = estimateMemorySize(result);
+        }
+        return memorySize;
+    }
+
+    private static long estimateMemorySize(final Sequence result) {
+        if (result == null) {
+            return BASE_SIZE;
+        }
+        final long itemCount = result.getItemCountLong();
+        if (result instanceof NodeSet || itemCount == 0) {
+            return BASE_SIZE + itemCount * ITEM_SIZE;
+        }
+        long itemsSize = 0;
+        long documentsSize = 0;
+        int sampled = 0;
+        int inMemoryNodes = 0;
+        final Set<DocumentImpl> documents = Collections.newSetFromMap(new IdentityHashMap<>());
+        try {
+            for (final SequenceIterator i = result.iterate(); i.hasNext() && sampled < SAMPLE_SIZE; sampled++) {
+                final Item item = i.nextItem();
+                itemsSize += ITEM_SIZE;
+                if (item instanceof NodeImpl) {
+                    inMemoryNodes++;
+                    final DocumentImpl doc = item instanceof DocumentImpl ? (DocumentImpl) item : ((NodeImpl) item).getOwnerDocument();
+                    if (doc != null && documents.add(doc)) {
+                        documentsSize += doc.getMemorySize();
+                    }
+                } else if (item instanceof StringValue) {
+                    // the string is held by the value, no conversion needed
+                    itemsSize += ((StringValue) item).getStringValue().length() * 2L;
+                }
+            }
+        } catch (final XPathException e) {
+            LOG.warn("Unable to estimate the size of the result: {}", e.getMessage(), e);
+        }
+        if (sampled == 0 || sampled == itemCount) {
+            return BASE_SIZE + itemsSize + documentsSize;
+        }
+        // extrapolate the sample. Documents are only extrapolated if every node has its own
+        final double factor = (double) itemCount / sampled;
+        final long size = BASE_SIZE + (long) (itemsSize * factor);
+        return size + (documents.size() == inMemoryNodes ? (long) (documentsSize * factor) : documentsSize);
+    }
+
     @Override
     protected void doClose() {
         if (result != null) {
@@ -23,41 +23,80 @@ package org.exist.xmlrpc;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import net.jcip.annotations.ThreadSafe;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.beans.ConstructorProperties;
 import java.util.Date;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Used by {@link XmldbRequestProcessorFactory} to cache query results. Each query result
  * is identified by a unique integer id.
  *
+ * The cache is bounded by the estimated memory size of the cached results, see
+ * {@link AbstractCachedResult#getMemorySize()}. Results which have not been accessed
+ * for a while are dropped as well. If the cache is full, the least recently used
+ * results are evicted first.
+ *
  * @author <a href="mailto:adam@evolvedbinary.com">Adam Retter</a>
  */
 @ThreadSafe
 public class QueryResultCache {
 
     private static final Logger LOG = LogManager.getLogger(QueryResultCache.class);
-    private static final int TIMEOUT = 180_000;  // ms (e.g. 2 minutes)
 
+    public static final long DEFAULT_TIMEOUT = 180_000;  // ms (e.g. 3 minutes)
+    public static final long DEFAULT_MAX_SIZE = 128 * 1024 * 1024;  // 128 MB
+
+    private final long timeout;
+    private final long maxSize;
     private final AtomicInteger cacheIdCounter = new AtomicInteger();
+    private final LongAdder sizeEvictionCount = new LongAdder();
+    private final LongAdder expiredCount = new LongAdder();
     private final Cache<Integer, AbstractCachedResult> cache;
 
     public QueryResultCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * @param maxSize the maximum estimated memory size of all cached results in bytes
+     * @param timeout the time in milliseconds after which a result which has not been accessed is dropped
+     */
+    public QueryResultCache(final long maxSize, final long timeout) {
+        this.maxSize = maxSize;
+        this.timeout = timeout;
         this.cache = Caffeine.newBuilder()
-                .expireAfterAccess(TIMEOUT, TimeUnit.MILLISECONDS)
+                .expireAfterAccess(timeout, TimeUnit.MILLISECONDS)
+                .maximumWeight(maxSize)
+                .<Integer, AbstractCachedResult>weigher((key, value) -> (int) Math.min(value.getMemorySize(), Integer.MAX_VALUE))
                 .removalListener((key, value, cause) -> {
                     final AbstractCachedResult qr = (AbstractCachedResult)value;
                     qr.free();  // must free associated resources
+                    if (cause == RemovalCause.SIZE) {
+                        sizeEvictionCount.increment();
+                        LOG.warn("Evicting cached result set {} of approx. {} bytes: the result cache is full", key, qr.getMemorySize());
+                    } else if (cause == RemovalCause.EXPIRED) {
+                        expiredCount.increment();
+                    }
                     if(LOG.isDebugEnabled()) {
                         LOG.debug("Removing cached result set: {}", new Date(qr.getTimestamp()).toString());
                     }
                 }).build();
     }
 
+    /**
+     * @return the maximum estimated memory size of all cached results in bytes
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
     public int add(final AbstractCachedResult qr) {
         final int cacheId = cacheIdCounter.getAndIncrement();
         cache.put(cacheId, qr);
@@ -99,4 +138,84 @@ public class QueryResultCache {
             cache.invalidate(cacheId);
         }
     }
+
+    /**
+     * Removes and frees all cached results.
+     */
+    public void clear() {
+        cache.invalidateAll();
+        cache.cleanUp();
+    }
+
+    /**
+     * Get a Snapshot of the Cache Statistics
+     *
+     * @return The cache statistics
+     */
+    public Statistics getStatistics() {
+        cache.cleanUp();
+        final long weightedSize = cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(-1))
+                .orElse(-1L);
+        return new Statistics(
+                cache.estimatedSize(),
+                weightedSize,
+                maxSize,
+                timeout,
+                sizeEvictionCount.sum(),
+                expiredCount.sum()
+        );
+    }
+
+    public static class Statistics {
+        private final long size;
+        private final long memorySize;
+        private final long maxMemorySize;
+        private final long timeout;
+        private final long sizeEvictionCount;
+        private final long expiredCount;
+
+        /**
+         * @param size the approximate number of results in the cache
+         * @param memorySize the estimated memory size of the cached results in bytes
+         * @param maxMemorySize the maximum memory size of the cache in bytes
+         * @param timeout the idle time in milliseconds after which results are dropped
+         * @param sizeEvictionCount the number of results evicted because the cache was full
+         * @param expiredCount the number of results dropped because they were idle
+         */
+        @ConstructorProperties({"size", "memorySize", "maxMemorySize", "timeout", "sizeEvictionCount", "expiredCount"})
+        public Statistics(final long size, final long memorySize, final long maxMemorySize, final long timeout,
+                final long sizeEvictionCount, final long expiredCount) {
+            this.size = size;
+            this.memorySize = memorySize;
+            this.maxMemorySize = maxMemorySize;
+            this.timeout = timeout;
+            this.sizeEvictionCount = sizeEvictionCount;
+            this.expiredCount = expiredCount;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getMemorySize() {
+            return memorySize;
+        }
+
+        public long getMaxMemorySize() {
+            return maxMemorySize;
+        }
+
+        public long getTimeout() {
+            return timeout;
+        }
+
+        public long getSizeEvictionCount() {
+            return sizeEvictionCount;
+        }
+
+        public long getExpiredCount() {
+            return expiredCount;
+        }
+    }
 }
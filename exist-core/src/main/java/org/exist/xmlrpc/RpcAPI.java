@@ -179,7 +179,10 @@ public interface RpcAPI {
 
     /**
      * Retrieve the specified document, but limit the number of bytes
-     * transmitted to avoid memory shortage on the server.
+     * transmitted to avoid memory shortage on the server. The remaining
+     * data is fetched with getNextChunk or getNextExtendedChunk. The client
+     * may request the size of the chunks with parameter chunk-size, which is
+     * limited to the range of 64 KB to 16 MB. By default it is 1 MB.
      *
      * @param name the name of the document
      * @param parameters the parameters
@@ -196,6 +199,17 @@ public interface RpcAPI {
     Map<String, Object> getNextExtendedChunk(String handle, String offset)
             throws EXistException, PermissionDeniedException;
 
+    /**
+     * Retrieve the content of a binary resource in one piece, which is held in
+     * memory. Large resources should rather be retrieved in chunks with
+     * {@link #getDocumentData(String, Map)}.
+     *
+     * @param name the name of the binary resource
+     * @return the content of the resource
+     * @throws EXistException if the resource is not binary or larger than 2 GB
+     * @throws PermissionDeniedException if the caller lacks permission to read the resource
+     * @throws URISyntaxException if the name is not a valid URI
+     */
     byte[] getBinaryResource(String name)
             throws EXistException, PermissionDeniedException, URISyntaxException;
 
@@ -628,6 +642,26 @@ public interface RpcAPI {
     boolean parseLocalExt(String localFile, String docName, boolean replace, String mimeType, boolean treatAsXML, Date created, Date modified)
             throws EXistException, PermissionDeniedException, SAXException, URISyntaxException;
 
+    /**
+     * Store a batch of files previously uploaded with upload() into a collection.
+     * The XML documents are parsed in parallel and stored in transactions of
+     * batchSize documents each. Existing documents are replaced.
+     *
+     * @param collectionName the collection to store the documents into
+     * @param localFiles temporary file names
+     * @param docNames the paths of the documents, relative to the collection
+     * @param mimeTypes the mime types of the documents
+     * @param batchSize the number of documents to store per transaction
+     * @return a map with the number of documents stored (key "stored") and
+     * a map of the documents which could not be parsed to the reason (key "skipped")
+     * @throws EXistException If an internal error occurs
+     * @throws PermissionDeniedException If the current user is not allowed to perform this action
+     * @throws URISyntaxException If the URI contains syntax errors
+     */
+    Map<String, Object> parseLocalBatch(String collectionName, List<String> localFiles, List<String> docNames,
+            List<String> mimeTypes, int batchSize)
+            throws EXistException, PermissionDeniedException, URISyntaxException;
+
     /**
      * Store data as a binary resource.
      *
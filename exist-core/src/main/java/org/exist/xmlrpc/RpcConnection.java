@@ -31,6 +31,7 @@ import org.exist.EXistException;
 import org.exist.Namespaces;
 import org.exist.Version;
 import org.exist.backup.Backup;
+import org.exist.collections.BulkStore;
 import org.exist.collections.Collection;
 import org.exist.collections.CollectionConfigurationException;
 import org.exist.collections.CollectionConfigurationManager;
@@ -102,6 +103,8 @@ import com.evolvedbinary.j8fu.tuple.Tuple2;
 
 import java.io.*;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
@@ -134,6 +137,8 @@ public class RpcConnection implements RpcAPI {
     private final static Logger LOG = LogManager.getLogger(RpcConnection.class);
 
     public final static int MAX_DOWNLOAD_CHUNK_SIZE = 1024 * 1024;  // 1 MB
+    public final static int MIN_NEGOTIATED_CHUNK_SIZE = 64 * 1024; // 64 KB
+    public final static int MAX_NEGOTIATED_CHUNK_SIZE = 16 * 1024 * 1024; // 16 MB
     private final static Charset DEFAULT_ENCODING = StandardCharsets.UTF_8;
 
     private final XmldbRequestProcessorFactory factory;
@@ -404,6 +409,26 @@ public class RpcConnection implements RpcAPI {
         }
     }
 
+    /**
+     * Add a query result to the result cache. A result larger than the whole cache
+     * would be evicted at once and leave the client with a dead handle, so it is
+     * rejected instead.
+     *
+     * @param result the query result
+     * @return the handle of the cached result
+     * @throws EXistException if the result is larger than the result cache
+     */
+    private int cacheQueryResult(final QueryResult result) throws EXistException {
+        final long memorySize = result.getMemorySize();
+        final long maxSize = factory.resultSets.getMaxSize();
+        if (memorySize > maxSize) {
+            result.free();
+            throw new EXistException("The query result of approx. " + memorySize +
+                    " bytes exceeds the size of the result cache of " + maxSize + " bytes");
+        }
+        return factory.resultSets.add(result);
+    }
+
     @Override
     public int executeQuery(final byte[] xpath, final String encoding, final Map<String, Object> parameters) throws EXistException, PermissionDeniedException {
         final Charset charset = Optional.ofNullable(encoding).map(Charset::forName).orElse(DEFAULT_ENCODING);
@@ -425,7 +450,7 @@ public class RpcConnection implements RpcAPI {
                     throw new EXistException(result.getException());
                 }
                 result.queryTime = System.currentTimeMillis() - startTime;
-                return factory.resultSets.add(result);
+                return cacheQueryResult(result);
             } catch (final XPathException e) {
                 throw new EXistException(e);
             }
@@ -701,7 +726,6 @@ public class RpcConnection implements RpcAPI {
             final Charset encoding = getEncoding(parameters);
 
             // A tweak for very large resources, VirtualTempFile
-            final Map<String, Object> result = new HashMap<>();
             final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
             final Path tempFile = temporaryFileManager.getTemporaryFile();
 
@@ -715,40 +739,105 @@ public class RpcConnection implements RpcAPI {
                 }
             }
 
-            final byte[] firstChunk = getChunk(tempFile, 0);
+            return firstChunk(tempFile, parameters);
+        });
+    }
 
+    /**
+     * Get the first chunk of a serialized resource or result. If there is more data,
+     * the file is kept as a {@link SerializedResult} and a handle to retrieve the
+     * next chunks is returned, otherwise the file is released.
+     *
+     * @param tempFile the file holding the serialized data
+     * @param parameters the parameters of the request, may request a chunk size
+     * @return the map with the first chunk, the offset of the next one and the handle
+     */
+    private Map<String, Object> firstChunk(final Path tempFile, final Map<String, Object> parameters)
+            throws IOException {
+        final int chunkSize = getChunkSize(parameters);
+        final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
+        final Map<String, Object> result = new HashMap<>();
+        final byte[] firstChunk;
+        try (final FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.READ)) {
+            firstChunk = getChunk(channel, 0, chunkSize);
             result.put("data", firstChunk);
-            int offset = 0;
-            if (Files.size(tempFile) > MAX_DOWNLOAD_CHUNK_SIZE) {
-                offset = firstChunk.length;
-
-                final int handle = factory.resultSets.add(new SerializedResult(tempFile));
+            if (channel.size() > firstChunk.length) {
+                final SerializedResult serializedResult = new SerializedResult(tempFile);
+                serializedResult.setChunkSize(chunkSize);
+                final int handle = factory.resultSets.add(serializedResult);
                 result.put("handle", Integer.toString(handle));
                 result.put("supports-long-offset", Boolean.TRUE);
-            } else {
-                temporaryFileManager.returnTemporaryFile(tempFile);
+                result.put("offset", firstChunk.length);
+                return result;
             }
-            result.put("offset", offset);
-
-            return result;
-        });
+        }
+        temporaryFileManager.returnTemporaryFile(tempFile);
+        result.put("offset", 0);
+        return result;
     }
 
-    private byte[] getChunk(final Path file, final int offset) throws IOException {
-        final long available = Files.size(file);
-        final int len = (int)Math.min(Math.min(available - offset, MAX_DOWNLOAD_CHUNK_SIZE), Integer.MAX_VALUE);
-
+    /**
+     * Read a chunk of the given file. The chunk has to be a new array, it is
+     * only encoded by the XML-RPC server after the call returned.
+     */
+    private static byte[] getChunk(final FileChannel channel, final long offset, final int chunkSize)
+            throws IOException {
+        final int len = (int) Math.max(0, Math.min(channel.size() - offset, chunkSize));
         final byte[] chunk = new byte[len];
-        try (final InputStream is = Files.newInputStream(file)) {
-            is.skip(offset);
-            final int read = is.read(chunk);
-            if(read != len) {
-                throw new IOException("Unable to read full chunk at offset: " + offset + ", from file: " + file.toAbsolutePath().toString());
+        final ByteBuffer buffer = ByteBuffer.wrap(chunk);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unable to read full chunk at offset: " + offset);
             }
+            position += read;
         }
         return chunk;
     }
 
+    /**
+     * The chunk size requested by the client with parameter {@link EXistOutputKeys#CHUNK_SIZE},
+     * limited to the range between {@link #MIN_NEGOTIATED_CHUNK_SIZE} and
+     * {@link #MAX_NEGOTIATED_CHUNK_SIZE}. By default {@link #MAX_DOWNLOAD_CHUNK_SIZE}.
+     */
+    private static int getChunkSize(final Map<String, Object> parameters) {
+        final Object chunkSize = parameters.get(EXistOutputKeys.CHUNK_SIZE);
+        if (chunkSize == null) {
+            return MAX_DOWNLOAD_CHUNK_SIZE;
+        }
+        try {
+            final long requested = Long.parseLong(chunkSize.toString().trim());
+            return (int) Math.max(MIN_NEGOTIATED_CHUNK_SIZE, Math.min(MAX_NEGOTIATED_CHUNK_SIZE, requested));
+        } catch (final NumberFormatException e) {
+            return MAX_DOWNLOAD_CHUNK_SIZE;
+        }
+    }
+
+    private Map<String, Object> nextChunk(final int resultId, final SerializedResult sr, final long offset)
+            throws EXistException, IOException {
+        // This will keep the serialized result in the cache
+        sr.touch();
+        final FileChannel channel = sr.getChannel();
+        final long size = channel.size();
+        if (offset <= 0 || offset > size) {
+            factory.resultSets.remove(resultId);
+            throw new EXistException("No more data available");
+        }
+        final byte[] chunk = getChunk(channel, offset, sr.getChunkSize());
+        final long nextChunk = offset + chunk.length;
+
+        final Map<String, Object> result = new HashMap<>();
+        result.put("data", chunk);
+        if (nextChunk >= size) {
+            factory.resultSets.remove(resultId);
+            result.put("offset", 0L);
+        } else {
+            result.put("offset", nextChunk);
+        }
+        return result;
+    }
+
     @Override
     public Map<String, Object> getNextChunk(final String handle, final int offset)
             throws EXistException, PermissionDeniedException {
@@ -759,25 +848,14 @@ public class RpcConnection implements RpcAPI {
             if (sr == null) {
                 throw new EXistException("Invalid handle specified");
             }
-            // This will keep the serialized result in the cache
-            sr.touch();
-            final Path tempFile = sr.result;
-
-            if (offset <= 0 || offset > Files.size(tempFile)) {
-                factory.resultSets.remove(resultId);
-                throw new EXistException("No more data available");
-            }
-            final byte[] chunk = getChunk(tempFile, offset);
-            final long nextChunk = offset + chunk.length;
-
-            final Map<String, Object> result = new HashMap<>();
-            result.put("data", chunk);
+            final Map<String, Object> result = nextChunk(resultId, sr, offset);
             result.put("handle", handle);
-            if (nextChunk > (long) Integer.MAX_VALUE || nextChunk >= Files.size(tempFile)) {
+            final long nextChunk = (Long) result.get("offset");
+            if (nextChunk > (long) Integer.MAX_VALUE) {
                 factory.resultSets.remove(resultId);
                 result.put("offset", 0);
             } else {
-                result.put("offset", nextChunk);
+                result.put("offset", (int) nextChunk);
             }
             return result;
         } catch (final NumberFormatException | IOException e) {
@@ -795,27 +873,14 @@ public class RpcConnection implements RpcAPI {
             if (sr == null) {
                 throw new EXistException("Invalid handle specified");
             }
-            // This will keep the serialized result in the cache
-            sr.touch();
-            final Path tempFile = sr.result;
-
             final long longOffset = Long.parseLong(offset);
-            if (longOffset < 0 || longOffset > Files.size(tempFile)) {
+            if (longOffset == 0) {
                 factory.resultSets.remove(resultId);
                 throw new EXistException("No more data available");
             }
-            final byte[] chunk = getChunk(tempFile, (int)longOffset);
-            final long nextChunk = longOffset + chunk.length;
-
-            final Map<String, Object> result = new HashMap<>();
-            result.put("data", chunk);
+            final Map<String, Object> result = nextChunk(resultId, sr, longOffset);
             result.put("handle", handle);
-            if (nextChunk >= Files.size(tempFile)) {
-                factory.resultSets.remove(resultId);
-                result.put("offset", Long.toString(0));
-            } else {
-                result.put("offset", Long.toString(nextChunk));
-            }
+            result.put("offset", result.get("offset").toString());
             return result;
 
         } catch (final NumberFormatException | IOException e) {
@@ -849,7 +914,14 @@ public class RpcConnection implements RpcAPI {
                     throw new EXistException("Resource too big to be read using this method.");
                 }
                 final byte[] data = new byte[(int) resourceSize];
-                is.read(data);
+                int offset = 0;
+                int read;
+                while (offset < data.length && (read = is.read(data, offset, data.length - offset)) > -1) {
+                    offset += read;
+                }
+                if (offset < data.length) {
+                    throw new EXistException("Unable to read full content of resource " + name);
+                }
                 return data;
             }
         });
@@ -1497,6 +1569,7 @@ public class RpcConnection implements RpcAPI {
                 final boolean treatAsXML = (isXML != null && isXML) || (isXML == null && mime.isXMLType());
 
                     if (treatAsXML) {
+                        // the uploaded file can be read twice, it is not parsed into memory
                         final IndexInfo info = collection.validateXMLResource(transaction, broker, docUri.lastSegment(), source);
                         if (created != null) {
                             info.getDocument().setCreated(created.getTime());
@@ -1531,6 +1604,66 @@ public class RpcConnection implements RpcAPI {
         });
     }
 
+    @Override
+    public Map<String, Object> parseLocalBatch(final String collectionName, final List<String> localFiles,
+            final List<String> docNames, final List<String> mimeTypes, final int batchSize)
+            throws EXistException, PermissionDeniedException, URISyntaxException {
+        if (localFiles.size() != docNames.size() || localFiles.size() != mimeTypes.size()) {
+            throw new EXistException("The number of files, document names and mime types must be the same");
+        }
+        if (batchSize < 1) {
+            throw new EXistException("The batch size must be at least 1");
+        }
+
+        final XmldbURI collectionUri = XmldbURI.xmldbUriFor(collectionName);
+        final List<BulkStore.Entry> entries = new ArrayList<>(localFiles.size());
+        for (int i = 0; i < localFiles.size(); i++) {
+            final Path file = getLocalFile(localFiles.get(i));
+            final MimeType mime = Optional.ofNullable(MimeTable.getInstance().getContentType(mimeTypes.get(i))).orElse(MimeType.BINARY_TYPE);
+            entries.add(new BulkStore.Entry(XmldbURI.xmldbUriFor(docNames.get(i)), mime, new FileInputSource(file)));
+        }
+
+        final BulkStore.Result result;
+        try (final DBBroker broker = factory.getBrokerPool().get(Optional.of(user))) {
+            final BulkStore bulkStore = new BulkStore(factory.getBrokerPool(), Runtime.getRuntime().availableProcessors(), batchSize);
+            result = bulkStore.store(broker, collectionUri, entries.iterator());
+        } catch (final LockException | IOException e) {
+            throw new EXistException(e.getMessage(), e);
+        }
+
+        final Map<String, String> skipped = new LinkedHashMap<>();
+        for (final Map.Entry<XmldbURI, Exception> entry : result.getSkipped().entrySet()) {
+            skipped.put(entry.getKey().toString(), String.valueOf(entry.getValue().getMessage()));
+        }
+        final Map<String, Object> stats = new HashMap<>();
+        stats.put("stored", result.getStored());
+        stats.put("skipped", skipped);
+        return stats;
+    }
+
+    /**
+     * Resolve a file uploaded with upload(), or a file on the server.
+     */
+    private Path getLocalFile(final String localFile) throws EXistException {
+        try {
+            final int handle = Integer.parseInt(localFile);
+            final SerializedResult sr = factory.resultSets.getSerializedResult(handle);
+            if (sr == null) {
+                throw new EXistException("Invalid handle specified");
+            }
+            final Path file = sr.result;
+            sr.result = null; // de-reference the temp file in the SerializeResult, so it is not re-claimed before we need it
+            factory.resultSets.remove(handle);
+            return file;
+        } catch (final NumberFormatException nfe) {
+            final Path path = Paths.get(localFile);
+            if (!Files.isReadable(path)) {
+                throw new EXistException("unable to read file " + path.toAbsolutePath().toString());
+            }
+            return path;
+        }
+    }
+
     public boolean storeBinary(final byte[] data, final String documentPath, final String mimeType,
                                final int overwrite) throws EXistException, PermissionDeniedException, URISyntaxException {
         return storeBinary(data, documentPath, mimeType, overwrite, null, null);
@@ -1809,7 +1942,7 @@ public class RpcConnection implements RpcAPI {
         });
     }
 
-    private Map<String, Object> queryResultToRpcResponse(final long startTime, final QueryResult queryResult, final Optional<String> sortBy) throws XPathException {
+    private Map<String, Object> queryResultToRpcResponse(final long startTime, final QueryResult queryResult, final Optional<String> sortBy) throws XPathException, EXistException {
         final Map<String, Object> ret = new HashMap<>();
         if (queryResult == null) {
             return ret;
@@ -1871,7 +2004,7 @@ public class RpcConnection implements RpcAPI {
 
         queryResult.result = resultSeq;
         queryResult.queryTime = (System.currentTimeMillis() - startTime);
-        final int id = factory.resultSets.add(queryResult);
+        final int id = cacheQueryResult(queryResult);
         ret.put("id", id);
         ret.put("hash", queryResult.hashCode());
         ret.put("results", result);
@@ -1930,7 +2063,7 @@ public class RpcConnection implements RpcAPI {
         });
     }
 
-    private Map<String, Object> queryResultToTypedRpcResponse(final long startTime, final QueryResult queryResult, final Optional<String> sortBy) throws XPathException {
+    private Map<String, Object> queryResultToTypedRpcResponse(final long startTime, final QueryResult queryResult, final Optional<String> sortBy) throws XPathException, EXistException {
         final Map<String, Object> ret = new HashMap<>();
         if (queryResult == null) {
             return ret;
@@ -1988,7 +2121,7 @@ public class RpcConnection implements RpcAPI {
 
         queryResult.result = resultSeq;
         queryResult.queryTime = (System.currentTimeMillis() - startTime);
-        final int id = factory.resultSets.add(queryResult);
+        final int id = cacheQueryResult(queryResult);
         ret.put("id", id);
         ret.put("hash", queryResult.hashCode());
         ret.put("results", result);
@@ -2222,7 +2355,6 @@ public class RpcConnection implements RpcAPI {
             final NodeId nodeId = factory.getBrokerPool().getNodeFactory().createFromString(id);
             final NodeProxy node = new NodeProxy(document, nodeId);
 
-            final Map<String, Object> result = new HashMap<>();
             final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
             final Path tempFile = temporaryFileManager.getTemporaryFile();
 
@@ -2237,20 +2369,7 @@ public class RpcConnection implements RpcAPI {
                 serialize(broker, toProperties(parameters), saxSerializer -> saxSerializer.toSAX(node), writer);
             }
 
-            final byte[] firstChunk = getChunk(tempFile, 0);
-            result.put("data", firstChunk);
-            int offset = 0;
-            if (Files.size(tempFile) > MAX_DOWNLOAD_CHUNK_SIZE) {
-                offset = firstChunk.length;
-
-                final int handle = factory.resultSets.add(new SerializedResult(tempFile));
-                result.put("handle", Integer.toString(handle));
-                result.put("supports-long-offset", Boolean.TRUE);
-            } else {
-                temporaryFileManager.returnTemporaryFile(tempFile);
-            }
-            result.put("offset", offset);
-            return result;
+            return firstChunk(tempFile, parameters);
         });
     }
 
@@ -2326,7 +2445,6 @@ public class RpcConnection implements RpcAPI {
                 throw new EXistException("index out of range");
             }
 
-            final Map<String, Object> result = new HashMap<>();
             final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
             final Path tempFile = temporaryFileManager.getTemporaryFile();
 
@@ -2351,20 +2469,7 @@ public class RpcConnection implements RpcAPI {
                 throw new EXistException(e);
             }
 
-            final byte[] firstChunk = getChunk(tempFile, 0);
-            result.put("data", firstChunk);
-            int offset = 0;
-            if (Files.size(tempFile) > MAX_DOWNLOAD_CHUNK_SIZE) {
-                offset = firstChunk.length;
-
-                final int handle = factory.resultSets.add(new SerializedResult(tempFile));
-                result.put("handle", Integer.toString(handle));
-                result.put("supports-long-offset", Boolean.TRUE);
-            } else {
-                temporaryFileManager.returnTemporaryFile(tempFile);
-            }
-            result.put("offset", offset);
-            return result;
+            return firstChunk(tempFile, parameters);
         });
     }
 
@@ -2444,7 +2549,6 @@ public class RpcConnection implements RpcAPI {
             final SAXSerializer handler = (SAXSerializer) SerializerPool.getInstance().borrowObject(SAXSerializer.class);
             try {
 
-                final Map<String, Object> result = new HashMap<>();
                 final TemporaryFileManager temporaryFileManager = TemporaryFileManager.getInstance();
                 final Path tempFile = temporaryFileManager.getTemporaryFile();
 
@@ -2493,21 +2597,7 @@ public class RpcConnection implements RpcAPI {
                     handler.endDocument();
                 }
 
-
-                final byte[] firstChunk = getChunk(tempFile, 0);
-                result.put("data", firstChunk);
-                int offset = 0;
-                if (Files.size(tempFile) > MAX_DOWNLOAD_CHUNK_SIZE) {
-                    offset = firstChunk.length;
-
-                    final int handle = factory.resultSets.add(new SerializedResult(tempFile));
-                    result.put("handle", Integer.toString(handle));
-                    result.put("supports-long-offset", Boolean.TRUE);
-                } else {
-                    temporaryFileManager.returnTemporaryFile(tempFile);
-                }
-                result.put("offset", offset);
-                return result;
+                return firstChunk(tempFile, parameters);
             } finally {
                 SerializerPool.getInstance().returnObject(handler);
             }
@@ -61,6 +61,9 @@ public class RpcServlet extends XmlRpcServlet {
 
     private boolean useDefaultUser = DEFAULT_USE_DEFAULT_USER;
     private Charset charset = null;
+    private long resultCacheMaxSize = QueryResultCache.DEFAULT_MAX_SIZE;
+    private long resultCacheTimeout = QueryResultCache.DEFAULT_TIMEOUT;
+    private XmldbRequestProcessorFactoryFactory factoryFactory = null;
 
     @Override
     public void init(final ServletConfig pConfig) throws ServletException {
@@ -76,7 +79,28 @@ public class RpcServlet extends XmlRpcServlet {
             this.charset = Charset.forName(charset);
         }
 
-        super.init(new FilteredServletConfig(pConfig, paramName -> (!"useDefaultUser".equals(paramName)) && (!"charset".equals(paramName))));
+        final String resultCacheMaxSize = pConfig.getInitParameter("resultCacheMaxSize");
+        if (resultCacheMaxSize != null) {
+            this.resultCacheMaxSize = Long.parseLong(resultCacheMaxSize);
+        }
+
+        final String resultCacheTimeout = pConfig.getInitParameter("resultCacheTimeout");
+        if (resultCacheTimeout != null) {
+            this.resultCacheTimeout = Long.parseLong(resultCacheTimeout);
+        }
+
+        super.init(new FilteredServletConfig(pConfig, paramName -> (!"useDefaultUser".equals(paramName))
+                && (!"charset".equals(paramName))
+                && (!"resultCacheMaxSize".equals(paramName))
+                && (!"resultCacheTimeout".equals(paramName))));
+    }
+
+    @Override
+    public void destroy() {
+        if (factoryFactory != null) {
+            factoryFactory.close();
+        }
+        super.destroy();
     }
 
     @Override
@@ -131,18 +155,22 @@ public class RpcServlet extends XmlRpcServlet {
     protected XmlRpcHandlerMapping newXmlRpcHandlerMapping() throws XmlRpcException {
         final DefaultHandlerMapping mapping = new DefaultHandlerMapping();
         mapping.setVoidMethodEnabled(true);
-        mapping.setRequestProcessorFactoryFactory(new XmldbRequestProcessorFactoryFactory(useDefaultUser));
+        factoryFactory = new XmldbRequestProcessorFactoryFactory(useDefaultUser, resultCacheMaxSize, resultCacheTimeout);
+        mapping.setRequestProcessorFactoryFactory(factoryFactory);
         mapping.loadDefault(RpcConnection.class);
         return mapping;
     }
 
     private static class XmldbRequestProcessorFactoryFactory extends RequestProcessorFactoryFactory.RequestSpecificProcessorFactoryFactory {
         private final AtomicLazyValE<RequestProcessorFactory, XmlRpcException> instance;
+        private volatile XmldbRequestProcessorFactory created;
 
-        public XmldbRequestProcessorFactoryFactory(final boolean useDefaultUser) {
+        public XmldbRequestProcessorFactoryFactory(final boolean useDefaultUser, final long resultCacheMaxSize,
+                final long resultCacheTimeout) {
             instance = new AtomicLazyValE<>(() -> {
                 try {
-                    return Right(new XmldbRequestProcessorFactory("exist", useDefaultUser));
+                    created = new XmldbRequestProcessorFactory("exist", useDefaultUser, resultCacheMaxSize, resultCacheTimeout);
+                    return Right(created);
                 } catch (final EXistException e) {
                     return Left(new XmlRpcException("Failed to initialize XMLRPC interface: " + e.getMessage(), e));
                 }
@@ -153,6 +181,13 @@ public class RpcServlet extends XmlRpcServlet {
         public RequestProcessorFactory getRequestProcessorFactory(final Class pClass) throws XmlRpcException {
             return instance.get();
         }
+
+        void close() {
+            final XmldbRequestProcessorFactory factory = created;
+            if (factory != null) {
+                factory.close();
+            }
+        }
     }
 
     private static class DefaultHandlerMapping extends AbstractReflectiveHandlerMapping {
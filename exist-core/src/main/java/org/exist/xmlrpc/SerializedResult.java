@@ -24,7 +24,10 @@ package org.exist.xmlrpc;
 import org.exist.util.io.TemporaryFileManager;
 import org.exist.xquery.XPathException;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Simple container for the results of a query. Used to cache
@@ -38,6 +41,9 @@ public class SerializedResult extends AbstractCachedResult {
     // set upon failure
     protected XPathException exception = null;
 
+    private int chunkSize = RpcConnection.MAX_DOWNLOAD_CHUNK_SIZE;
+    private FileChannel channel = null;
+
     public SerializedResult(final Path result) {
         this(result, 0);
     }
@@ -59,8 +65,46 @@ public class SerializedResult extends AbstractCachedResult {
         return result;
     }
 
+    /**
+     * @return the size of the chunks in which the result is sent to the client
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(final int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Get a channel to read the result. The channel stays open until the
+     * result is closed, so the file is not opened again for every chunk.
+     *
+     * @return the channel to read the result from
+     * @throws IOException if the file cannot be opened
+     */
+    public synchronized FileChannel getChannel() throws IOException {
+        if (channel == null) {
+            if (result == null) {
+                throw new IOException("The result was already released");
+            }
+            channel = FileChannel.open(result, StandardOpenOption.READ);
+        }
+        return channel;
+    }
+
     @Override
     protected void doClose() {
+        synchronized (this) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (final IOException e) {
+                    // ignore, the file is released anyway
+                }
+                channel = null;
+            }
+        }
         if (result != null) {
             TemporaryFileManager.getInstance().returnTemporaryFile(result);
             result = null;
@@ -31,10 +31,13 @@ import org.apache.xmlrpc.XmlRpcRequest;
 import org.apache.xmlrpc.common.XmlRpcHttpRequestConfig;
 import org.apache.xmlrpc.server.RequestProcessorFactoryFactory;
 import org.exist.EXistException;
+import org.exist.management.AgentFactory;
+import org.exist.management.impl.RpcQueryResultCache;
 import org.exist.security.AuthenticationException;
 import org.exist.security.SecurityManager;
 import org.exist.security.Subject;
 import org.exist.storage.BrokerPool;
+import org.exist.util.DatabaseConfigurationException;
 import org.exist.util.NamedThreadFactory;
 
 import java.util.Map;
@@ -56,7 +59,8 @@ public class XmldbRequestProcessorFactory implements RequestProcessorFactoryFact
 
     private final boolean useDefaultUser;
     private final BrokerPool brokerPool;
-    protected final QueryResultCache resultSets = new QueryResultCache();
+    protected final QueryResultCache resultSets;
+    private final RpcQueryResultCache resultSetsMBean;
 
     protected final AtomicLazyVal<ExecutorService> restoreExecutorService;
     protected final Map<UUID, Tuple2<RpcConnection.BufferingRestoreListener, Future<Void>>> restoreTasks = new ConcurrentHashMap<>();
@@ -67,11 +71,31 @@ public class XmldbRequestProcessorFactory implements RequestProcessorFactoryFact
     protected String databaseId = BrokerPool.DEFAULT_INSTANCE_NAME;
 
     public XmldbRequestProcessorFactory(final String databaseId, final boolean useDefaultUser) throws EXistException {
+        this(databaseId, useDefaultUser, QueryResultCache.DEFAULT_MAX_SIZE, QueryResultCache.DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * @param databaseId the id of the database
+     * @param useDefaultUser true if the guest user may access the XML-RPC API
+     * @param resultCacheMaxSize the maximum estimated memory size of the cached query results in bytes
+     * @param resultCacheTimeout the time in milliseconds after which an unused query result is dropped
+     *
+     * @throws EXistException if the database is not available
+     */
+    public XmldbRequestProcessorFactory(final String databaseId, final boolean useDefaultUser,
+            final long resultCacheMaxSize, final long resultCacheTimeout) throws EXistException {
         this.useDefaultUser = useDefaultUser;
         if (databaseId != null && !databaseId.isEmpty()) {
             this.databaseId = databaseId;
         }
         this.brokerPool = BrokerPool.getInstance(this.databaseId);
+        this.resultSets = new QueryResultCache(resultCacheMaxSize, resultCacheTimeout);
+        this.resultSetsMBean = new RpcQueryResultCache(brokerPool.getId(), resultSets);
+        try {
+            AgentFactory.getInstance().addMBean(resultSetsMBean);
+        } catch (final DatabaseConfigurationException e) {
+            LOG.warn("Exception while registering JMX RpcQueryResultCache MBean.", e);
+        }
         this.restoreExecutorService = new AtomicLazyVal<>(() -> Executors.newCachedThreadPool(new NamedThreadFactory(brokerPool, "rpc-db-restore")));
     }
 
@@ -111,4 +135,17 @@ public class XmldbRequestProcessorFactory implements RequestProcessorFactoryFact
     public synchronized void shutdown() {
         brokerPool.shutdown();
     }
+
+    /**
+     * Unregisters the JMX MBean of the query result cache
+     * and releases the cached query results.
+     */
+    public synchronized void close() {
+        try {
+            AgentFactory.getInstance().removeMBean(resultSetsMBean);
+        } catch (final DatabaseConfigurationException e) {
+            LOG.warn("Exception while unregistering JMX RpcQueryResultCache MBean.", e);
+        }
+        resultSets.clear();
+    }
 }
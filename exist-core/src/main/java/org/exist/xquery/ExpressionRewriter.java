@@ -0,0 +1,543 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.Namespaces;
+import org.exist.dom.QName;
+import org.exist.xquery.functions.fn.ExtCollection;
+import org.exist.xquery.functions.fn.FunDoc;
+import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.Sequence;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Rewrites the expression tree of a query before it is passed to the {@link Optimizer}:
+ *
+ * <ul>
+ *  <li><strong>Constant folding</strong>: arithmetic, comparisons, logical operators, string concatenations
+ *  and casts whose operands are all literals are evaluated at compile time and replaced by the
+ *  resulting literal. Expressions raising a dynamic error are left alone.</li>
+ *  <li><strong>Loop-invariant hoisting</strong>: a path expression starting with a call to fn:doc or
+ *  fn:collection with literal arguments, which does not reference any variable and only calls
+ *  side effect free functions, is wrapped into an {@link InvariantExpression} if it is evaluated
+ *  within the return clause of a for, within a predicate or on the right hand side of a simple map.
+ *  It is thus evaluated once per query execution, as if the author had bound it to a variable outside
+ *  of the loop.</li>
+ *  <li><strong>Common subexpressions</strong>: identical invariant path expressions share a
+ *  single result.</li>
+ * </ul>
+ *
+ * Like the optimizer, the rewriter is disabled by <code>declare option exist:optimize "enable=no";</code>.
+ * The bodies of user-defined functions are not rewritten. The applied rewrites are reported by the
+ * {@link Profiler} if option rewrites is set:
+ *
+ * <pre>declare option exist:profiling "enabled=yes verbosity=1 rewrites=yes";</pre>
+ */
+public class ExpressionRewriter extends DefaultExpressionVisitor {
+
+    private static final Logger LOG = LogManager.getLogger(ExpressionRewriter.class);
+
+    /**
+     * Functions of the standard function library whose results differ between calls.
+     */
+    private static final Set<String> NON_DETERMINISTIC_FUNCTIONS = new HashSet<>(Arrays.asList(
+            "trace", "random-number-generator", "error"));
+
+    private final XQueryContext context;
+
+    private int loopDepth = 0;
+
+    private boolean hasRewritten = false;
+
+    private final List<Candidate> candidates = new ArrayList<>();
+
+    public ExpressionRewriter(final XQueryContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Rewrite the given expression tree.
+     *
+     * @param expr the root expression of the query
+     */
+    public void rewrite(final Expression expr) {
+        expr.accept(this);
+        hoistInvariants();
+    }
+
+    public boolean hasRewritten() {
+        return hasRewritten;
+    }
+
+    @Override
+    public void visitPathExpr(final PathExpr expression) {
+        for (int i = 0; i < expression.getLength(); i++) {
+            final Expression step = expression.getExpression(i);
+            process(step, newExpr -> expression.replace(step, newExpr));
+        }
+    }
+
+    @Override
+    public void visitBuiltinFunction(final Function function) {
+        for (int i = 0; i < function.getArgumentCount(); i++) {
+            final Expression arg = function.getArgument(i);
+            process(arg, newExpr -> function.replace(arg, newExpr));
+        }
+    }
+
+    @Override
+    public void visitFunctionCall(final FunctionCall call) {
+        // the body of the function is left to the optimizer, which visits it only once
+        for (int i = 0; i < call.getArgumentCount(); i++) {
+            final Expression arg = call.getArgument(i);
+            process(arg, newExpr -> call.replace(arg, newExpr));
+        }
+    }
+
+    @Override
+    public void visitUserFunction(final UserDefinedFunction function) {
+        // see visitFunctionCall
+    }
+
+    @Override
+    public void visitForExpression(final ForExpr forExpr) {
+        final Expression input = forExpr.getInputSequence();
+        process(input, newExpr -> forExpr.replace(input, newExpr));
+        ++loopDepth;
+        final Expression returnExpr = forExpr.getReturnExpression();
+        process(returnExpr, newExpr -> forExpr.replace(returnExpr, newExpr));
+        --loopDepth;
+    }
+
+    @Override
+    public void visitLetExpression(final LetExpr letExpr) {
+        final Expression input = letExpr.getInputSequence();
+        process(input, newExpr -> letExpr.replace(input, newExpr));
+        final Expression returnExpr = letExpr.getReturnExpression();
+        process(returnExpr, newExpr -> letExpr.replace(returnExpr, newExpr));
+    }
+
+    @Override
+    public void visitWhereClause(final WhereClause where) {
+        where.getWhereExpr().accept(this);
+        process(where.getReturnExpression(), where::setReturnExpression);
+    }
+
+    @Override
+    public void visitOrderByClause(final OrderByClause orderBy) {
+        for (final OrderSpec spec : orderBy.getOrderSpecs()) {
+            spec.getSortExpression().accept(this);
+        }
+        process(orderBy.getReturnExpression(), orderBy::setReturnExpression);
+    }
+
+    @Override
+    public void visitGroupByClause(final GroupByClause groupBy) {
+        for (final GroupSpec spec : groupBy.getGroupSpecs()) {
+            spec.getGroupExpression().accept(this);
+        }
+        process(groupBy.getReturnExpression(), groupBy::setReturnExpression);
+    }
+
+    @Override
+    public void visitConditional(final ConditionalExpression conditional) {
+        final Expression test = conditional.getTestExpr();
+        process(test, newExpr -> conditional.replace(test, newExpr));
+        final Expression thenExpr = conditional.getThenExpr();
+        process(thenExpr, newExpr -> conditional.replace(thenExpr, newExpr));
+        final Expression elseExpr = conditional.getElseExpr();
+        process(elseExpr, newExpr -> conditional.replace(elseExpr, newExpr));
+    }
+
+    @Override
+    public void visitPredicate(final Predicate predicate) {
+        ++loopDepth;
+        visitPathExpr(predicate);
+        --loopDepth;
+    }
+
+    @Override
+    public void visitFilteredExpr(final FilteredExpression filtered) {
+        filtered.getExpression().accept(this);
+        for (final Predicate predicate : filtered.getPredicates()) {
+            predicate.accept(this);
+        }
+    }
+
+    @Override
+    public void visitGeneralComparison(final GeneralComparison comparison) {
+        visitPathExpr(comparison);
+    }
+
+    @Override
+    public void visitAndExpr(final OpAnd and) {
+        visitPathExpr(and);
+    }
+
+    @Override
+    public void visitOrExpr(final OpOr or) {
+        visitPathExpr(or);
+    }
+
+    @Override
+    public void visitCastExpr(final CastExpression expression) {
+        process(expression.getInnerExpression(), expression::setExpression);
+    }
+
+    @Override
+    public void visitSimpleMapOperator(final OpSimpleMap simpleMap) {
+        simpleMap.getLeft().accept(this);
+        ++loopDepth;
+        simpleMap.getRight().accept(this);
+        --loopDepth;
+    }
+
+    @Override
+    public void visitVariableDeclaration(final VariableDeclaration decl) {
+        decl.getExpression().ifPresent(expr -> process(expr, newExpr -> decl.replace(expr, newExpr)));
+    }
+
+    /**
+     * Rewrite the subexpressions of the given expression, then try to fold it or,
+     * if it is invariant, register it as candidate for hoisting.
+     *
+     * @param expr the expression
+     * @param replacer replaces the expression in its parent
+     */
+    private void process(final Expression expr, final Consumer<Expression> replacer) {
+        expr.accept(this);
+        if (isFoldable(expr) && fold(expr, replacer)) {
+            return;
+        }
+        final String key = getInvariantKey(expr);
+        if (key != null) {
+            candidates.add(new Candidate(expr, replacer, key, loopDepth > 0));
+        }
+    }
+
+    private boolean fold(final Expression expr, final Consumer<Expression> replacer) {
+        final Sequence result;
+        try {
+            result = expr.eval(null, null);
+        } catch (final XPathException e) {
+            // a dynamic error must only be raised if the expression is evaluated at run time
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Not folding constant expression {}: {}", ExpressionDumper.dump(expr), e.getMessage());
+            }
+            return false;
+        }
+        if (result.getItemCount() != 1 || !(result.itemAt(0) instanceof AtomicValue)) {
+            return false;
+        }
+        final LiteralValue literal = new LiteralValue(context, (AtomicValue) result.itemAt(0));
+        literal.setLocation(expr.getLine(), expr.getColumn());
+        replacer.accept(literal);
+        hasRewritten = true;
+        report(expr, "CONSTANT FOLDING", "Replaced by " + literal);
+        return true;
+    }
+
+    private void hoistInvariants() {
+        final Map<String, List<Candidate>> occurrences = new LinkedHashMap<>();
+        for (final Candidate candidate : candidates) {
+            occurrences.computeIfAbsent(candidate.key, key -> new ArrayList<>()).add(candidate);
+        }
+        for (final List<Candidate> group : occurrences.values()) {
+            final boolean shared = group.size() > 1;
+            if (!shared && !group.get(0).inLoop) {
+                // evaluated only once anyway
+                continue;
+            }
+            final InvariantExpression.CachedResult result = new InvariantExpression.CachedResult();
+            for (final Candidate candidate : group) {
+                candidate.replacer.accept(new InvariantExpression(context, candidate.expr, result));
+                if (shared) {
+                    report(candidate.expr, "COMMON SUBEXPRESSION",
+                            "Sharing result between " + group.size() + " occurrences");
+                } else {
+                    report(candidate.expr, "LOOP INVARIANT", "Evaluating once per query execution");
+                }
+            }
+            hasRewritten = true;
+        }
+        candidates.clear();
+    }
+
+    private void report(final Expression expr, final String title, final String message) {
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("{} line {}: {}: {}", title, expr.getLine(), message, ExpressionDumper.dump(expr));
+        }
+        context.getProfiler().rewrite(expr, title, message);
+    }
+
+    private static boolean isFoldable(final Expression expr) {
+        final Expression core = unwrap(expr);
+        if (core instanceof OpNumeric || core instanceof GeneralComparison || core instanceof LogicalOp ||
+                core instanceof UnaryExpr || core instanceof ConcatExpr) {
+            final PathExpr op = (PathExpr) core;
+            if (op.getLength() == 0) {
+                return false;
+            }
+            for (int i = 0; i < op.getLength(); i++) {
+                if (!isConstant(op.getExpression(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return core instanceof CastExpression && isConstant(((CastExpression) core).getInnerExpression());
+    }
+
+    private static boolean isConstant(final Expression expr) {
+        return unwrap(expr) instanceof LiteralValue;
+    }
+
+    /**
+     * Strip the type checks and single step path expressions
+     * the parser or the analyzer wrapped around an expression.
+     */
+    private static Expression unwrap(Expression expr) {
+        while (true) {
+            if ((expr instanceof Atomize || expr instanceof DynamicCardinalityCheck ||
+                    expr instanceof DynamicTypeCheck || expr instanceof UntypedValueCheck) &&
+                    expr.getSubExpressionCount() == 1) {
+                expr = expr.getSubExpression(0);
+            } else if (expr.getClass() == PathExpr.class && ((PathExpr) expr).getLength() == 1) {
+                expr = ((PathExpr) expr).getExpression(0);
+            } else {
+                return expr;
+            }
+        }
+    }
+
+    /**
+     * Check if the expression is an invariant path expression.
+     *
+     * @param expr the expression to check
+     * @return the key identifying the expression, or null if it is not invariant
+     */
+    private static @Nullable String getInvariantKey(final Expression expr) {
+        if (expr.getClass() != PathExpr.class || ((PathExpr) expr).getLength() < 2) {
+            return null;
+        }
+        final PathExpr path = (PathExpr) expr;
+        final Expression first = unwrap(path.getExpression(0));
+        if (!(first instanceof InternalFunctionCall)) {
+            return null;
+        }
+        final Function function = ((InternalFunctionCall) first).getFunction();
+        if (!(function instanceof FunDoc || function instanceof ExtCollection)) {
+            return null;
+        }
+        for (int i = 0; i < function.getArgumentCount(); i++) {
+            if (!isConstant(function.getArgument(i))) {
+                return null;
+            }
+        }
+        final InvariantVisitor visitor = new InvariantVisitor();
+        for (int i = 1; i < path.getLength(); i++) {
+            path.getExpression(i).accept(visitor);
+        }
+        if (!visitor.isInvariant()) {
+            return null;
+        }
+        // the dump shows prefixes only: add the namespaces of all name tests
+        return ExpressionDumper.dump(expr) + '\u0000' + visitor.namespaces;
+    }
+
+    private static class Candidate {
+        final Expression expr;
+        final Consumer<Expression> replacer;
+        final String key;
+        final boolean inLoop;
+
+        Candidate(final Expression expr, final Consumer<Expression> replacer, final String key, final boolean inLoop) {
+            this.expr = expr;
+            this.replacer = replacer;
+            this.key = key;
+            this.inLoop = inLoop;
+        }
+    }
+
+    /**
+     * Traverses the steps of a path expression to check if they depend on variables,
+     * construct new nodes or call functions which may not be deterministic.
+     */
+    static class InvariantVisitor extends DefaultExpressionVisitor {
+
+        private boolean invariant = true;
+        private final StringBuilder namespaces = new StringBuilder();
+
+        public boolean isInvariant() {
+            return invariant;
+        }
+
+        @Override
+        public void visit(final Expression expr) {
+            if (expr instanceof LiteralValue) {
+                return;
+            }
+            if (expr instanceof Atomize ||
+                    expr instanceof DynamicCardinalityCheck ||
+                    expr instanceof DynamicNameCheck ||
+                    expr instanceof DynamicTypeCheck ||
+                    expr instanceof UntypedValueCheck) {
+                expr.accept(this);
+            } else {
+                invariant = false;
+            }
+        }
+
+        @Override
+        public void visitLocationStep(final LocationStep locationStep) {
+            final NodeTest test = locationStep.getTest();
+            if (test != null && test.getName() != null) {
+                namespaces.append(test.getName().getNamespaceURI()).append(' ');
+            }
+            super.visitLocationStep(locationStep);
+        }
+
+        @Override
+        public void visitBuiltinFunction(final Function function) {
+            final QName name = function.getName();
+            if (!(Namespaces.XPATH_FUNCTIONS_NS.equals(name.getNamespaceURI()) ||
+                    Namespaces.XPATH_FUNCTIONS_MATH_NS.equals(name.getNamespaceURI())) ||
+                    NON_DETERMINISTIC_FUNCTIONS.contains(name.getLocalPart())) {
+                invariant = false;
+                return;
+            }
+            super.visitBuiltinFunction(function);
+        }
+
+        @Override
+        public void visitCastExpr(final CastExpression expression) {
+            expression.getInnerExpression().accept(this);
+        }
+
+        @Override
+        public void visitGeneralComparison(final GeneralComparison comparison) {
+            comparison.getLeft().accept(this);
+            comparison.getRight().accept(this);
+        }
+
+        @Override
+        public void visitAndExpr(final OpAnd and) {
+            and.getLeft().accept(this);
+            and.getRight().accept(this);
+        }
+
+        @Override
+        public void visitOrExpr(final OpOr or) {
+            or.getLeft().accept(this);
+            or.getRight().accept(this);
+        }
+
+        @Override
+        public void visitFilteredExpr(final FilteredExpression filtered) {
+            filtered.getExpression().accept(this);
+            for (final Predicate predicate : filtered.getPredicates()) {
+                predicate.accept(this);
+            }
+        }
+
+        @Override
+        public void visitVariableReference(final VariableReference ref) {
+            invariant = false;
+        }
+
+        @Override
+        public void visitUserFunction(final UserDefinedFunction function) {
+            invariant = false;
+        }
+
+        @Override
+        public void visitFunctionCall(final FunctionCall call) {
+            invariant = false;
+        }
+
+        @Override
+        public void visitForExpression(final ForExpr forExpr) {
+            invariant = false;
+        }
+
+        @Override
+        public void visitLetExpression(final LetExpr letExpr) {
+            invariant = false;
+        }
+
+        @Override
+        public void visitOrderByClause(final OrderByClause orderBy) {
+            invariant = false;
+        }
+
+        @Override
+        public void visitGroupByClause(final GroupByClause groupBy) {
+            invariant = false;
+        }
+
+        @Override
+        public void visitWhereClause(final WhereClause where) {
+            invariant = false;
+        }
+
+        @Override
+        public void visitDocumentConstructor(final DocumentConstructor constructor) {
+            invariant = false;
+        }
+
+        @Override
+        public void visitElementConstructor(final ElementConstructor constructor) {
+            invariant = false;
+        }
+
+        @Override
+        public void visitTextConstructor(final DynamicTextConstructor constructor) {
+            invariant = false;
+        }
+
+        @Override
+        public void visitAttribConstructor(final AttributeConstructor constructor) {
+            invariant = false;
+        }
+
+        @Override
+        public void visitAttribConstructor(final DynamicAttributeConstructor constructor) {
+            invariant = false;
+        }
+
+        @Override
+        public void visitVariableDeclaration(final VariableDeclaration decl) {
+            invariant = false;
+        }
+
+        @Override
+        public void visitTryCatch(final TryCatchExpression tryCatch) {
+            invariant = false;
+        }
+    }
+}
@@ -66,15 +66,25 @@ public class ExtensionExpression extends AbstractExpression {
             throws XPathException {
         callBefore(contextSequence);
         Sequence result = null;
-        for (final Pragma pragma : pragmas) {
-            Sequence temp = pragma.eval(contextSequence, contextItem);
-            if (temp != null) {
-                result = temp;
-                break;
+        try {
+            for (final Pragma pragma : pragmas) {
+                Sequence temp = pragma.eval(contextSequence, contextItem);
+                if (temp != null) {
+                    result = temp;
+                    break;
+                }
+            }
+            if (result == null)
+                {result = innerExpression.eval(contextSequence, contextItem);}
+        } catch (final XPathException | RuntimeException e) {
+            // pragmas may have changed the state of the context, which has to be restored
+            try {
+                callAfter();
+            } catch (final XPathException ae) {
+                e.addSuppressed(ae);
             }
+            throw e;
         }
-        if (result == null)
-            {result = innerExpression.eval(contextSequence, contextItem);}
         callAfter();
         return result;
     }
@@ -35,6 +35,7 @@ import org.exist.storage.DBBroker;
 import org.exist.storage.ElementValue;
 import org.exist.storage.IndexSpec;
 import org.exist.storage.Indexable;
+import org.exist.storage.statistics.IndexStatistics;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.Constants.Comparison;
 import org.exist.xquery.Constants.StringTruncationOperator;
@@ -311,6 +312,21 @@ public class GeneralComparison extends BinaryOp implements Optimizable, IndexUse
         return( this.relation );
     }
 
+    /**
+     * Estimate the number of nodes selected by this comparison from the index
+     * statistics, for comparisons of a node name with a literal value.
+     *
+     * @param stats the index statistics
+     * @return the estimated number of nodes, or -1 if no estimate is available
+     */
+    public long estimateSelectedNodes(final IndexStatistics stats) {
+        if (contextQName == null || !(getRight() instanceof LiteralValue) ||
+                truncation != StringTruncationOperator.NONE) {
+            return -1;
+        }
+        return stats.estimateCount(contextQName, relation, ((LiteralValue) getRight()).getValue());
+    }
+
     public StringTruncationOperator getTruncation() {
         return truncation;
     }
@@ -0,0 +1,253 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.dom.persistent.NodeHandle;
+import org.exist.numbering.NodeId;
+import org.exist.storage.UpdateListener;
+import org.exist.xquery.util.ExpressionDumper;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+
+/**
+ * Wraps an expression which does not depend on the context or on any variable,
+ * see {@link ExpressionRewriter}. The expression is evaluated once, the result
+ * is returned again for every further evaluation until the state of the expression
+ * is reset, i.e. until the query is executed again.
+ *
+ * Several occurrences of the same expression may share the result. The result is
+ * dropped if a document is modified while the query is running.
+ */
+public class InvariantExpression extends AbstractExpression implements RewritableExpression {
+
+    private Expression expression;
+    private Expression parent = null;
+
+    private final CachedResult sharedResult;
+    private final CachedResult ownResult = new CachedResult();
+    private CachedResult result;
+
+    /**
+     * @param context the xquery context
+     * @param expression the invariant expression
+     * @param sharedResult the result shared by all occurrences of the expression
+     */
+    public InvariantExpression(final XQueryContext context, final Expression expression,
+            final CachedResult sharedResult) {
+        super(context);
+        this.expression = expression;
+        this.sharedResult = sharedResult;
+        this.result = sharedResult;
+        setLocation(expression.getLine(), expression.getColumn());
+    }
+
+    @Override
+    public void analyze(final AnalyzeContextInfo contextInfo) throws XPathException {
+        parent = contextInfo.getParent();
+        contextId = contextInfo.getContextId();
+        // nodes evaluated within a predicate carry context information for this
+        // particular predicate: they cannot be shared with other occurrences
+        result = contextId == Expression.NO_CONTEXT_ID ? sharedResult : ownResult;
+
+        final AnalyzeContextInfo newContextInfo = new AnalyzeContextInfo(contextInfo);
+        newContextInfo.setParent(this);
+        expression.analyze(newContextInfo);
+    }
+
+    @Override
+    public Sequence eval(final Sequence contextSequence, final Item contextItem) throws XPathException {
+        Sequence value = result.get();
+        if (value == null) {
+            final long modCount = result.register(context);
+            value = expression.eval(contextSequence, contextItem);
+            result.set(value, modCount);
+        } else if (context.getProfiler().isEnabled()) {
+            context.getProfiler().message(this, Profiler.OPTIMIZATIONS, "LOOP INVARIANT",
+                    "Reusing result of previous evaluation");
+        }
+        return value;
+    }
+
+    public Expression getExpression() {
+        return expression;
+    }
+
+    @Override
+    public int returnsType() {
+        return expression.returnsType();
+    }
+
+    @Override
+    public Cardinality getCardinality() {
+        return expression.getCardinality();
+    }
+
+    @Override
+    public int getDependencies() {
+        return expression.getDependencies();
+    }
+
+    @Override
+    public void setPrimaryAxis(final int axis) {
+        expression.setPrimaryAxis(axis);
+    }
+
+    @Override
+    public int getPrimaryAxis() {
+        return expression.getPrimaryAxis();
+    }
+
+    @Override
+    public void setContextDocSet(final DocumentSet contextSet) {
+        super.setContextDocSet(contextSet);
+        expression.setContextDocSet(contextSet);
+    }
+
+    @Override
+    public void resetState(final boolean postOptimization) {
+        super.resetState(postOptimization);
+        expression.resetState(postOptimization);
+        sharedResult.clear();
+        ownResult.clear();
+    }
+
+    @Override
+    public void accept(final ExpressionVisitor visitor) {
+        expression.accept(visitor);
+    }
+
+    @Override
+    public void dump(final ExpressionDumper dumper) {
+        expression.dump(dumper);
+    }
+
+    @Override
+    public String toString() {
+        return expression.toString();
+    }
+
+    @Override
+    public int getSubExpressionCount() {
+        return 1;
+    }
+
+    @Override
+    public Expression getSubExpression(final int index) {
+        if (index == 0) {
+            return expression;
+        }
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + getSubExpressionCount());
+    }
+
+    @Override
+    public Expression getParent() {
+        return parent;
+    }
+
+    /* RewritableExpression API */
+
+    @Override
+    public void replace(final Expression oldExpr, final Expression newExpr) {
+        if (expression == oldExpr) {
+            expression = newExpr;
+        }
+    }
+
+    @Override
+    public void remove(final Expression oldExpr) throws XPathException {
+        throw new XPathException(this, "Method remove is not supported");
+    }
+
+    @Override
+    public Expression getPrevious(final Expression current) {
+        return null;
+    }
+
+    @Override
+    public Expression getFirst() {
+        return expression;
+    }
+
+    /**
+     * The result of an invariant expression. As the result may contain nodes
+     * of stored documents, it is dropped if any document is modified.
+     */
+    public static class CachedResult implements UpdateListener {
+
+        private volatile Sequence value = null;
+        private volatile long modCount = 0;
+        private boolean registered = false;
+
+        Sequence get() {
+            return value;
+        }
+
+        /**
+         * Subscribe to document modifications before the expression is evaluated.
+         *
+         * @param context the context of the query
+         * @return the number of modifications seen so far
+         */
+        long register(final XQueryContext context) {
+            if (!registered) {
+                context.registerUpdateListener(this);
+                registered = true;
+            }
+            return modCount;
+        }
+
+        void set(final Sequence value, final long expectedModCount) {
+            // a document was modified during the evaluation
+            if (modCount == expectedModCount) {
+                this.value = value;
+            }
+        }
+
+        void clear() {
+            value = null;
+        }
+
+        @Override
+        public void documentUpdated(final DocumentImpl document, final int event) {
+            modCount++;
+            value = null;
+        }
+
+        @Override
+        public void nodeMoved(final NodeId oldNodeId, final NodeHandle newNode) {
+            modCount++;
+            value = null;
+        }
+
+        @Override
+        public void unsubscribe() {
+            registered = false;
+            value = null;
+        }
+
+        @Override
+        public void debug() {
+        }
+    }
+}
@@ -33,11 +33,13 @@ import org.exist.xquery.value.*;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.annotation.Nullable;
 import javax.xml.stream.StreamFilter;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.function.Function;
 
 /**
  * Processes all location path steps (like descendant::*, ancestor::XXX).
@@ -556,8 +558,8 @@ public class LocationStep extends Step {
                         "OPTIMIZATION",
                         "Using structural index '" + index.toString() + "'");
             }
-            final NodeSelector selector = new SelfSelector(contextSet, contextId);
-            return index.findElementsByTagName(ElementValue.ELEMENT, docs, test.getName(), selector, this);
+            return findElementsByTagName(index, ElementValue.ELEMENT, docs, contextSet,
+                    set -> new SelfSelector(set, contextId));
         }
     }
 
@@ -596,7 +598,7 @@ public class LocationStep extends Step {
                                         + "'");
                     }
                     // TODO : why a null selector here ? We have one below !
-                    currentSet = index.findElementsByTagName(ElementValue.ATTRIBUTE, docs, test.getName(), null, this);
+                    currentSet = findElementsByTagName(index, ElementValue.ATTRIBUTE, docs, contextSet, null);
                     currentDocs = docs;
                     registerUpdateListener();
                 }
@@ -622,18 +624,18 @@ public class LocationStep extends Step {
                 return index.findDescendantsByTagName(ElementValue.ATTRIBUTE, test.getName(), axis, docs, contextSet,
                         contextId, this);
             } else {
-                final NodeSelector selector;
+                final Function<NodeSet, NodeSelector> selector;
                 switch (axis) {
                     case Constants.ATTRIBUTE_AXIS:
-                        selector = new ChildSelector(contextSet, contextId);
+                        selector = set -> new ChildSelector(set, contextId);
                         break;
                     case Constants.DESCENDANT_ATTRIBUTE_AXIS:
-                        selector = new DescendantSelector(contextSet, contextId);
+                        selector = set -> new DescendantSelector(set, contextId);
                         break;
                     default:
                         throw new IllegalArgumentException("Unsupported axis specified");
                 }
-                return index.findElementsByTagName(ElementValue.ATTRIBUTE, docs, test.getName(), selector, this);
+                return findElementsByTagName(index, ElementValue.ATTRIBUTE, docs, contextSet, selector);
             }
         }
     }
@@ -685,7 +687,7 @@ public class LocationStep extends Step {
                                 "Using structural index '" + index.toString()
                                         + "'");
                     }
-                    currentSet = index.findElementsByTagName(ElementValue.ELEMENT, docs, test.getName(), null, this);
+                    currentSet = findElementsByTagName(index, ElementValue.ELEMENT, docs, contextSet, null);
                     currentDocs = docs;
                     registerUpdateListener();
                 }
@@ -707,8 +709,8 @@ public class LocationStep extends Step {
             } else {
                 // if (contextSet instanceof VirtualNodeSet)
                 // ((VirtualNodeSet)contextSet).realize();
-                final NodeSelector selector = new ChildSelector(contextSet, contextId);
-                return index.findElementsByTagName(ElementValue.ELEMENT, docs, test.getName(), selector, this);
+                return findElementsByTagName(index, ElementValue.ELEMENT, docs, contextSet,
+                        set -> new ChildSelector(set, contextId));
             }
         }
     }
@@ -748,7 +750,7 @@ public class LocationStep extends Step {
                                 "Using structural index '" + index.toString()
                                         + "'");
                     }
-                    currentSet = index.findElementsByTagName(ElementValue.ELEMENT, docs, test.getName(), null, this);
+                    currentSet = findElementsByTagName(index, ElementValue.ELEMENT, docs, contextSet, null);
                     currentDocs = docs;
                     registerUpdateListener();
                 }
@@ -777,18 +779,18 @@ public class LocationStep extends Step {
                 return index.findDescendantsByTagName(ElementValue.ELEMENT, test.getName(), axis, docs, contextSet,
                         contextId, this);
             } else {
-                final NodeSelector selector;
+                final Function<NodeSet, NodeSelector> selector;
                 switch (axis) {
                     case Constants.DESCENDANT_SELF_AXIS:
-                        selector = new DescendantOrSelfSelector(contextSet, contextId);
+                        selector = set -> new DescendantOrSelfSelector(set, contextId);
                         break;
                     case Constants.DESCENDANT_AXIS:
-                        selector = new DescendantSelector(contextSet, contextId);
+                        selector = set -> new DescendantSelector(set, contextId);
                         break;
                     default:
                         throw new IllegalArgumentException("Unsupported axis specified");
                 }
-                return index.findElementsByTagName(ElementValue.ELEMENT, docs, test.getName(), selector, this);
+                return findElementsByTagName(index, ElementValue.ELEMENT, docs, contextSet, selector);
             }
 
         }
@@ -872,7 +874,7 @@ public class LocationStep extends Step {
                                 "Using structural index '" + index.toString()
                                         + "'");
                     }
-                    currentSet = index.findElementsByTagName(ElementValue.ELEMENT, docs, test.getName(), null, this);
+                    currentSet = findElementsByTagName(index, ElementValue.ELEMENT, docs, contextSet, null);
                     currentDocs = docs;
                     registerUpdateListener();
                 }
@@ -958,7 +960,7 @@ public class LocationStep extends Step {
                         context.getProfiler().message(this, Profiler.OPTIMIZATIONS, "OPTIMIZATION",
                                 "Using structural index '" + index.toString() + "'");
                     }
-                    currentSet = index.findElementsByTagName(ElementValue.ELEMENT, docs, test.getName(), null, this);
+                    currentSet = findElementsByTagName(index, ElementValue.ELEMENT, docs, contextSet, null);
                     currentDocs = docs;
                     registerUpdateListener();
                 }
@@ -1091,7 +1093,7 @@ public class LocationStep extends Step {
                                 "Using structural index '" + index.toString()
                                         + "'");
                     }
-                    currentSet = index.findElementsByTagName(ElementValue.ELEMENT, docs, test.getName(), null, this);
+                    currentSet = findElementsByTagName(index, ElementValue.ELEMENT, docs, contextSet, null);
                     currentDocs = docs;
                     registerUpdateListener();
                 }
@@ -1155,7 +1157,7 @@ public class LocationStep extends Step {
                                 "Using structural index '" + index.toString()
                                         + "'");
                     }
-                    currentSet = index.findElementsByTagName(ElementValue.ELEMENT, docs, test.getName(), null, this);
+                    currentSet = findElementsByTagName(index, ElementValue.ELEMENT, docs, contextSet, null);
                     currentDocs = docs;
                     registerUpdateListener();
                 }
@@ -1187,6 +1189,38 @@ public class LocationStep extends Step {
         return ds;
     }
 
+    /**
+     * Find all nodes matching the node test in the structural index. If an
+     * enclosing exist:parallel pragma is active and the document set is
+     * large enough, the scan is split across several worker threads.
+     *
+     * @param index the structural index of the current broker
+     * @param type the type of the node
+     * @param docs the documents to scan
+     * @param contextSet the context set the selector refers to
+     * @param selector creates the selector over the given context set, or null
+     * @return the matching nodes
+     * @throws XPathException if the parallel scan failed
+     */
+    private NodeSet findElementsByTagName(final StructuralIndex index, final byte type, final DocumentSet docs,
+            final NodeSet contextSet, @Nullable final Function<NodeSet, NodeSelector> selector) throws XPathException {
+        final ParallelEvaluation parallel = context.getParallelEvaluation();
+        // virtual node sets are realized lazily, copying them would mean to realize them upfront
+        if (parallel != null && parallel.accepts(docs)
+                && (selector == null || !(contextSet instanceof VirtualNodeSet))) {
+            if (context.getProfiler().isEnabled()) {
+                context.getProfiler().message(this, Profiler.OPTIMIZATIONS, "OPTIMIZATION",
+                        "Scanning structural index in parallel: " + parallel.getParallelism() + " threads");
+            }
+            // the workers share the selector, so it must only read from a sorted copy of the context set
+            final NodeSelector sharedSelector = selector == null ? null
+                    : selector.apply(ParallelEvaluation.readOnlyCopy(contextSet));
+            return parallel.findElementsByTagName(context, type, docs, test.getName(), sharedSelector, this);
+        }
+        return index.findElementsByTagName(type, docs, test.getName(),
+                selector == null ? null : selector.apply(contextSet), this);
+    }
+
     /**
      * Get the parent expression
      *
@@ -270,6 +270,16 @@ public class ModuleContext extends XQueryContext {
         return parentContext.getProfiler();
     }
 
+    @Override
+    public ParallelEvaluation getParallelEvaluation() {
+        return parentContext.getParallelEvaluation();
+    }
+
+    @Override
+    public void setParallelEvaluation(final ParallelEvaluation parallelEvaluation) {
+        parentContext.setParallelEvaluation(parallelEvaluation);
+    }
+
     @Override
     public XMLGregorianCalendar getCalendar() {
         return parentContext.getCalendar();
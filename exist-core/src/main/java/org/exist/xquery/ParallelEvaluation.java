@@ -0,0 +1,226 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.DefaultDocumentSet;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.dom.persistent.NewArrayNodeSet;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.security.Subject;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.exist.util.ThreadUtils.nameGlobalThread;
+
+/**
+ * Evaluates structural index lookups of a {@link LocationStep} in parallel.
+ *
+ * The {@link DocumentSet} is partitioned into chunks of consecutive document ids. Each chunk
+ * is scanned on a worker of a {@link ForkJoinPool} shared by all queries, which leases its
+ * own {@link DBBroker} for the subject of the query. The partial node sets are concatenated
+ * in document order.
+ *
+ * Only the index scan (including the {@link NodeSelector} used to filter the matches
+ * against the context set) runs in parallel. The selector is shared by the workers, so it
+ * must only read from its context set, see {@link #readOnlyCopy(NodeSet)}. The compiled
+ * expression tree and the {@link XQueryContext} are not thread-safe, so predicates are
+ * still applied on the query thread to the merged node set.
+ *
+ * Instances are created by {@link org.exist.xquery.pragmas.ParallelPragma} and registered
+ * with the context for the duration of the extension expression.
+ */
+public class ParallelEvaluation {
+
+    private final static Logger LOG = LogManager.getLogger(ParallelEvaluation.class);
+
+    public final static int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final static AtomicLong threadId = new AtomicLong();
+
+    /**
+     * Shared by all queries, so that concurrent parallel queries cannot start
+     * more threads than there are processors. Idle workers are released by the pool.
+     */
+    private final static ForkJoinPool forkJoinPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+            pool -> {
+                final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName(nameGlobalThread("xquery-parallel-" + threadId.getAndIncrement()));
+                return thread;
+            }, null, false);
+
+    private final BrokerPool brokerPool;
+    private final int parallelism;
+    private final int chunkSize;
+
+    public ParallelEvaluation(final BrokerPool brokerPool, final int threads, final int chunkSize) {
+        this.brokerPool = brokerPool;
+        this.parallelism = Math.min(threads, forkJoinPool.getParallelism());
+        this.chunkSize = chunkSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Check if it is worth to split the document set.
+     *
+     * Parallel evaluation requires one broker per worker, so we do not
+     * attempt it if the broker pool could not serve at least two chunks
+     * without blocking.
+     *
+     * @param docs the documents to scan
+     * @return true if the documents should be scanned in parallel
+     */
+    public boolean accepts(final DocumentSet docs) {
+        return parallelism > 1 && docs.getDocumentCount() > chunkSize && availableBrokers() > 1;
+    }
+
+    /**
+     * Copy a context set into a sorted set, which can be read by
+     * several threads at once. Node sets sort themselves lazily on first
+     * access, so a set which is not known to be sorted must not be shared.
+     *
+     * @param contextSet the context set
+     * @return a sorted set containing the nodes of the context set
+     */
+    public static NodeSet readOnlyCopy(final NodeSet contextSet) {
+        final NewArrayNodeSet copy = new NewArrayNodeSet();
+        copy.addAll(contextSet);
+        copy.sort();
+        return copy;
+    }
+
+    private int availableBrokers() {
+        return brokerPool.getMax() - brokerPool.countActiveBrokers();
+    }
+
+    /**
+     * Parallel variant of {@link org.exist.indexing.StructuralIndex#findElementsByTagName(byte, DocumentSet, QName, NodeSelector, Expression)}.
+     *
+     * @param context the query context
+     * @param type the type of the node
+     * @param docs the document set to scan
+     * @param qname the name of the node
+     * @param selector the selector, or null
+     * @param parent the calling expression
+     * @return the matching nodes in document order
+     * @throws XPathException if a partition could not be scanned
+     */
+    public NodeSet findElementsByTagName(final XQueryContext context, final byte type, final DocumentSet docs,
+            final QName qname, final NodeSelector selector, final Expression parent) throws XPathException {
+        final List<DocumentSet> chunks = partition(docs);
+        final Subject subject = context.getBroker().getCurrentSubject();
+
+        // never hold more brokers than we can get without waiting
+        final int maxTasks = Math.min(Math.min(chunks.size(), parallelism), Math.max(1, availableBrokers() - 1));
+        final List<ForkJoinTask<NodeSet[]>> tasks = new ArrayList<>(maxTasks);
+        for (int i = 0; i < maxTasks; i++) {
+            final int offset = i;
+            tasks.add(forkJoinPool.submit(() -> {
+                final NodeSet[] chunkResults = new NodeSet[chunks.size()];
+                try (final DBBroker broker = brokerPool.get(Optional.of(subject))) {
+                    for (int j = offset; j < chunks.size(); j += maxTasks) {
+                        context.proceed(parent);
+                        chunkResults[j] = broker.getStructuralIndex().findElementsByTagName(type, chunks.get(j), qname,
+                                selector, parent);
+                    }
+                }
+                return chunkResults;
+            }));
+        }
+
+        final NodeSet[] results = new NodeSet[chunks.size()];
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                final NodeSet[] partial = tasks.get(i).get();
+                for (int j = i; j < partial.length; j += maxTasks) {
+                    results[j] = partial[j];
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new XPathException(parent, "Interrupted while waiting for parallel index scan", e);
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof XPathException) {
+                    throw (XPathException) e.getCause();
+                }
+                throw new XPathException(parent, "Error during parallel index scan: " + e.getCause().getMessage(),
+                        e.getCause());
+            }
+        }
+
+        // chunks are ordered by document id, so concatenating the results keeps document order
+        final NewArrayNodeSet result = new NewArrayNodeSet();
+        for (final NodeSet partial : results) {
+            result.addAll(partial);
+        }
+        result.updateNoSort();
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Scanned {} documents in {} chunks on {} workers: {} matches", docs.getDocumentCount(),
+                    chunks.size(), maxTasks, result.getLength());
+        }
+        return result;
+    }
+
+    /**
+     * Split the document set into chunks of at most {@link #chunkSize}
+     * documents ordered by document id.
+     */
+    private List<DocumentSet> partition(final DocumentSet docs) {
+        final List<DocumentImpl> sorted = new ArrayList<>(docs.getDocumentCount());
+        for (final Iterator<DocumentImpl> i = docs.getDocumentIterator(); i.hasNext(); ) {
+            sorted.add(i.next());
+        }
+        sorted.sort(Comparator.comparingInt(DocumentImpl::getDocId));
+
+        final List<DocumentSet> chunks = new ArrayList<>(sorted.size() / chunkSize + 1);
+        DefaultDocumentSet chunk = null;
+        for (final DocumentImpl doc : sorted) {
+            if (chunk == null || chunk.getDocumentCount() == chunkSize) {
+                chunk = new DefaultDocumentSet(chunkSize);
+                chunks.add(chunk);
+            }
+            chunk.add(doc, false);
+        }
+        return chunks;
+    }
+}
@@ -74,6 +74,8 @@ public class Profiler {
     private boolean enabled = false;
 
     private boolean logEnabled = false;
+
+    private boolean reportRewrites = false;
     
     private int verbosity = 0; 
 
@@ -96,6 +98,8 @@ public class Profiler {
      *  <li><strong>enabled</strong>: yes|no.</li>
      *  <li><strong>logger</strong>: name of the logger to use.</li>
      *  <li><strong>verbosity</strong>: integer value &gt; 0. 1 does only output function calls.</li>
+     *  <li><strong>rewrites</strong>: yes|no. Report the rewrites applied to the query by the
+     *  {@link ExpressionRewriter}.</li>
      * </ul>
      * @param pragma the option to read settings from
      */
@@ -117,6 +121,9 @@ public class Profiler {
                 } else if ("enabled".equals(params[0])) {
                     enabled = "yes".equals(params[1]);
 
+                } else if ("rewrites".equals(params[0])) {
+                    reportRewrites = "yes".equals(params[1]);
+
                 } else if ("verbosity".equals(params[0])) {
                     try {
                         verbosity = Integer.parseInt(params[1]);
@@ -412,6 +419,32 @@ public class Profiler {
         log.debug(buf.toString());
     }    
     
+    /**
+     * Print out a message for a rewrite applied to the query at compile time.
+     * The message is only printed if the profiler is enabled and option
+     * rewrites is set to yes.
+     *
+     * @param expr the rewritten expression
+     * @param title the kind of rewrite
+     * @param message a description of the rewrite
+     */
+    public final void rewrite(Expression expr, String title, String message) {
+        if (!enabled || !reportRewrites)
+            {return;}
+
+        buf.setLength(0);
+        buf.append("REWRITE\t");
+        buf.append(title);
+        if (message != null && !message.isEmpty()) {
+            buf.append("\t");
+            buf.append(message);
+        }
+        buf.append("\t");
+        printPosition(expr);
+        buf.append(expr.toString());
+        log.debug(buf.toString());
+    }
+
     public void reset() {
         if (!stack.isEmpty()) {
             log.debug("QUERY RESET");
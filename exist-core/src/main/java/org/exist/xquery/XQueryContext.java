@@ -412,6 +412,14 @@ public class XQueryContext implements BinaryValueManager, Context {
     @Nullable
     private HttpContext httpContext = null;
 
+    /**
+     * Parallel evaluation settings of an enclosing
+     * exist:parallel pragma, or null if path
+     * expressions should be evaluated sequentially.
+     */
+    @Nullable
+    private ParallelEvaluation parallelEvaluation = null;
+
     private final Map<QName, DecimalFormat> staticDecimalFormats = new HashMap<>();
     private static final QName UNNAMED_DECIMAL_FORMAT = new QName("__UNNAMED__", Function.BUILTIN_FUNCTION_NS);
 
@@ -694,6 +702,21 @@ public class XQueryContext implements BinaryValueManager, Context {
         return profiler;
     }
 
+    /**
+     * Get the parallel evaluation settings which are in effect
+     * for the currently evaluated expression.
+     *
+     * @return the parallel evaluation, or null if expressions are evaluated sequentially
+     */
+    @Nullable
+    public ParallelEvaluation getParallelEvaluation() {
+        return parallelEvaluation;
+    }
+
+    public void setParallelEvaluation(@Nullable final ParallelEvaluation parallelEvaluation) {
+        this.parallelEvaluation = parallelEvaluation;
+    }
+
     @Override
     public void setRootExpression(final Expression expr) {
         this.rootExpression = expr;
@@ -1589,10 +1612,13 @@ public class XQueryContext implements BinaryValueManager, Context {
         expr.analyze(new AnalyzeContextInfo());
 
         if (optimizationsEnabled()) {
+            final ExpressionRewriter rewriter = new ExpressionRewriter(this);
+            rewriter.rewrite(expr);
+
             final Optimizer optimizer = new Optimizer(this);
             expr.accept(optimizer);
 
-            if (optimizer.hasOptimized()) {
+            if (rewriter.hasRewritten() || optimizer.hasOptimized()) {
                 reset(true);
                 expr.resetState(true);
                 expr.analyze(new AnalyzeContextInfo());
@@ -2962,6 +2988,18 @@ public class XQueryContext implements BinaryValueManager, Context {
             if (NoIndexPragma.NO_INDEX_PRAGMA.equals(qname)) {
                 return new NoIndexPragma(qname, contents);
             }
+
+            if (ParallelPragma.PARALLEL_PRAGMA.equals(qname)) {
+                return new ParallelPragma(qname, contents);
+            }
+
+            if (StreamPragma.STREAM_PRAGMA.equals(qname)) {
+                return new StreamPragma(qname, contents);
+            }
+
+            if (CachePragma.CACHE_PRAGMA.equals(qname)) {
+                return new CachePragma(qname, contents);
+            }
         }
 
         return null;
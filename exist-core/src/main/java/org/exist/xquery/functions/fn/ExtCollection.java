@@ -165,6 +165,51 @@ public class ExtCollection extends Function {
         return result;
     }
 
+    /**
+     * Evaluate the function to a sequence which loads the documents lazily, in batches
+     * of batchSize documents, while it is iterated. See {@link LazyCollectionSequence}.
+     *
+     * Falls back to {@link #eval(Sequence, Item)} if no collection URIs are given, if a
+     * dynamically available collection is addressed, or if the query runs in protected mode.
+     *
+     * @param contextSequence the context sequence
+     * @param contextItem the context item
+     * @param batchSize the number of documents to load at once
+     * @return the documents contained in or under the given collections
+     * @throws XPathException if a collection cannot be accessed
+     */
+    public Sequence evalLazy(final Sequence contextSequence, final Item contextItem, final int batchSize)
+            throws XPathException {
+        final List<String> args = getParameterValues(contextSequence, contextItem);
+        if (args.isEmpty() || context.inProtectedMode()
+                || context.getDynamicallyAvailableCollection(asUri(args.get(0)).toString()) != null) {
+            return eval(contextSequence, contextItem);
+        }
+
+        final List<XmldbURI> uris = new ArrayList<>(args.size());
+        try {
+            for (final String next : args) {
+                final XmldbURI uri = new AnyURIValue(next).toXmldbURI();
+                try (final Collection coll = context.getBroker().openCollection(uri, Lock.LockMode.READ_LOCK)) {
+                    if (coll != null) {
+                        uris.add(coll.getURI());
+                    } else if (context.isRaiseErrorOnFailedRetrieval()) {
+                        throw new XPathException(this, ErrorCodes.FODC0002, "Can not access collection '" + uri + "'");
+                    }
+                }
+            }
+        } catch (final XPathException e) {
+            e.setLocation(line, column);
+            throw new XPathException(this, ErrorCodes.FODC0002, e.getMessage(), argsToSeq(contextSequence, contextItem), e);
+        } catch (final PermissionDeniedException e) {
+            throw new XPathException(this, ErrorCodes.FODC0002, "Can not access collection '" + e.getMessage() + "'",
+                    argsToSeq(contextSequence, contextItem), e);
+        }
+
+        registerUpdateListener();
+        return new LazyCollectionSequence(context, uris, includeSubCollections, batchSize);
+    }
+
     private Sequence argsToSeq(final Sequence contextSequence, final Item contextItem) throws XPathException {
         final ValueSequence sequence = new ValueSequence();
         for (int i = 0; i < getArgumentCount(); i++) {
@@ -0,0 +1,308 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.functions.fn;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.collections.Collection;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.DocumentSet;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.dom.persistent.NodeSet;
+import org.exist.security.Permission;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.DBBroker;
+import org.exist.storage.lock.Lock;
+import org.exist.storage.lock.LockManager;
+import org.exist.storage.lock.ManagedDocumentLock;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.XQueryContext;
+import org.exist.xquery.value.AbstractSequence;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.MemoryNodeSet;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.value.Type;
+import org.exist.xquery.value.ValueSequence;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A sequence of the document nodes contained in one or more collections,
+ * which is computed lazily while the sequence is iterated.
+ *
+ * Contrary to the eager evaluation of fn:collection, no {@link DocumentSet} of all
+ * documents is built up front. The collections are visited one after the other, and
+ * their documents are turned into {@link NodeProxy} objects in batches. As in
+ * {@link Collection#getDocuments(DBBroker, org.exist.dom.persistent.MutableDocumentSet)},
+ * a document is read locked while its permissions are checked, not for the lifetime of
+ * the sequence. Stopping the iteration early, e.g. because of a positional predicate,
+ * avoids loading the remaining collections at all.
+ *
+ * Operations which need the complete sequence, like {@link #itemAt(int)} or
+ * {@link #toNodeSet()}, fall back to an eager evaluation, which is cached.
+ *
+ * Collections or documents which are removed or cannot be read while the sequence
+ * is iterated are skipped.
+ */
+class LazyCollectionSequence extends AbstractSequence {
+
+    private static final Logger LOG = LogManager.getLogger(LazyCollectionSequence.class);
+
+    private final XQueryContext context;
+    private final List<XmldbURI> collections;
+    private final boolean includeSubCollections;
+    private final int batchSize;
+
+    private Sequence materialized = null;
+
+    // the number of items, counted up to 2, see isEmpty() and hasOne()
+    private int leadingItems = -1;
+
+    LazyCollectionSequence(final XQueryContext context, final List<XmldbURI> collections,
+            final boolean includeSubCollections, final int batchSize) {
+        this.context = context;
+        this.collections = collections;
+        this.includeSubCollections = includeSubCollections;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void add(final Item item) throws XPathException {
+        throw new XPathException("Internal error: adding to an immutable sequence");
+    }
+
+    @Override
+    public void addAll(final Sequence other) throws XPathException {
+        throw new XPathException("Internal error: adding to an immutable sequence");
+    }
+
+    @Override
+    public int getItemType() {
+        return Type.DOCUMENT;
+    }
+
+    @Override
+    public SequenceIterator iterate() throws XPathException {
+        if (materialized != null) {
+            return materialized.iterate();
+        }
+        return new CollectionIterator();
+    }
+
+    @Override
+    public SequenceIterator unorderedIterator() throws XPathException {
+        return iterate();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        if (materialized != null) {
+            return materialized.isEmpty();
+        }
+        return countLeadingItems() == 0;
+    }
+
+    @Override
+    public boolean hasOne() {
+        if (materialized != null) {
+            return materialized.hasOne();
+        }
+        return countLeadingItems() == 1;
+    }
+
+    @Override
+    public long getItemCountLong() {
+        return materialize().getItemCountLong();
+    }
+
+    @Override
+    public Item itemAt(final int pos) {
+        return materialize().itemAt(pos);
+    }
+
+    @Override
+    public NodeSet toNodeSet() throws XPathException {
+        return materialize().toNodeSet();
+    }
+
+    @Override
+    public MemoryNodeSet toMemNodeSet() throws XPathException {
+        return materialize().toMemNodeSet();
+    }
+
+    @Override
+    public DocumentSet getDocumentSet() {
+        return materialize().getDocumentSet();
+    }
+
+    @Override
+    public Iterator<Collection> getCollectionIterator() {
+        return materialize().getCollectionIterator();
+    }
+
+    @Override
+    public void removeDuplicates() {
+        // documents are only visited once
+    }
+
+    @Override
+    public boolean isPersistentSet() {
+        return true;
+    }
+
+    @Override
+    public void clearContext(final int contextId) throws XPathException {
+        // the nodes are created while iterating and do not carry any context yet
+        if (materialized != null) {
+            materialized.clearContext(contextId);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LazyCollection(" + collections + ")";
+    }
+
+    /**
+     * Count the items of the sequence, but stop at the second one. The
+     * result is cached, so that the collection tree is not walked again
+     * on every call.
+     */
+    private int countLeadingItems() {
+        if (leadingItems < 0) {
+            final SequenceIterator i = new CollectionIterator();
+            int count = 0;
+            while (count < 2 && i.hasNext()) {
+                i.nextItem();
+                count++;
+            }
+            leadingItems = count;
+        }
+        return leadingItems;
+    }
+
+    private Sequence materialize() {
+        if (materialized == null) {
+            final ValueSequence result = new ValueSequence();
+            for (final SequenceIterator i = new CollectionIterator(); i.hasNext(); ) {
+                result.add(i.nextItem());
+            }
+            materialized = result;
+        }
+        return materialized;
+    }
+
+    /**
+     * Walks the collection tree depth-first and loads the documents
+     * of the current collection in batches.
+     */
+    private class CollectionIterator implements SequenceIterator {
+
+        private final Deque<XmldbURI> pending = new ArrayDeque<>(collections.size());
+        private final List<NodeProxy> batch = new ArrayList<>(batchSize);
+        private int batchPos = 0;
+
+        @Nullable private Iterator<DocumentImpl> documents = null;
+
+        private CollectionIterator() {
+            for (int i = collections.size() - 1; i >= 0; i--) {
+                pending.push(collections.get(i));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (batchPos == batch.size()) {
+                batch.clear();
+                batchPos = 0;
+                if (documents != null && documents.hasNext()) {
+                    loadBatch();
+                } else if (!pending.isEmpty()) {
+                    openCollection(pending.pop());
+                } else {
+                    documents = null;
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Item nextItem() {
+            if (!hasNext()) {
+                return null;
+            }
+            return batch.get(batchPos++);
+        }
+
+        private void openCollection(final XmldbURI uri) {
+            documents = null;
+            final DBBroker broker = context.getBroker();
+            try (final Collection collection = broker.openCollection(uri, Lock.LockMode.READ_LOCK)) {
+                // a collection may have been removed in the meantime
+                if (collection == null) {
+                    return;
+                }
+                documents = collection.documentIterator(broker);
+                if (includeSubCollections) {
+                    final List<XmldbURI> children = new ArrayList<>();
+                    for (final Iterator<XmldbURI> i = collection.collectionIterator(broker); i.hasNext(); ) {
+                        children.add(uri.append(i.next()));
+                    }
+                    for (int i = children.size() - 1; i >= 0; i--) {
+                        pending.push(children.get(i));
+                    }
+                }
+            } catch (final PermissionDeniedException | LockException e) {
+                LOG.warn("Skipping collection {}: {}", uri, e.getMessage());
+            }
+        }
+
+        private void loadBatch() {
+            final DBBroker broker = context.getBroker();
+            final LockManager lockManager = broker.getBrokerPool().getLockManager();
+            while (batch.size() < batchSize && documents.hasNext()) {
+                final DocumentImpl doc = documents.next();
+
+                // filter out binary documents, fn:collection should only return XML documents
+                if (doc.getResourceType() != DocumentImpl.XML_FILE) {
+                    continue;
+                }
+                try (final ManagedDocumentLock dlock = lockManager.acquireDocumentReadLock(doc.getURI())) {
+                    if (doc.getPermissions().validate(broker.getCurrentSubject(), Permission.READ)) {
+                        batch.add(new NodeProxy(doc));
+                    }
+                } catch (final LockException e) {
+                    LOG.warn("Skipping document {}: {}", doc.getURI(), e.getMessage());
+                }
+            }
+        }
+    }
+}
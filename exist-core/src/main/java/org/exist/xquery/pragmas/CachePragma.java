@@ -0,0 +1,223 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.pragmas;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.Namespaces;
+import org.exist.collections.CollectionModificationCounter;
+import org.exist.dom.QName;
+import org.exist.dom.persistent.NodeProxy;
+import org.exist.source.DBSource;
+import org.exist.source.Source;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.XQueryResultCache;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.*;
+import org.exist.xquery.value.AtomicValue;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.exist.xquery.value.Type;
+
+import java.net.URISyntaxException;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Caches the result of the enclosed expression in the {@link XQueryResultCache}:
+ *
+ * <pre>(# exist:cache collections=/db/data #) { sum(collection('/db/data')//order/@total) }</pre>
+ *
+ * The result is cached for the query source, the user and the values of the context item
+ * and of all variables in scope. It stays valid until one of the collections given by
+ * option <code>collections</code> (a comma separated list, by default /db) or one of their
+ * descendants is modified. On a cache hit, only the versions of these collections are compared.
+ *
+ * The pragma must only be used for expressions without side effects. Results which contain
+ * in-memory nodes or function items are not cached, and neither are results of evaluations
+ * in which a variable or the context holds such items or more than {@link #MAX_KEY_ITEMS} items.
+ * Modifications of library modules stored in the file system are not detected.
+ */
+public class CachePragma extends Pragma {
+
+    public  final static QName CACHE_PRAGMA = new QName("cache", Namespaces.EXIST_NS, "exist");
+
+    public final static int MAX_KEY_ITEMS = 100;
+
+    private final static Logger LOG = LogManager.getLogger(CachePragma.class);
+
+    private XmldbURI[] dependencies = { XmldbURI.ROOT_COLLECTION_URI };
+
+    private XQueryContext context = null;
+    private Expression expression = null;
+    private String queryKey = null;
+
+    public CachePragma(QName qname, String contents) throws XPathException {
+        super(qname, contents);
+        if (contents != null && contents.length() > 0) {
+            final String options[] = Option.tokenize(contents);
+            for (String option : options) {
+                final String param[] = Option.parseKeyValuePair(option);
+                if (param == null) {
+                    throw new XPathException("Invalid content found for pragma " + CACHE_PRAGMA.getStringValue() +
+                            ": " + contents);
+                }
+                if ("collections".equals(param[0])) {
+                    final String[] paths = param[1].split(",");
+                    dependencies = new XmldbURI[paths.length];
+                    for (int i = 0; i < paths.length; i++) {
+                        try {
+                            dependencies[i] = XmldbURI.xmldbUriFor(paths[i].trim());
+                        } catch (final URISyntaxException e) {
+                            throw new XPathException("Invalid collection for option collections of pragma " +
+                                    CACHE_PRAGMA.getStringValue() + ": " + paths[i]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public void before(XQueryContext context, Expression expression, Sequence contextSequence) throws XPathException {
+        this.context = context;
+        this.expression = expression;
+    }
+
+    public Sequence eval(Sequence contextSequence, Item contextItem) throws XPathException {
+        final BrokerPool pool = context.getBroker().getBrokerPool();
+        final XQueryResultCache cache = pool.getXQueryResultCache();
+        if (!cache.isEnabled()) {
+            return null;
+        }
+        final String key = getKey(contextSequence, contextItem);
+        if (key == null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Result of {} is not cached: the variables in scope cannot be used as cache key", expression);
+            }
+            return null;
+        }
+
+        final CollectionModificationCounter counter = pool.getCollectionModificationCounter();
+        final Sequence cached = cache.get(key, counter);
+        if (context.getProfiler().isEnabled()) {
+            context.getProfiler().message(expression, Profiler.OPTIMIZATIONS, "RESULT CACHE",
+                    cached != null ? "hit" : "miss");
+        }
+        if (cached != null) {
+            return cached;
+        }
+
+        // the versions have to be read before the evaluation, so any concurrent modification invalidates the result
+        final long[] versions = new long[dependencies.length];
+        for (int i = 0; i < dependencies.length; i++) {
+            versions[i] = counter.getVersion(dependencies[i]);
+        }
+        final Sequence result = expression.eval(contextSequence, contextItem);
+        cache.put(key, result, dependencies, versions);
+        return result;
+    }
+
+    public void after(XQueryContext context, Expression expression) throws XPathException {
+        this.context = null;
+        this.expression = null;
+    }
+
+    /**
+     * Compute the key of the result for the current evaluation.
+     *
+     * @return the key, or null if the result should not be cached
+     */
+    private String getKey(final Sequence contextSequence, final Item contextItem) throws XPathException {
+        final StringBuilder key = new StringBuilder(getQueryKey());
+        key.append('\u0000').append(context.getSubject().getName());
+        if (!appendSequence(key.append('\u0000'), contextSequence)) {
+            return null;
+        }
+        if (contextItem != null && !appendSequence(key.append('\u0000'), contextItem.toSequence())) {
+            return null;
+        }
+        for (final Map.Entry<QName, Variable> variable : context.getVariables().entrySet()) {
+            key.append('\u0000').append(variable.getKey().getStringValue()).append('=');
+            if (!appendSequence(key, variable.getValue().getValue())) {
+                return null;
+            }
+        }
+        return key.toString();
+    }
+
+    private static boolean appendSequence(final StringBuilder key, final Sequence seq) throws XPathException {
+        if (seq == null) {
+            return true;
+        }
+        if (seq.getItemCountLong() > MAX_KEY_ITEMS) {
+            return false;
+        }
+        key.append('(');
+        for (final SequenceIterator i = seq.iterate(); i.hasNext(); ) {
+            final Item item = i.nextItem();
+            if (item instanceof NodeProxy) {
+                final NodeProxy node = (NodeProxy) item;
+                key.append("node:").append(node.getOwnerDocument().getDocId()).append('/').append(node.getNodeId());
+            } else if (item instanceof AtomicValue) {
+                key.append(Type.getTypeName(item.getType())).append(':').append(item.getStringValue());
+            } else {
+                return false;
+            }
+            key.append(',');
+        }
+        key.append(')');
+        return true;
+    }
+
+    /**
+     * The part of the key which identifies the enclosed expression and the source
+     * code it depends on. It does not change for a compiled query.
+     */
+    private String getQueryKey() {
+        if (queryKey == null) {
+            final StringBuilder key = new StringBuilder();
+            appendSource(key, context.getSource());
+            for (final Iterator<Module> i = context.getAllModules(); i.hasNext(); ) {
+                final Module module = i.next();
+                if (!module.isInternalModule()) {
+                    appendSource(key, ((ExternalModule) module).getSource());
+                }
+            }
+            key.append(expression.getLine()).append(':').append(expression.getColumn())
+                    .append('\u0000').append(expression);
+            queryKey = key.toString();
+        }
+        return queryKey;
+    }
+
+    private static void appendSource(final StringBuilder key, final Source source) {
+        if (source == null) {
+            return;
+        }
+        key.append(source.type()).append(':').append(source.pathOrShortIdentifier()).append('#').append(source.getKey());
+        if (source instanceof DBSource) {
+            key.append('@').append(((DBSource) source).getLastModified());
+        }
+        key.append('\u0000');
+    }
+}
@@ -29,6 +29,7 @@ import org.exist.dom.persistent.NodeSet;
 import org.exist.dom.QName;
 import org.exist.indexing.StructuralIndex;
 import org.exist.storage.QNameRangeIndexSpec;
+import org.exist.storage.statistics.IndexStatistics;
 import org.exist.xmldb.XmldbURI;
 import org.exist.xquery.*;
 import org.exist.xquery.value.Item;
@@ -36,8 +37,12 @@ import org.exist.xquery.value.Sequence;
 import org.exist.xquery.value.Type;
 
 import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 public class Optimize extends Pragma {
 
@@ -182,79 +187,142 @@ public class Optimize extends Pragma {
         innerExpr = expression;
         if (!enabled)
             {return;}
-        innerExpr.accept(new BasicExpressionVisitor() {
+        final OptimizableCollector collector = new OptimizableCollector();
+        innerExpr.accept(collector);
 
-            public void visitPathExpr(PathExpr expression) {
-                for (int i = 0; i < expression.getLength(); i++) {
-                    final Expression next = expression.getExpression(i);
-			        next.accept(this);
-                }
-            }
+        contextStep = BasicExpressionVisitor.findFirstStep(innerExpr);
+        if (contextStep != null && contextStep.getTest().isWildcardTest())
+            {contextStep = null;}
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("exist:optimize: context step: {}", contextStep);
+            LOG.trace("exist:optimize: context var: {}", contextVar);
+        }
+        if (contextStep != null && collector.predicateStep == contextStep && optimizables != null &&
+                optimizables.length > 1) {
+            orderBySelectivity(context);
+        }
+    }
 
-            @Override
-            public void visitLocationStep(final LocationStep locationStep) {
-                @Nullable final Predicate[] predicates = locationStep.getPredicates();
-                if (predicates != null) {
-                    for (final Predicate pred : predicates) {
-                        pred.accept(this);
-                    }
-                }
+    /**
+     * Sort the optimizables by the number of nodes they are estimated to select, using
+     * the index statistics. The most selective one is evaluated first, so the pre-selections
+     * of the others only have to check the context nodes it left. Only called if all
+     * optimizables are in predicates of the context step, the order is irrelevant then.
+     * Expressions without an estimate keep their relative order and go last.
+     */
+    private void orderBySelectivity(final XQueryContext context) {
+        final IndexStatistics stats = (IndexStatistics) context.getBroker().getBrokerPool().getIndexManager()
+                .getIndexById(IndexStatistics.ID);
+        if (stats == null) {
+            return;
+        }
+        final Map<Optimizable, Long> estimates = new IdentityHashMap<>();
+        for (final Optimizable optimizable : optimizables) {
+            long estimate = -1;
+            if (optimizable instanceof GeneralComparison) {
+                estimate = ((GeneralComparison) optimizable).estimateSelectedNodes(stats);
             }
+            estimates.put(optimizable, estimate < 0 ? Long.MAX_VALUE : estimate);
+        }
+        // stable sort
+        Arrays.sort(optimizables, Comparator.comparing(estimates::get));
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("exist:optimize: estimated selections: {}", estimates);
+        }
+    }
 
-            public void visitFilteredExpr(FilteredExpression filtered) {
-                final Expression filteredExpr = filtered.getExpression();
-                if (filteredExpr instanceof VariableReference)
-                    {contextVar = (VariableReference) filteredExpr;}
+    public void after(XQueryContext context, Expression expression) throws XPathException {
+    }
+
+    private class OptimizableCollector extends BasicExpressionVisitor {
+
+        private LocationStep currentStep = null;
+        private int depth = 0;
 
-                final List<Predicate> predicates = filtered.getPredicates();
+        /**
+         * The step whose predicates contain all optimizables, or null if they are
+         * spread over several steps or nested predicates.
+         */
+        private LocationStep predicateStep = null;
+        private boolean nested = false;
+
+        public void visitPathExpr(PathExpr expression) {
+            for (int i = 0; i < expression.getLength(); i++) {
+                final Expression next = expression.getExpression(i);
+                next.accept(this);
+            }
+        }
+
+        @Override
+        public void visitLocationStep(final LocationStep locationStep) {
+            @Nullable final Predicate[] predicates = locationStep.getPredicates();
+            if (predicates != null) {
+                final LocationStep outerStep = currentStep;
+                currentStep = locationStep;
                 for (final Predicate pred : predicates) {
                     pred.accept(this);
                 }
+                currentStep = outerStep;
             }
+        }
 
-            public void visit(Expression expression) {
-                super.visit(expression);
+        public void visitFilteredExpr(FilteredExpression filtered) {
+            final Expression filteredExpr = filtered.getExpression();
+            if (filteredExpr instanceof VariableReference)
+                {contextVar = (VariableReference) filteredExpr;}
+
+            final LocationStep outerStep = currentStep;
+            currentStep = null;
+            final List<Predicate> predicates = filtered.getPredicates();
+            for (final Predicate pred : predicates) {
+                pred.accept(this);
             }
+            currentStep = outerStep;
+        }
+
+        public void visit(Expression expression) {
+            super.visit(expression);
+        }
+
+        public void visitGeneralComparison(GeneralComparison comparison) {
+            if (LOG.isTraceEnabled())
+                {
+                    LOG.trace("exist:optimize: found optimizable: {}", comparison.getClass().getName());}
+            found(comparison);
+        }
+
+        public void visitPredicate(Predicate predicate) {
+            depth++;
+            predicate.getExpression(0).accept(this);
+            depth--;
+        }
 
-            public void visitGeneralComparison(GeneralComparison comparison) {
+        public void visitBuiltinFunction(Function function) {
+            if (function instanceof Optimizable) {
                 if (LOG.isTraceEnabled())
                     {
-                        LOG.trace("exist:optimize: found optimizable: {}", comparison.getClass().getName());}
-                addOptimizable(comparison);
+                        LOG.trace("exist:optimize: found optimizable function: {}", function.getClass().getName());}
+                found((Optimizable) function);
             }
+        }
 
-            public void visitPredicate(Predicate predicate) {
-                predicate.getExpression(0).accept(this);
+        private void found(final Optimizable optimizable) {
+            if (!addOptimizable(optimizable)) {
+                return;
             }
-
-            public void visitBuiltinFunction(Function function) {
-                if (function instanceof Optimizable) {
-                    if (LOG.isTraceEnabled())
-                        {
-                            LOG.trace("exist:optimize: found optimizable function: {}", function.getClass().getName());}
-                    addOptimizable((Optimizable) function);
-                }
+            if (depth != 1 || currentStep == null || (predicateStep != null && predicateStep != currentStep)) {
+                nested = true;
             }
-        });
-
-        contextStep = BasicExpressionVisitor.findFirstStep(innerExpr);
-        if (contextStep != null && contextStep.getTest().isWildcardTest())
-            {contextStep = null;}
-        if (LOG.isTraceEnabled()) {
-            LOG.trace("exist:optimize: context step: {}", contextStep);
-            LOG.trace("exist:optimize: context var: {}", contextVar);
+            predicateStep = nested ? null : currentStep;
         }
     }
 
-    public void after(XQueryContext context, Expression expression) throws XPathException {
-    }
-
-    private void addOptimizable(Optimizable optimizable) {final int axis = optimizable.getOptimizeAxis();
+    private boolean addOptimizable(Optimizable optimizable) {final int axis = optimizable.getOptimizeAxis();
         if (!(axis == Constants.CHILD_AXIS || axis == Constants.SELF_AXIS || axis == Constants.DESCENDANT_AXIS ||
                 axis == Constants.DESCENDANT_SELF_AXIS || axis == Constants.ATTRIBUTE_AXIS ||
                 axis == Constants.DESCENDANT_ATTRIBUTE_AXIS)) {
             // reverse axes cannot be optimized
-            return;
+            return false;
         }
         if (optimizables == null) {
             optimizables = new Optimizable[1];
@@ -265,6 +333,7 @@ public class Optimize extends Pragma {
             o[optimizables.length] = optimizable;
             optimizables = o;
         }
+        return true;
     }
 
     public void resetState(boolean postOptimization) {
@@ -0,0 +1,104 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.pragmas;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.Namespaces;
+import org.exist.dom.QName;
+import org.exist.xquery.*;
+import org.exist.xquery.value.Sequence;
+
+/**
+ * Enables parallel evaluation of structural index scans for the enclosed expression:
+ *
+ * <pre>(# exist:parallel threads=8 chunk=1000 #) { collection('/db/archive')//record[...] }</pre>
+ *
+ * The documents selected by a location step are split into chunks of <code>chunk</code>
+ * documents, which are scanned by up to <code>threads</code> workers. See {@link ParallelEvaluation}.
+ * The pragma should only be used for read-only queries.
+ */
+public class ParallelPragma extends Pragma {
+
+    public  final static QName PARALLEL_PRAGMA = new QName("parallel", Namespaces.EXIST_NS, "exist");
+
+    private final static Logger LOG = LogManager.getLogger(ParallelPragma.class);
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int chunkSize = ParallelEvaluation.DEFAULT_CHUNK_SIZE;
+
+    private ParallelEvaluation previous = null;
+    private ParallelEvaluation evaluation = null;
+
+    public ParallelPragma(QName qname, String contents) throws XPathException {
+        super(qname, contents);
+        if (contents != null && contents.length() > 0) {
+            final String options[] = Option.tokenize(contents);
+            for (String option : options) {
+                final String param[] = Option.parseKeyValuePair(option);
+                if (param == null) {
+                    throw new XPathException("Invalid content found for pragma " + PARALLEL_PRAGMA.getStringValue() +
+                            ": " + contents);
+                }
+                try {
+                    if ("threads".equals(param[0])) {
+                        threads = Integer.parseInt(param[1]);
+                    } else if ("chunk".equals(param[0])) {
+                        chunkSize = Integer.parseInt(param[1]);
+                    }
+                } catch (final NumberFormatException e) {
+                    throw new XPathException("Invalid value for option " + param[0] + " of pragma " +
+                            PARALLEL_PRAGMA.getStringValue() + ": " + param[1]);
+                }
+            }
+        }
+        if (threads < 1 || chunkSize < 1) {
+            throw new XPathException("Options threads and chunk of pragma " + PARALLEL_PRAGMA.getStringValue() +
+                    " must be positive: " + contents);
+        }
+    }
+
+    public void before(XQueryContext context, Expression expression, Sequence contextSequence) throws XPathException {
+        if (threads == 1) {
+            return;
+        }
+        previous = context.getParallelEvaluation();
+        evaluation = new ParallelEvaluation(context.getBroker().getBrokerPool(), threads, chunkSize);
+        context.setParallelEvaluation(evaluation);
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Parallel evaluation enabled: threads = {}, chunk = {}", threads, chunkSize);
+        }
+    }
+
+    public void after(XQueryContext context, Expression expression) throws XPathException {
+        if (evaluation != null) {
+            context.setParallelEvaluation(previous);
+            evaluation = null;
+            previous = null;
+        }
+    }
+
+    public void resetState(boolean postOptimization) {
+        evaluation = null;
+        previous = null;
+    }
+}
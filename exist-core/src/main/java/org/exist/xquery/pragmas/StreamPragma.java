@@ -0,0 +1,119 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.pragmas;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.exist.Namespaces;
+import org.exist.dom.QName;
+import org.exist.xquery.*;
+import org.exist.xquery.functions.fn.ExtCollection;
+import org.exist.xquery.value.Item;
+import org.exist.xquery.value.Sequence;
+
+/**
+ * Evaluates a call to fn:collection or xmldb:xcollection lazily:
+ *
+ * <pre>for $doc in (# exist:stream batch=500 #) { collection('/db/archive') } return ...</pre>
+ *
+ * The documents are loaded in batches of <code>batch</code> documents while the
+ * resulting sequence is iterated, instead of creating a node for every document
+ * up front. This is meant for queries which process a huge number of documents one
+ * by one, e.g. in a for loop. If the enclosed expression is not a call to one of
+ * the collection functions, the pragma has no effect.
+ */
+public class StreamPragma extends Pragma {
+
+    public  final static QName STREAM_PRAGMA = new QName("stream", Namespaces.EXIST_NS, "exist");
+
+    public final static int DEFAULT_BATCH_SIZE = 100;
+
+    private final static Logger LOG = LogManager.getLogger(StreamPragma.class);
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private ExtCollection function = null;
+
+    public StreamPragma(QName qname, String contents) throws XPathException {
+        super(qname, contents);
+        if (contents != null && contents.length() > 0) {
+            final String options[] = Option.tokenize(contents);
+            for (String option : options) {
+                final String param[] = Option.parseKeyValuePair(option);
+                if (param == null) {
+                    throw new XPathException("Invalid content found for pragma " + STREAM_PRAGMA.getStringValue() +
+                            ": " + contents);
+                }
+                if ("batch".equals(param[0])) {
+                    try {
+                        batchSize = Integer.parseInt(param[1]);
+                    } catch (final NumberFormatException e) {
+                        throw new XPathException("Invalid value for option batch of pragma " +
+                                STREAM_PRAGMA.getStringValue() + ": " + param[1]);
+                    }
+                }
+            }
+        }
+        if (batchSize < 1) {
+            throw new XPathException("Option batch of pragma " + STREAM_PRAGMA.getStringValue() +
+                    " must be positive: " + contents);
+        }
+    }
+
+    public void before(XQueryContext context, Expression expression, Sequence contextSequence) throws XPathException {
+        function = getCollectionFunction(expression);
+        if (function == null && LOG.isDebugEnabled()) {
+            LOG.debug("Pragma {} ignored: the expression is not a call to fn:collection", STREAM_PRAGMA.getStringValue());
+        }
+    }
+
+    public Sequence eval(Sequence contextSequence, Item contextItem) throws XPathException {
+        if (function == null) {
+            return null;
+        }
+        return function.evalLazy(contextSequence, contextItem, batchSize);
+    }
+
+    public void after(XQueryContext context, Expression expression) throws XPathException {
+        function = null;
+    }
+
+    public void resetState(boolean postOptimization) {
+        function = null;
+    }
+
+    private static ExtCollection getCollectionFunction(Expression expression) {
+        while (expression != null) {
+            if (expression instanceof ExtCollection) {
+                return (ExtCollection) expression;
+            } else if (expression instanceof InternalFunctionCall) {
+                expression = ((InternalFunctionCall) expression).getFunction();
+            } else if (expression instanceof PathExpr && !(expression instanceof Function)
+                    && expression.getSubExpressionCount() == 1) {
+                expression = expression.getSubExpression(0);
+            } else {
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.backup;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Checks the properties which chain incremental backups to the full backup
+ * their sequence starts from.
+ */
+public class IncrementalBackupChainTest {
+
+    private static final String FULL = "full20200101-0000";
+    private static final String INC1 = "inc20200101-0001";
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void fullIncrementalIncremental() throws EXistException, PermissionDeniedException, IOException {
+        final Path backupDir = temporaryFolder.newFolder().toPath();
+
+        final Properties full = properties(backup(backupDir, false, FULL));
+        assertEquals("no", full.getProperty(BackupDescriptor.INCREMENTAL_PROP_NAME));
+        assertFalse(full.containsKey(BackupDescriptor.BASE_PROP_NAME));
+
+        final Properties inc1 = properties(backup(backupDir, true, INC1));
+        assertEquals("yes", inc1.getProperty(BackupDescriptor.INCREMENTAL_PROP_NAME));
+        assertEquals(FULL, inc1.getProperty(BackupDescriptor.PREVIOUS_PROP_NAME));
+        assertEquals(FULL, inc1.getProperty(BackupDescriptor.BASE_PROP_NAME));
+        assertEquals("2", inc1.getProperty(BackupDescriptor.NUMBER_IN_SEQUENCE_PROP_NAME));
+
+        // the base is carried over from the previous incremental backup
+        final Properties inc2 = properties(backup(backupDir, true, null));
+        assertEquals("yes", inc2.getProperty(BackupDescriptor.INCREMENTAL_PROP_NAME));
+        assertEquals(INC1, inc2.getProperty(BackupDescriptor.PREVIOUS_PROP_NAME));
+        assertEquals(FULL, inc2.getProperty(BackupDescriptor.BASE_PROP_NAME));
+        assertEquals("3", inc2.getProperty(BackupDescriptor.NUMBER_IN_SEQUENCE_PROP_NAME));
+    }
+
+    @Test
+    public void previousIncrementalWithoutBase() throws EXistException, PermissionDeniedException, IOException {
+        final Path backupDir = temporaryFolder.newFolder().toPath();
+
+        backup(backupDir, false, FULL);
+        final Path inc1 = backup(backupDir, true, INC1);
+
+        // an incremental backup written before the base was recorded
+        final Properties legacy = properties(inc1);
+        legacy.remove(BackupDescriptor.BASE_PROP_NAME);
+        try (final OutputStream os = Files.newOutputStream(inc1.resolve(BackupDescriptor.BACKUP_PROPERTIES))) {
+            legacy.store(os, "Backup properties");
+        }
+
+        // the base is unknown, the backup is still chained to the previous one
+        final Properties inc2 = properties(backup(backupDir, true, null));
+        assertEquals("yes", inc2.getProperty(BackupDescriptor.INCREMENTAL_PROP_NAME));
+        assertEquals(INC1, inc2.getProperty(BackupDescriptor.PREVIOUS_PROP_NAME));
+        assertFalse(inc2.containsKey(BackupDescriptor.BASE_PROP_NAME));
+        assertEquals("3", inc2.getProperty(BackupDescriptor.NUMBER_IN_SEQUENCE_PROP_NAME));
+    }
+
+    /**
+     * Export the database into the backup directory.
+     *
+     * @param name the name the backup is renamed to, or null to keep its name. Backups are
+     *     named by the minute they were made in, renaming them fixes their order within a test.
+     *
+     * @return the backup directory
+     */
+    private static Path backup(final Path backupDir, final boolean incremental, @Nullable final String name)
+            throws EXistException, PermissionDeniedException, IOException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        Path backup;
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final SystemExport sysexport = new SystemExport(broker, transaction, null, null, true);
+            backup = sysexport.export(backupDir.toAbsolutePath().toString(), incremental, -1, false, 1, null);
+            transaction.commit();
+        }
+        assertNotNull(backup);
+
+        if (name != null) {
+            backup = Files.move(backup, backupDir.resolve(name));
+        }
+        return backup;
+    }
+
+    private static Properties properties(final Path backup) throws IOException {
+        final Properties properties = new Properties();
+        try (final InputStream is = Files.newInputStream(backup.resolve(BackupDescriptor.BACKUP_PROPERTIES))) {
+            properties.load(is);
+        }
+        return properties;
+    }
+}
@@ -75,13 +75,15 @@ import org.xmldb.api.base.XMLDBException;
 @RunWith(Parameterized.class)
 public class SystemExportImportTest {
 
-    @Parameters(name = "{0} zip:{2}")
+    @Parameters(name = "{0} zip:{2} threads:{3}")
     public static java.util.Collection<Object[]> data() {
         return Arrays.asList(new Object[][]{
-                {"direct", true, false},
-                {"non-direct", false, false},
-                {"direct", true, true},
-                {"non-direct", false, true}
+                {"direct", true, false, 1},
+                {"non-direct", false, false, 1},
+                {"direct", true, true, 1},
+                {"non-direct", false, true, 1},
+                {"direct", true, false, 4},
+                {"non-direct", false, false, 4}
         });
     }
 
@@ -94,6 +96,9 @@ public class SystemExportImportTest {
     @Parameter(value = 2)
     public boolean zip;
 
+    @Parameter(value = 3)
+    public int threads;
+
     @ClassRule
     public static TemporaryFolder temporaryFolder = new TemporaryFolder();
 
@@ -139,7 +144,7 @@ public class SystemExportImportTest {
 
             final SystemExport sysexport = new SystemExport(broker, transaction, null, null, direct);
             final String backupDir = temporaryFolder.newFolder().getAbsolutePath();
-            file = sysexport.export(backupDir, false, zip, null);
+            file = sysexport.export(backupDir, false, -1, zip, threads, null);
 
             transaction.commit();
         }
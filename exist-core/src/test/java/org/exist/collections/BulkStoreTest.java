@@ -0,0 +1,118 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.collections;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.util.MimeType;
+import org.exist.util.StringInputSource;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.Sequence;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BulkStoreTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final XmldbURI COLLECTION_URI = XmldbURI.create("/db/bulk-store-test");
+
+    @Test
+    public void store() throws EXistException, PermissionDeniedException, LockException, IOException, XPathException {
+        final List<BulkStore.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            entries.add(new BulkStore.Entry(XmldbURI.create("doc" + i + ".xml"), null,
+                    new StringInputSource("<!--test--><item xmlns='http://exist-db.org/test' n='" + i + "'><?pi data?><title>" + i + "</title></item>")));
+        }
+        entries.add(new BulkStore.Entry(XmldbURI.create("broken.xml"), null, new StringInputSource("<item>")));
+        entries.add(new BulkStore.Entry(XmldbURI.create("sub/doc.xml"), null, new StringInputSource("<item n='sub'/>")));
+        entries.add(new BulkStore.Entry(XmldbURI.create("sub/data.txt"), null, new StringInputSource("text".getBytes(UTF_8))));
+
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final BulkStore.Result result;
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            result = new BulkStore(pool, 3, 7).store(broker, COLLECTION_URI, entries.iterator());
+        }
+
+        assertEquals(52, result.getStored());
+        assertEquals(1, result.getSkipped().size());
+        assertTrue(result.getSkipped().containsKey(COLLECTION_URI.append("broken.xml")));
+
+        assertEquals("50", execute("count(collection('" + COLLECTION_URI + "')//*:item[@n castable as xs:integer])"));
+        assertEquals("1", execute("count(doc('" + COLLECTION_URI + "/sub/doc.xml')/item)"));
+        assertEquals("text", execute("util:binary-to-string(util:binary-doc('" + COLLECTION_URI + "/sub/data.txt'))"));
+        assertEquals("test 7 data", execute("let $doc := doc('" + COLLECTION_URI + "/doc7.xml') " +
+                "return string-join(($doc/comment(), $doc//*:title, $doc//processing-instruction('pi')), ' ')"));
+    }
+
+    @Test
+    public void rejectedDocumentKeepsBatch() throws EXistException, PermissionDeniedException, LockException, IOException, XPathException {
+        final XmldbURI collectionUri = COLLECTION_URI.append("rejected");
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final List<BulkStore.Entry> setup = new ArrayList<>();
+            setup.add(new BulkStore.Entry(XmldbURI.create("conflict/doc.xml"), null, new StringInputSource("<item/>")));
+            assertEquals(1, new BulkStore(pool, 1, 10).store(broker, collectionUri, setup.iterator()).getStored());
+
+            // an XML document cannot have the name of a sub-collection, it is rejected while it is validated
+            final List<BulkStore.Entry> entries = new ArrayList<>();
+            entries.add(new BulkStore.Entry(XmldbURI.create("a.xml"), null, new StringInputSource("<item n='a'/>")));
+            entries.add(new BulkStore.Entry(XmldbURI.create("b.xml"), null, new StringInputSource("<item n='b'/>")));
+            entries.add(new BulkStore.Entry(XmldbURI.create("conflict"), MimeType.XML_TYPE, new StringInputSource("<item/>")));
+            entries.add(new BulkStore.Entry(XmldbURI.create("c.xml"), null, new StringInputSource("<item n='c'/>")));
+            final BulkStore.Result result = new BulkStore(pool, 2, 10).store(broker, collectionUri, entries.iterator());
+
+            assertEquals(3, result.getStored());
+            assertEquals(1, result.getSkipped().size());
+            assertTrue(result.getSkipped().containsKey(collectionUri.append("conflict")));
+        }
+
+        // the documents before the rejected one are committed, the ones after it are stored in a new transaction
+        assertEquals("true", execute("doc-available('" + collectionUri + "/a.xml')"));
+        assertEquals("true", execute("doc-available('" + collectionUri + "/b.xml')"));
+        assertEquals("true", execute("doc-available('" + collectionUri + "/c.xml')"));
+        assertEquals("a b c", execute("string-join(collection('" + collectionUri + "')/item/@n, ' ')"));
+    }
+
+    private static String execute(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Sequence result = pool.getXQueryService().execute(broker, query, null);
+            return result.itemAt(0).getStringValue();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.collections;
+
+import org.exist.xmldb.XmldbURI;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CollectionModificationCounterTest {
+
+    @Test
+    public void unmodified() {
+        final CollectionModificationCounter counter = new CollectionModificationCounter();
+        assertEquals(0, counter.getVersion(XmldbURI.create("/db/data")));
+    }
+
+    @Test
+    public void ancestorsAreModified() {
+        final CollectionModificationCounter counter = new CollectionModificationCounter();
+        counter.modified(XmldbURI.create("/db/data/2020"));
+
+        final long version = counter.getVersion(XmldbURI.create("/db/data/2020"));
+        assertTrue(version > 0);
+        assertEquals(version, counter.getVersion(XmldbURI.create("/db/data")));
+        assertEquals(version, counter.getVersion(XmldbURI.ROOT_COLLECTION_URI));
+        assertEquals(version, counter.getVersion(XmldbURI.create("/db/data/")));
+        assertEquals(0, counter.getVersion(XmldbURI.create("/db/data/2021")));
+        assertEquals(0, counter.getVersion(XmldbURI.create("/db/other")));
+    }
+
+    @Test
+    public void siblingsAreNotModified() {
+        final CollectionModificationCounter counter = new CollectionModificationCounter();
+        counter.modified(XmldbURI.create("/db/data/2020"));
+        final long data = counter.getVersion(XmldbURI.create("/db/data"));
+        final long year = counter.getVersion(XmldbURI.create("/db/data/2020"));
+
+        counter.modified(XmldbURI.create("/db/other"));
+        assertEquals(data, counter.getVersion(XmldbURI.create("/db/data")));
+        assertEquals(year, counter.getVersion(XmldbURI.create("/db/data/2020")));
+        assertNotEquals(data, counter.getVersion(XmldbURI.ROOT_COLLECTION_URI));
+
+        counter.modified(XmldbURI.create("/db/data"));
+        assertNotEquals(data, counter.getVersion(XmldbURI.create("/db/data")));
+        assertEquals(year, counter.getVersion(XmldbURI.create("/db/data/2020")));
+    }
+}
@@ -26,28 +26,34 @@ import com.evolvedbinary.j8fu.Try;
 import org.exist.EXistException;
 import org.exist.collections.triggers.TriggerException;
 import org.exist.dom.persistent.BinaryDocument;
+import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.LockedDocument;
 import org.exist.security.PermissionDeniedException;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
 import org.exist.storage.DBBroker.PreserveType;
 import org.exist.storage.lock.Lock.LockMode;
+import org.exist.storage.serializers.Serializer;
 import org.exist.storage.txn.Txn;
 import org.exist.test.ExistEmbeddedServer;
 import org.exist.test.TestConstants;
 import org.exist.util.LockException;
+import org.exist.util.MimeType;
 import org.apache.commons.io.input.UnsynchronizedByteArrayInputStream;
 import org.exist.xmldb.XmldbURI;
 import org.junit.ClassRule;
 import org.junit.Test;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xmlunit.builder.DiffBuilder;
 import org.xmlunit.builder.Input;
 import org.xmlunit.diff.Diff;
 
 import javax.xml.transform.Source;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.nio.file.Files;
 import java.util.Optional;
 
@@ -56,6 +62,8 @@ import static junit.framework.TestCase.assertNotNull;
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 
 public class CollectionStoreTest {
 
@@ -102,6 +110,105 @@ public class CollectionStoreTest {
         }
     }
 
+    @Test
+    public void storeDocument() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        final XmldbURI docUri = XmldbURI.create("single-pass.xml");
+        final String xml = "<!DOCTYPE test [<!ELEMENT test (#PCDATA)>]><test>single pass</test>";
+
+        final BrokerPool pool =  existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            try (final Collection col = broker.getOrCreateCollection(transaction, TestConstants.TEST_COLLECTION_URI)) {
+                // a stream which cannot be read a second time
+                try (final InputStream is = new FilterInputStream(new UnsynchronizedByteArrayInputStream(xml.getBytes(UTF_8))) {
+                    @Override
+                    public boolean markSupported() {
+                        return false;
+                    }
+                }) {
+                    col.storeDocument(transaction, broker, docUri, new InputSource(is), MimeType.XML_LEGACY_TYPE, null, null);
+                }
+
+                try {
+                    col.storeDocument(transaction, broker, XmldbURI.create("malformed.xml"), new InputSource(new StringReader("<test>")), null, null, null);
+                    fail("Expected a SAXException");
+                } catch (final SAXException e) {
+                    // expected
+                }
+                broker.saveCollection(transaction, col);
+            }
+
+            try (final Collection col = broker.openCollection(TestConstants.TEST_COLLECTION_URI, LockMode.READ_LOCK)) {
+                assertNull(col.getDocument(broker, XmldbURI.create("malformed.xml")));
+                try (final LockedDocument lockedDoc = col.getDocumentWithLock(broker, docUri, LockMode.READ_LOCK)) {
+
+                    // NOTE: early release of collection lock inline with async locking
+                    col.close();
+
+                    assertNotNull(lockedDoc);
+                    final DocumentImpl doc = lockedDoc.getDocument();
+                    assertEquals(MimeType.XML_LEGACY_TYPE.getName(), doc.getMimeType());
+                    assertEquals("test", doc.getDoctype().getName());
+                    assertEquals("single pass", doc.getDocumentElement().getTextContent());
+                }
+            }
+
+            transaction.commit();
+        }
+    }
+
+    @Test
+    public void storeDocumentLikeTwoPass() throws EXistException, PermissionDeniedException, IOException, SAXException, LockException {
+        final String xml =
+                "<!DOCTYPE test [\n" +
+                "  <!-- comment in the internal subset -->\n" +
+                "  <?dtd-pi data?>\n" +
+                "  <!ELEMENT test (a, b)>\n" +
+                "  <!ELEMENT a (#PCDATA)>\n" +
+                "  <!ELEMENT b (#PCDATA)>\n" +
+                "]>\n" +
+                "<!-- before -->\n" +
+                "<?pi before?>\n" +
+                "<test>\n" +
+                "    <a><![CDATA[<cdata> & text]]></a>\n" +
+                "    <b>  some   spaces  </b>\n" +
+                "</test>\n" +
+                "<!-- after -->";
+        final XmldbURI singlePassUri = XmldbURI.create("compare-single-pass.xml");
+        final XmldbURI twoPassUri = XmldbURI.create("compare-two-pass.xml");
+
+        final BrokerPool pool =  existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            try (final Collection col = broker.getOrCreateCollection(transaction, TestConstants.TEST_COLLECTION_URI)) {
+                col.storeDocument(transaction, broker, singlePassUri, new InputSource(new StringReader(xml)), null, null, null);
+
+                final IndexInfo indexInfo = col.validateXMLResource(transaction, broker, twoPassUri, xml);
+                col.store(transaction, broker, indexInfo, xml);
+                broker.saveCollection(transaction, col);
+            }
+
+            final String singlePass = serialize(broker, TestConstants.TEST_COLLECTION_URI.append(singlePassUri));
+            final String twoPass = serialize(broker, TestConstants.TEST_COLLECTION_URI.append(twoPassUri));
+            assertFalse(singlePass.contains("internal subset"));
+            assertEquals(twoPass, singlePass);
+
+            transaction.commit();
+        }
+    }
+
+    private static String serialize(final DBBroker broker, final XmldbURI docUri) throws PermissionDeniedException, SAXException {
+        try (final LockedDocument lockedDoc = broker.getXMLResource(docUri, LockMode.READ_LOCK)) {
+            assertNotNull(lockedDoc);
+            final Serializer serializer = broker.borrowSerializer();
+            try {
+                return serializer.serialize(lockedDoc.getDocument());
+            } finally {
+                broker.returnSerializer(serializer);
+            }
+        }
+    }
+
     @Test
     public void storeBinary() throws EXistException, PermissionDeniedException, IOException, TriggerException, LockException {
         storeBinary(PreserveType.NO_PRESERVE);
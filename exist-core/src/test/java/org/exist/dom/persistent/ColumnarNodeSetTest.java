@@ -0,0 +1,138 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.dom.persistent;
+
+import org.exist.numbering.DLN;
+import org.exist.numbering.NodeId;
+import org.exist.xquery.Expression;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.assertEquals;
+
+public class ColumnarNodeSetTest {
+
+    private static final String[] DOC1_NODES = { "1", "1.1", "1.1.1", "1.1.1.1", "1.2", "1.2.1", "1.3", "1.3.7", "1.10" };
+    private static final String[] DOC2_NODES = { "1", "1.1", "1.1.2", "1.5" };
+
+    private DocumentImpl doc1;
+    private DocumentImpl doc2;
+
+    @Before
+    public void setUp() {
+        doc1 = mockDocument(1);
+        doc2 = mockDocument(2);
+    }
+
+    @Test
+    public void descendants() {
+        for (final boolean includeSelf : new boolean[] { true, false }) {
+            assertSameAsDefault(new String[] { "1.1", "1.3" }, new String[] { "1" }, NodeSet.DESCENDANT, includeSelf);
+            assertSameAsDefault(new String[] { "1", "1.1.1" }, new String[] { "1.1" }, NodeSet.DESCENDANT, includeSelf);
+            assertSameAsDefault(new String[] { "1.2.1", "1.10" }, new String[0], NodeSet.DESCENDANT, includeSelf);
+        }
+    }
+
+    @Test
+    public void ancestors() {
+        for (final boolean includeSelf : new boolean[] { true, false }) {
+            assertSameAsDefault(new String[] { "1.1", "1.3" }, new String[] { "1" }, NodeSet.ANCESTOR, includeSelf);
+            assertSameAsDefault(new String[] { "1", "1.1.1" }, new String[] { "1.1" }, NodeSet.ANCESTOR, includeSelf);
+        }
+    }
+
+    @Test
+    public void documentNodeAncestor() {
+        final NewArrayNodeSet descendants = nodes(DOC1_NODES, DOC2_NODES);
+        final NewArrayNodeSet ancestors = new NewArrayNodeSet();
+        ancestors.add(new NodeProxy(doc2, NodeId.DOCUMENT_NODE));
+
+        final NodeSet result = ColumnarNodeSet.of(descendants).selectAncestorDescendant(ColumnarNodeSet.of(ancestors),
+                NodeSet.DESCENDANT, false, Expression.NO_CONTEXT_ID, false);
+        assertEquals(ids(nodes(new String[0], DOC2_NODES)), ids(result));
+    }
+
+    @Test
+    public void intersection() {
+        final ColumnarNodeSet first = ColumnarNodeSet.of(nodes(new String[] { "1", "1.1.1", "1.3" }, new String[] { "1.1", "1.5" }));
+        final ColumnarNodeSet second = ColumnarNodeSet.of(nodes(new String[] { "1.1.1", "1.2", "1.3" }, new String[] { "1.5" }));
+        assertEquals(ids(nodes(new String[] { "1.1.1", "1.3" }, new String[] { "1.5" })), ids(first.intersection(second)));
+    }
+
+    @Test
+    public void union() {
+        final ColumnarNodeSet first = ColumnarNodeSet.of(nodes(new String[] { "1", "1.3" }, new String[] { "1.1" }));
+        final ColumnarNodeSet second = ColumnarNodeSet.of(nodes(new String[] { "1.1.1", "1.3", "1.10" }, new String[0]));
+        assertEquals(ids(nodes(new String[] { "1", "1.1.1", "1.3", "1.10" }, new String[] { "1.1" })), ids(first.union(second)));
+    }
+
+    @Test
+    public void except() {
+        final ColumnarNodeSet first = ColumnarNodeSet.of(nodes(DOC1_NODES, DOC2_NODES));
+        final ColumnarNodeSet second = ColumnarNodeSet.of(nodes(new String[] { "1.1", "1.10" }, new String[] { "1", "1.5" }));
+        assertEquals(ids(nodes(new String[] { "1", "1.1.1", "1.1.1.1", "1.2", "1.2.1", "1.3", "1.3.7" }, new String[] { "1.1", "1.1.2" })),
+                ids(first.except(second)));
+    }
+
+    /**
+     * Compare the structural join with the default implementation of
+     * {@link NewArrayNodeSet}, using the same ancestor ids in both documents.
+     */
+    private void assertSameAsDefault(final String[] doc1Ancestors, final String[] doc2Ancestors, final int mode,
+            final boolean includeSelf) {
+        final NodeSet expected = nodes(DOC1_NODES, DOC2_NODES).selectAncestorDescendant(
+                nodes(doc1Ancestors, doc2Ancestors), mode, includeSelf, Expression.NO_CONTEXT_ID, true);
+        final NodeSet actual = ColumnarNodeSet.of(nodes(DOC1_NODES, DOC2_NODES)).selectAncestorDescendant(
+                ColumnarNodeSet.of(nodes(doc1Ancestors, doc2Ancestors)), mode, includeSelf, Expression.NO_CONTEXT_ID, true);
+        assertEquals(ids(expected), ids(actual));
+    }
+
+    private NewArrayNodeSet nodes(final String[] doc1Ids, final String[] doc2Ids) {
+        final NewArrayNodeSet nodes = new NewArrayNodeSet();
+        for (final String id : doc1Ids) {
+            nodes.add(new NodeProxy(doc1, new DLN(id)));
+        }
+        for (final String id : doc2Ids) {
+            nodes.add(new NodeProxy(doc2, new DLN(id)));
+        }
+        return nodes;
+    }
+
+    private static List<String> ids(final NodeSet nodes) {
+        final List<String> ids = new ArrayList<>();
+        for (final NodeProxy p : nodes) {
+            ids.add(p.getOwnerDocument().getDocId() + "/" + p.getNodeId());
+        }
+        return ids;
+    }
+
+    private static DocumentImpl mockDocument(final int docId) {
+        final DocumentImpl doc = createNiceMock(DocumentImpl.class);
+        expect(doc.getDocId()).andReturn(docId).anyTimes();
+        replay(doc);
+        return doc;
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.http;
+
+import org.apache.commons.codec.binary.Base64;
+import org.exist.Namespaces;
+import org.exist.test.ExistWebServer;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xupdate.XUpdateProcessor;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.ExternalResource;
+import org.junit.rules.RuleChain;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Requests against a web application whose EXistServlet has the init-param
+ * max-request-size set to {@link #MAX_REQUEST_SIZE}.
+ */
+public class RESTRequestSizeTest {
+
+    private static final String WEBAPP_DIR_PROPERTY = "exist.jetty.standalone.webapp.dir";
+
+    /** as configured in request-size-webapp/WEB-INF/web.xml */
+    private static final int MAX_REQUEST_SIZE = 4096;
+
+    private static final ExistWebServer existWebServer = new ExistWebServer(true, false, true, true);
+
+    @ClassRule
+    public static final RuleChain rules = RuleChain.outerRule(new ExternalResource() {
+        private String previousWebappDir;
+
+        @Override
+        protected void before() throws URISyntaxException {
+            previousWebappDir = System.getProperty(WEBAPP_DIR_PROPERTY);
+            System.setProperty(WEBAPP_DIR_PROPERTY,
+                    Paths.get(RESTRequestSizeTest.class.getResource("/request-size-webapp").toURI()).toString());
+        }
+
+        @Override
+        protected void after() {
+            if (previousWebappDir != null) {
+                System.setProperty(WEBAPP_DIR_PROPERTY, previousWebappDir);
+            } else {
+                System.clearProperty(WEBAPP_DIR_PROPERTY);
+            }
+        }
+    }).around(existWebServer);
+
+    private static final String CREDENTIALS = Base64.encodeBase64String("admin:".getBytes(UTF_8));
+
+    @Test
+    public void putWithinLimit() throws IOException {
+        assertEquals(HttpServletResponse.SC_CREATED, put(document(MAX_REQUEST_SIZE / 2), false));
+    }
+
+    @Test
+    public void putContentLengthTooLarge() throws IOException {
+        assertEquals(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, put(document(MAX_REQUEST_SIZE * 2), false));
+    }
+
+    @Test
+    public void putChunkedTooLarge() throws IOException {
+        // no Content-Length: the limit is enforced while the body is read
+        assertEquals(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, put(document(MAX_REQUEST_SIZE * 2), true));
+    }
+
+    @Test
+    public void postQueryWithinLimit() throws IOException {
+        assertEquals(HttpServletResponse.SC_OK, post(query(MAX_REQUEST_SIZE / 2), true));
+    }
+
+    @Test
+    public void postQueryTooLarge() throws IOException {
+        assertEquals(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, post(query(MAX_REQUEST_SIZE * 2), true));
+    }
+
+    @Test
+    public void postXUpdateTooLarge() throws IOException {
+        // the XUpdate processor reads the rest of the body after the root element
+        assertEquals(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, post(xupdate(MAX_REQUEST_SIZE * 2), true));
+    }
+
+    @Test
+    public void postArchiveEntryTooLarge() throws IOException {
+        // the archive itself is well within the limit, its entry is not once it is uncompressed
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (final ZipOutputStream zos = new ZipOutputStream(archive)) {
+            zos.putNextEntry(new ZipEntry("large.xml"));
+            zos.write(document(MAX_REQUEST_SIZE * 64).getBytes(UTF_8));
+            zos.closeEntry();
+        }
+        assertEquals(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+                send("POST", getServerUri() + XmldbURI.ROOT_COLLECTION, "application/zip", archive.toByteArray(), true));
+    }
+
+    private static String document(final int size) {
+        return "<test>" + padding(size) + "</test>";
+    }
+
+    private static String query(final int size) {
+        return "<query xmlns=\"" + Namespaces.EXIST_NS + "\"><text>(: " + padding(size) + " :) 1</text></query>";
+    }
+
+    private static String xupdate(final int size) {
+        return "<xu:modifications xmlns:xu=\"" + XUpdateProcessor.XUPDATE_NS + "\" version=\"1.0\">" +
+                "<xu:append select=\"/test\"><para>" + padding(size) + "</para></xu:append>" +
+                "</xu:modifications>";
+    }
+
+    private static String padding(final int size) {
+        final StringBuilder builder = new StringBuilder(size);
+        for (int i = 0; i < size; i++) {
+            builder.append('x');
+        }
+        return builder.toString();
+    }
+
+    private static int put(final String content, final boolean chunked) throws IOException {
+        return send("PUT", getServerUri() + XmldbURI.ROOT_COLLECTION + "/request-size-test.xml", content, chunked);
+    }
+
+    private static int post(final String content, final boolean chunked) throws IOException {
+        return send("POST", getServerUri() + XmldbURI.ROOT_COLLECTION, content, chunked);
+    }
+
+    private static int send(final String method, final String uri, final String content, final boolean chunked)
+            throws IOException {
+        return send(method, uri, "application/xml", content.getBytes(UTF_8), chunked);
+    }
+
+    private static int send(final String method, final String uri, final String contentType, final byte[] data,
+            final boolean chunked) throws IOException {
+        final HttpURLConnection connect = (HttpURLConnection) new URL(uri).openConnection();
+        try {
+            connect.setRequestProperty("Authorization", "Basic " + CREDENTIALS);
+            connect.setRequestMethod(method);
+            connect.setDoOutput(true);
+            connect.setRequestProperty("Content-Type", contentType);
+            if (chunked) {
+                connect.setChunkedStreamingMode(1024);
+            } else {
+                connect.setFixedLengthStreamingMode(data.length);
+            }
+            try (final OutputStream os = connect.getOutputStream()) {
+                os.write(data);
+            }
+            return connect.getResponseCode();
+        } finally {
+            connect.disconnect();
+        }
+    }
+
+    private static String getServerUri() {
+        return "http://localhost:" + existWebServer.getPort() + "/rest";
+    }
+}
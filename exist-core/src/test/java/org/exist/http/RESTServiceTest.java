@@ -432,6 +432,69 @@ try {
         }
     }
 
+    @Test
+    public void conditionalGet() throws IOException {
+        doPut(XML_DATA, "test.xml", HttpStatus.CREATED_201);
+
+        final String etag;
+        HttpURLConnection connect = getConnection(getResourceUri());
+        try {
+            connect.setRequestProperty("Authorization", "Basic " + credentials);
+            connect.setRequestMethod("GET");
+            connect.connect();
+            assertEquals(HttpStatus.OK_200, connect.getResponseCode());
+            etag = connect.getHeaderField("ETag");
+            assertNotNull(etag);
+        } finally {
+            connect.disconnect();
+        }
+
+        assertEquals(HttpStatus.NOT_MODIFIED_304, doConditionalGet(getResourceUri(), etag));
+        assertEquals(HttpStatus.OK_200, doConditionalGet(getResourceUri(), "\"other\""));
+
+        // different serialization parameters produce a different representation
+        assertEquals(HttpStatus.OK_200, doConditionalGet(getResourceUri() + "?_indent=no", etag));
+
+        // a modified document produces a different representation
+        doPut(XML_DATA, "test.xml", HttpStatus.CREATED_201);
+        assertEquals(HttpStatus.OK_200, doConditionalGet(getResourceUri(), etag));
+    }
+
+    @Test
+    public void conditionalGetWithoutStylesheet() throws IOException {
+        doPut(XML_DATA, "test.xml", HttpStatus.CREATED_201);
+
+        // _xsl=no disables stylesheets, so GET and HEAD must both send the same tag
+        final String uri = getResourceUri() + "?_xsl=no";
+        final String etag;
+        final HttpURLConnection connect = getConnection(uri);
+        try {
+            connect.setRequestProperty("Authorization", "Basic " + credentials);
+            connect.setRequestMethod("HEAD");
+            connect.connect();
+            assertEquals(HttpStatus.OK_200, connect.getResponseCode());
+            etag = connect.getHeaderField("ETag");
+            assertNotNull(etag);
+        } finally {
+            connect.disconnect();
+        }
+
+        assertEquals(HttpStatus.NOT_MODIFIED_304, doConditionalGet(uri, etag));
+    }
+
+    private int doConditionalGet(final String uri, final String ifNoneMatch) throws IOException {
+        final HttpURLConnection connect = getConnection(uri);
+        try {
+            connect.setRequestProperty("Authorization", "Basic " + credentials);
+            connect.setRequestProperty("If-None-Match", ifNoneMatch);
+            connect.setRequestMethod("GET");
+            connect.connect();
+            return connect.getResponseCode();
+        } finally {
+            connect.disconnect();
+        }
+    }
+
     @Test
     public void putFailAndRechallengeAuthorization() throws IOException {
         final HttpURLConnection connect = getConnection(getResourceUri());
@@ -550,6 +613,26 @@ try {
         }
     }
 
+    @Test
+    public void queryPostJSON() throws IOException {
+        uploadData();
+
+        final String query = "<query xmlns=\"" + Namespaces.EXIST_NS + "\" method=\"json\" start=\"2\" max=\"2\">"
+                + "<text>(1, 'a\"b', 3, 4)</text></query>";
+        final HttpURLConnection connect = preparePost(query, getResourceUri());
+        try {
+            connect.connect();
+            final int r = connect.getResponseCode();
+            assertEquals("Server returned response code " + r, HttpStatus.OK_200, r);
+
+            final String data = readResponse(connect.getInputStream()).trim();
+            assertTrue(data, data.startsWith("{\"start\":2,\"count\":2,\"hits\":4,"));
+            assertTrue(data, data.endsWith("\"data\":[\"a\\\"b\",\"3\"]}"));
+        } finally {
+            connect.disconnect();
+        }
+    }
+
     @Test
     public void queryPostXQueryError() throws IOException {
         final HttpURLConnection connect = preparePost(QUERY_REQUEST_ERROR, getResourceUri());
@@ -0,0 +1,110 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.storage;
+
+import org.exist.EXistException;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.LockedDocument;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.lock.Lock.LockMode;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.Properties;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class SerializedDocumentCacheTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final XmldbURI DOC_URI = XmldbURI.create("/db/output-cache-test.xml");
+
+    @BeforeClass
+    public static void setUp() throws EXistException, PermissionDeniedException, XPathException {
+        execute("xmldb:store('/db', 'output-cache-test.xml', <doc><title>one</title></doc>)");
+    }
+
+    @Test
+    public void cachedOutput() throws EXistException, PermissionDeniedException {
+        final SerializedDocumentCache cache = existEmbeddedServer.getBrokerPool().getSerializedDocumentCache();
+        final byte[] output = "<doc><title>one</title></doc>".getBytes(UTF_8);
+
+        final DocumentImpl doc = getDocument();
+        cache.put(doc, "a", output);
+        assertArrayEquals(output, cache.get(doc, "a"));
+        assertNull(cache.get(doc, "b"));
+
+        cache.put(doc, "b", new byte[cache.getMaxOutputSize() + 1]);
+        assertNull(cache.get(doc, "b"));
+    }
+
+    @Test
+    public void invalidatedByUpdate() throws EXistException, PermissionDeniedException, XPathException {
+        final SerializedDocumentCache cache = existEmbeddedServer.getBrokerPool().getSerializedDocumentCache();
+        cache.put(getDocument(), "a", "<doc/>".getBytes(UTF_8));
+
+        execute("update value doc('" + DOC_URI + "')/doc/title with 'two'");
+        assertNull(cache.get(getDocument(), "a"));
+    }
+
+    @Test
+    public void variant() {
+        final Properties defaults = new Properties();
+        defaults.setProperty("indent", "yes");
+        final Properties properties = new Properties(defaults);
+        properties.setProperty("method", "xml");
+
+        final Properties same = new Properties();
+        same.setProperty("method", "xml");
+        same.setProperty("indent", "yes");
+        assertEquals(SerializedDocumentCache.getVariant("rest", properties), SerializedDocumentCache.getVariant("rest", same));
+
+        same.setProperty("indent", "no");
+        assertNotEquals(SerializedDocumentCache.getVariant("rest", properties), SerializedDocumentCache.getVariant("rest", same));
+    }
+
+    private static DocumentImpl getDocument() throws EXistException, PermissionDeniedException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+                final LockedDocument lockedDocument = broker.getXMLResource(DOC_URI, LockMode.READ_LOCK)) {
+            return lockedDocument.getDocument();
+        }
+    }
+
+    private static void execute(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            pool.getXQueryService().execute(broker, query, null);
+        }
+    }
+}
@@ -29,7 +29,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import org.exist.storage.btree.Value;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.DateTimeValue;
 import org.exist.xquery.value.DecimalValue;
+import org.exist.xquery.value.DoubleValue;
+import org.exist.xquery.value.FloatValue;
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -110,6 +114,49 @@ public class ValueIndexFactoryTest {
         assertEquals(dec, ((DecimalValue)value).getValue());
     }
 	
+    @Test
+    public void orderOfDoubleKeys() throws EXistException {
+        final double[] values = { Double.NEGATIVE_INFINITY, -Double.MAX_VALUE, -8.612328, -1.0, -Double.MIN_VALUE,
+                0.0, Double.MIN_VALUE, 1.0, 8.612328, Double.MAX_VALUE, Double.POSITIVE_INFINITY };
+        for (int i = 1; i < values.length; i++) {
+            final Value v1 = new Value(ValueIndexFactory.serialize(new DoubleValue(values[i - 1]), 0));
+            final Value v2 = new Value(ValueIndexFactory.serialize(new DoubleValue(values[i]), 0));
+            assertTrue(values[i - 1] + " < " + values[i], v1.compareTo(v2) < 0);
+        }
+        for (final double d : values) {
+            final byte[] data = ValueIndexFactory.serialize(new DoubleValue(d), 0);
+            assertEquals(d, ((DoubleValue) ValueIndexFactory.deserialize(data, 0, data.length)).getValue(), 0.0);
+        }
+    }
+
+    @Test
+    public void orderOfFloatKeys() throws EXistException {
+        final float[] values = { Float.NEGATIVE_INFINITY, -8.6f, -1.0f, 0.0f, 1.0f, 8.6f, Float.POSITIVE_INFINITY };
+        for (int i = 1; i < values.length; i++) {
+            final Value v1 = new Value(ValueIndexFactory.serialize(new FloatValue(values[i - 1]), 0));
+            final Value v2 = new Value(ValueIndexFactory.serialize(new FloatValue(values[i]), 0));
+            assertTrue(values[i - 1] + " < " + values[i], v1.compareTo(v2) < 0);
+        }
+        for (final float f : values) {
+            final byte[] data = ValueIndexFactory.serialize(new FloatValue(f), 0);
+            assertEquals(f, ((FloatValue) ValueIndexFactory.deserialize(data, 0, data.length)).getValue(), 0.0f);
+        }
+    }
+
+    @Test
+    public void orderOfDateTimeKeys() throws EXistException, XPathException {
+        final String[] values = { "-0200-03-01T10:00:00Z", "0001-01-01T00:00:00Z", "1999-12-31T23:59:59.999Z",
+                "2000-01-01T00:00:00Z", "2000-01-01T00:00:00.500Z", "2010-06-15T08:30:00+02:00" };
+        for (int i = 1; i < values.length; i++) {
+            final Value v1 = new Value(ValueIndexFactory.serialize(new DateTimeValue(values[i - 1]), 0));
+            final Value v2 = new Value(ValueIndexFactory.serialize(new DateTimeValue(values[i]), 0));
+            assertTrue(values[i - 1] + " < " + values[i], v1.compareTo(v2) < 0);
+        }
+        final DateTimeValue dateTime = new DateTimeValue("-0200-03-01T10:00:00Z");
+        final byte[] data = ValueIndexFactory.serialize(dateTime, 0);
+        assertEquals(0, dateTime.compareTo(null, (DateTimeValue) ValueIndexFactory.deserialize(data, 0, data.length)));
+    }
+
     private ByteBuffer encode(final double number) {
         final ByteBuffer buf = ByteBuffer.allocate(8);
         buf.putDouble(number);
@@ -21,16 +21,36 @@
  */
 package org.exist.storage.statistics;
 
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Optional;
 
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.IndexInfo;
+import org.exist.dom.QName;
+import org.exist.security.PermissionDeniedException;
 import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.ElementValue;
+import org.exist.storage.txn.Txn;
 import org.exist.test.ExistEmbeddedServer;
+import org.exist.test.TestConstants;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.Constants.Comparison;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.IntegerValue;
+import org.exist.xquery.value.StringValue;
 import org.junit.*;
+import org.xml.sax.SAXException;
 
 import static org.exist.storage.NativeBroker.DEFAULT_DATA_DIR;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 public class StatisticsIndexTest {
@@ -54,4 +74,74 @@ public class StatisticsIndexTest {
         final Path dataDir = existEmbeddedServer.getBrokerPool().getConfiguration().getProperty(BrokerPool.PROPERTY_DATA_DIR, Paths.get(DEFAULT_DATA_DIR));
         assertTrue(Files.exists(dataDir.resolve("stats.dbx")));
     }
+
+    @Test
+    public void valueStatistics() throws EXistException, PermissionDeniedException, IOException, SAXException,
+            LockException, XPathException {
+        final StringBuilder xml = new StringBuilder("<orders>");
+        for (int i = 1; i <= 100; i++) {
+            xml.append("<order status='").append(i % 2 == 0 ? "open" : "closed").append("'>")
+                    .append("<total>").append(i).append("</total>")
+                    .append("<note>first <b>mixed</b> content</note>")
+                    .append("</order>");
+        }
+        xml.append("</orders>");
+        final XmldbURI docUri = XmldbURI.create("orders.xml");
+        store(docUri, xml.toString());
+
+        final IndexStatistics stats = getIndexStatistics();
+        final QName order = new QName("order");
+        final QName status = new QName("status", "", ElementValue.ATTRIBUTE);
+        final QName total = new QName("total");
+        assertEquals(100, stats.getNodeCount(order));
+        assertEquals(100, stats.getNodeCount(status));
+        assertEquals(0, stats.getNodeCount(new QName("status")));
+
+        assertEquals(2, stats.getDistinctValueCount(status));
+        final long distinctTotals = stats.getDistinctValueCount(total);
+        assertTrue("distinct values: " + distinctTotals, distinctTotals >= 90 && distinctTotals <= 110);
+        assertEquals(-1, stats.getDistinctValueCount(new QName("note")));
+
+        assertEquals(50, stats.estimateCount(status, Comparison.EQ, new StringValue("open")));
+        final long lessThan = stats.estimateCount(total, Comparison.LT, new IntegerValue(50));
+        assertTrue("estimate: " + lessThan, lessThan >= 30 && lessThan <= 70);
+        assertEquals(0, stats.estimateCount(total, Comparison.GT, new IntegerValue(1000)));
+        assertEquals(-1, stats.estimateCount(status, Comparison.LT, new StringValue("open")));
+
+        remove(docUri);
+        assertEquals(0, stats.getNodeCount(order));
+        assertEquals(0, stats.getNodeCount(status));
+        assertEquals(0, stats.estimateCount(total, Comparison.LT, new IntegerValue(50)));
+    }
+
+    private IndexStatistics getIndexStatistics() {
+        final IndexStatistics stats = (IndexStatistics) existEmbeddedServer.getBrokerPool().getIndexManager()
+                .getIndexById(IndexStatistics.ID);
+        assertNotNull(stats);
+        return stats;
+    }
+
+    private void store(final XmldbURI docUri, final String data) throws EXistException, PermissionDeniedException,
+            IOException, SAXException, LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, TestConstants.TEST_COLLECTION_URI);
+            broker.saveCollection(transaction, collection);
+            final IndexInfo info = collection.validateXMLResource(transaction, broker, docUri, data);
+            collection.store(transaction, broker, info, data);
+            transaction.commit();
+        }
+    }
+
+    private void remove(final XmldbURI docUri) throws EXistException, PermissionDeniedException, IOException,
+            SAXException, LockException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = pool.getTransactionManager().beginTransaction()) {
+            final Collection collection = broker.getOrCreateCollection(transaction, TestConstants.TEST_COLLECTION_URI);
+            collection.removeXMLResource(transaction, broker, docUri);
+            transaction.commit();
+        }
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.util.serializer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class UTF8WriterTest {
+
+    @Test
+    public void ascii() throws IOException {
+        assertEncoded("<root attr=\"value\">text</root>");
+    }
+
+    @Test
+    public void multiByte() throws IOException {
+        assertEncoded("été € 中文 😀");
+    }
+
+    @Test
+    public void unpairedSurrogates() throws IOException {
+        assertEncoded("a\ud83db");
+        assertEncoded("a\ude00b");
+        assertEncoded("a\ud83d");
+    }
+
+    @Test
+    public void exceedsBuffer() throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            builder.append("xé€😀");
+        }
+        assertEncoded(builder.toString());
+    }
+
+    @Test
+    public void reuse() throws IOException {
+        final UTF8Writer writer = new UTF8Writer();
+        for (final String str : new String[] { "first €", "second é" }) {
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            writer.setOutputStream(os);
+            writer.write(str);
+            writer.flush();
+            assertArrayEquals(str.getBytes(UTF_8), os.toByteArray());
+            writer.reset();
+        }
+    }
+
+    private static void assertEncoded(final String str) throws IOException {
+        // write as string, char array and single chars
+        final ByteArrayOutputStream os1 = new ByteArrayOutputStream();
+        try (final UTF8Writer writer = new UTF8Writer(os1)) {
+            writer.write(str);
+        }
+        assertArrayEquals(str.getBytes(UTF_8), os1.toByteArray());
+
+        final ByteArrayOutputStream os2 = new ByteArrayOutputStream();
+        try (final UTF8Writer writer = new UTF8Writer(os2)) {
+            writer.write(str.toCharArray(), 0, str.length());
+        }
+        assertArrayEquals(str.getBytes(UTF_8), os2.toByteArray());
+
+        final ByteArrayOutputStream os3 = new ByteArrayOutputStream();
+        try (final UTF8Writer writer = new UTF8Writer(os3)) {
+            for (int i = 0; i < str.length(); i++) {
+                writer.write(str.charAt(i));
+            }
+        }
+        assertArrayEquals(str.getBytes(UTF_8), os3.toByteArray());
+    }
+}
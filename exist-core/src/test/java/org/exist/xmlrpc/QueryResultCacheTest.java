@@ -0,0 +1,101 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xmlrpc;
+
+import org.exist.xquery.value.StringValue;
+import org.exist.xquery.value.ValueSequence;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueryResultCacheTest {
+
+    @Test
+    public void boundedByMemorySize() {
+        final QueryResultCache cache = new QueryResultCache(1000, QueryResultCache.DEFAULT_TIMEOUT);
+        for (int i = 0; i < 10; i++) {
+            cache.add(new SizedResult(400));
+        }
+
+        final QueryResultCache.Statistics statistics = cache.getStatistics();
+        assertTrue(statistics.getSize() <= 2);
+        assertTrue(statistics.getMemorySize() <= 1000);
+        assertEquals(1000, statistics.getMaxMemorySize());
+    }
+
+    @Test
+    public void removeWithHash() {
+        final QueryResultCache cache = new QueryResultCache();
+        final SizedResult result = new SizedResult(100);
+        final int id = cache.add(result);
+        assertNotNull(cache.get(id));
+
+        cache.remove(id, result.hashCode() + 1);
+        assertNotNull(cache.get(id));
+
+        cache.remove(id, result.hashCode());
+        assertNull(cache.get(id));
+        assertEquals(0, cache.getStatistics().getSize());
+    }
+
+    @Test
+    public void emptyQueryResult() {
+        assertTrue(new QueryResult(null, null).getMemorySize() > 0);
+    }
+
+    @Test
+    public void estimateFromSample() {
+        final ValueSequence small = new ValueSequence();
+        final ValueSequence large = new ValueSequence();
+        for (int i = 0; i < 100_000; i++) {
+            if (i < 100) {
+                small.add(new StringValue("0123456789"));
+            }
+            large.add(new StringValue("0123456789"));
+        }
+        final long smallSize = new QueryResult(small, null).getMemorySize();
+        final long largeSize = new QueryResult(large, null).getMemorySize();
+        // only the first items of the large result are inspected, the rest is extrapolated
+        assertEquals((smallSize - 128) * 1000, largeSize - 128);
+    }
+
+    private static class SizedResult extends AbstractCachedResult {
+        private final long memorySize;
+
+        SizedResult(final long memorySize) {
+            this.memorySize = memorySize;
+        }
+
+        @Override
+        public Object getResult() {
+            return null;
+        }
+
+        @Override
+        public long getMemorySize() {
+            return memorySize;
+        }
+    }
+}
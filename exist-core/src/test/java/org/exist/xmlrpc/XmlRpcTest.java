@@ -300,6 +300,55 @@ public class XmlRpcTest {
         }
     }
 
+    @Test
+    public void getDocumentDataChunked_negotiatedChunkSize() throws IOException, XmlRpcException {
+        final XmlRpcClient xmlrpc = getClient();
+        List<Object> params = new ArrayList<>();
+        params.add(TARGET_COLLECTION.toString());
+        Boolean result = (Boolean) xmlrpc.execute("createCollection", params);
+        assertTrue(result);
+
+        params.clear();
+        final String generatedXml = generateXml(300 * 1024);
+        params.add(generatedXml);
+        params.add(TARGET_RESOURCE.toString());
+        params.add(1);
+        result = (Boolean) xmlrpc.execute("parse", params);
+        assertTrue(result);
+
+        params.clear();
+        final int chunkSize = 64 * 1024;
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        parameters.put(OutputKeys.INDENT, "no");
+        parameters.put(EXistOutputKeys.CHUNK_SIZE, Integer.toString(chunkSize));
+        params.add(TARGET_RESOURCE.toString());
+        params.add(parameters);
+        Map table = (Map) xmlrpc.execute("getDocumentData", params);
+
+        try (final UnsynchronizedByteArrayOutputStream os = new UnsynchronizedByteArrayOutputStream()) {
+            long offset = (int) table.get("offset");
+            byte[] data = (byte[]) table.get("data");
+            assertEquals(chunkSize, data.length);
+            os.write(data);
+            int chunks = 1;
+            while (offset > 0) {
+                params.clear();
+                params.add(table.get("handle"));
+                params.add(String.valueOf(offset));
+                table = (Map<?, ?>) xmlrpc.execute("getNextExtendedChunk", params);
+                offset = Long.valueOf((String) table.get("offset"));
+                data = (byte[]) table.get("data");
+                assertTrue(data.length <= chunkSize);
+                os.write(data);
+                chunks++;
+            }
+            data = os.toByteArray();
+            assertEquals((data.length + chunkSize - 1) / chunkSize, chunks);
+            assertEquals(generatedXml, new String(data));
+        }
+    }
+
     @Test
     public void uploadCompressedAndDownload() throws IOException, XmlRpcException {
         final XmlRpcClient xmlrpc = getClient();
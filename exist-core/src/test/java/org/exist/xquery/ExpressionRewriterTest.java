@@ -0,0 +1,146 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery;
+
+import org.exist.EXistException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xquery.value.Sequence;
+import org.exist.xquery.value.SequenceIterator;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExpressionRewriterTest {
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    private static final String DOC = "doc('/db/rewriter-test.xml')";
+    private static final String UPDATE_DOC = "doc('/db/rewriter-update.xml')";
+
+    @BeforeClass
+    public static void setUp() throws EXistException, PermissionDeniedException, XPathException {
+        execute("xmldb:store('/db', 'rewriter-test.xml', <items><item n='1'/><item n='2'/><item n='3'/></items>)");
+        execute("xmldb:store('/db', 'rewriter-update.xml', <items><item n='1'/></items>)");
+    }
+
+    @AfterClass
+    public static void tearDown() throws EXistException, PermissionDeniedException, XPathException {
+        execute("xmldb:remove('/db', 'rewriter-test.xml'), xmldb:remove('/db', 'rewriter-update.xml')");
+    }
+
+    @Test
+    public void constantFolding() throws EXistException, PermissionDeniedException, XPathException {
+        assertTrue(rewrite("1 + 2 * 3"));
+        assertEquals("7", execute("1 + 2 * 3"));
+        assertTrue(rewrite("xs:integer('2') > 1"));
+        assertEquals("true", execute("xs:integer('2') > 1"));
+    }
+
+    @Test
+    public void dynamicErrorsAreNotFolded() throws EXistException, PermissionDeniedException, XPathException {
+        assertEquals("5", execute("if (1 = 2) then 1 div 0 else 5"));
+    }
+
+    @Test
+    public void variablesAreNotFolded() throws EXistException, PermissionDeniedException, XPathException {
+        assertFalse(rewrite("let $a := 1 return $a + 2"));
+    }
+
+    @Test
+    public void loopInvariantPath() throws EXistException, PermissionDeniedException, XPathException {
+        final String query = "for $i in 1 to 3 return count(" + DOC + "//item)";
+        assertTrue(rewrite(query));
+        assertEquals("3 3 3", execute(query));
+    }
+
+    @Test
+    public void loopInvariantPathInPredicate() throws EXistException, PermissionDeniedException, XPathException {
+        final String query = "let $items := (<a n='1'/>, <a n='3'/>, <a n='5'/>) " +
+                "return string-join($items[@n = " + DOC + "//item/@n]/@n, ',')";
+        assertTrue(rewrite(query));
+        assertEquals("1,3", execute(query));
+    }
+
+    @Test
+    public void pathOutsideOfLoop() throws EXistException, PermissionDeniedException, XPathException {
+        assertFalse(rewrite("count(" + DOC + "//item)"));
+    }
+
+    @Test
+    public void pathDependingOnVariable() throws EXistException, PermissionDeniedException, XPathException {
+        final String query = "for $i in 1 to 3 return string(" + DOC + "//item[@n = $i]/@n)";
+        assertFalse(rewrite(query));
+        assertEquals("1 2 3", execute(query));
+    }
+
+    @Test
+    public void commonSubexpression() throws EXistException, PermissionDeniedException, XPathException {
+        final String query = "count(" + DOC + "//item) + count(" + DOC + "//item)";
+        assertTrue(rewrite(query));
+        assertEquals("6", execute(query));
+    }
+
+    @Test
+    public void invalidatedByUpdate() throws EXistException, PermissionDeniedException, XPathException {
+        final String query = "for $i in 1 to 2 return (" +
+                "update insert <item n='x'/> into " + UPDATE_DOC + "/items, count(" + UPDATE_DOC + "//item))";
+        assertEquals("2 3", execute(query));
+    }
+
+    private static boolean rewrite(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final XQueryContext context = new XQueryContext(pool);
+            final CompiledXQuery compiled = pool.getXQueryService().compile(context,
+                    "declare option exist:optimize 'enable=no'; " + query);
+            final ExpressionRewriter rewriter = new ExpressionRewriter(context);
+            rewriter.rewrite((Expression) compiled);
+            return rewriter.hasRewritten();
+        }
+    }
+
+    private static String execute(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            final Sequence result = pool.getXQueryService().execute(broker, query, null);
+            final StringBuilder builder = new StringBuilder();
+            for (final SequenceIterator i = result.iterate(); i.hasNext(); ) {
+                if (builder.length() > 0) {
+                    builder.append(' ');
+                }
+                builder.append(i.nextItem().getStringValue());
+            }
+            return builder.toString();
+        }
+    }
+}
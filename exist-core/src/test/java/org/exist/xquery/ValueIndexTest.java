@@ -85,6 +85,24 @@ public class ValueIndexTest {
         "	</index>" +
     	"</collection>";
 
+    private String CONFIG_MEASUREMENTS =
+        "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
+        "	<index>" +
+        "       <create qname=\"temp\" type=\"xs:double\"/>" +
+        "       <create qname=\"@time\" type=\"xs:dateTime\"/>" +
+        "	</index>" +
+        "</collection>";
+
+    private String MEASUREMENTS =
+            "<measurements>" +
+            "   <m time=\"-0200-03-01T10:00:00Z\"><temp>-12.5</temp></m>" +
+            "   <m time=\"1999-12-31T23:59:59Z\"><temp>-1.0</temp></m>" +
+            "   <m time=\"2000-01-01T00:00:00Z\"><temp>-0.5</temp></m>" +
+            "   <m time=\"2000-01-01T12:00:00.500Z\"><temp>0.0</temp></m>" +
+            "   <m time=\"2010-06-15T08:30:00+02:00\"><temp>3.25</temp></m>" +
+            "   <m time=\"2020-02-29T00:00:00Z\"><temp>21.0</temp></m>" +
+            "</measurements>";
+
     private String CITY =
             "<mondial>" +
             "   <city id=\"cty-Germany-Berlin\" is_country_cap=\"yes\" is_state_cap=\"yes\" " +
@@ -336,6 +354,29 @@ public class ValueIndexTest {
         assertEquals(5, result.getSize());
     }
 
+    @Test
+    public void numericAndDateTimeRanges() throws XMLDBException {
+        configureCollection(CONFIG_MEASUREMENTS);
+        final XMLResource doc = (XMLResource) testCollection.createResource("measurements.xml", "XMLResource");
+        doc.setContent(MEASUREMENTS);
+        testCollection.storeResource(doc);
+        final XPathQueryService service = (XPathQueryService) testCollection.getService("XPathQueryService", "1.0");
+
+        queryResource(service, "measurements.xml", "//((#exist:optimize#) { m[temp < 0] })", 3);
+        queryResource(service, "measurements.xml", "//((#exist:optimize#) { m[temp < -1.0] })", 1);
+        queryResource(service, "measurements.xml", "//((#exist:optimize#) { m[temp >= -1.0] })", 5);
+        queryResource(service, "measurements.xml", "//((#exist:optimize#) { m[temp > -0.75][temp < 5] })", 3);
+        queryResource(service, "measurements.xml", "//((#exist:optimize#) { m[temp = -12.5] })", 1);
+        queryResource(service, "measurements.xml",
+                "//((#exist:optimize#) { m[@time < xs:dateTime('2000-01-01T00:00:00Z')] })", 2);
+        queryResource(service, "measurements.xml",
+                "//((#exist:optimize#) { m[@time >= xs:dateTime('2000-01-01T00:00:00Z')] })", 4);
+        queryResource(service, "measurements.xml",
+                "//((#exist:optimize#) { m[@time > xs:dateTime('2010-06-15T06:00:00Z')] })", 2);
+        queryResource(service, "measurements.xml",
+                "//((#exist:optimize#) { m[@time < xs:dateTime('0001-01-01T00:00:00Z')] })", 1);
+    }
+
     @Test
     public void updates() throws Exception {
         configureCollection(CONFIG_PATH);
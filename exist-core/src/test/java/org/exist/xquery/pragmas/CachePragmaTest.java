@@ -0,0 +1,123 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.pragmas;
+
+import org.exist.EXistException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.XQueryResultCache;
+import org.exist.test.ExistXmldbEmbeddedServer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xmldb.api.base.Collection;
+import org.xmldb.api.base.XMLDBException;
+import org.xmldb.api.modules.CollectionManagementService;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class CachePragmaTest {
+
+    @ClassRule
+    public static final ExistXmldbEmbeddedServer existEmbeddedServer = new ExistXmldbEmbeddedServer(false, true, true);
+
+    private static final String TEST_COLLECTION_NAME = "test-cache";
+    private static final String TEST_COLLECTION = "/db/" + TEST_COLLECTION_NAME;
+
+    private static Collection testCollection;
+
+    @BeforeClass
+    public static void setUp() throws XMLDBException {
+        testCollection = existEmbeddedServer.createCollection(existEmbeddedServer.getRoot(), TEST_COLLECTION_NAME);
+        ExistXmldbEmbeddedServer.storeResource(testCollection, "doc1.xml", "<order total='10'/>".getBytes(UTF_8));
+    }
+
+    @AfterClass
+    public static void tearDown() throws XMLDBException {
+        final CollectionManagementService service = (CollectionManagementService)
+                existEmbeddedServer.getRoot().getService("CollectionManagementService", "1.0");
+        service.removeCollection(TEST_COLLECTION_NAME);
+    }
+
+    @Test
+    public void cachedResult() throws XMLDBException, EXistException {
+        final String query = "(# exist:cache collections=" + TEST_COLLECTION + " #) { util:uuid() }";
+        final XQueryResultCache.Statistics before = getStatistics();
+
+        final String first = existEmbeddedServer.executeOneValue(query);
+        assertEquals(first, existEmbeddedServer.executeOneValue(query));
+
+        final XQueryResultCache.Statistics after = getStatistics();
+        assertEquals(before.getHitCount() + 1, after.getHitCount());
+        assertEquals(before.getMissCount() + 1, after.getMissCount());
+    }
+
+    @Test
+    public void invalidatedByModification() throws XMLDBException {
+        final String query = "(# exist:cache collections=" + TEST_COLLECTION + " #) { sum(collection('" + TEST_COLLECTION + "')//order/@total) }";
+        assertEquals("10", existEmbeddedServer.executeOneValue(query));
+        assertEquals("10", existEmbeddedServer.executeOneValue(query));
+
+        ExistXmldbEmbeddedServer.storeResource(testCollection, "doc2.xml", "<order total='5'/>".getBytes(UTF_8));
+        assertEquals("15", existEmbeddedServer.executeOneValue(query));
+
+        existEmbeddedServer.executeQuery("update value doc('" + TEST_COLLECTION + "/doc2.xml')/order/@total with '7'");
+        assertEquals("17", existEmbeddedServer.executeOneValue(query));
+
+        existEmbeddedServer.executeQuery("xmldb:remove('" + TEST_COLLECTION + "', 'doc2.xml')");
+        assertEquals("10", existEmbeddedServer.executeOneValue(query));
+    }
+
+    @Test
+    public void otherCollectionsDoNotInvalidate() throws XMLDBException {
+        final String query = "(# exist:cache collections=" + TEST_COLLECTION + "/sub #) { util:uuid() }";
+        final String first = existEmbeddedServer.executeOneValue(query);
+
+        ExistXmldbEmbeddedServer.storeResource(testCollection, "doc3.xml", "<order total='0'/>".getBytes(UTF_8));
+        assertEquals(first, existEmbeddedServer.executeOneValue(query));
+
+        existEmbeddedServer.executeQuery("xmldb:remove('" + TEST_COLLECTION + "', 'doc3.xml')");
+    }
+
+    @Test
+    public void variablesArePartOfKey() throws XMLDBException {
+        assertEquals("2 4 6", existEmbeddedServer.executeOneValue(
+                "string-join(for $i in 1 to 3 return (# exist:cache #) { string($i * 2) }, ' ')"));
+    }
+
+    @Test
+    public void inMemoryNodesAreNotCached() throws XMLDBException {
+        final String query = "(# exist:cache #) { <id>{util:uuid()}</id> }/string()";
+        assertNotEquals(existEmbeddedServer.executeOneValue(query), existEmbeddedServer.executeOneValue(query));
+    }
+
+    @Test(expected = XMLDBException.class)
+    public void invalidOption() throws XMLDBException {
+        existEmbeddedServer.executeQuery("(# exist:cache collections #) { () }");
+    }
+
+    private static XQueryResultCache.Statistics getStatistics() throws EXistException {
+        return BrokerPool.getInstance().getXQueryResultCache().getStatistics();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.pragmas;
+
+import org.exist.test.ExistXmldbEmbeddedServer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xmldb.api.base.Collection;
+import org.xmldb.api.base.XMLDBException;
+import org.xmldb.api.modules.CollectionManagementService;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+public class ParallelPragmaTest {
+
+    @ClassRule
+    public static final ExistXmldbEmbeddedServer existEmbeddedServer = new ExistXmldbEmbeddedServer(false, true, true);
+
+    private static final String TEST_COLLECTION_NAME = "test-parallel";
+    private static final int DOCUMENTS = 50;
+
+    @BeforeClass
+    public static void setUp() throws XMLDBException {
+        final Collection testCollection = existEmbeddedServer.createCollection(existEmbeddedServer.getRoot(), TEST_COLLECTION_NAME);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            final String xml = "<archive><record n='" + i + "'><title>t" + (i % 5) + "</title></record>" +
+                    "<group><record n='" + i + "-nested'/></group></archive>";
+            ExistXmldbEmbeddedServer.storeResource(testCollection, "doc" + i + ".xml", xml.getBytes(UTF_8));
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() throws XMLDBException {
+        final CollectionManagementService service = (CollectionManagementService)
+                existEmbeddedServer.getRoot().getService("CollectionManagementService", "1.0");
+        service.removeCollection(TEST_COLLECTION_NAME);
+    }
+
+    @Test
+    public void descendants() throws XMLDBException {
+        final String path = "collection('/db/" + TEST_COLLECTION_NAME + "')//record";
+        assertSameResult(path);
+        assertEquals(String.valueOf(DOCUMENTS * 2),
+                existEmbeddedServer.executeOneValue("count((# exist:parallel threads=4 chunk=7 #) { " + path + " })"));
+    }
+
+    @Test
+    public void children() throws XMLDBException {
+        assertSameResult("collection('/db/" + TEST_COLLECTION_NAME + "')/archive/record");
+    }
+
+    @Test
+    public void attributes() throws XMLDBException {
+        assertSameResult("collection('/db/" + TEST_COLLECTION_NAME + "')//record/@n");
+    }
+
+    @Test
+    public void predicate() throws XMLDBException {
+        assertSameResult("collection('/db/" + TEST_COLLECTION_NAME + "')//record[title = 't3']");
+    }
+
+    @Test
+    public void sharedContext() throws XMLDBException {
+        // the context set of the child step is shared by all workers
+        assertSameResult("(collection('/db/" + TEST_COLLECTION_NAME + "')//group | collection('/db/" +
+                TEST_COLLECTION_NAME + "')/archive)/record/@n");
+    }
+
+    @Test
+    public void documentOrder() throws XMLDBException {
+        final String path = "collection('/db/" + TEST_COLLECTION_NAME + "')//record";
+        final String query = "let $seq := %s return string-join(for $r in $seq return document-uri(root($r)) || '#' || $r/@n, ',')";
+        assertEquals(
+                existEmbeddedServer.executeOneValue(String.format(query, path)),
+                existEmbeddedServer.executeOneValue(String.format(query, "(# exist:parallel threads=4 chunk=3 #) { " + path + " }")));
+    }
+
+    @Test(expected = XMLDBException.class)
+    public void invalidOption() throws XMLDBException {
+        existEmbeddedServer.executeQuery("(# exist:parallel threads=none #) { () }");
+    }
+
+    private void assertSameResult(final String path) throws XMLDBException {
+        final String query = "string-join(for $n in %s return string($n), ',')";
+        assertEquals(
+                existEmbeddedServer.executeOneValue(String.format(query, path)),
+                existEmbeddedServer.executeOneValue(String.format(query, "(# exist:parallel threads=4 chunk=7 #) { " + path + " }")));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.xquery.pragmas;
+
+import org.exist.test.ExistXmldbEmbeddedServer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xmldb.api.base.Collection;
+import org.xmldb.api.base.XMLDBException;
+import org.xmldb.api.modules.CollectionManagementService;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+public class StreamPragmaTest {
+
+    @ClassRule
+    public static final ExistXmldbEmbeddedServer existEmbeddedServer = new ExistXmldbEmbeddedServer(false, true, true);
+
+    private static final String TEST_COLLECTION_NAME = "test-stream";
+    private static final String TEST_COLLECTION = "/db/" + TEST_COLLECTION_NAME;
+    private static final int DOCUMENTS = 25;
+
+    @BeforeClass
+    public static void setUp() throws XMLDBException {
+        final Collection testCollection = existEmbeddedServer.createCollection(existEmbeddedServer.getRoot(), TEST_COLLECTION_NAME);
+        final Collection subCollection = existEmbeddedServer.createCollection(testCollection, "sub");
+        for (int i = 0; i < DOCUMENTS; i++) {
+            final String xml = "<record n='" + i + "'/>";
+            ExistXmldbEmbeddedServer.storeResource(i % 5 == 0 ? subCollection : testCollection, "doc" + i + ".xml",
+                    xml.getBytes(UTF_8));
+        }
+        existEmbeddedServer.executeQuery("xmldb:store('" + TEST_COLLECTION + "', 'data.bin', xs:base64Binary('AAAA'))");
+    }
+
+    @AfterClass
+    public static void tearDown() throws XMLDBException {
+        final CollectionManagementService service = (CollectionManagementService)
+                existEmbeddedServer.getRoot().getService("CollectionManagementService", "1.0");
+        service.removeCollection(TEST_COLLECTION_NAME);
+    }
+
+    @Test
+    public void count() throws XMLDBException {
+        assertEquals(String.valueOf(DOCUMENTS),
+                existEmbeddedServer.executeOneValue("count((# exist:stream batch=3 #) { collection('" + TEST_COLLECTION + "') })"));
+    }
+
+    @Test
+    public void forLoop() throws XMLDBException {
+        final String query = "string-join(sort(for $doc in %s return string($doc/record/@n)), ',')";
+        assertEquals(
+                existEmbeddedServer.executeOneValue(String.format(query, "collection('" + TEST_COLLECTION + "')")),
+                existEmbeddedServer.executeOneValue(String.format(query, "(# exist:stream batch=4 #) { collection('" + TEST_COLLECTION + "') }")));
+    }
+
+    @Test
+    public void path() throws XMLDBException {
+        assertEquals(String.valueOf(DOCUMENTS),
+                existEmbeddedServer.executeOneValue("count((# exist:stream #) { collection('" + TEST_COLLECTION + "') }//record)"));
+    }
+
+    @Test
+    public void withoutSubCollections() throws XMLDBException {
+        assertEquals(String.valueOf(DOCUMENTS - DOCUMENTS / 5),
+                existEmbeddedServer.executeOneValue("count((# exist:stream batch=2 #) { xmldb:xcollection('" + TEST_COLLECTION + "') })"));
+    }
+
+    @Test
+    public void earlyTermination() throws XMLDBException {
+        assertEquals("true",
+                existEmbeddedServer.executeOneValue("exists((# exist:stream batch=1 #) { collection('" + TEST_COLLECTION + "') })"));
+    }
+
+    @Test
+    public void emptiness() throws XMLDBException {
+        assertEquals("false",
+                existEmbeddedServer.executeOneValue("empty((# exist:stream #) { xmldb:xcollection('" + TEST_COLLECTION + "/sub') })"));
+        assertEquals("true",
+                existEmbeddedServer.executeOneValue("empty((# exist:stream #) { collection('/db/no-such-collection') })"));
+    }
+
+    @Test
+    public void otherExpression() throws XMLDBException {
+        assertEquals("3", existEmbeddedServer.executeOneValue("count((# exist:stream #) { 1 to 3 })"));
+    }
+
+    @Test
+    public void missingCollection() throws XMLDBException {
+        assertEquals("0", existEmbeddedServer.executeOneValue("count((# exist:stream #) { collection('/db/no-such-collection') })"));
+    }
+
+    @Test(expected = XMLDBException.class)
+    public void invalidOption() throws XMLDBException {
+        existEmbeddedServer.executeQuery("(# exist:stream batch=0 #) { () }");
+    }
+}
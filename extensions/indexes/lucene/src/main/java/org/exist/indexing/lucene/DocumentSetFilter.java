@@ -0,0 +1,128 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.lucene;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.NumericUtils;
+import org.exist.dom.persistent.DocumentImpl;
+import org.exist.dom.persistent.DocumentSet;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Restricts a search to the index entries of a set of eXist documents, so hits
+ * outside of the context documents are neither scored nor collected.
+ *
+ * For small document sets, the postings of the document ids are looked up in the
+ * index, otherwise the document ids stored as doc values are scanned. The filter
+ * is meant to be wrapped into a {@link org.apache.lucene.search.CachingWrapperFilter},
+ * which caches the bit set per segment: as segments are immutable, the cached bit
+ * sets stay valid until the segment is merged away.
+ */
+public class DocumentSetFilter extends Filter {
+
+    /**
+     * Look up the postings of the document ids if the segment has
+     * more than this many index entries per document in the set.
+     */
+    private static final int SEEK_RATIO = 8;
+
+    private final int[] docIds;
+    private final int hashCode;
+
+    public DocumentSetFilter(final DocumentSet docs) {
+        docIds = new int[docs.getDocumentCount()];
+        int i = 0;
+        for (final Iterator<DocumentImpl> iter = docs.getDocumentIterator(); iter.hasNext() && i < docIds.length; ) {
+            docIds[i++] = iter.next().getDocId();
+        }
+        Arrays.sort(docIds);
+        hashCode = Arrays.hashCode(docIds);
+    }
+
+    @Override
+    public DocIdSet getDocIdSet(final AtomicReaderContext context, final Bits acceptDocs) throws IOException {
+        final AtomicReader reader = context.reader();
+        final int maxDoc = reader.maxDoc();
+        final FixedBitSet bits = new FixedBitSet(maxDoc);
+        if (docIds.length < maxDoc / SEEK_RATIO) {
+            final Terms terms = reader.terms(LuceneIndexWorker.FIELD_DOC_ID);
+            if (terms == null) {
+                return null;
+            }
+            final TermsEnum termsEnum = terms.iterator(null);
+            final BytesRefBuilder bytes = new BytesRefBuilder();
+            DocsEnum docsEnum = null;
+            for (final int docId : docIds) {
+                NumericUtils.intToPrefixCoded(docId, 0, bytes);
+                if (termsEnum.seekExact(bytes.get())) {
+                    docsEnum = termsEnum.docs(acceptDocs, docsEnum, DocsEnum.FLAG_NONE);
+                    int doc;
+                    while ((doc = docsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                        bits.set(doc);
+                    }
+                }
+            }
+        } else {
+            final NumericDocValues docIdValues = reader.getNumericDocValues(LuceneIndexWorker.FIELD_DOC_ID);
+            if (docIdValues == null) {
+                return null;
+            }
+            for (int doc = 0; doc < maxDoc; doc++) {
+                if ((acceptDocs == null || acceptDocs.get(doc))
+                        && Arrays.binarySearch(docIds, (int) docIdValues.get(doc)) >= 0) {
+                    bits.set(doc);
+                }
+            }
+        }
+        return bits;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return obj instanceof DocumentSetFilter && hashCode == obj.hashCode()
+                && Arrays.equals(docIds, ((DocumentSetFilter) obj).docIds);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "DocumentSetFilter(" + docIds.length + " documents)";
+    }
+}
@@ -36,6 +36,8 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.annotation.Nullable;
+
 public class LuceneConfig {
 
     public final static LuceneConfig DEFAULT_CONFIG = new LuceneConfig();
@@ -61,6 +63,8 @@ public class LuceneConfig {
     private Map<String, LuceneIndexConfig> namedIndexes = new TreeMap<>();
     
     private Map<String, FieldType> fieldTypes = new HashMap<>();
+
+    private Map<String, LuceneFieldConfig> fields = new HashMap<>();
     
     private Set<QName> inlineNodes = null;
     private Set<QName> ignoreNodes = null;
@@ -95,6 +99,7 @@ public class LuceneConfig {
     	this.wildcardPaths = other.wildcardPaths;
     	this.namedIndexes = other.namedIndexes;
     	this.fieldTypes = other.fieldTypes;
+    	this.fields = other.fields;
     	this.inlineNodes = other.inlineNodes;
     	this.ignoreNodes = other.ignoreNodes;
     	this.boost = other.boost;
@@ -257,6 +262,16 @@ public class LuceneConfig {
         return boost;
     }
     
+    /**
+     * Get the definition of a field, see {@link LuceneFieldConfig}.
+     *
+     * @param name the name of the field
+     * @return the field definition, or null if there is no field with the given name
+     */
+    public @Nullable LuceneFieldConfig getFieldConfig(String name) {
+        return fields.get(name);
+    }
+
     public FieldType getFieldType(String name){
         return fieldTypes.get(name);
     }
@@ -323,6 +338,11 @@ public class LuceneConfig {
                                 // found an index definition
                                 Element elem = (Element) node;
                                 LuceneIndexConfig config = new LuceneIndexConfig(this, elem, namespaces, analyzers, fieldTypes);
+                                for (AbstractFieldConfig fieldConfig : config.getFacetsAndFields()) {
+                                    if (fieldConfig instanceof LuceneFieldConfig) {
+                                        fields.put(((LuceneFieldConfig) fieldConfig).getName(), (LuceneFieldConfig) fieldConfig);
+                                    }
+                                }
                                 // if it is a named index, add it to the namedIndexes map
                                 if (config.getName() != null) {
                                     namedIndexes.put(config.getName(), config);
@@ -24,6 +24,9 @@ package org.exist.indexing.lucene;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.*;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.BytesRef;
 import org.exist.dom.persistent.DocumentImpl;
 import org.exist.dom.persistent.NodeProxy;
 import org.exist.numbering.NodeId;
@@ -53,6 +56,9 @@ import java.util.Optional;
  *
  * A field may also be associated with an analyzer, could have a type and may be stored or not.
  *
+ * If attribute sortable is set to yes, the first value of the field is also stored as doc value,
+ * so query results can be sorted by lucene (option sort of ft:query) without loading the field values.
+ *
  * @author Wolfgang Meier
  */
 public class LuceneFieldConfig extends AbstractFieldConfig {
@@ -62,10 +68,15 @@ public class LuceneFieldConfig extends AbstractFieldConfig {
     private final static String ATTR_STORE = "store";
     private final static String ATTR_ANALYZER = "analyzer";
     private final static String ATTR_IF = "if";
+    private final static String ATTR_SORTABLE = "sortable";
+
+    /** string values are truncated to this length for sorting */
+    private final static int MAX_SORT_KEY_LENGTH = 256;
 
     protected String fieldName;
     protected int type = Type.STRING;
     protected boolean store = true;
+    protected boolean sortable = false;
     protected Analyzer analyzer= null;
     protected Optional<String> condition = Optional.empty();
     protected CompiledXQuery compiledCondition = null;
@@ -92,6 +103,11 @@ public class LuceneFieldConfig extends AbstractFieldConfig {
             this.store = storeStr.equalsIgnoreCase("yes") || storeStr.equalsIgnoreCase("true");
         }
 
+        final String sortableStr = configElement.getAttribute(ATTR_SORTABLE);
+        if (StringUtils.isNotEmpty(sortableStr)) {
+            this.sortable = sortableStr.equalsIgnoreCase("yes") || sortableStr.equalsIgnoreCase("true");
+        }
+
         final String analyzerOpt = configElement.getAttribute(ATTR_ANALYZER);
         if (StringUtils.isNotEmpty(analyzerOpt)) {
             analyzer = analyzers.getAnalyzerById(analyzerOpt);
@@ -117,6 +133,38 @@ public class LuceneFieldConfig extends AbstractFieldConfig {
         return analyzer;
     }
 
+    public boolean isSortable() {
+        return sortable;
+    }
+
+    /**
+     * The type of the doc values stored for a sortable field.
+     *
+     * @return the lucene sort type
+     */
+    public SortField.Type getSortType() {
+        switch (type) {
+            case Type.INTEGER:
+            case Type.LONG:
+            case Type.UNSIGNED_LONG:
+            case Type.INT:
+            case Type.UNSIGNED_INT:
+            case Type.SHORT:
+            case Type.UNSIGNED_SHORT:
+            case Type.DATE:
+            case Type.TIME:
+            case Type.DATE_TIME:
+                return SortField.Type.LONG;
+            case Type.DECIMAL:
+            case Type.DOUBLE:
+                return SortField.Type.DOUBLE;
+            case Type.FLOAT:
+                return SortField.Type.FLOAT;
+            default:
+                return SortField.Type.STRING;
+        }
+    }
+
     @Override
     protected void build(DBBroker broker, DocumentImpl document, NodeId nodeId, Document luceneDoc, CharSequence text) {
         try {
@@ -163,15 +211,67 @@ public class LuceneFieldConfig extends AbstractFieldConfig {
             final Field field = convertToField(text);
             if (field != null) {
                 luceneDoc.add(field);
+                addSortValue(text, luceneDoc);
             }
         }
     }
 
     @Override
     protected void processText(CharSequence text, Document luceneDoc) {
-        final Field field = convertToField(text.toString());
+        final String content = text.toString();
+        final Field field = convertToField(content);
         if (field != null) {
             luceneDoc.add(field);
+            addSortValue(content, luceneDoc);
+        }
+    }
+
+    /**
+     * Store the value as doc value for sorting. A document can only have one doc value
+     * per field, so further values of a multi-valued field are ignored.
+     */
+    private void addSortValue(String content, Document luceneDoc) {
+        if (!sortable) {
+            return;
+        }
+        for (IndexableField existing : luceneDoc.getFields(fieldName)) {
+            if (existing.fieldType().docValueType() != null) {
+                return;
+            }
+        }
+        try {
+            switch (getSortType()) {
+                case LONG:
+                    final long lvalue;
+                    switch (type) {
+                        case Type.DATE:
+                            lvalue = dateToLong(new DateValue(content));
+                            break;
+                        case Type.TIME:
+                            lvalue = timeToLong(new TimeValue(content));
+                            break;
+                        case Type.DATE_TIME:
+                            lvalue = new DateTimeValue(content).getTimeInMillis();
+                            break;
+                        default:
+                            lvalue = Long.parseLong(content.trim());
+                            break;
+                    }
+                    luceneDoc.add(new NumericDocValuesField(fieldName, lvalue));
+                    break;
+                case DOUBLE:
+                    luceneDoc.add(new DoubleDocValuesField(fieldName, Double.parseDouble(content.trim())));
+                    break;
+                case FLOAT:
+                    luceneDoc.add(new FloatDocValuesField(fieldName, Float.parseFloat(content.trim())));
+                    break;
+                default:
+                    final String key = content.length() > MAX_SORT_KEY_LENGTH ? content.substring(0, MAX_SORT_KEY_LENGTH) : content;
+                    luceneDoc.add(new SortedDocValuesField(fieldName, new BytesRef(key)));
+                    break;
+            }
+        } catch (NumberFormatException | XPathException e) {
+            LOG.trace("Cannot convert sort value of field {} to type {}. Content was: {}", fieldName, Type.getTypeName(type), content);
         }
     }
 
@@ -181,7 +281,7 @@ public class LuceneFieldConfig extends AbstractFieldConfig {
                 case Type.INTEGER:
                 case Type.LONG:
                 case Type.UNSIGNED_LONG:
-                    long lvalue = Long.parseLong(content);
+                    long lvalue = Long.parseLong(content.trim());
                     return new LongField(fieldName, lvalue, LongField.TYPE_STORED);
                 case Type.INT:
                 case Type.UNSIGNED_INT:
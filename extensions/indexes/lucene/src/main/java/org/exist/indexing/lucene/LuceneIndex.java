@@ -31,26 +31,49 @@ import org.apache.lucene.facet.taxonomy.SearcherTaxonomyManager;
 import org.apache.lucene.facet.taxonomy.TaxonomyWriter;
 import org.apache.lucene.facet.taxonomy.directory.DirectoryTaxonomyWriter;
 import org.apache.lucene.index.*;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.NRTCachingDirectory;
+import org.apache.lucene.store.SimpleFSDirectory;
 import org.apache.lucene.util.Version;
 import org.exist.backup.RawDataBackup;
+import org.exist.dom.persistent.DocumentSet;
 import org.exist.indexing.AbstractIndex;
 import org.exist.indexing.IndexWorker;
 import org.exist.indexing.RawBackupSupport;
+import org.exist.management.AgentFactory;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
 import org.exist.storage.btree.DBException;
 import org.exist.util.DatabaseConfigurationException;
 import org.exist.util.FileUtils;
+import org.exist.util.NamedThreadFactory;
 import org.exist.xquery.XPathException;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
@@ -67,6 +90,16 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     protected Directory directory;
     protected Directory taxoDirectory;
 
+    /**
+     * The implementation of the lucene directory: "fs" lets lucene choose the best
+     * implementation for the platform, "mmap", "nio" or "simple" select one explicitly.
+     */
+    protected String directoryType = "fs";
+    /** size of the RAM cache for newly flushed segments in MB, 0 to disable the cache */
+    protected double nrtCacheSize = 0;
+    /** segments created by merges of at most this size in MB are cached as well */
+    protected double nrtCacheMergeSize = 5.0;
+
     protected Analyzer defaultAnalyzer;
 
     protected double bufferSize = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
@@ -77,6 +110,35 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     protected SearcherTaxonomyManager searcherManager = null;
     protected ReaderManager readerManager = null;
 
+    protected long refreshInterval = RefreshScheduler.DEFAULT_REFRESH_INTERVAL;
+    protected int refreshAfterWrites = RefreshScheduler.DEFAULT_REFRESH_AFTER_WRITES;
+    protected boolean waitForWrites = true;
+    protected volatile RefreshScheduler refreshScheduler = null;
+    private boolean mbeanRegistered = false;
+
+    /** number of threads scoring the segments of the index, 0 to search in the query thread only */
+    protected int searchThreads = 0;
+    /** number of threads analyzing documents while indexing, 0 to index in the broker thread only */
+    protected int indexThreads = 0;
+    @Nullable protected ExecutorService searchExecutor = null;
+    @Nullable protected ExecutorService indexExecutor = null;
+
+    public final static int DEFAULT_FILTER_CACHE_SIZE = 64;
+
+    /**
+     * A document set is considered selective enough to be applied as a filter
+     * if the index has at least this many entries per document in the set.
+     */
+    private static final int FILTER_RATIO = 8;
+
+    protected int filterCacheSize = DEFAULT_FILTER_CACHE_SIZE;
+    private final Map<DocumentSetFilter, Filter> filterCache = new LinkedHashMap<DocumentSetFilter, Filter>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<DocumentSetFilter, Filter> eldest) {
+            return size() > filterCacheSize;
+        }
+    };
+
     public String getDirName() {
         return DIR_NAME;
     }
@@ -97,6 +159,58 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
 
         if (LOG.isDebugEnabled())
             LOG.debug("Using buffer size: {}", bufferSize);
+
+        String refreshIntervalParam = config.getAttribute("refresh-interval");
+        if (refreshIntervalParam != null && !refreshIntervalParam.isEmpty())
+            try {
+                refreshInterval = Long.parseLong(refreshIntervalParam);
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid refresh interval setting for lucene index: {}", refreshIntervalParam, e);
+            }
+
+        String refreshAfterWritesParam = config.getAttribute("refresh-after-writes");
+        if (refreshAfterWritesParam != null && !refreshAfterWritesParam.isEmpty())
+            try {
+                refreshAfterWrites = Integer.parseInt(refreshAfterWritesParam);
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid refresh-after-writes setting for lucene index: {}", refreshAfterWritesParam, e);
+            }
+
+        String filterCacheParam = config.getAttribute("filter-cache-size");
+        if (filterCacheParam != null && !filterCacheParam.isEmpty())
+            try {
+                filterCacheSize = Integer.parseInt(filterCacheParam);
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid filter cache size setting for lucene index: {}", filterCacheParam, e);
+            }
+
+        String directoryParam = config.getAttribute("directory");
+        if (directoryParam != null && !directoryParam.isEmpty()) {
+            switch (directoryParam) {
+                case "fs":
+                case "mmap":
+                case "nio":
+                case "simple":
+                    directoryType = directoryParam;
+                    break;
+                default:
+                    throw new DatabaseConfigurationException("Invalid directory setting for lucene index: " +
+                        directoryParam + ". Expected one of fs, mmap, nio or simple.");
+            }
+        }
+        nrtCacheSize = getSizeParam(config, "nrt-cache-size", nrtCacheSize);
+        nrtCacheMergeSize = getSizeParam(config, "nrt-cache-merge-size", nrtCacheMergeSize);
+
+        searchThreads = getThreadsParam(config, "search-threads");
+        indexThreads = getThreadsParam(config, "index-threads");
+
+        String waitForWritesParam = config.getAttribute("wait-for-writes");
+        if (waitForWritesParam != null && !waitForWritesParam.isEmpty())
+            waitForWrites = "yes".equalsIgnoreCase(waitForWritesParam) || "true".equalsIgnoreCase(waitForWritesParam);
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Refreshing readers every {}ms or after {} writes, wait for writes: {}",
+                refreshInterval, refreshAfterWrites, waitForWrites);
         
         NodeList nl = config.getElementsByTagName("analyzer");
         if (nl.getLength() > 0) {
@@ -110,6 +224,30 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
             LOG.debug("Using default analyzer: {}", defaultAnalyzer.getClass().getName());
     }
 
+    private static double getSizeParam(Element config, String name, double defaultValue) {
+        String param = config.getAttribute(name);
+        if (param == null || param.isEmpty())
+            return defaultValue;
+        try {
+            return Math.max(0, Double.parseDouble(param));
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid {} setting for lucene index: {}", name, param, e);
+            return defaultValue;
+        }
+    }
+
+    private static int getThreadsParam(Element config, String name) {
+        String param = config.getAttribute(name);
+        if (param == null || param.isEmpty())
+            return 0;
+        try {
+            return Math.max(0, Integer.parseInt(param));
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid {} setting for lucene index: {}", name, param, e);
+            return 0;
+        }
+    }
+
     @Override
     public void open() throws DatabaseConfigurationException {
         Path dir = getDataDir().resolve(getDirName());
@@ -127,27 +265,107 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
                 Files.createDirectories(taxoDir);
             }
 
-            directory = FSDirectory.open(dir.toFile());
-            taxoDirectory = FSDirectory.open(taxoDir.toFile());
+            directory = openDirectory(dir);
+            taxoDirectory = openDirectory(taxoDir);
 
             final IndexWriterConfig idxWriterConfig = new IndexWriterConfig(LUCENE_VERSION_IN_USE, defaultAnalyzer);
             idxWriterConfig.setRAMBufferSizeMB(bufferSize);
             cachedWriter = new IndexWriter(directory, idxWriterConfig);
             cachedTaxonomyWriter = new DirectoryTaxonomyWriter(taxoDirectory);
 
-            searcherManager = new SearcherTaxonomyManager(cachedWriter, true, null, cachedTaxonomyWriter);
+            if (searchThreads > 0) {
+                searchExecutor = Executors.newFixedThreadPool(searchThreads,
+                    new NamedThreadFactory(pool, getDirName() + "-search"));
+            }
+            if (indexThreads > 0) {
+                indexExecutor = Executors.newFixedThreadPool(indexThreads,
+                    new NamedThreadFactory(pool, getDirName() + "-index"));
+            }
+
+            final ExecutorService executor = searchExecutor;
+            final SearcherFactory searcherFactory = executor == null ? null : new SearcherFactory() {
+                @Override
+                public IndexSearcher newSearcher(IndexReader reader) {
+                    return new IndexSearcher(reader, executor);
+                }
+            };
+            searcherManager = new SearcherTaxonomyManager(cachedWriter, true, searcherFactory, cachedTaxonomyWriter);
             readerManager = new ReaderManager(cachedWriter, true);
+
+            refreshScheduler = new RefreshScheduler(refreshInterval, refreshAfterWrites, waitForWrites,
+                searcherManager, readerManager);
+            refreshScheduler.start(new NamedThreadFactory(pool, "lucene-nrt-refresh"));
         } catch (IOException e) {
             throw new DatabaseConfigurationException("Exception while reading lucene index directory: " +
                 e.getMessage(), e);
         } finally {
             releaseWriter(writer);
         }
+        registerMBean();
+    }
+
+    /**
+     * Open the lucene directory for the given location, as configured by the
+     * directory and nrt-cache-* attributes.
+     */
+    protected Directory openDirectory(Path dir) throws IOException {
+        final Directory fsDirectory;
+        switch (directoryType) {
+            case "mmap":
+                fsDirectory = new MMapDirectory(dir.toFile());
+                break;
+            case "nio":
+                fsDirectory = new NIOFSDirectory(dir.toFile());
+                break;
+            case "simple":
+                fsDirectory = new SimpleFSDirectory(dir.toFile());
+                break;
+            default:
+                fsDirectory = FSDirectory.open(dir.toFile());
+                break;
+        }
+        if (LOG.isDebugEnabled())
+            LOG.debug("Using {} for {}, NRT cache size: {}MB", fsDirectory.getClass().getSimpleName(), dir, nrtCacheSize);
+        if (nrtCacheSize > 0) {
+            // small segments written by the NRT readers are kept in memory until they are merged
+            return new NRTCachingDirectory(fsDirectory, nrtCacheMergeSize, nrtCacheSize);
+        }
+        return fsDirectory;
+    }
+
+    private void registerMBean() {
+        if (mbeanRegistered)
+            return;
+        try {
+            AgentFactory.getInstance().addMBean(new LuceneIndexRefresh(this));
+            mbeanRegistered = true;
+        } catch (final DatabaseConfigurationException e) {
+            LOG.warn("Exception while registering JMX LuceneIndexRefresh MBean.", e);
+        }
+    }
+
+    private void unregisterMBean() {
+        if (!mbeanRegistered)
+            return;
+        try {
+            AgentFactory.getInstance().removeMBean(new LuceneIndexRefresh(this));
+        } catch (final DatabaseConfigurationException e) {
+            LOG.warn("Exception while unregistering JMX LuceneIndexRefresh MBean.", e);
+        }
+        mbeanRegistered = false;
     }
 
     @Override
     public synchronized void close() throws DBException {
+        unregisterMBean();
         try {
+            if (refreshScheduler != null) {
+                refreshScheduler.close();
+                refreshScheduler = null;
+            }
+            synchronized (filterCache) {
+                filterCache.clear();
+            }
             if (searcherManager != null) {
                 searcherManager.close();
                 searcherManager = null;
@@ -156,6 +374,10 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
                 readerManager.close();
                 readerManager = null;
             }
+            shutdown(searchExecutor);
+            searchExecutor = null;
+            shutdown(indexExecutor);
+            indexExecutor = null;
             if (cachedWriter != null) {
             	commit();
             	cachedTaxonomyWriter.close();
@@ -171,6 +393,19 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
         }
     }
 
+    private static void shutdown(@Nullable ExecutorService executor) {
+        if (executor == null)
+            return;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(60, TimeUnit.SECONDS))
+                executor.shutdownNow();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @Override
     public synchronized void sync() throws DBException {
         //Nothing special to do
@@ -217,10 +452,102 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
         return cachedTaxonomyWriter;
     }
 
+    /**
+     * Get the executor for scoring the segments of the index in parallel,
+     * see {@link ParallelSegmentSearch}.
+     *
+     * @return the executor, or null if segments are searched in the query thread
+     */
+    public @Nullable ExecutorService getSearchExecutor() {
+        return searchExecutor;
+    }
+
+    /**
+     * Add documents to the index. The index writer can be fed by several threads: if
+     * index threads are configured, the documents are analyzed and added concurrently,
+     * so a single broker storing or reindexing documents uses more than one core. The
+     * method returns once all documents have been added.
+     *
+     * @param writer the index writer
+     * @param documents the documents to add
+     * @param analyzers the analyzer for each document, or null for the default analyzer
+     *
+     * @throws IOException if a document could not be added
+     */
+    public void addDocuments(final IndexWriter writer, final List<Document> documents,
+            final List<Analyzer> analyzers) throws IOException {
+        final ExecutorService executor = indexExecutor;
+        if (executor == null || documents.size() < 2) {
+            addDocuments(writer, documents, analyzers, 0, documents.size());
+            return;
+        }
+
+        final int chunkSize = (documents.size() + indexThreads - 1) / indexThreads;
+        final List<Future<Void>> futures = new ArrayList<>(indexThreads);
+        try {
+            for (int start = 0; start < documents.size(); start += chunkSize) {
+                final int from = start;
+                final int to = Math.min(documents.size(), start + chunkSize);
+                futures.add(executor.submit(() -> {
+                    addDocuments(writer, documents, analyzers, from, to);
+                    return null;
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while adding documents to lucene index");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error while adding documents to lucene index: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            // the writer is released by the caller, so no task may still be running
+            for (final Future<Void> future : futures) {
+                if (!future.isDone()) {
+                    try {
+                        future.get();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (final ExecutionException e) {
+                        LOG.warn("Error while adding documents to lucene index: {}", e.getCause().getMessage(), e.getCause());
+                    }
+                }
+            }
+        }
+    }
+
+    private static void addDocuments(final IndexWriter writer, final List<Document> documents,
+            final List<Analyzer> analyzers, final int from, final int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            final Analyzer analyzer = analyzers.get(i);
+            if (analyzer == null) {
+                writer.addDocument(documents.get(i));
+            } else {
+                writer.addDocument(documents.get(i), analyzer);
+            }
+        }
+    }
+
     public synchronized void releaseWriter(IndexWriter writer) {
         if (writer == null)
             return;
         needsCommit = true;
+        if (refreshScheduler != null)
+            refreshScheduler.written();
+    }
+
+    /**
+     * Get a snapshot of the statistics of the background reader refresh.
+     *
+     * @return the statistics, or null if the index is not open
+     */
+    public RefreshScheduler.Statistics getRefreshStatistics() {
+        final RefreshScheduler scheduler = refreshScheduler;
+        return scheduler == null ? null : scheduler.getStatistics();
     }
 
     protected void commit() {
@@ -243,8 +570,34 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
         }
     }
 
+    /**
+     * Get a filter which restricts a search to the index entries of the given documents.
+     * Filters are cached, so the bit set of a filter is computed only once per segment.
+     *
+     * @param docs the documents to search
+     * @param reader the reader used for the search
+     * @param force if false, null is returned if the document set is not selective enough
+     *              for a filter to pay off
+     * @return the filter, or null if the search should not be filtered
+     */
+    public Filter getDocumentSetFilter(final DocumentSet docs, final IndexReader reader, final boolean force) {
+        if (docs == null) {
+            return null;
+        }
+        if (!force && (filterCacheSize <= 0 || (long) docs.getDocumentCount() * FILTER_RATIO > reader.maxDoc())) {
+            return null;
+        }
+        final DocumentSetFilter filter = new DocumentSetFilter(docs);
+        if (filterCacheSize <= 0) {
+            return filter;
+        }
+        synchronized (filterCache) {
+            return filterCache.computeIfAbsent(filter, CachingWrapperFilter::new);
+        }
+    }
+
     public <R> R withReader(FunctionE<IndexReader, R, IOException> fn) throws IOException {
-        readerManager.maybeRefreshBlocking();
+        refreshScheduler.beforeAcquire();
         final DirectoryReader reader = readerManager.acquire();
         try {
             return fn.apply(reader);
@@ -254,7 +607,7 @@ public class LuceneIndex extends AbstractIndex implements RawBackupSupport {
     }
 
     public <R> R withSearcher(Function2E<SearcherTaxonomyManager.SearcherAndTaxonomy, R, IOException, XPathException> consumer) throws IOException, XPathException {
-        searcherManager.maybeRefreshBlocking();
+        refreshScheduler.beforeAcquire();
         final SearcherTaxonomyManager.SearcherAndTaxonomy searcher = searcherManager.acquire();
         try {
             return consumer.apply(searcher);
@@ -0,0 +1,61 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.lucene;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * JMX MXBean for examining the background refresh of the Lucene index readers
+ */
+public class LuceneIndexRefresh implements LuceneIndexRefreshMXBean {
+
+    private final LuceneIndex index;
+
+    public LuceneIndexRefresh(final LuceneIndex index) {
+        this.index = index;
+    }
+
+    public static String getAllInstancesQuery() {
+        return "org.exist.management.*:type=LuceneIndexRefresh,*";
+    }
+
+    private static String getName(final String instanceId, final String indexName) {
+        return "org.exist.management." + instanceId + ":type=LuceneIndexRefresh,name=" + indexName;
+    }
+
+    @Override
+    public ObjectName getName() throws MalformedObjectNameException {
+        // the range index is a lucene index as well, so every index needs its own name
+        return new ObjectName(getName(getInstanceId(), index.getDirName()));
+    }
+
+    @Override
+    public String getInstanceId() {
+        return index.getBrokerPool().getId();
+    }
+
+    @Override
+    public RefreshScheduler.Statistics getStatistics() {
+        return index.getRefreshStatistics();
+    }
+}
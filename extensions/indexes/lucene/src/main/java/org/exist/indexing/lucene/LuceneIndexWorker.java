@@ -256,7 +256,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
         if (node.getNodeType() == Node.ELEMENT_NODE && !includeSelf)
             p.removeLastNode();
-        for (int i = 0; i < p.length(); i++) {
+        while (p.length() > 0) {
             if (config.matches(p)) {
                 reindexRequired = true;
                 break;
@@ -371,10 +371,18 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
      * Remove specific nodes from the index. This method is used for node updates
      * and called from flush() if the worker is in {@link ReindexMode#REMOVE_SOME_NODES}
      * mode.
+     *
+     * The nodes are deleted in batches: every delete query has to be run against all
+     * segments when the deletes are applied, so one query per node would make the cost
+     * of an update grow with the number of indexed nodes below the reindex root.
      */
     protected void removeNodes() {
     	if (nodesToRemove == null)
             return;
+        if (nodesToRemove.isEmpty()) {
+            nodesToRemove = null;
+            return;
+        }
         IndexWriter writer = null;
         try {
             writer = index.getWriter();
@@ -383,6 +391,8 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             NumericUtils.intToPrefixCoded(currentDoc.getDocId(), 0, bytes);
             Term dt = new Term(FIELD_DOC_ID, bytes.toBytesRef());
             TermQuery tq = new TermQuery(dt);
+            final int batchSize = BooleanQuery.getMaxClauseCount();
+            BooleanQuery nodes = null;
             for (NodeId nodeId : nodesToRemove) {
                 // store the node id
                 int nodeIdLen = nodeId.size();
@@ -391,12 +401,17 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 nodeId.serialize(data, 2);
 
                 Term it = new Term(LuceneUtil.FIELD_NODE_ID, new BytesRef(data));
-
-                TermQuery iq = new TermQuery(it);
-                BooleanQuery q = new BooleanQuery();
-                q.add(tq, BooleanClause.Occur.MUST);
-                q.add(iq, BooleanClause.Occur.MUST);
-                writer.deleteDocuments(q);
+                if (nodes == null) {
+                    nodes = new BooleanQuery();
+                }
+                nodes.add(new TermQuery(it), BooleanClause.Occur.SHOULD);
+                if (nodes.clauses().size() == batchSize) {
+                    deleteNodes(writer, tq, nodes);
+                    nodes = null;
+                }
+            }
+            if (nodes != null) {
+                deleteNodes(writer, tq, nodes);
             }
         } catch (IOException e) {
             LOG.warn("Error while deleting lucene index entries: {}", e.getMessage(), e);
@@ -406,6 +421,13 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         }
     }
 
+    private static void deleteNodes(IndexWriter writer, TermQuery docQuery, BooleanQuery nodes) throws IOException {
+        final BooleanQuery q = new BooleanQuery();
+        q.add(docQuery, BooleanClause.Occur.MUST);
+        q.add(nodes, BooleanClause.Occur.MUST);
+        writer.deleteDocuments(q);
+    }
+
     /**
      * Query the index. Returns a node set containing all matching nodes. Each node
      * in the node set has a {@link LuceneMatch}
@@ -450,7 +472,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                     query = drilldown(facets.get(), query, config);
                 }
                 searchAndProcess(contextId, qname, docs, contextSet, resultSet,
-                        returnAncestor, searcher, query, options.getFields(), config);
+                        returnAncestor, searcher, query, options.getFields(), config, options);
             }
             return resultSet;
         });
@@ -494,7 +516,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 }
                 if (query != null) {
                     searchAndProcess(contextId, qname, docs, contextSet, resultSet,
-                            returnAncestor, searcher, query, options.getFields(), config);
+                            returnAncestor, searcher, query, options.getFields(), config, options);
                 }
             }
             return resultSet;
@@ -512,7 +534,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             final Query query = queryTranslator.parse(field, queryRoot, analyzer, options);
             if (query != null) {
                 searchAndProcess(contextId, null, docs, contextSet, resultSet,
-                        returnAncestor, searcher, query, null, config);
+                        returnAncestor, searcher, query, null, config, options);
             }
             return resultSet;
         });
@@ -527,19 +549,104 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         return drillDownQuery;
     }
 
+    /**
+     * Run the query and add the matching nodes to the result set. Hits outside of the
+     * context documents are excluded by a cached filter if the documents are selective.
+     *
+     * If a limit is given, only the best hits up to the limit are turned into nodes.
+     * The limit applies to the hits within the context documents, before nodes are
+     * checked against the context set. If sort criteria are given, the hits are sorted
+     * by lucene using the doc values of sortable fields, and every match records its
+     * rank. To sort without a limit, the hits are counted first, so the sort only
+     * allocates space for the actual hits. In all cases, facets are counted for the
+     * hits which belong to the context, just as without a limit or sort.
+     */
     private void searchAndProcess(int contextId, QName qname, DocumentSet docs,
                                   NodeSet contextSet, NodeSet resultSet, boolean returnAncestor,
                                   SearcherTaxonomyManager.SearcherAndTaxonomy searcher, Query query,
-                                  @Nullable Set<String> fields, LuceneConfig config) throws IOException {
+                                  @Nullable Set<String> fields, LuceneConfig config, QueryOptions options)
+            throws IOException, XPathException {
         final LuceneFacets facets = new LuceneFacets();
         final FacetsCollector facetsCollector = new FacetsCollector();
-        final LuceneHitCollector collector = new LuceneHitCollector(qname, query, docs, contextSet, resultSet, returnAncestor, contextId, facets, facetsCollector, fields);
-        searcher.searcher.search(query, collector);
+        final IndexReader reader = searcher.searcher.getIndexReader();
+        final int limit = options.getLimit();
+        final Sort sort = getSort(options, config);
+        // with a limit, hits outside of the context documents must not take a place in the top hits
+        final Filter filter = index.getDocumentSetFilter(docs, reader, limit > 0);
+        if (limit > 0 || sort != null) {
+            final Collector contextFacets = new ContextFacetsCollector(facetsCollector, docs, contextSet, returnAncestor);
+            final int numHits;
+            if (limit > 0) {
+                numHits = Math.min(limit, reader.maxDoc());
+            } else {
+                // sort all hits: size the priority queue of the sort by the hits rather than by the index
+                final TotalHitCountCollector hitCount = new TotalHitCountCollector();
+                ParallelSegmentSearch.search(searcher.searcher, query, filter,
+                        MultiCollector.wrap(hitCount, contextFacets), index.getSearchExecutor());
+                numHits = hitCount.getTotalHits();
+            }
+            if (numHits > 0) {
+                final TopDocsCollector<?> topCollector = sort == null ?
+                        TopScoreDocCollector.create(numHits, true) :
+                        TopFieldCollector.create(sort, numHits, false, true, false, true);
+                // without a limit, the facets have been counted already
+                ParallelSegmentSearch.search(searcher.searcher, query, filter,
+                        limit > 0 ? MultiCollector.wrap(topCollector, contextFacets) : topCollector,
+                        index.getSearchExecutor());
+                final LuceneHitCollector collector = new LuceneHitCollector(qname, query, docs, contextSet, resultSet, returnAncestor, contextId, facets, null, fields);
+                collector.collectTopDocs(reader, topCollector.topDocs().scoreDocs, sort != null);
+            }
+        } else {
+            final LuceneHitCollector collector = new LuceneHitCollector(qname, query, docs, contextSet, resultSet, returnAncestor, contextId, facets, facetsCollector, fields);
+            ParallelSegmentSearch.search(searcher.searcher, query, filter, collector, index.getSearchExecutor());
+        }
 
         // compute facets
         facets.compute(searcher.taxonomyReader, config.facetsConfig, facetsCollector);
     }
 
+    /**
+     * Translate the sort option into a lucene sort. Fields must be declared as sortable.
+     * Documents without a value for a field are sorted last.
+     */
+    private @Nullable Sort getSort(QueryOptions options, @Nullable LuceneConfig config) throws XPathException {
+        final List<QueryOptions.SortKey> keys = options.getSort();
+        if (keys == null || keys.isEmpty()) {
+            return null;
+        }
+        final SortField[] sortFields = new SortField[keys.size()];
+        for (int i = 0; i < sortFields.length; i++) {
+            final QueryOptions.SortKey key = keys.get(i);
+            if (QueryOptions.SORT_BY_SCORE.equals(key.getField())) {
+                // the natural order of the score is descending
+                sortFields[i] = new SortField(null, SortField.Type.SCORE, !key.isDescending());
+                continue;
+            }
+            final LuceneFieldConfig fieldConfig = config == null ? null : config.getFieldConfig(key.getField());
+            if (fieldConfig == null || !fieldConfig.isSortable()) {
+                throw new XPathException(LuceneModule.EXXQDYFT0004, "Cannot sort by field " + key.getField() +
+                        ": the field must be declared with sortable=\"yes\" in the index configuration");
+            }
+            final SortField sortField = new SortField(key.getField(), fieldConfig.getSortType(), key.isDescending());
+            switch (fieldConfig.getSortType()) {
+                case LONG:
+                    sortField.setMissingValue(key.isDescending() ? Long.MIN_VALUE : Long.MAX_VALUE);
+                    break;
+                case DOUBLE:
+                    sortField.setMissingValue(key.isDescending() ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+                    break;
+                case FLOAT:
+                    sortField.setMissingValue(key.isDescending() ? Float.NEGATIVE_INFINITY : Float.POSITIVE_INFINITY);
+                    break;
+                default:
+                    sortField.setMissingValue(key.isDescending() ? SortField.STRING_FIRST : SortField.STRING_LAST);
+                    break;
+            }
+            sortFields[i] = sortField;
+        }
+        return new Sort(sortFields);
+    }
+
     /**
      * Wrapper around Lucene {@link Facets}, which are computed after the search has finished.
      */
@@ -595,7 +702,7 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             options.configureParser(parser.getConfiguration());
             Query query = parser.parse(queryString);
             searchAndProcess(contextId, null, docs, contextSet, resultSet,
-                    returnAncestor, searcher, query, null, config);
+                    returnAncestor, searcher, query, null, config, options);
             return resultSet;
         });
     }
@@ -905,6 +1012,60 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         return false;
     }
 
+    /**
+     * Passes those hits on to a {@link FacetsCollector}, which {@link LuceneHitCollector}
+     * would accept: the hit must belong to one of the context documents and, if the
+     * ancestor is returned, to a node of the context set.
+     */
+    private class ContextFacetsCollector extends Collector {
+
+        private final FacetsCollector facetsCollector;
+        private final DocumentSet docs;
+        private final @Nullable NodeSet contextSet;
+        private final boolean returnAncestor;
+        private NumericDocValues docIdValues;
+        private BinaryDocValues nodeIdValues;
+
+        private ContextFacetsCollector(FacetsCollector facetsCollector, DocumentSet docs, @Nullable NodeSet contextSet, boolean returnAncestor) {
+            this.facetsCollector = facetsCollector;
+            this.docs = docs;
+            this.contextSet = contextSet;
+            this.returnAncestor = returnAncestor;
+        }
+
+        @Override
+        public void setScorer(Scorer scorer) throws IOException {
+            facetsCollector.setScorer(scorer);
+        }
+
+        @Override
+        public void setNextReader(AtomicReaderContext atomicReaderContext) throws IOException {
+            this.docIdValues = atomicReaderContext.reader().getNumericDocValues(FIELD_DOC_ID);
+            this.nodeIdValues = atomicReaderContext.reader().getBinaryDocValues(LuceneUtil.FIELD_NODE_ID);
+            facetsCollector.setNextReader(atomicReaderContext);
+        }
+
+        @Override
+        public void collect(int doc) throws IOException {
+            final DocumentImpl storedDocument = docs.getDoc((int) docIdValues.get(doc));
+            if (storedDocument == null)
+                return;
+            if (contextSet != null && returnAncestor) {
+                final BytesRef ref = nodeIdValues.get(doc);
+                final int units = ByteConversion.byteToShort(ref.bytes, ref.offset);
+                final NodeId nodeId = index.getBrokerPool().getNodeFactory().createFromData(units, ref.bytes, ref.offset + 2);
+                if (contextSet.get(new NodeProxy(storedDocument, nodeId)) == null)
+                    return;
+            }
+            facetsCollector.collect(doc);
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder() {
+            return false;
+        }
+    }
+
     private class LuceneHitCollector extends Collector {
 
         private Scorer scorer;
@@ -920,10 +1081,11 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         private final int contextId;
         private final Query query;
         private final LuceneFacets facets;
-        private final FacetsCollector chainedCollector;
+        private final @Nullable FacetsCollector chainedCollector;
         private final Set<String> fields;
+        private int rank = -1;
 
-        private LuceneHitCollector(QName qname, Query query, DocumentSet docs, NodeSet contextSet, NodeSet resultSet, boolean returnAncestor, int contextId, LuceneFacets facets, FacetsCollector nextCollector, @Nullable Set<String> fields) {
+        private LuceneHitCollector(QName qname, Query query, DocumentSet docs, NodeSet contextSet, NodeSet resultSet, boolean returnAncestor, int contextId, LuceneFacets facets, @Nullable FacetsCollector nextCollector, @Nullable Set<String> fields) {
             this.qname = qname;
             this.docs = docs;
             this.contextSet = contextSet;
@@ -939,15 +1101,49 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         @Override
         public void setScorer(Scorer scorer) throws IOException {
             this.scorer = scorer;
-            chainedCollector.setScorer(scorer);
+            if (chainedCollector != null)
+                chainedCollector.setScorer(scorer);
         }
 
         @Override
         public void setNextReader(AtomicReaderContext atomicReaderContext) throws IOException {
+            setReader(atomicReaderContext);
+            if (chainedCollector != null)
+                chainedCollector.setNextReader(atomicReaderContext);
+        }
+
+        private void setReader(AtomicReaderContext atomicReaderContext) throws IOException {
             this.reader = atomicReaderContext.reader();
             this.docIdValues = this.reader.getNumericDocValues(FIELD_DOC_ID);
             this.nodeIdValues = this.reader.getBinaryDocValues(LuceneUtil.FIELD_NODE_ID);
-            chainedCollector.setNextReader(atomicReaderContext);
+        }
+
+        /**
+         * Process the top hits collected by a separate search.
+         *
+         * @param topReader the top level reader of the search
+         * @param hits the top hits
+         * @throws IOException in case of a lucene error
+         */
+        private void collectTopDocs(IndexReader topReader, ScoreDoc[] hits, boolean ranked) throws IOException {
+            final List<AtomicReaderContext> leaves = topReader.leaves();
+            // visit the hits in index order, so every segment is only set up once
+            final Integer[] order = new Integer[hits.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingInt(i -> hits[i].doc));
+            AtomicReaderContext current = null;
+            for (final int i : order) {
+                final ScoreDoc hit = hits[i];
+                if (current == null || hit.doc >= current.docBase + current.reader().maxDoc()) {
+                    current = leaves.get(ReaderUtil.subIndex(hit.doc, leaves));
+                    setReader(current);
+                }
+                rank = ranked ? i : -1;
+                collect(hit.doc - current.docBase, hit.score);
+            }
+            rank = -1;
         }
 
         @Override
@@ -958,57 +1154,66 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         @Override
         public void collect(int doc) {
             try {
-                float score = scorer.score();
-                int docId = (int) this.docIdValues.get(doc);
-                DocumentImpl storedDocument = docs.getDoc(docId);
-                if (storedDocument == null)
-                    return;
-                final BytesRef ref = this.nodeIdValues.get(doc);
-                int units = ByteConversion.byteToShort(ref.bytes, ref.offset);
-                NodeId nodeId = index.getBrokerPool().getNodeFactory().createFromData(units, ref.bytes, ref.offset + 2);
-                //LOG.info("doc: " + docId + "; node: " + nodeId.toString() + "; units: " + units);
-
-                NodeProxy storedNode = new NodeProxy(storedDocument, nodeId);
-                if (qname != null)
-                    storedNode.setNodeType(qname.getNameType() == ElementValue.ATTRIBUTE ? Node.ATTRIBUTE_NODE : Node.ELEMENT_NODE);
-                // if a context set is specified, we can directly check if the
-                // matching node is a descendant of one of the nodes
-                // in the context set.
-                if (contextSet != null) {
-                    int sizeHint = contextSet.getSizeHint(storedDocument);
-                    if (returnAncestor) {
-                        NodeProxy parentNode = contextSet.get(storedNode);
-                        // NodeProxy parentNode = contextSet.parentWithChild(storedNode, false, true, NodeProxy.UNKNOWN_NODE_LEVEL);
-                        if (parentNode != null) {
-                            LuceneMatch match = createMatch(doc, score, nodeId);
-                            parentNode.addMatch(match);
-                            resultSet.add(parentNode, sizeHint);
-                            if (Expression.NO_CONTEXT_ID != contextId) {
-                                parentNode.deepCopyContext(storedNode, contextId);
-                            } else
-                                parentNode.copyContext(storedNode);
-                            chainedCollector.collect(doc);
-                        }
-                    } else {
+                collect(doc, scorer.score());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private void collect(int doc, float score) throws IOException {
+            int docId = (int) this.docIdValues.get(doc);
+            DocumentImpl storedDocument = docs.getDoc(docId);
+            if (storedDocument == null)
+                return;
+            final BytesRef ref = this.nodeIdValues.get(doc);
+            int units = ByteConversion.byteToShort(ref.bytes, ref.offset);
+            NodeId nodeId = index.getBrokerPool().getNodeFactory().createFromData(units, ref.bytes, ref.offset + 2);
+            //LOG.info("doc: " + docId + "; node: " + nodeId.toString() + "; units: " + units);
+
+            NodeProxy storedNode = new NodeProxy(storedDocument, nodeId);
+            if (qname != null)
+                storedNode.setNodeType(qname.getNameType() == ElementValue.ATTRIBUTE ? Node.ATTRIBUTE_NODE : Node.ELEMENT_NODE);
+            // if a context set is specified, we can directly check if the
+            // matching node is a descendant of one of the nodes
+            // in the context set.
+            if (contextSet != null) {
+                int sizeHint = contextSet.getSizeHint(storedDocument);
+                if (returnAncestor) {
+                    NodeProxy parentNode = contextSet.get(storedNode);
+                    // NodeProxy parentNode = contextSet.parentWithChild(storedNode, false, true, NodeProxy.UNKNOWN_NODE_LEVEL);
+                    if (parentNode != null) {
                         LuceneMatch match = createMatch(doc, score, nodeId);
-                        storedNode.addMatch(match);
-                        resultSet.add(storedNode, sizeHint);
-                        chainedCollector.collect(doc);
+                        parentNode.addMatch(match);
+                        resultSet.add(parentNode, sizeHint);
+                        if (Expression.NO_CONTEXT_ID != contextId) {
+                            parentNode.deepCopyContext(storedNode, contextId);
+                        } else
+                            parentNode.copyContext(storedNode);
+                        collectChained(doc);
                     }
                 } else {
                     LuceneMatch match = createMatch(doc, score, nodeId);
                     storedNode.addMatch(match);
-                    resultSet.add(storedNode);
-                    chainedCollector.collect(doc);
+                    resultSet.add(storedNode, sizeHint);
+                    collectChained(doc);
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
+            } else {
+                LuceneMatch match = createMatch(doc, score, nodeId);
+                storedNode.addMatch(match);
+                resultSet.add(storedNode);
+                collectChained(doc);
             }
         }
 
+        private void collectChained(int doc) throws IOException {
+            if (chainedCollector != null)
+                chainedCollector.collect(doc);
+        }
+
         private LuceneMatch createMatch(int docId, float score, NodeId nodeId) throws IOException {
             final LuceneMatch match = new LuceneMatch(contextId, nodeId, query, facets);
             match.setScore(score);
+            match.setRank(rank);
             if (fields != null && !fields.isEmpty()) {
                 final Document luceneDoc = reader.document(docId, fields);
                 for (String field : fields) {
@@ -1366,15 +1571,17 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         IndexWriter writer = null;
         try {
             writer = index.getWriter();
-            // docId and nodeId are stored as doc value
-            NumericDocValuesField fDocId = new NumericDocValuesField(FIELD_DOC_ID, 0);
-            BinaryDocValuesField fNodeId = new BinaryDocValuesField(LuceneUtil.FIELD_NODE_ID, new BytesRef(8));
-            // docId also needs to be indexed
-            IntField fDocIdIdx = new IntField(FIELD_DOC_ID, 0, IntField.TYPE_NOT_STORED);
-
+            // documents are built here, as fields and facets may need the broker, but they
+            // may be analyzed by several threads, so every document gets its own fields
+            final List<Document> documents = new ArrayList<>(nodesToWrite.size());
+            final List<Analyzer> analyzers = new ArrayList<>(nodesToWrite.size());
             for (PendingDoc pending : nodesToWrite) {
                 final Document doc = new Document();
-
+                // docId and nodeId are stored as doc value
+                NumericDocValuesField fDocId = new NumericDocValuesField(FIELD_DOC_ID, 0);
+                BinaryDocValuesField fNodeId = new BinaryDocValuesField(LuceneUtil.FIELD_NODE_ID, new BytesRef(8));
+                // docId also needs to be indexed
+                IntField fDocIdIdx = new IntField(FIELD_DOC_ID, 0, IntField.TYPE_NOT_STORED);
 
                 List<AbstractFieldConfig> facetConfigs = pending.idxConf.getFacetsAndFields();
                 facetConfigs.forEach(config ->
@@ -1424,12 +1631,10 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 final Field fDocNodeId = new StoredField("docNodeId", docNodeId);
                 doc.add(fDocNodeId);
 
-                if (pending.idxConf.getAnalyzer() == null) {
-                    writer.addDocument(config.facetsConfig.build(index.getTaxonomyWriter(), doc));
-                } else {
-                    writer.addDocument(config.facetsConfig.build(index.getTaxonomyWriter(), doc), pending.idxConf.getAnalyzer());
-		        }
+                documents.add(config.facetsConfig.build(index.getTaxonomyWriter(), doc));
+                analyzers.add(pending.idxConf.getAnalyzer());
 	        }
+            index.addDocuments(writer, documents, analyzers);
         } catch (final IOException e) {
             LOG.warn("An exception was caught while indexing document: {}", e.getMessage(), e);
         } finally {
@@ -1526,7 +1731,10 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 Iterator<LuceneIndexConfig> configIter = config.getConfig(path);
                 if (mode != ReindexMode.REMOVE_ALL_NODES && configIter != null) {
                     if (mode == ReindexMode.REMOVE_SOME_NODES) {
-                        nodesToRemove.add(element.getNodeId());
+                        // only nodes with an index definition have a lucene document
+                        if (config.matches(path)) {
+                            nodesToRemove.add(element.getNodeId());
+                        }
                     } else {
                         while (configIter.hasNext()) {
                             LuceneIndexConfig configuration = configIter.next();
@@ -1584,7 +1792,9 @@ public class LuceneIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 configIter = config.getConfig(path);
             if (mode != ReindexMode.REMOVE_ALL_NODES && configIter != null) {
                 if (mode == ReindexMode.REMOVE_SOME_NODES) {
-                    nodesToRemove.add(attrib.getNodeId());
+                    if (config.matches(path)) {
+                        nodesToRemove.add(attrib.getNodeId());
+                    }
                 } else {
                     while (configIter.hasNext()) {
                         LuceneIndexConfig configuration = configIter.next();
@@ -41,6 +41,7 @@ import java.util.*;
 public class LuceneMatch extends Match {
 
     private float score = 0.0f;
+    private int rank = -1;
     private final Query query;
 
     private LuceneIndexWorker.LuceneFacets facets;
@@ -60,6 +61,7 @@ public class LuceneMatch extends Match {
     private LuceneMatch(LuceneMatch copy) {
         super(copy);
         this.score = copy.score;
+        this.rank = copy.rank;
         this.query = copy.query;
         this.facets = copy.facets;
         this.fields = copy.fields;
@@ -96,6 +98,20 @@ public class LuceneMatch extends Match {
         this.score = score;
     }
 
+    /**
+     * The position of the match in the results of a query which was
+     * sorted by lucene, see option "sort" of ft:query.
+     *
+     * @return the position, or -1 if the query was not sorted
+     */
+    public int getRank() {
+        return rank;
+    }
+
+    protected void setRank(int rank) {
+        this.rank = rank;
+    }
+
     public Facets getFacets() {
         return this.facets.getFacets();
     }
@@ -0,0 +1,196 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.lucene;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.FilteredQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.ArrayUtil;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Searches the segments of an index concurrently.
+ *
+ * The collectors used by the indexes create eXist nodes and are not thread safe, so
+ * only the scoring is done in parallel: the hits of every segment are recorded by
+ * a task of the executor, then passed to the collector one segment after the other
+ * in the calling thread, just as {@link IndexSearcher#search(Query, Filter, Collector)}
+ * would do.
+ */
+public final class ParallelSegmentSearch {
+
+    private ParallelSegmentSearch() {
+    }
+
+    /**
+     * Run the query and pass all hits to the collector.
+     *
+     * @param searcher the searcher
+     * @param query the query
+     * @param filter an optional filter
+     * @param collector the collector receiving the hits
+     * @param executor executor for scoring the segments, or null to search in the calling thread only
+     *
+     * @throws IOException in case of a lucene error
+     */
+    public static void search(final IndexSearcher searcher, final Query query, @Nullable final Filter filter,
+            final Collector collector, @Nullable final ExecutorService executor) throws IOException {
+        final List<AtomicReaderContext> leaves = searcher.getIndexReader().leaves();
+        if (executor == null || leaves.size() < 2) {
+            searcher.search(query, filter, collector);
+            return;
+        }
+
+        final Weight weight = searcher.createNormalizedWeight(filter == null ? query : new FilteredQuery(query, filter));
+        final List<Future<SegmentHits>> futures = new ArrayList<>(leaves.size());
+        try {
+            for (final AtomicReaderContext leaf : leaves) {
+                futures.add(executor.submit(() -> score(weight, leaf)));
+            }
+
+            final RecordedScorer scorer = new RecordedScorer(weight);
+            for (int i = 0; i < leaves.size(); i++) {
+                final SegmentHits hits = futures.get(i).get();
+                collector.setNextReader(leaves.get(i));
+                collector.setScorer(scorer);
+                for (int j = 0; j < hits.size; j++) {
+                    scorer.doc = hits.docs[j];
+                    scorer.score = hits.scores[j];
+                    collector.collect(scorer.doc);
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while searching lucene index");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Error while searching lucene index: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            for (final Future<SegmentHits> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static SegmentHits score(final Weight weight, final AtomicReaderContext leaf) throws IOException {
+        final SegmentHits hits = new SegmentHits();
+        final BulkScorer scorer = weight.bulkScorer(leaf, true, leaf.reader().getLiveDocs());
+        if (scorer != null) {
+            scorer.score(hits);
+        }
+        return hits;
+    }
+
+    /**
+     * Records the hits of one segment in document order.
+     */
+    private static class SegmentHits extends Collector {
+        private int[] docs = new int[16];
+        private float[] scores = new float[16];
+        private int size = 0;
+        private Scorer scorer;
+
+        @Override
+        public void setScorer(final Scorer scorer) {
+            this.scorer = scorer;
+        }
+
+        @Override
+        public void collect(final int doc) throws IOException {
+            if (size == docs.length) {
+                docs = ArrayUtil.grow(docs, size + 1);
+                scores = ArrayUtil.grow(scores, size + 1);
+            }
+            docs[size] = doc;
+            scores[size] = scorer.score();
+            size++;
+        }
+
+        @Override
+        public void setNextReader(final AtomicReaderContext context) {
+            // one instance per segment
+        }
+
+        @Override
+        public boolean acceptsDocsOutOfOrder() {
+            return false;
+        }
+    }
+
+    /**
+     * Replays the score of a recorded hit.
+     */
+    private static class RecordedScorer extends Scorer {
+        private int doc = -1;
+        private float score;
+
+        RecordedScorer(final Weight weight) {
+            super(weight);
+        }
+
+        @Override
+        public float score() {
+            return score;
+        }
+
+        @Override
+        public int freq() {
+            return 1;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int advance(final int target) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long cost() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.lucene;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.store.AlreadyClosedException;
+
+import javax.annotation.Nullable;
+import java.beans.ConstructorProperties;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reopens the near-real-time readers of the Lucene index in the background, so
+ * queries just acquire the current searcher instead of refreshing it themselves.
+ *
+ * Every release of the index writer counts as a write. If there are pending writes,
+ * the readers are reopened every <code>refresh-interval</code> milliseconds, and
+ * as soon as <code>refresh-after-writes</code> writes are pending. If
+ * <code>wait-for-writes</code> is enabled, a query additionally waits until all writes
+ * released before it started are visible, so a transaction always reads its own
+ * writes. Concurrent queries waiting for the same writes share a single reopen.
+ */
+public class RefreshScheduler {
+
+    public static final long DEFAULT_REFRESH_INTERVAL = 1000;
+    public static final int DEFAULT_REFRESH_AFTER_WRITES = 100;
+
+    private static final Logger LOG = LogManager.getLogger(RefreshScheduler.class);
+
+    private final ReferenceManager<?>[] managers;
+    private final long refreshInterval;
+    private final int refreshAfterWrites;
+    private final boolean waitForWrites;
+
+    private final AtomicLong writeGeneration = new AtomicLong();
+    private volatile long refreshedGeneration = 0;
+    /** time of the oldest write which is not yet visible, or 0 if there is none */
+    private final AtomicLong pendingSince = new AtomicLong();
+
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    @Nullable private ScheduledExecutorService executor = null;
+
+    // statistics, modified while holding the refresh lock only
+    private long refreshCount = 0;
+    private long totalRefreshNanos = 0;
+    private long lastRefreshNanos = 0;
+    private long maxRefreshNanos = 0;
+    private long maxStaleness = 0;
+    private final LongAdder waitCount = new LongAdder();
+
+    /**
+     * @param refreshInterval interval in milliseconds between background refreshes, 0 disables them
+     * @param refreshAfterWrites number of pending writes triggering a refresh, 0 disables it
+     * @param waitForWrites if true, readers wait for all writes released before they were acquired
+     * @param managers the reference managers to refresh
+     */
+    public RefreshScheduler(final long refreshInterval, final int refreshAfterWrites, final boolean waitForWrites,
+            final ReferenceManager<?>... managers) {
+        this.refreshInterval = refreshInterval;
+        this.refreshAfterWrites = refreshAfterWrites;
+        // without any background refresh, the readers would never be reopened otherwise
+        this.waitForWrites = waitForWrites || (refreshInterval <= 0 && refreshAfterWrites <= 0);
+        this.managers = managers;
+    }
+
+    /**
+     * Start the background refresh.
+     *
+     * @param threadFactory the factory for the refresh thread
+     */
+    public void start(final ThreadFactory threadFactory) {
+        if (refreshInterval <= 0 && refreshAfterWrites <= 0) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        if (refreshInterval > 0) {
+            executor.scheduleWithFixedDelay(this::backgroundRefresh, refreshInterval, refreshInterval,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void close() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(refreshInterval + 5000, TimeUnit.MILLISECONDS)) {
+                LOG.warn("Timeout while waiting for the lucene refresh thread to terminate");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    /**
+     * Called after a write to the index has been completed.
+     */
+    public void written() {
+        // increment first: refresh() rechecks the generation after it cleared pendingSince
+        final long generation = writeGeneration.incrementAndGet();
+        pendingSince.compareAndSet(0, System.currentTimeMillis());
+        final ScheduledExecutorService executor = this.executor;
+        if (executor != null && refreshAfterWrites > 0 && generation - refreshedGeneration >= refreshAfterWrites
+                && refreshQueued.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::backgroundRefresh);
+            } catch (final RejectedExecutionException e) {
+                // shutting down
+                refreshQueued.set(false);
+            }
+        }
+    }
+
+    /**
+     * Called before a reader or searcher is acquired. Blocks until the writes the
+     * caller has to see are visible.
+     *
+     * @throws IOException if the readers could not be reopened
+     */
+    public void beforeAcquire() throws IOException {
+        if (!waitForWrites) {
+            return;
+        }
+        final long generation = writeGeneration.get();
+        if (refreshedGeneration >= generation) {
+            return;
+        }
+        waitCount.increment();
+        refreshLock.lock();
+        try {
+            // another thread may have refreshed while we were waiting for the lock
+            if (refreshedGeneration < generation) {
+                refresh();
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private void backgroundRefresh() {
+        refreshQueued.set(false);
+        if (refreshedGeneration >= writeGeneration.get()) {
+            return;
+        }
+        refreshLock.lock();
+        try {
+            if (refreshedGeneration < writeGeneration.get()) {
+                refresh();
+            }
+        } catch (final IOException | AlreadyClosedException e) {
+            LOG.warn("Failed to refresh lucene index readers: {}", e.getMessage(), e);
+        } catch (final Throwable e) {
+            // an exception escaping from here would cancel all further background refreshes
+            LOG.error("Unexpected error while refreshing lucene index readers: {}", e.getMessage(), e);
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Reopen the readers. The caller must hold the refresh lock.
+     */
+    private void refresh() throws IOException {
+        // all writes up to this generation have been completed before the readers are reopened
+        final long generation = writeGeneration.get();
+        final long since = pendingSince.get();
+        final long start = System.nanoTime();
+        for (final ReferenceManager<?> manager : managers) {
+            manager.maybeRefreshBlocking();
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        refreshedGeneration = generation;
+        final long current = pendingSince.get();
+        if (current > 0 && pendingSince.compareAndSet(current, 0) && writeGeneration.get() != generation) {
+            // written concurrently, but the write may have seen the old pendingSince
+            pendingSince.compareAndSet(0, System.currentTimeMillis());
+        }
+
+        refreshCount++;
+        totalRefreshNanos += elapsed;
+        lastRefreshNanos = elapsed;
+        maxRefreshNanos = Math.max(maxRefreshNanos, elapsed);
+        if (since > 0) {
+            maxStaleness = Math.max(maxStaleness, System.currentTimeMillis() - since);
+        }
+    }
+
+    /**
+     * Get a snapshot of the refresh statistics.
+     *
+     * @return the statistics
+     */
+    public Statistics getStatistics() {
+        final long since = pendingSince.get();
+        final long staleness = since == 0 ? 0 : Math.max(0, System.currentTimeMillis() - since);
+        refreshLock.lock();
+        try {
+            return new Statistics(refreshCount,
+                    nanosToMillis(lastRefreshNanos),
+                    nanosToMillis(maxRefreshNanos),
+                    refreshCount == 0 ? 0.0 : nanosToMillis(totalRefreshNanos) / refreshCount,
+                    Math.max(0, writeGeneration.get() - refreshedGeneration),
+                    staleness,
+                    maxStaleness,
+                    waitCount.sum());
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private static double nanosToMillis(final long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    public static class Statistics {
+        private final long refreshCount;
+        private final double lastRefreshTime;
+        private final double maxRefreshTime;
+        private final double averageRefreshTime;
+        private final long pendingWrites;
+        private final long staleness;
+        private final long maxStaleness;
+        private final long waitCount;
+
+        /**
+         * @param refreshCount the number of times the readers were reopened
+         * @param lastRefreshTime the duration of the last reopen in milliseconds
+         * @param maxRefreshTime the longest duration of a reopen in milliseconds
+         * @param averageRefreshTime the average duration of a reopen in milliseconds
+         * @param pendingWrites the number of writes which are not yet visible to queries
+         * @param staleness the age of the oldest write which is not yet visible in milliseconds
+         * @param maxStaleness the largest age of a write at the time it became visible in milliseconds
+         * @param waitCount the number of queries which had to wait for a reopen
+         */
+        @ConstructorProperties({"refreshCount", "lastRefreshTime", "maxRefreshTime", "averageRefreshTime",
+                "pendingWrites", "staleness", "maxStaleness", "waitCount"})
+        public Statistics(final long refreshCount, final double lastRefreshTime, final double maxRefreshTime,
+                final double averageRefreshTime, final long pendingWrites, final long staleness,
+                final long maxStaleness, final long waitCount) {
+            this.refreshCount = refreshCount;
+            this.lastRefreshTime = lastRefreshTime;
+            this.maxRefreshTime = maxRefreshTime;
+            this.averageRefreshTime = averageRefreshTime;
+            this.pendingWrites = pendingWrites;
+            this.staleness = staleness;
+            this.maxStaleness = maxStaleness;
+            this.waitCount = waitCount;
+        }
+
+        public long getRefreshCount() {
+            return refreshCount;
+        }
+
+        public double getLastRefreshTime() {
+            return lastRefreshTime;
+        }
+
+        public double getMaxRefreshTime() {
+            return maxRefreshTime;
+        }
+
+        public double getAverageRefreshTime() {
+            return averageRefreshTime;
+        }
+
+        public long getPendingWrites() {
+            return pendingWrites;
+        }
+
+        public long getStaleness() {
+            return staleness;
+        }
+
+        public long getMaxStaleness() {
+            return maxStaleness;
+        }
+
+        public long getWaitCount() {
+            return waitCount;
+        }
+    }
+}
@@ -25,10 +25,13 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.exist.dom.QName;
 import org.exist.dom.persistent.DocumentSet;
+import org.exist.dom.persistent.Match;
+import org.exist.dom.persistent.NodeProxy;
 import org.exist.dom.persistent.NodeSet;
 import org.exist.dom.persistent.VirtualNodeSet;
 import org.exist.indexing.lucene.LuceneIndex;
 import org.exist.indexing.lucene.LuceneIndexWorker;
+import org.exist.indexing.lucene.LuceneMatch;
 import org.exist.storage.ElementValue;
 import org.exist.xquery.*;
 import org.exist.xquery.functions.map.AbstractMapType;
@@ -37,6 +40,7 @@ import org.w3c.dom.Element;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Query extends Function implements Optimizable {
@@ -88,7 +92,13 @@ public class Query extends Function implements Optimizable {
                         "   <phrase-slop>number</phrase-slop>\n" +
                         "   <leading-wildcard>yes|no</leading-wildcard>\n" +
                         "   <filter-rewrite>yes|no</filter-rewrite>\n" +
-                        "</options>")
+                        "   <limit>number</limit>\n" +
+                        "   <sort>field [ascending|descending], ...</sort>\n" +
+                        "</options>\n" +
+                        "With a sort option, the matching nodes are returned in sort order. The order only " +
+                        "holds on the direct result of ft:query: a following path step, as in " +
+                        "ft:query(...)/@title, returns its result in document order. Iterate over the " +
+                        "result instead, e.g. for $hit in ft:query(...) return $hit/@title.")
             },
             new FunctionReturnSequenceType(Type.NODE, Cardinality.ZERO_OR_MORE,
                 "all nodes from the input node set matching the query. match highlighting information " +
@@ -243,6 +253,7 @@ public class Query extends Function implements Optimizable {
     		return Sequence.EMPTY_SEQUENCE;
         
         NodeSet result;
+        boolean ranked = false;
         if (preselectResult == null) {
             long start = System.currentTimeMillis();
             Sequence input = getArgument(0).eval(contextSequence);
@@ -260,6 +271,8 @@ public class Query extends Function implements Optimizable {
                     qnames.add(contextQName);
                 }
                 QueryOptions options = parseOptions(this, contextSequence, contextItem, 3);
+                // hits are only returned in sort order if the result is not used as a context
+                ranked = options.getSort() != null && contextItem == null && getContextId() == Expression.NO_CONTEXT_ID;
                 try {
                     if (key != null && Type.subTypeOf(key.getType(), Type.ELEMENT)) {
                         final Element queryXML = (Element) ((NodeValue) key).getNode();
@@ -282,6 +295,40 @@ public class Query extends Function implements Optimizable {
             contextStep.setPreloadedData(contextSequence.getDocumentSet(), preselectResult);
             result = getArgument(0).eval(contextSequence).toNodeSet();
         }
+        return ranked ? orderByRank(result, getExpressionId()) : result;
+    }
+
+    /**
+     * Return the nodes in the order of the sorted hits, as recorded by the rank of
+     * the matches of the given expression. A node takes the best rank of its matches,
+     * nodes without a rank follow in document order.
+     */
+    static Sequence orderByRank(NodeSet nodes, int expressionId) throws XPathException {
+        final int size = nodes.getItemCount();
+        if (size < 2) {
+            return nodes;
+        }
+        final NodeProxy[] items = new NodeProxy[size];
+        final long[] keys = new long[size];
+        int i = 0;
+        for (final NodeProxy node : nodes) {
+            long rank = Integer.MAX_VALUE;
+            for (Match match = node.getMatches(); match != null; match = match.getNextMatch()) {
+                if (match.getContextId() == expressionId && match instanceof LuceneMatch &&
+                        ((LuceneMatch) match).getRank() >= 0) {
+                    rank = Math.min(rank, ((LuceneMatch) match).getRank());
+                }
+            }
+            items[i] = node;
+            keys[i] = (rank << 32) | i;
+            i++;
+        }
+        Arrays.sort(keys, 0, i);
+        final ValueSequence result = new ValueSequence(i);
+        result.keepUnOrdered(true);
+        for (int j = 0; j < i; j++) {
+            result.add(items[(int) keys[j]]);
+        }
         return result;
     }
 
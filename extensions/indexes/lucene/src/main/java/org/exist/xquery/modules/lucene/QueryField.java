@@ -72,6 +72,8 @@ public class QueryField extends Query implements Optimizable {
                         "   <phrase-slop>number</phrase-slop>\n" +
                         "   <leading-wildcard>yes|no</leading-wildcard>\n" +
                         "   <filter-rewrite>yes|no</filter-rewrite>\n" +
+                        "   <limit>number</limit>\n" +
+                        "   <sort>field [ascending|descending], ...</sort>\n" +
                         "</options>")
             },
             new FunctionReturnSequenceType(Type.NODE, Cardinality.ZERO_OR_MORE,
@@ -140,6 +142,7 @@ public class QueryField extends Query implements Optimizable {
             contextSequence = contextItem.toSequence();
 
         NodeSet result;
+        boolean ranked = false;
         if (preselectResult == null) {
         	long start = System.currentTimeMillis();
         	String field = getArgument(0).eval(contextSequence).getStringValue();
@@ -159,6 +162,8 @@ public class QueryField extends Query implements Optimizable {
         	LuceneIndexWorker index = (LuceneIndexWorker)
         		context.getBroker().getIndexController().getWorkerByIndexId(LuceneIndex.ID);
         	QueryOptions options = parseOptions(this, contextSequence, contextItem, 3);
+        	// hits are only returned in sort order if the result is not used as a context
+        	ranked = options.getSort() != null && contextItem == null && getContextId() == Expression.NO_CONTEXT_ID;
         	try {
         		if (Type.subTypeOf(query.getType(), Type.ELEMENT))
         			result = index.queryField(getExpressionId(), docs, contextSet, field,
@@ -175,7 +180,7 @@ public class QueryField extends Query implements Optimizable {
         } else {
             result = preselectResult.selectAncestorDescendant(contextSequence.toNodeSet(), NodeSet.DESCENDANT, true, getContextId(), true);
         }
-        return result;
+        return ranked ? Query.orderByRank(result, getExpressionId()) : result;
     }
 
     @Override
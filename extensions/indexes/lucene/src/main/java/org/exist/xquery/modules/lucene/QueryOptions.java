@@ -54,6 +54,9 @@ public class QueryOptions {
     public static final String OPTION_FACETS = "facets";
     public static final String OPTION_FIELDS = "fields";
     public static final String OPTION_QUERY_ANALYZER_ID = "query-analyzer-id";
+    public static final String OPTION_LIMIT = "limit";
+    public static final String OPTION_SORT = "sort";
+    public static final String SORT_BY_SCORE = "score";
 
     protected enum DefaultOperator {
         OR,
@@ -69,6 +72,8 @@ public class QueryOptions {
     protected boolean lowercaseExpandedTerms = false;
     protected Optional<Map<String, FacetQuery>> facets = Optional.empty();
     protected Set<String> fields = null;
+    protected int limit = 0;
+    protected List<SortKey> sort = null;
 
     public QueryOptions() {
         // default options
@@ -106,6 +111,10 @@ public class QueryOptions {
                 for (SequenceIterator i = entry.value().unorderedIterator(); i.hasNext(); ) {
                     fields.add(i.nextItem().getStringValue());
                 }
+            } else if (key.equals(OPTION_SORT) && !entry.value().isEmpty()) {
+                for (SequenceIterator i = entry.value().iterate(); i.hasNext(); ) {
+                    parseSort(i.nextItem().getStringValue());
+                }
             } else if (key.equals(OPTION_FACETS) && entry.value().hasOne() && entry.value().getItemType() == Type.MAP) {
                 // map to hold the facet values for each dimension
                 final Map<String, FacetQuery> tf = new HashMap<>();
@@ -204,6 +213,75 @@ public class QueryOptions {
         return fields;
     }
 
+    /**
+     * The maximum number of best scoring index entries to return for each
+     * indexed name or field, or 0 if all matching entries should be returned.
+     *
+     * @return the limit
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * The sort criteria to be applied by lucene, or null if the results
+     * should not be sorted. The sort order is kept by the direct result of
+     * ft:query only, a path step applied to it restores document order.
+     *
+     * @return the sort criteria
+     */
+    public @Nullable List<SortKey> getSort() {
+        return sort;
+    }
+
+    /**
+     * Parse a comma separated list of sort criteria, each consisting of a field
+     * name or "score", optionally followed by "ascending" or "descending".
+     */
+    private void parseSort(String value) throws XPathException {
+        for (String criterion : value.split(",")) {
+            final String[] tokens = criterion.trim().split("\\s+");
+            if (tokens.length == 0 || tokens[0].isEmpty()) {
+                continue;
+            }
+            // by default, the best matches come first
+            boolean descending = SORT_BY_SCORE.equals(tokens[0]);
+            if (tokens.length == 2 && "descending".equals(tokens[1])) {
+                descending = true;
+            } else if (tokens.length == 2 && "ascending".equals(tokens[1])) {
+                descending = false;
+            } else if (tokens.length > 1) {
+                throw new XPathException(LuceneModule.EXXQDYFT0004, "Invalid sort criterion for option " + OPTION_SORT +
+                        ": " + criterion + ". Expected a field name optionally followed by ascending or descending");
+            }
+            if (sort == null) {
+                sort = new ArrayList<>();
+            }
+            sort.add(new SortKey(tokens[0], descending));
+        }
+    }
+
+    /**
+     * A sort criterion: a sortable field or the score.
+     */
+    public static class SortKey {
+        private final String field;
+        private final boolean descending;
+
+        public SortKey(String field, boolean descending) {
+            this.field = field;
+            this.descending = descending;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public boolean isDescending() {
+            return descending;
+        }
+    }
+
     public boolean filterRewrite() {
         return filterRewrite;
     }
@@ -231,6 +309,19 @@ public class QueryOptions {
             case OPTION_LOWERCASE_EXPANDED_TERMS:
                 lowercaseExpandedTerms = value.equalsIgnoreCase("yes");
                 break;
+            case OPTION_LIMIT:
+                try {
+                    limit = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    throw new XPathException(LuceneModule.EXXQDYFT0004, "Option " + OPTION_LIMIT + " must be an integer");
+                }
+                if (limit < 0) {
+                    throw new XPathException(LuceneModule.EXXQDYFT0004, "Option " + OPTION_LIMIT + " must not be negative");
+                }
+                break;
+            case OPTION_SORT:
+                parseSort(value);
+                break;
             case OPTION_QUERY_ANALYZER_ID:
                 queryAnalyzerId = value;
             default:
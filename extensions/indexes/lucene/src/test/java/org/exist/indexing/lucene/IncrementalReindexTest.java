@@ -0,0 +1,152 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.lucene;
+
+import org.exist.EXistException;
+import org.exist.indexing.Indexer;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.Sequence;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.exist.util.PropertiesBuilder.propertiesBuilder;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Node updates only reindex the lucene documents of the nearest indexed ancestors
+ * and leave the other nodes of the document in the index.
+ */
+public class IncrementalReindexTest {
+
+    private static final String COLLECTION = "/db/reindex-test";
+
+    private static final String COLLECTION_CONFIG =
+            "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
+            "   <index>" +
+            "       <lucene>" +
+            "           <text qname=\"entry\"/>" +
+            "           <text qname=\"def\"/>" +
+            "           <text qname=\"@lang\"/>" +
+            "       </lucene>" +
+            "   </index>" +
+            "</collection>";
+
+    private static final int SMALL = 100;
+    private static final int LARGE = 5000;
+    private static final int UPDATES = 20;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(
+            propertiesBuilder()
+                .set(Indexer.PROPERTY_SUPPRESS_WHITESPACE, "none")
+                .build(),
+            true,
+            true);
+
+    @BeforeClass
+    public static void setUp() throws EXistException, PermissionDeniedException, XPathException {
+        execute("xmldb:create-collection('/db/system/config/db', 'reindex-test'), " +
+                "xmldb:store('/db/system/config/db/reindex-test', 'collection.xconf', " + COLLECTION_CONFIG + "), " +
+                "xmldb:create-collection('/db', 'reindex-test')");
+        execute("xmldb:store('" + COLLECTION + "', 'deep.xml', " +
+                "<dictionary><entry><form><orth><seg>original</seg></orth></form></entry></dictionary>)");
+        storeDictionary("small.xml", SMALL);
+        storeDictionary("large.xml", LARGE);
+    }
+
+    @AfterClass
+    public static void tearDown() throws EXistException, PermissionDeniedException, XPathException {
+        execute("xmldb:remove('" + COLLECTION + "'), xmldb:remove('/db/system/config/db/reindex-test')");
+    }
+
+    @Test
+    public void updateText() throws EXistException, PermissionDeniedException, XPathException {
+        final String doc = "doc('" + COLLECTION + "/small.xml')";
+        execute("update value " + doc + "//entry[@n = '10']/sense/def/text() with 'corrected'");
+        assertEquals(1, count("ft:query(" + doc + "//entry, 'corrected')"));
+        assertEquals(1, count("ft:query(" + doc + "//def, 'corrected')"));
+        assertEquals(0, count("ft:query(" + doc + "//entry, 'meaning10')"));
+        assertEquals(0, count("ft:query(" + doc + "//def, 'meaning10')"));
+        // the other entries are still indexed
+        assertEquals(1, count("ft:query(" + doc + "//entry, 'meaning11')"));
+        assertEquals(1, count("ft:query(" + doc + "//entry[@n = '10']/@lang, 'en')"));
+    }
+
+    @Test
+    public void updateAttribute() throws EXistException, PermissionDeniedException, XPathException {
+        final String doc = "doc('" + COLLECTION + "/small.xml')";
+        execute("update value " + doc + "//entry[@n = '20']/@lang with 'de'");
+        assertEquals(1, count("ft:query(" + doc + "//@lang, 'de')"));
+        assertEquals(1, count("ft:query(" + doc + "//entry, 'meaning20')"));
+    }
+
+    @Test
+    public void deepAncestor() throws EXistException, PermissionDeniedException, XPathException {
+        final String doc = "doc('" + COLLECTION + "/deep.xml')";
+        execute("update value " + doc + "//seg/text() with 'modified'");
+        assertEquals(1, count("ft:query(" + doc + "//entry, 'modified')"));
+        assertEquals(0, count("ft:query(" + doc + "//entry, 'original')"));
+    }
+
+    @Test
+    public void updateLeavesOtherNodesIndexed() throws EXistException, PermissionDeniedException, XPathException {
+        final String doc = "doc('" + COLLECTION + "/large.xml')";
+        final String def = doc + "//entry[@n = '" + (LARGE / 2) + "']/sense/def";
+        for (int i = 0; i < UPDATES; i++) {
+            execute("update value " + def + "/text() with 'revision" + i + "'");
+        }
+        assertEquals(1, count("ft:query(" + def + ", 'revision" + (UPDATES - 1) + "')"));
+        assertEquals(1, count("ft:query(" + doc + "//entry, 'revision" + (UPDATES - 1) + "')"));
+        assertEquals(0, count("ft:query(" + doc + "//entry, 'revision0')"));
+
+        // only the updated entry and its definition were removed from the index
+        assertEquals(LARGE - 1, count("ft:query(" + doc + "//def, 'meaning*')"));
+        assertEquals(LARGE - 1, count("ft:query(" + doc + "//entry, 'meaning*')"));
+        assertEquals(LARGE, count("ft:query(" + doc + "//entry, 'word*')"));
+        assertEquals(LARGE, count("ft:query(" + doc + "//@lang, 'en')"));
+    }
+
+    private static void storeDictionary(final String docName, final int entries) throws EXistException, PermissionDeniedException, XPathException {
+        execute("xmldb:store('" + COLLECTION + "', '" + docName + "', " +
+                "<dictionary>{ for $i in 1 to " + entries + " return " +
+                "<entry n='{$i}' lang='en'><form>word{$i}</form><sense><def>meaning{$i}</def></sense></entry> }</dictionary>)");
+    }
+
+    private static int count(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        return execute(query).getItemCount();
+    }
+
+    private static Sequence execute(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            return pool.getXQueryService().execute(broker, query, null);
+        }
+    }
+}
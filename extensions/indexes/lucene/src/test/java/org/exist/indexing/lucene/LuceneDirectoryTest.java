@@ -0,0 +1,91 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.lucene;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.store.NRTCachingDirectory;
+import org.exist.util.DatabaseConfigurationException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertTrue;
+
+public class LuceneDirectoryTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void defaultDirectory() throws Exception {
+        try (final Directory directory = open(config())) {
+            assertTrue(directory instanceof FSDirectory);
+        }
+    }
+
+    @Test
+    public void mmapDirectory() throws Exception {
+        final Element config = config();
+        config.setAttribute("directory", "mmap");
+        try (final Directory directory = open(config)) {
+            assertTrue(directory instanceof MMapDirectory);
+        }
+    }
+
+    @Test
+    public void nrtCachingDirectory() throws Exception {
+        final Element config = config();
+        config.setAttribute("directory", "nio");
+        config.setAttribute("nrt-cache-size", "32");
+        try (final Directory directory = open(config)) {
+            assertTrue(directory instanceof NRTCachingDirectory);
+            assertTrue(((NRTCachingDirectory) directory).getDelegate() instanceof NIOFSDirectory);
+        }
+    }
+
+    @Test(expected = DatabaseConfigurationException.class)
+    public void invalidDirectory() throws Exception {
+        final Element config = config();
+        config.setAttribute("directory", "ram");
+        open(config);
+    }
+
+    private Directory open(final Element config) throws DatabaseConfigurationException, IOException {
+        final Path dataDir = temporaryFolder.newFolder().toPath();
+        final LuceneIndex index = new LuceneIndex();
+        index.configure(null, dataDir, config);
+        return index.openDirectory(dataDir);
+    }
+
+    private static Element config() throws ParserConfigurationException {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument().createElement("module");
+    }
+}
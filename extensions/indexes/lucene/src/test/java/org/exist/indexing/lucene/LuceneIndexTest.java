@@ -25,6 +25,7 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.exist.util.PropertiesBuilder.propertiesBuilder;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -62,6 +63,7 @@ import org.exist.xquery.XQuery;
 import org.exist.xquery.XQueryContext;
 import org.exist.xquery.CompiledXQuery;
 import org.exist.xquery.XPathException;
+import org.exist.xquery.modules.lucene.LuceneModule;
 import org.exist.xquery.value.Sequence;
 import org.exist.xupdate.Modification;
 import org.exist.xupdate.XUpdateProcessor;
@@ -254,6 +256,27 @@ public class LuceneIndexTest {
             "   </index>" +
             "</collection>";
 
+    private static final String COLLECTION_CONFIG9 =
+            "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
+            "   <index>" +
+            "       <lucene>" +
+            "           <text qname=\"item\">" +
+            "               <field name=\"price\" expression=\"@price\" type=\"xs:integer\" sortable=\"yes\"/>" +
+            "               <field name=\"title\" expression=\"@title\" sortable=\"yes\"/>" +
+            "               <field name=\"note\" expression=\"@title\"/>" +
+            "           </text>" +
+            "       </lucene>" +
+            "   </index>" +
+            "</collection>";
+
+    private static final String XML_SORT =
+            "<items>" +
+            "   <item price=\"20\" title=\"b\">apple</item>" +
+            "   <item price=\"5\" title=\"c\">apple</item>" +
+            "   <item price=\"100\" title=\"a\">apple</item>" +
+            "   <item title=\"d\">apple</item>" +
+            "</items>";
+
     private static Collection root;
     private Boolean savedConfig;
 
@@ -582,6 +605,57 @@ public class LuceneIndexTest {
         }
     }
 
+    @Test
+    public void limit() throws EXistException, CollectionConfigurationException, PermissionDeniedException, SAXException, TriggerException, LockException, IOException, XPathException {
+        configureAndStore(COLLECTION_CONFIG6, XML6, "test.xml");
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+
+            final XQuery xquery = pool.getXQueryService();
+            assertNotNull(xquery);
+            Sequence seq = xquery.execute(broker, "ft:query(//b, 'AAA', map { 'limit': 1 })", null);
+            assertNotNull(seq);
+            assertEquals(1, seq.getItemCount());
+
+            // the limit applies to each indexed name
+            seq = xquery.execute(broker, "ft:query((//b|//c), 'AAA', map { 'limit': 1 })", null);
+            assertNotNull(seq);
+            assertEquals(2, seq.getItemCount());
+
+            seq = xquery.execute(broker, "ft:query((//b|//c), 'AAA', map { 'limit': 10 })", null);
+            assertNotNull(seq);
+            assertEquals(3, seq.getItemCount());
+        }
+    }
+
+    @Test
+    public void sort() throws EXistException, CollectionConfigurationException, PermissionDeniedException, SAXException, TriggerException, LockException, IOException, XPathException {
+        configureAndStore(COLLECTION_CONFIG9, XML_SORT, "test.xml");
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+
+            final XQuery xquery = pool.getXQueryService();
+            assertNotNull(xquery);
+            // the order is kept by the result of ft:query itself, a path step would restore document order
+            Sequence seq = xquery.execute(broker, "string-join(for $i in ft:query(//item, 'apple', map { 'sort': 'price' }) return $i/@title, ',')", null);
+            assertEquals("c,b,a,d", seq.getStringValue());
+
+            seq = xquery.execute(broker, "string-join(for $i in ft:query(//item, 'apple', map { 'sort': 'price descending' }) return $i/@title, ',')", null);
+            assertEquals("a,b,c,d", seq.getStringValue());
+
+            seq = xquery.execute(broker, "string-join(for $i in ft:query(//item, 'apple', map { 'sort': 'title descending', 'limit': 2 }) return $i/@title, ',')", null);
+            assertEquals("d,c", seq.getStringValue());
+
+            // sorting by a field which is not sortable is an error
+            try {
+                xquery.execute(broker, "ft:query(//item, 'apple', map { 'sort': 'note' })", null);
+                fail("Expected an error for a field which is not sortable");
+            } catch (final XPathException e) {
+                assertEquals(LuceneModule.EXXQDYFT0004, e.getErrorCode());
+            }
+        }
+    }
+
     @Test
     public void queryTranslation() throws EXistException, CollectionConfigurationException, PermissionDeniedException, SAXException, TriggerException, LockException, IOException, XPathException {
         configureAndStore(COLLECTION_CONFIG1, XML7, "test.xml");
@@ -0,0 +1,109 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.lucene;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelSegmentSearchTest {
+
+    private static RAMDirectory directory;
+    private static DirectoryReader reader;
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        directory = new RAMDirectory();
+        try (final IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(LuceneIndex.LUCENE_VERSION_IN_USE,
+                new StandardAnalyzer(LuceneIndex.LUCENE_VERSION_IN_USE)))) {
+            // every commit creates a new segment
+            for (int segment = 0; segment < 4; segment++) {
+                for (int i = 0; i < 50; i++) {
+                    final Document doc = new Document();
+                    final StringBuilder text = new StringBuilder("text");
+                    for (int j = 0; j < i % 7; j++) {
+                        text.append(" word");
+                    }
+                    doc.add(new TextField("content", text.toString(), Field.Store.NO));
+                    writer.addDocument(doc);
+                }
+                writer.commit();
+            }
+        }
+        reader = DirectoryReader.open(directory);
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterClass
+    public static void tearDown() throws IOException {
+        executor.shutdownNow();
+        reader.close();
+        directory.close();
+    }
+
+    @Test
+    public void sameHitsAsSequentialSearch() throws IOException {
+        assertTrue(reader.leaves().size() > 1);
+        final IndexSearcher searcher = new IndexSearcher(reader);
+        final TermQuery query = new TermQuery(new Term("content", "word"));
+
+        final TopScoreDocCollector sequential = TopScoreDocCollector.create(1000, true);
+        ParallelSegmentSearch.search(searcher, query, null, sequential, null);
+        final TopScoreDocCollector parallel = TopScoreDocCollector.create(1000, true);
+        ParallelSegmentSearch.search(searcher, query, null, parallel, executor);
+
+        final TopDocs expected = sequential.topDocs();
+        final TopDocs actual = parallel.topDocs();
+        // 42 of 50 documents per segment contain the term
+        assertEquals(4 * 42, expected.totalHits);
+        assertEquals(expected.totalHits, actual.totalHits);
+        assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+        for (int i = 0; i < expected.scoreDocs.length; i++) {
+            final ScoreDoc e = expected.scoreDocs[i];
+            final ScoreDoc a = actual.scoreDocs[i];
+            assertEquals(e.doc, a.doc);
+            assertEquals(e.score, a.score, 0.0f);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.lucene;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.ReaderManager;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class RefreshSchedulerTest {
+
+    private RAMDirectory directory;
+    private IndexWriter writer;
+    private ReaderManager readerManager;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = new RAMDirectory();
+        writer = new IndexWriter(directory, new IndexWriterConfig(LuceneIndex.LUCENE_VERSION_IN_USE,
+                new StandardAnalyzer(LuceneIndex.LUCENE_VERSION_IN_USE)));
+        readerManager = new ReaderManager(writer, true);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        readerManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    @Test
+    public void readYourWrites() throws IOException {
+        final RefreshScheduler scheduler = new RefreshScheduler(0, 0, true, readerManager);
+        addDocument(scheduler, "1");
+        assertEquals(1, numDocs(scheduler));
+        addDocument(scheduler, "2");
+        assertEquals(2, numDocs(scheduler));
+
+        // no pending writes: the current reader is used
+        assertEquals(2, numDocs(scheduler));
+
+        final RefreshScheduler.Statistics statistics = scheduler.getStatistics();
+        assertEquals(2, statistics.getRefreshCount());
+        assertEquals(2, statistics.getWaitCount());
+        assertEquals(0, statistics.getPendingWrites());
+    }
+
+    @Test
+    public void refreshAfterWrites() throws IOException, InterruptedException {
+        final RefreshScheduler scheduler = new RefreshScheduler(0, 2, false, readerManager);
+        scheduler.start(Thread::new);
+        try {
+            addDocument(scheduler, "1");
+            assertEquals(1, scheduler.getStatistics().getPendingWrites());
+            addDocument(scheduler, "2");
+
+            for (int i = 0; i < 100 && scheduler.getStatistics().getRefreshCount() == 0; i++) {
+                Thread.sleep(50);
+            }
+            final RefreshScheduler.Statistics statistics = scheduler.getStatistics();
+            assertEquals(1, statistics.getRefreshCount());
+            assertEquals(0, statistics.getPendingWrites());
+            assertEquals(2, numDocs(scheduler));
+            assertEquals(0, scheduler.getStatistics().getWaitCount());
+        } finally {
+            scheduler.close();
+        }
+    }
+
+    @Test
+    public void refreshInterval() throws IOException, InterruptedException {
+        final RefreshScheduler scheduler = new RefreshScheduler(20, 0, false, readerManager);
+        scheduler.start(Thread::new);
+        try {
+            addDocument(scheduler, "1");
+            for (int i = 0; i < 100 && scheduler.getStatistics().getPendingWrites() > 0; i++) {
+                Thread.sleep(50);
+            }
+            assertEquals(1, numDocs(scheduler));
+            assertEquals(0, scheduler.getStatistics().getStaleness());
+        } finally {
+            scheduler.close();
+        }
+    }
+
+    private void addDocument(final RefreshScheduler scheduler, final String id) throws IOException {
+        final Document doc = new Document();
+        doc.add(new StringField("id", id, Field.Store.NO));
+        writer.addDocument(doc);
+        scheduler.written();
+    }
+
+    private int numDocs(final RefreshScheduler scheduler) throws IOException {
+        scheduler.beforeAcquire();
+        final DirectoryReader reader = readerManager.acquire();
+        try {
+            return reader.numDocs();
+        } finally {
+            readerManager.release(reader);
+        }
+    }
+}
@@ -85,7 +85,10 @@ import static java.nio.charset.StandardCharsets.UTF_8;
  * Each index entry maps a key (collectionId, ngram) to a list of occurrences, which has the
  * following structure:
  *
- * <pre>[docId : int, nameType: byte, occurrenceCount: int, entrySize: long, [id: NodeId, offset: int, ...]* ]</pre>
+ * <pre>[docId : int, nameType: byte, occurrenceCount: int, entrySize: long, [id: NodeId, freq: int, offset: int, ...]* ]</pre>
+ *
+ * The offsets of a node are stored in ascending order, each offset as the difference to the
+ * previous one. The entry size allows to skip the occurrences of a document without decoding them.
  */
 public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
@@ -112,6 +115,7 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     private IndexController controller;
     private final Map<QNameTerm, OccurrenceList> ngrams = new TreeMap<>();
     private final VariableByteOutputStream os = new VariableByteOutputStream(128);
+    private int[] offsets = new int[16];
 
     private NGramMatchListener matchListener = null;
 
@@ -194,17 +198,7 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
             // write nodeids, freq, and offsets to a `temp` buf
             try {
-                NodeId previous = null;
-                for (int m = 0; m < occurences.getSize(); ) {
-                    previous = occurences.getNode(m).write(previous, buf);
-
-                    final int freq = occurences.getOccurrences(m);
-                    buf.writeInt(freq);
-                    for (int n = 0; n < freq; n++) {
-                        buf.writeInt(occurences.getOffset(m + n));
-                    }
-                    m += freq;
-                }
+                writeOccurrences(occurences, buf);
 
                 final byte[] bufData = buf.toByteArray();
 
@@ -296,8 +290,10 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                                 // add the node to the new list if it is not
                                 // in the list of removed nodes
                                 if (!occurencesList.contains(nodeId)) {
+                                    int offset = 0;
                                     for (int n = 0; n < freq; n++) {
-                                        newOccurrences.add(nodeId, is.readInt());
+                                        offset += is.readInt();
+                                        newOccurrences.add(nodeId, offset);
                                     }
                                 } else {
                                     is.skip(freq);
@@ -312,16 +308,7 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                                 os.writeInt(newOccurrences.getTermCount());
 
                                 // write nodeids, freq, and offsets to a `temp` buf
-                                previous = null;
-                                for (int m = 0; m < newOccurrences.getSize(); ) {
-                                    previous = newOccurrences.getNode(m).write(previous, buf);
-                                    final int freq = newOccurrences.getOccurrences(m);
-                                    buf.writeInt(freq);
-                                    for (int n = 0; n < freq; n++) {
-                                        buf.writeInt(newOccurrences.getOffset(m + n));
-                                    }
-                                    m += freq;
-                                }
+                                writeOccurrences(newOccurrences, buf);
 
                                 final byte[] bufData = buf.toByteArray();
 
@@ -360,6 +347,36 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         ngrams.clear();
     }
 
+    /**
+     * Write the node ids, frequencies and delta-encoded offsets of a sorted occurrence list.
+     *
+     * @param occurrences the occurrences, sorted by node id
+     * @param buf the stream to write to
+     */
+    private void writeOccurrences(final OccurrenceList occurrences, final VariableByteOutputStream buf) throws IOException {
+        NodeId previous = null;
+        for (int m = 0; m < occurrences.getSize(); ) {
+            previous = occurrences.getNode(m).write(previous, buf);
+
+            final int freq = occurrences.getOccurrences(m);
+            buf.writeInt(freq);
+            // sorting the occurrence list does not preserve the order of the offsets of a node
+            if (offsets.length < freq) {
+                offsets = new int[freq];
+            }
+            for (int n = 0; n < freq; n++) {
+                offsets[n] = occurrences.getOffset(m + n);
+            }
+            Arrays.sort(offsets, 0, freq);
+            int previousOffset = 0;
+            for (int n = 0; n < freq; n++) {
+                buf.writeInt(offsets[n] - previousOffset);
+                previousOffset = offsets[n];
+            }
+            m += freq;
+        }
+    }
+
     @Override
     public void removeCollection(final Collection collection, final DBBroker broker, final boolean reindex) {
         if (LOG.isDebugEnabled()) {
@@ -379,6 +396,32 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public NodeSet search(final int contextId, final DocumentSet docs, final List<QName> qnames, final String query,
             final String ngram, final XQueryContext context, final NodeSet contextSet, final int axis)
             throws XPathException {
+        return search(contextId, docs, qnames, query, ngram, context, contextSet, axis, null);
+    }
+
+    /**
+     * Search the index for an ngram, returning only nodes which are contained in the
+     * given set of candidates. The occurrences of other nodes are skipped without
+     * creating matches for them, and the occurrences of documents without any candidate
+     * are not decoded at all.
+     *
+     * @param contextId the id of the expression used for the matches
+     * @param docs the documents to search
+     * @param qnames the qnames to search, or null to search all defined indexes
+     * @param query the ngram to look up
+     * @param ngram the ngram to report in the matches
+     * @param context the xquery context
+     * @param contextSet the context node set, or null
+     * @param axis the axis of the nodes returned, relative to the context set
+     * @param candidates the nodes which may be returned, or null to return all nodes
+     *
+     * @return the nodes containing the ngram
+     *
+     * @throws XPathException if the query is terminated
+     */
+    public NodeSet search(final int contextId, final DocumentSet docs, final List<QName> qnames, final String query,
+            final String ngram, final XQueryContext context, final NodeSet contextSet, final int axis,
+            final NodeSet candidates) throws XPathException {
         final List<QName> searchQnames;
         if (qnames == null || qnames.isEmpty()) {
             searchQnames = getDefinedIndexes(context.getBroker(), docs);
@@ -392,7 +435,7 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             for (final QName qname : searchQnames) {
                 final NGramQNameKey key = new NGramQNameKey(collectionId, qname, index.getBrokerPool().getSymbols(), query);
                 try (final ManagedLock<ReentrantLock> dbLock = lockManager.acquireBtreeReadLock(index.db.getLockName())) {
-                    final SearchCallback cb = new SearchCallback(contextId, query, ngram, docs, contextSet, context, result, axis == NodeSet.ANCESTOR);
+                    final SearchCallback cb = new SearchCallback(contextId, query, ngram, docs, contextSet, context, result, axis == NodeSet.ANCESTOR, candidates);
                     final int op = query.codePointCount(0, query.length()) < getN() ? IndexQuery.TRUNC_RIGHT : IndexQuery.EQ;
                     index.db.query(new IndexQuery(op, key), cb);
                 } catch (final LockException e) {
@@ -960,10 +1003,12 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         private final XQueryContext context;
         private final NodeSet resultSet;
         private final boolean returnAncestor;
+        private final NodeSet candidates;
+        private final DocumentSet candidateDocs;
 
         SearchCallback(final int contextId, final String query, final String ngram, final DocumentSet docs,
                        final NodeSet contextSet, final XQueryContext context, final NodeSet result,
-                       final boolean returnAncestor) {
+                       final boolean returnAncestor, final NodeSet candidates) {
             this.contextId = contextId;
             this.query = query;
             this.ngram = ngram;
@@ -972,6 +1017,8 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             this.contextSet = contextSet;
             this.resultSet = result;
             this.returnAncestor = returnAncestor;
+            this.candidates = candidates;
+            this.candidateDocs = candidates == null ? null : candidates.getDocumentSet();
         }
 
         @Override
@@ -991,6 +1038,13 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                     final int occurrences = is.readInt();
                     //Read (variable) length of node IDs + frequency + offsets
                     final int length = is.readFixedInt();
+
+                    //Skip the document if it cannot contain any of the candidates
+                    if (candidateDocs != null && !candidateDocs.contains(storedDocId)) {
+                        is.skipBytes(length);
+                        continue;
+                    }
+
                     final DocumentImpl storedDocument = docs.getDoc(storedDocId);
 
                     //Exit if the document is not concerned
@@ -1004,6 +1058,12 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                         final NodeId nodeId = index.getBrokerPool().getNodeFactory().createFromStream(previous, is);
                         previous = nodeId;
                         final int freq = is.readInt();
+                        // with the ancestor axis, the candidates are checked against the ancestor below
+                        if (candidates != null && (contextSet == null || !returnAncestor)
+                                && candidates.get(storedDocument, nodeId) == null) {
+                            is.skip(freq);
+                            continue;
+                        }
                         final NodeProxy nodeProxy = new NodeProxy(storedDocument, nodeId, nameTypeToNodeType(nameType));
                         // if a context set is specified, we can directly check if the
                         // matching node is a descendant of one of the nodes
@@ -1012,7 +1072,7 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                             final int sizeHint = contextSet.getSizeHint(storedDocument);
                             if (returnAncestor) {
                                 final NodeProxy parentNode = contextSet.parentWithChild(nodeProxy, false, true, NodeProxy.UNKNOWN_NODE_LEVEL);
-                                if (parentNode != null) {
+                                if (parentNode != null && (candidates == null || candidates.get(parentNode) != null)) {
                                     readMatches(ngram, is, nodeId, freq, parentNode);
                                     resultSet.add(parentNode, sizeHint);
                                 } else {
@@ -1058,12 +1118,10 @@ public class NGramIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 diff = current.lastIndexOf(ngram);
             }
             final Match match = new NGramMatch(contextId, nodeId, ngram, freq);
+            int offset = 0;
             for (int n = 0; n < freq; n++) {
-                int offset = is.readInt();
-                if (diff > 0) {
-                    offset += diff;
-                }
-                match.addOffset(offset, ngram.length());
+                offset += is.readInt();
+                match.addOffset(diff > 0 ? offset + diff : offset, ngram.length());
             }
             parentNode.addMatch(match);
         }
@@ -494,7 +494,7 @@ public class NGramSearch extends Function implements Optimizable {
         LOG.trace("First NGRAM: {}", firstNgramm);
         NodeSet result = index.search(getExpressionId(), docs, qnames, firstNgramm, firstNgramm, context, nodeSet, axis);
 
-        for (int i = 1; i < ngrams.length; i++) {
+        for (int i = 1; i < ngrams.length && !result.isEmpty(); i++) {
             String ngram = ngrams[i];
             int len = ngram.codePointCount(0, ngram.length());
             int fillSize = index.getN() - len;
@@ -517,7 +517,10 @@ public class NGramSearch extends Function implements Optimizable {
                 LOG.debug("Filled: {}", filledNgram);
             }
 
-            NodeSet nodes = index.search(getExpressionId(), docs, qnames, filledNgram, ngram, context, nodeSet, axis);
+            // only nodes containing all previous ngrams can match: the occurrences of
+            // other nodes are skipped by the index
+            NodeSet nodes = index.search(getExpressionId(), docs, qnames, filledNgram, ngram, context, nodeSet, axis,
+                    result);
 
             final NodeSet nodesContainingFirstINgrams = result;
 
@@ -538,6 +538,30 @@ public class CustomIndexTest {
         }
     }
 
+    @Test
+    public void queryMultipleNGrams() throws PermissionDeniedException, XPathException, EXistException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try(final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            XQuery xquery = pool.getXQueryService();
+            assertNotNull(xquery);
+            Sequence seq = xquery.execute(broker, "//item[ngram:contains(., 'cabinet')]", null);
+            assertEquals(1, seq.getItemCount());
+
+            seq = xquery.execute(broker, "//section[ngram:contains(para, '01234')]", null);
+            assertEquals(1, seq.getItemCount());
+
+            // the ngrams are contained in different nodes
+            seq = xquery.execute(broker, "//para[ngram:contains(., '3456')]", null);
+            assertEquals(0, seq.getItemCount());
+
+            seq = xquery.execute(broker, "//item[ngram:contains(., 'chairtable')]", null);
+            assertEquals(0, seq.getItemCount());
+
+            seq = xquery.execute(broker, "//item[ngram:contains(., 'cabinetx')]", null);
+            assertEquals(0, seq.getItemCount());
+        }
+    }
+
     @Test
     public void indexKeys() throws SAXException, PermissionDeniedException, XPathException, EXistException {
         final BrokerPool pool = existEmbeddedServer.getBrokerPool();
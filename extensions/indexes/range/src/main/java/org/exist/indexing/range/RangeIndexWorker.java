@@ -50,6 +50,7 @@ import org.exist.indexing.StreamListener.ReindexMode;
 import org.exist.indexing.lucene.BinaryTokenStream;
 import org.exist.indexing.lucene.LuceneIndexWorker;
 import org.exist.indexing.lucene.LuceneUtil;
+import org.exist.indexing.lucene.ParallelSegmentSearch;
 import org.exist.numbering.NodeId;
 import org.exist.security.PermissionDeniedException;
 import org.exist.storage.DBBroker;
@@ -59,6 +60,7 @@ import org.exist.storage.NodePath;
 import org.exist.storage.NodePath2;
 import org.exist.storage.btree.DBException;
 import org.exist.storage.txn.Txn;
+import org.exist.storage.txn.TxnListener;
 import org.exist.util.ByteConversion;
 import org.exist.util.DatabaseConfigurationException;
 import org.exist.util.LockException;
@@ -69,6 +71,7 @@ import org.exist.xquery.value.*;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.*;
@@ -107,6 +110,19 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
     private int maxCachedNodesSize = 4096 * 1024;
 
+    /**
+     * Maximum number of range index documents buffered for a transaction.
+     * If exceeded, the buffer is written before the transaction completes.
+     */
+    private static final int MAX_PENDING_DOCUMENTS = 16384;
+
+    /**
+     * the transaction of the document currently indexed, null if not known.
+     * Only set between the start of a document and the next {@link #flush()}.
+     */
+    @Nullable private Txn transaction = null;
+    @Nullable private PendingWrites pendingWrites = null;
+
     public RangeIndexWorker(RangeIndex index, DBBroker broker) {
         this.index = index;
         this.broker = broker;
@@ -341,16 +357,21 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
     @Override
     public void flush() {
-        switch (mode) {
-            case STORE:
-                write();
-                break;
-            case REMOVE_SOME_NODES:
-                removeNodes();
-                break;
-            case REMOVE_ALL_NODES:
-                removeDocument(currentDoc.getDocId());
-                break;
+        try {
+            switch (mode) {
+                case STORE:
+                    write();
+                    break;
+                case REMOVE_SOME_NODES:
+                    removeNodes();
+                    break;
+                case REMOVE_ALL_NODES:
+                    removeDocument(currentDoc.getDocId());
+                    break;
+            }
+        } finally {
+            // do not keep the transaction alive after it completed
+            transaction = null;
         }
     }
 
@@ -358,6 +379,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     public void removeCollection(Collection collection, DBBroker broker, boolean reindex) throws PermissionDeniedException {
         if (LOG.isDebugEnabled())
             LOG.debug("Removing collection {}", collection.getURI());
+        applyPendingWrites();
         IndexWriter writer = null;
         try {
             writer = index.getWriter();
@@ -386,6 +408,12 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     protected void removeDocument(int docId) {
+        final PendingWrites pending = getPendingWrites();
+        if (pending != null) {
+            pending.delete(docId);
+            mode = ReindexMode.STORE;
+            return;
+        }
         IndexWriter writer = null;
         try {
             writer = index.getWriter();
@@ -409,6 +437,8 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     protected void removeNodes() {
         if (nodesToRemove == null)
             return;
+        // the nodes may have been added within the current transaction
+        applyPendingWrites();
         IndexWriter writer = null;
         try {
             writer = index.getWriter();
@@ -451,17 +481,19 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
             return;
         IndexWriter writer = null;
         try {
-            writer = index.getWriter();
-
-            // docId and nodeId are stored as doc value
-            IntDocValuesField fDocId = new IntDocValuesField(FIELD_DOC_ID, 0);
-            BinaryDocValuesField fNodeId = new BinaryDocValuesField(FIELD_NODE_ID, new BytesRef(8));
-            BinaryDocValuesField fAddress = new BinaryDocValuesField(FIELD_ADDRESS, new BytesRef(8));
-            // docId also needs to be indexed
-            IntField fDocIdIdx = new IntField(FIELD_DOC_ID, 0, IntField.TYPE_NOT_STORED);
+            // the documents may be analyzed by several threads, so every document gets its own fields
+            final List<Document> documents = new ArrayList<>(nodesToWrite.size());
+            final List<Analyzer> analyzers = new ArrayList<>(nodesToWrite.size());
             for (RangeIndexDoc pending : nodesToWrite) {
                 Document doc = new Document();
 
+                // docId and nodeId are stored as doc value
+                IntDocValuesField fDocId = new IntDocValuesField(FIELD_DOC_ID, 0);
+                BinaryDocValuesField fNodeId = new BinaryDocValuesField(FIELD_NODE_ID, new BytesRef(8));
+                BinaryDocValuesField fAddress = new BinaryDocValuesField(FIELD_ADDRESS, new BytesRef(8));
+                // docId also needs to be indexed
+                IntField fDocIdIdx = new IntField(FIELD_DOC_ID, 0, IntField.TYPE_NOT_STORED);
+
                 fDocId.setIntValue(currentDoc.getDocId());
                 doc.add(fDocId);
 
@@ -504,7 +536,15 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                 if (analyzer == null) {
                     analyzer = config.getDefaultAnalyzer();
                 }
-                writer.addDocument(doc, analyzer);
+                documents.add(doc);
+                analyzers.add(analyzer);
+            }
+            final PendingWrites pending = getPendingWrites();
+            if (pending != null) {
+                pending.add(currentDoc.getDocId(), documents, analyzers);
+            } else {
+                writer = index.getWriter();
+                index.addDocuments(writer, documents, analyzers);
             }
         } catch (IOException e) {
             LOG.warn("An exception was caught while indexing document: {}", e.getMessage(), e);
@@ -515,7 +555,153 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
         }
     }
 
+    /**
+     * Get the buffer for the writes of the current transaction. Writes of another
+     * transaction still pending are applied first.
+     *
+     * @return the buffer, or null if the writes should be applied immediately
+     */
+    private @Nullable PendingWrites getPendingWrites() {
+        if (pendingWrites != null &&
+                (transaction == null || pendingWrites.transactionId != transaction.getId())) {
+            applyPendingWrites();
+        }
+        if (transaction == null || transaction.getState() != Txn.State.STARTED) {
+            return null;
+        }
+        if (pendingWrites == null) {
+            pendingWrites = new PendingWrites(transaction.getId());
+            transaction.registerListener(pendingWrites);
+        }
+        return pendingWrites;
+    }
+
+    /**
+     * Write the buffered documents to the index, so they are visible to lookups
+     * and node updates of the current transaction.
+     */
+    private void applyPendingWrites() {
+        if (pendingWrites != null) {
+            pendingWrites.apply();
+        }
+    }
+
+    /**
+     * The range index documents written within a transaction. They are applied in one
+     * batch when the transaction completes, which avoids many small writes (and reader
+     * refreshes) when a lot of small documents are stored in one transaction.
+     *
+     * Deletes of whole documents are coalesced and applied before the new documents.
+     * Documents added before a delete of the same document within the transaction
+     * are dropped. The buffer is applied before any lookup on the index, so the
+     * transaction sees its own writes. If the transaction is aborted, the writes
+     * still buffered are applied as well: the DOM writes of the transaction are not
+     * undone at runtime either, and the index has to stay in step with them.
+     */
+    private class PendingWrites implements TxnListener {
+
+        private final long transactionId;
+        private List<Document> documents = new ArrayList<>();
+        private List<Analyzer> analyzers = new ArrayList<>();
+        /** the eXist document id of each pending lucene document */
+        private List<Integer> docIds = new ArrayList<>();
+        private final Set<Integer> addedDocs = new HashSet<>();
+        private final Set<Integer> deletedDocs = new HashSet<>();
+
+        PendingWrites(long transactionId) {
+            this.transactionId = transactionId;
+        }
+
+        void add(int docId, List<Document> documents, List<Analyzer> analyzers) {
+            this.documents.addAll(documents);
+            this.analyzers.addAll(analyzers);
+            for (int i = 0; i < documents.size(); i++) {
+                docIds.add(docId);
+            }
+            addedDocs.add(docId);
+            if (this.documents.size() > MAX_PENDING_DOCUMENTS) {
+                apply();
+            }
+        }
+
+        void delete(int docId) {
+            if (addedDocs.remove(docId)) {
+                final List<Document> keptDocuments = new ArrayList<>(documents.size());
+                final List<Analyzer> keptAnalyzers = new ArrayList<>(documents.size());
+                final List<Integer> keptDocIds = new ArrayList<>(documents.size());
+                for (int i = 0; i < documents.size(); i++) {
+                    if (docIds.get(i) != docId) {
+                        keptDocuments.add(documents.get(i));
+                        keptAnalyzers.add(analyzers.get(i));
+                        keptDocIds.add(docIds.get(i));
+                    }
+                }
+                documents = keptDocuments;
+                analyzers = keptAnalyzers;
+                docIds = keptDocIds;
+            }
+            deletedDocs.add(docId);
+        }
+
+        void apply() {
+            detach();
+            if (documents.isEmpty() && deletedDocs.isEmpty()) {
+                return;
+            }
+            IndexWriter writer = null;
+            try {
+                writer = index.getWriter();
+                if (!deletedDocs.isEmpty()) {
+                    final Term[] terms = new Term[deletedDocs.size()];
+                    int i = 0;
+                    for (final int docId : deletedDocs) {
+                        final BytesRefBuilder bytes = new BytesRefBuilder();
+                        NumericUtils.intToPrefixCoded(docId, 0, bytes);
+                        terms[i++] = new Term(FIELD_DOC_ID, bytes.toBytesRef());
+                    }
+                    writer.deleteDocuments(terms);
+                }
+                if (!documents.isEmpty()) {
+                    index.addDocuments(writer, documents, analyzers);
+                }
+            } catch (IOException e) {
+                LOG.warn("An exception was caught while writing range index documents: {}", e.getMessage(), e);
+            } finally {
+                index.releaseWriter(writer);
+                clear();
+            }
+        }
+
+        private void detach() {
+            if (pendingWrites == this) {
+                pendingWrites = null;
+            }
+            if (transaction != null && transaction.getId() == transactionId) {
+                transaction = null;
+            }
+        }
+
+        private void clear() {
+            documents = new ArrayList<>();
+            analyzers = new ArrayList<>();
+            docIds = new ArrayList<>();
+            addedDocs.clear();
+            deletedDocs.clear();
+        }
+
+        @Override
+        public void commit() {
+            apply();
+        }
+
+        @Override
+        public void abort() {
+            apply();
+        }
+    }
+
     public NodeSet query(int contextId, DocumentSet docs, NodeSet contextSet, List<QName> qnames, AtomicValue[] keys, RangeIndex.Operator operator, int axis) throws IOException, XPathException {
+        applyPendingWrites();
         return index.withSearcher(searcher -> {
             List<QName> definedIndexes = getDefinedIndexes(qnames);
             NodeSet resultSet = new NewArrayNodeSet();
@@ -541,6 +727,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     public NodeSet queryField(int contextId, DocumentSet docs, NodeSet contextSet, Sequence fields, Sequence[] keys, RangeIndex.Operator[] operators, int axis) throws IOException, XPathException {
+        applyPendingWrites();
         return index.withSearcher(searcher -> {
             BooleanQuery query = new BooleanQuery();
             int j = 0;
@@ -589,7 +776,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
                             IndexSearcher searcher, final short nodeType, Query query, Filter filter) throws
             IOException {
         SearchCollector collector = new SearchCollector(docs, contextSet, nodeType, axis, contextId);
-        searcher.search(query, filter, collector);
+        ParallelSegmentSearch.search(searcher, query, filter, collector, index.getSearchExecutor());
         return collector.getResultSet();
     }
 
@@ -798,6 +985,18 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
     private class RangeIndexListener extends AbstractStreamListener {
 
+        @Override
+        public void startIndexDocument(Txn transaction) {
+            RangeIndexWorker.this.transaction = transaction;
+            super.startIndexDocument(transaction);
+        }
+
+        @Override
+        public void startReplaceDocument(Txn transaction) {
+            RangeIndexWorker.this.transaction = transaction;
+            super.startReplaceDocument(transaction);
+        }
+
         @Override
         public void startElement(Txn transaction, ElementImpl element, NodePath path) {
             if (mode == ReindexMode.STORE && config != null) {
@@ -933,6 +1132,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
 
     @Override
     public Occurrences[] scanIndex(XQueryContext context, DocumentSet docs, NodeSet nodes, Map hints) {
+        applyPendingWrites();
         try {
             List<QName> qnames = hints == null ? null : (List<QName>)hints.get(QNAMES_KEY);
             qnames = getDefinedIndexes(qnames);
@@ -955,6 +1155,7 @@ public class RangeIndexWorker implements OrderedValuesIndex, QNamedKeysIndex {
     }
 
     public Occurrences[] scanIndexByField(String field, DocumentSet docs, String start, long max) {
+        applyPendingWrites();
         try {
             return index.withReader(reader -> {
                 TreeMap<String, Occurrences> map = new TreeMap<>();
@@ -0,0 +1,228 @@
+/*
+ * eXist-db Open Source Native XML Database
+ * Copyright (C) 2001 The eXist-db Authors
+ *
+ * info@exist-db.org
+ * http://www.exist-db.org
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+ */
+package org.exist.indexing.range;
+
+import org.exist.EXistException;
+import org.exist.collections.Collection;
+import org.exist.collections.CollectionConfigurationException;
+import org.exist.collections.CollectionConfigurationManager;
+import org.exist.collections.IndexInfo;
+import org.exist.collections.triggers.TriggerException;
+import org.exist.security.PermissionDeniedException;
+import org.exist.storage.BrokerPool;
+import org.exist.storage.DBBroker;
+import org.exist.storage.txn.TransactionManager;
+import org.exist.storage.txn.Txn;
+import org.exist.test.ExistEmbeddedServer;
+import org.exist.util.LockException;
+import org.exist.xmldb.XmldbURI;
+import org.exist.xquery.XPathException;
+import org.exist.xquery.value.Sequence;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Stores many small documents within a single transaction, so the range index
+ * documents are buffered and written in one batch when the transaction commits.
+ * Reports the store throughput.
+ */
+public class RangeIndexStoreTest {
+
+    private static final XmldbURI COLLECTION = XmldbURI.create("/db/range-store-test");
+
+    private static final String COLLECTION_CONFIG =
+            "<collection xmlns=\"http://exist-db.org/collection-config/1.0\">" +
+            "   <index>" +
+            "       <range>" +
+            "           <create qname=\"item\">" +
+            "               <field name=\"item-id\" match=\"@id\" type=\"xs:string\"/>" +
+            "               <field name=\"item-price\" match=\"@price\" type=\"xs:integer\"/>" +
+            "           </create>" +
+            "       </range>" +
+            "   </index>" +
+            "</collection>";
+
+    private static final int DOCUMENTS = 1000;
+    private static final int ITEMS = 10;
+
+    @ClassRule
+    public static final ExistEmbeddedServer existEmbeddedServer = new ExistEmbeddedServer(true, true);
+
+    @After
+    public void cleanup() throws EXistException, PermissionDeniedException, IOException, TriggerException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = broker.getCollection(COLLECTION);
+            if (collection != null) {
+                broker.removeCollection(transaction, collection);
+            }
+            transact.commit(transaction);
+        }
+    }
+
+    @Test
+    public void storeInOneTransaction() throws EXistException, PermissionDeniedException, IOException, SAXException,
+            LockException, CollectionConfigurationException, XPathException, TriggerException {
+        final long start = System.nanoTime();
+        store(0);
+        final long elapsed = System.nanoTime() - start;
+        System.out.printf("Stored %d documents with %d range indexed items each in %.0fms: %.0f documents/s%n",
+                DOCUMENTS, ITEMS, elapsed / 1000000.0, DOCUMENTS / (elapsed / 1000000000.0));
+
+        assertEquals(DOCUMENTS, count("range:field-eq('item-price', 0)"));
+        assertEquals(1, count("range:field-eq('item-id', 'd" + (DOCUMENTS - 1) + "-i" + (ITEMS - 1) + "')"));
+    }
+
+    @Test
+    public void replaceInOneTransaction() throws EXistException, PermissionDeniedException, IOException, SAXException,
+            LockException, CollectionConfigurationException, XPathException, TriggerException {
+        // replace every document: the entries of the old versions must be deleted
+        store(0, 1);
+        assertEquals(0, count("range:field-eq('item-price', 0)"));
+        assertEquals(DOCUMENTS, count("range:field-eq('item-price', 1)"));
+        assertEquals(DOCUMENTS * ITEMS, count("range:field-gt('item-price', -1)"));
+    }
+
+    @Test
+    public void storeAndRemoveInOneTransaction() throws EXistException, PermissionDeniedException, IOException,
+            SAXException, LockException, CollectionConfigurationException, XPathException, TriggerException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = createCollection(broker, transaction);
+            storeDocument(broker, transaction, collection, "kept.xml", 0, 0);
+            storeDocument(broker, transaction, collection, "removed.xml", 1, 0);
+            collection.removeXMLResource(transaction, broker, XmldbURI.create("removed.xml"));
+            transact.commit(transaction);
+        }
+        assertEquals(ITEMS, count("range:field-gt('item-price', -1)"));
+        assertEquals(0, count("range:field-eq('item-id', 'd1-i0')"));
+    }
+
+    @Test
+    public void lookupInTransaction() throws EXistException, PermissionDeniedException, IOException, SAXException,
+            LockException, CollectionConfigurationException, XPathException, TriggerException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = createCollection(broker, transaction);
+            storeDocument(broker, transaction, collection, "doc0.xml", 0, 0);
+            // the buffered entries are written before the lookup
+            assertEquals(1, count(broker, "range:field-eq('item-id', 'd0-i0')"));
+
+            storeDocument(broker, transaction, collection, "doc1.xml", 1, 0);
+            assertEquals(2, count(broker, "range:field-eq('item-price', 0)"));
+            transact.commit(transaction);
+        }
+        assertEquals(2, count("range:field-eq('item-price', 0)"));
+    }
+
+    @Test
+    public void abortedTransaction() throws EXistException, PermissionDeniedException, IOException, SAXException,
+            LockException, CollectionConfigurationException, XPathException, TriggerException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            try (final Txn transaction = transact.beginTransaction()) {
+                createCollection(broker, transaction);
+                transact.commit(transaction);
+            }
+            try (final Txn transaction = transact.beginTransaction()) {
+                storeDocument(broker, transaction, broker.getCollection(COLLECTION), "aborted.xml", 99, 0);
+                transact.abort(transaction);
+            }
+        }
+        // the stored nodes are not undone by the abort, neither are their index entries
+        assertEquals(1, count("item[string(@id) = 'd99-i0']"));
+        assertEquals(1, count("range:field-eq('item-id', 'd99-i0')"));
+    }
+
+    /**
+     * Store {@link #DOCUMENTS} documents in one transaction, once for each given price.
+     * The first item of every document gets the price, the other items a higher one.
+     */
+    private static void store(final int... prices) throws EXistException, PermissionDeniedException, IOException,
+            SAXException, LockException, CollectionConfigurationException, TriggerException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        final TransactionManager transact = pool.getTransactionManager();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()));
+             final Txn transaction = transact.beginTransaction()) {
+            final Collection collection = createCollection(broker, transaction);
+            for (final int price : prices) {
+                for (int i = 0; i < DOCUMENTS; i++) {
+                    storeDocument(broker, transaction, collection, "doc" + i + ".xml", i, price);
+                }
+            }
+            transact.commit(transaction);
+        }
+    }
+
+    private static Collection createCollection(final DBBroker broker, final Txn transaction)
+            throws PermissionDeniedException, IOException, TriggerException, CollectionConfigurationException, LockException {
+        Collection collection = broker.getCollection(COLLECTION);
+        if (collection == null) {
+            collection = broker.getOrCreateCollection(transaction, COLLECTION);
+            broker.saveCollection(transaction, collection);
+            final CollectionConfigurationManager mgr = broker.getBrokerPool().getConfigurationManager();
+            mgr.addConfiguration(transaction, broker, collection, COLLECTION_CONFIG);
+        }
+        return collection;
+    }
+
+    private static void storeDocument(final DBBroker broker, final Txn transaction, final Collection collection,
+            final String name, final int n, final int price) throws EXistException, PermissionDeniedException,
+            IOException, SAXException, LockException, TriggerException {
+        final StringBuilder xml = new StringBuilder("<items>");
+        for (int i = 0; i < ITEMS; i++) {
+            xml.append("<item id=\"d").append(n).append("-i").append(i).append("\" price=\"")
+                    .append(i == 0 ? price : i + 10).append("\"/>");
+        }
+        xml.append("</items>");
+        final String data = xml.toString();
+        final IndexInfo info = collection.validateXMLResource(transaction, broker, XmldbURI.create(name), data);
+        collection.store(transaction, broker, info, data);
+    }
+
+    private static int count(final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final BrokerPool pool = existEmbeddedServer.getBrokerPool();
+        try (final DBBroker broker = pool.get(Optional.of(pool.getSecurityManager().getSystemSubject()))) {
+            return count(broker, query);
+        }
+    }
+
+    private static int count(final DBBroker broker, final String query) throws EXistException, PermissionDeniedException, XPathException {
+        final Sequence result = broker.getBrokerPool().getXQueryService().execute(broker,
+                "count(collection('" + COLLECTION + "')//" + query + ")", null);
+        return Integer.parseInt(result.getStringValue());
+    }
+}
@@ -33,6 +33,7 @@ import org.exist.security.Permission;
 import org.exist.security.PermissionDeniedException;
 import org.exist.storage.BrokerPool;
 import org.exist.storage.DBBroker;
+import org.exist.storage.SerializedDocumentCache;
 import org.exist.storage.lock.Lock.LockMode;
 import org.exist.storage.serializers.Serializer;
 import org.exist.storage.txn.TransactionManager;
@@ -199,6 +200,17 @@ public class ExistDocument extends ExistResource {
     }
 
     private void serialize(final DBBroker broker, final DocumentImpl document, final OutputStream os) throws SAXException, IOException {
+        // the output of a document which is not transformed may be served from the cache
+        final SerializedDocumentCache outputCache = broker.getBrokerPool().getSerializedDocumentCache();
+        final String variant = outputCache.isEnabled() ? SerializedDocumentCache.getVariant("webdav", configuration) : null;
+        final byte[] cachedOutput = variant != null ? outputCache.get(document, variant) : null;
+        if (cachedOutput != null) {
+            try (final OutputStream out = os) {
+                out.write(cachedOutput);
+            }
+            return;
+        }
+
         final Serializer serializer = broker.borrowSerializer();
         // Set custom serialization options when available
         if (!configuration.isEmpty()) {
@@ -210,7 +222,10 @@ public class ExistDocument extends ExistResource {
             saxSerializer = (SAXSerializer) SerializerPool.getInstance().borrowObject(SAXSerializer.class);
 
             // Serialize document
-            try (final Writer writer = new OutputStreamWriter(os, UTF_8)) {
+            final SerializedDocumentCache.CapturingOutputStream capture = variant != null
+                    ? new SerializedDocumentCache.CapturingOutputStream(os, outputCache.getMaxOutputSize())
+                    : null;
+            try (final Writer writer = new OutputStreamWriter(capture != null ? capture : os, UTF_8)) {
                 saxSerializer.setOutput(writer, configuration.isEmpty() ? null : configuration);
                 serializer.setSAXHandlers(saxSerializer, saxSerializer);
 
@@ -218,6 +233,14 @@ public class ExistDocument extends ExistResource {
 
                 writer.flush();
             }
+
+            if (capture != null && !serializer.isStylesheetApplied()
+                    && !serializer.getXIncludeFilter().hasProcessedIncludes()) {
+                final byte[] output = capture.toByteArray();
+                if (output != null) {
+                    outputCache.put(document, variant, output);
+                }
+            }
         } finally {
             if (saxSerializer != null) {
                 SerializerPool.getInstance().returnObject(saxSerializer);